@@ -42,13 +42,17 @@ import javax.xml.parsers.ParserConfigurationException;
 
 import net.cellcloud.Version;
 import net.cellcloud.cell.log.FileLogger;
+import net.cellcloud.common.FrameFormat;
 import net.cellcloud.common.LogLevel;
 import net.cellcloud.common.Logger;
+import net.cellcloud.common.TransportProfile;
+import net.cellcloud.common.UnixDomainSockets;
 import net.cellcloud.core.Nucleus;
 import net.cellcloud.core.NucleusConfig;
 import net.cellcloud.exception.SingletonException;
 
 import org.w3c.dom.Document;
+import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
@@ -222,6 +226,84 @@ public final class Application {
 				DocumentBuilder db = dbf.newDocumentBuilder();
 				Document document = db.parse(fileName);
 
+				// 读取 Talk 分帧格式
+				NodeList framing = document.getElementsByTagName("framing");
+				if (framing.getLength() > 0) {
+					String text = framing.item(0).getTextContent().trim();
+					FrameFormat format = FrameFormat.parse(text);
+					if (null != format) {
+						nucleus.getConfig().talk.framing = format;
+					}
+					else {
+						Logger.w(Application.class, "Unknown framing format: " + text);
+					}
+				}
+
+				// 读取原语格式
+				NodeList codec = document.getElementsByTagName("primitive-codec");
+				if (codec.getLength() > 0) {
+					String text = codec.item(0).getTextContent().trim();
+					if (text.equalsIgnoreCase("binary")) {
+						nucleus.getConfig().talk.binaryPrimitive = true;
+					}
+					else if (text.equalsIgnoreCase("text")) {
+						nucleus.getConfig().talk.binaryPrimitive = false;
+					}
+					else {
+						Logger.w(Application.class, "Unknown primitive codec: " + text);
+					}
+				}
+
+				// 读取对话原语合并窗口
+				NodeList coalesce = document.getElementsByTagName("coalesce");
+				if (coalesce.getLength() > 0) {
+					Element element = (Element) coalesce.item(0);
+					try {
+						if (element.hasAttribute("delay")) {
+							nucleus.getConfig().talk.coalesceDelay = Long.parseLong(element.getAttribute("delay").trim());
+						}
+						if (element.hasAttribute("bytes")) {
+							nucleus.getConfig().talk.coalesceBytes = Integer.parseInt(element.getAttribute("bytes").trim());
+						}
+					} catch (NumberFormatException e) {
+						Logger.w(Application.class, "Coalesce has invalid value: " + e.getMessage());
+					}
+				}
+
+				// 读取同主机传输地址
+				NodeList transport = document.getElementsByTagName("transport");
+				if (transport.getLength() > 0) {
+					String text = transport.item(0).getTextContent().trim();
+					if (text.startsWith(UnixDomainSockets.SCHEME)) {
+						nucleus.getConfig().localTransport = text;
+						if (!UnixDomainSockets.isSupported()) {
+							Logger.w(Application.class, "Unix domain socket is not supported by this JVM, use TCP");
+						}
+					}
+					else {
+						Logger.w(Application.class, "Unknown transport: " + text);
+					}
+				}
+
+				// 读取传输参数配置
+				NodeList profiles = document.getElementsByTagName("transport-profile");
+				for (int i = 0; i < profiles.getLength(); ++i) {
+					TransportProfile profile = this.parseTransportProfile(nucleus.getConfig(), (Element) profiles.item(i));
+					if (null != profile) {
+						nucleus.getConfig().addTransportProfile(profile);
+					}
+				}
+
+				// 读取各服务使用的传输参数配置名称
+				NodeList talkTransport = document.getElementsByTagName("talk-transport");
+				if (talkTransport.getLength() > 0) {
+					nucleus.getConfig().talk.transport = talkTransport.item(0).getTextContent().trim();
+				}
+				NodeList clusterTransport = document.getElementsByTagName("cluster-transport");
+				if (clusterTransport.getLength() > 0) {
+					nucleus.getConfig().cluster.transport = clusterTransport.item(0).getTextContent().trim();
+				}
+
 				// 读取 Cellet
 				NodeList list = document.getElementsByTagName("cellet");
 				for (int i = 0; i < list.getLength(); ++i) {
@@ -252,6 +334,61 @@ public final class Application {
 		return false;
 	}
 
+	/** 解析传输参数配置。
+	 * 格式：&lt;transport-profile name="bulk" base="throughput" nodelay="false" rcvbuf="2097152"
+	 * sndbuf="2097152" backlog="512" workers="4" block="65536" writespin="16" /&gt;
+	 * 未指定的参数沿用 base 配置，未指定 base 时沿用同名内置配置或默认配置。
+	 */
+	private TransportProfile parseTransportProfile(NucleusConfig config, Element element) {
+		String name = element.getAttribute("name").trim();
+		if (name.length() == 0) {
+			Logger.w(Application.class, "Transport profile has no name, ignored");
+			return null;
+		}
+
+		String base = element.getAttribute("base").trim();
+		TransportProfile baseProfile = null;
+		if (base.length() > 0) {
+			baseProfile = config.getTransportProfile(base);
+		}
+		else {
+			baseProfile = config.transportProfiles.get(name);
+			if (null == baseProfile) {
+				baseProfile = TransportProfile.createDefault();
+			}
+		}
+
+		TransportProfile profile = baseProfile.copy(name);
+		try {
+			if (element.hasAttribute("nodelay")) {
+				profile.setTcpNoDelay(Boolean.parseBoolean(element.getAttribute("nodelay").trim()));
+			}
+			if (element.hasAttribute("rcvbuf")) {
+				profile.setReceiveBufferSize(Integer.parseInt(element.getAttribute("rcvbuf").trim()));
+			}
+			if (element.hasAttribute("sndbuf")) {
+				profile.setSendBufferSize(Integer.parseInt(element.getAttribute("sndbuf").trim()));
+			}
+			if (element.hasAttribute("backlog")) {
+				profile.setBacklog(Integer.parseInt(element.getAttribute("backlog").trim()));
+			}
+			if (element.hasAttribute("workers")) {
+				profile.setWorkerNum(Integer.parseInt(element.getAttribute("workers").trim()));
+			}
+			if (element.hasAttribute("block")) {
+				profile.setBlockSize(Integer.parseInt(element.getAttribute("block").trim()));
+			}
+			if (element.hasAttribute("writespin")) {
+				profile.setWriteSpinCount(Integer.parseInt(element.getAttribute("writespin").trim()));
+			}
+		} catch (NumberFormatException e) {
+			Logger.w(Application.class, "Transport profile '" + name + "' has invalid value: " + e.getMessage());
+			return null;
+		}
+
+		return profile;
+	}
+
 	/** 加载所有库文件
 	 */
 	protected boolean loadLibraries() {
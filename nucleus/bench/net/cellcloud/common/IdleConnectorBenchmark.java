@@ -0,0 +1,195 @@
+/*
+-----------------------------------------------------------------------------
+This source file is part of Cell Cloud.
+
+Copyright (c) 2009-2013 Cell Cloud Team (www.cellcloud.net)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+-----------------------------------------------------------------------------
+*/
+
+package net.cellcloud.common;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** 空闲连接 CPU 占用基准测试。
+ * 
+ * 在本机建立指定数量的空闲连接，连接建立后在采样窗口内统计所有线程的 CPU 时间。
+ * 用法：IdleConnectorBenchmark [-window 秒] [-port 端口] [连接数 ...]，
+ * 默认依次测试 1000 和 10000 个连接，采样窗口 10 秒。
+ * 
+ * 连接器和接收器位于同一进程内，10000 个连接约需 20000 个文件描述符，运行前需调高 ulimit -n 。
+ * 本类只使用各版本共有的接口，对比改动前后时将本类与对应版本的 nucleus 一起编译运行即可。
+ * 
+ * @author Jiangwei Xu
+ */
+public final class IdleConnectorBenchmark {
+
+	// 每批发起的连接数，小于默认监听队列长度 50 ，避免溢出的握手被延迟重传
+	private static final int CONNECT_BATCH = 40;
+	// 每批连接等待建立的最长时间，单位：毫秒
+	private static final long CONNECT_TIMEOUT = 10000L;
+	// 连接建立后进入采样前的等待时间，单位：毫秒
+	private static final long SETTLE_TIME = 2000L;
+
+	private IdleConnectorBenchmark() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		long window = 10;
+		int port = 17900;
+		List<Integer> counts = new ArrayList<Integer>();
+		for (int i = 0; i < args.length; ++i) {
+			if (args[i].equals("-window") && i + 1 < args.length) {
+				window = Long.parseLong(args[++i]);
+			}
+			else if (args[i].equals("-port") && i + 1 < args.length) {
+				port = Integer.parseInt(args[++i]);
+			}
+			else {
+				counts.add(Integer.parseInt(args[i]));
+			}
+		}
+		if (counts.isEmpty()) {
+			counts.add(1000);
+			counts.add(10000);
+		}
+
+		for (int count : counts) {
+			run(count, window * 1000L, port);
+		}
+
+		System.exit(0);
+	}
+
+	private static void run(int count, long window, int port) throws Exception {
+		CountingHandler acceptorHandler = new CountingHandler();
+		CountingHandler connectorHandler = new CountingHandler();
+
+		NonblockingAcceptor acceptor = new NonblockingAcceptor();
+		acceptor.setHandler(acceptorHandler);
+		acceptor.setMaxConnectNum(count + 16);
+		InetSocketAddress address = new InetSocketAddress("127.0.0.1", port);
+		if (!acceptor.bind(address)) {
+			System.out.println("Can not bind " + address);
+			return;
+		}
+
+		// 分批建立连接，每批全部被接收后再发起下一批
+		List<NonblockingConnector> connectors = new ArrayList<NonblockingConnector>(count);
+		long connectStart = System.currentTimeMillis();
+		while (connectors.size() < count) {
+			int batch = Math.min(CONNECT_BATCH, count - connectors.size());
+			for (int i = 0; i < batch; ++i) {
+				NonblockingConnector connector = new NonblockingConnector();
+				connector.setHandler(connectorHandler);
+				connector.connect(address);
+				connectors.add(connector);
+			}
+
+			long deadline = System.currentTimeMillis() + CONNECT_TIMEOUT;
+			while (acceptorHandler.opened.get() < connectors.size()
+					&& System.currentTimeMillis() < deadline) {
+				Thread.sleep(5);
+			}
+		}
+		long connectTime = System.currentTimeMillis() - connectStart;
+
+		Thread.sleep(SETTLE_TIME);
+
+		// 采样窗口内所有线程的 CPU 时间
+		ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+		long cpuStart = totalCpuTime(threadBean);
+		long wallStart = System.nanoTime();
+		Thread.sleep(window);
+		long cpuEnd = totalCpuTime(threadBean);
+		long wallEnd = System.nanoTime();
+
+		double cpuMillis = (cpuEnd - cpuStart) / 1000000.0;
+		double wallMillis = (wallEnd - wallStart) / 1000000.0;
+
+		StringBuilder buf = new StringBuilder();
+		buf.append("sessions=").append(count);
+		buf.append(" opened=").append(acceptorHandler.opened.get());
+		buf.append(" connectMs=").append(connectTime);
+		buf.append(" threads=").append(threadBean.getThreadCount());
+		buf.append(" cpuMs=").append(String.format("%.1f", cpuMillis));
+		buf.append(" windowMs=").append(String.format("%.0f", wallMillis));
+		buf.append(" cpu=").append(String.format("%.2f", cpuMillis * 100.0 / wallMillis)).append("%");
+		System.out.println(buf.toString());
+
+		for (NonblockingConnector connector : connectors) {
+			connector.disconnect();
+		}
+		acceptor.unbind();
+	}
+
+	/** 返回当前所有线程的 CPU 时间之和，单位：纳秒。
+	 */
+	private static long totalCpuTime(ThreadMXBean threadBean) {
+		long total = 0;
+		for (long id : threadBean.getAllThreadIds()) {
+			long time = threadBean.getThreadCpuTime(id);
+			if (time > 0) {
+				total += time;
+			}
+		}
+		return total;
+	}
+
+	/** 只记录连接数的处理器。
+	 */
+	private static final class CountingHandler implements MessageHandler {
+		private final AtomicInteger opened = new AtomicInteger();
+
+		@Override
+		public void sessionCreated(Session session) {
+		}
+
+		@Override
+		public void sessionDestroyed(Session session) {
+		}
+
+		@Override
+		public void sessionOpened(Session session) {
+			this.opened.incrementAndGet();
+		}
+
+		@Override
+		public void sessionClosed(Session session) {
+		}
+
+		@Override
+		public void messageReceived(Session session, Message message) {
+		}
+
+		@Override
+		public void messageSent(Session session, Message message) {
+		}
+
+		@Override
+		public void errorOccurred(int errorCode, Session session) {
+		}
+	}
+}
@@ -0,0 +1,242 @@
+/*
+-----------------------------------------------------------------------------
+This source file is part of Cell Cloud.
+
+Copyright (c) 2009-2013 Cell Cloud Team (www.cellcloud.net)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+-----------------------------------------------------------------------------
+*/
+
+package net.cellcloud.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** 时间轮与逐秒全量扫描的对比基准测试。
+ * 
+ * 模拟守护线程管理的大量实体，每个实体按 60 秒（会话空闲检查）或 120 秒（心跳）周期到期，到期后重新计划下一次，
+ * 每模拟秒还有部分实体因收到心跳而重新计划。时间轮按 100 毫秒推进，对照组按原守护线程的方式
+ * 每秒遍历 ConcurrentHashMap 中的全部实体。两组使用相同的随机种子和模拟时长，时间均为模拟时间，不需要真实等待。
+ * 用法：TimingWheelBenchmark [-seconds 模拟秒数] [-churn 每秒重新计划的比例] [-rounds 轮数] [实体数 ...]，
+ * 默认 100000 个实体，模拟 300 秒，每秒 1% 的实体重新计划，执行 3 轮。
+ * 
+ * @author Jiangwei Xu
+ */
+public final class TimingWheelBenchmark {
+
+	// 时间轮 Tick 时长，与对话服务守护线程一致，单位：毫秒
+	private static final long TICK = 100L;
+	// 实体到期周期，单位：毫秒
+	private static final long[] PERIODS = {60000L, 120000L};
+	// 随机种子
+	private static final long SEED = 20131016L;
+
+	private TimingWheelBenchmark() {
+	}
+
+	public static void main(String[] args) {
+		int seconds = 300;
+		double churn = 0.01;
+		int rounds = 3;
+		List<Integer> counts = new ArrayList<Integer>();
+		for (int i = 0; i < args.length; ++i) {
+			if (args[i].equals("-seconds") && i + 1 < args.length) {
+				seconds = Integer.parseInt(args[++i]);
+			}
+			else if (args[i].equals("-churn") && i + 1 < args.length) {
+				churn = Double.parseDouble(args[++i]);
+			}
+			else if (args[i].equals("-rounds") && i + 1 < args.length) {
+				rounds = Integer.parseInt(args[++i]);
+			}
+			else {
+				counts.add(Integer.parseInt(args[i]));
+			}
+		}
+		if (counts.isEmpty()) {
+			counts.add(100000);
+		}
+
+		for (int count : counts) {
+			for (int r = 1; r <= rounds; ++r) {
+				runWheel(count, seconds, churn, r);
+				runSweep(count, seconds, churn, r);
+			}
+		}
+	}
+
+	private static void runWheel(int count, int seconds, double churn, int round) {
+		Random random = new Random(SEED);
+		TimingWheel wheel = new TimingWheel(TICK);
+		// 时间轮以真实时间计划任务，模拟时间以此为起点
+		long base = System.currentTimeMillis();
+		SimClock clock = new SimClock(base);
+
+		WheelEntity[] entities = new WheelEntity[count];
+		long scheduleStart = System.nanoTime();
+		for (int i = 0; i < count; ++i) {
+			long period = PERIODS[random.nextInt(PERIODS.length)];
+			WheelEntity entity = new WheelEntity(wheel, clock, period);
+			entity.schedule(1 + (long) random.nextInt((int) period));
+			entities[i] = entity;
+		}
+		long scheduleNanos = System.nanoTime() - scheduleStart;
+
+		int churnPerSecond = (int) (count * churn);
+		long fired = 0;
+		long advanceNanos = 0;
+		long churnNanos = 0;
+		long ticks = seconds * 1000L / TICK;
+		for (long t = 1; t <= ticks; ++t) {
+			clock.now = base + t * TICK;
+
+			long start = System.nanoTime();
+			fired += wheel.advance(clock.now);
+			advanceNanos += System.nanoTime() - start;
+
+			if (t % (1000L / TICK) == 0) {
+				start = System.nanoTime();
+				for (int i = 0; i < churnPerSecond; ++i) {
+					entities[random.nextInt(count)].reschedule();
+				}
+				churnNanos += System.nanoTime() - start;
+			}
+		}
+
+		StringBuilder buf = new StringBuilder();
+		buf.append("wheel round=").append(round);
+		buf.append(" entities=").append(count);
+		buf.append(" seconds=").append(seconds);
+		buf.append(" fired=").append(fired);
+		buf.append(" scheduleMs=").append(String.format("%.1f", scheduleNanos / 1000000.0));
+		buf.append(" advanceMs=").append(String.format("%.1f", advanceNanos / 1000000.0));
+		buf.append(" churnMs=").append(String.format("%.1f", churnNanos / 1000000.0));
+		buf.append(" perSimSecondUs=").append(String.format("%.1f", (advanceNanos + churnNanos) / 1000.0 / seconds));
+		System.out.println(buf.toString());
+	}
+
+	private static void runSweep(int count, int seconds, double churn, int round) {
+		Random random = new Random(SEED);
+		long base = 0;
+
+		// 与原守护线程遍历的 speakers 相同，实体保存在 ConcurrentHashMap 中
+		ConcurrentHashMap<Integer, SweepEntity> map = new ConcurrentHashMap<Integer, SweepEntity>();
+		SweepEntity[] entities = new SweepEntity[count];
+		for (int i = 0; i < count; ++i) {
+			long period = PERIODS[random.nextInt(PERIODS.length)];
+			entities[i] = new SweepEntity(period, base + 1 + random.nextInt((int) period));
+			map.put(i, entities[i]);
+		}
+
+		int churnPerSecond = (int) (count * churn);
+		long fired = 0;
+		long sweepNanos = 0;
+		long churnNanos = 0;
+		for (int s = 1; s <= seconds; ++s) {
+			long now = base + s * 1000L;
+
+			// 原守护线程每秒遍历全部实体
+			long start = System.nanoTime();
+			for (SweepEntity entity : map.values()) {
+				if (entity.deadline <= now) {
+					entity.deadline = now + entity.period;
+					++fired;
+				}
+			}
+			sweepNanos += System.nanoTime() - start;
+
+			start = System.nanoTime();
+			for (int i = 0; i < churnPerSecond; ++i) {
+				SweepEntity entity = entities[random.nextInt(count)];
+				entity.deadline = now + entity.period;
+			}
+			churnNanos += System.nanoTime() - start;
+		}
+
+		StringBuilder buf = new StringBuilder();
+		buf.append("sweep round=").append(round);
+		buf.append(" entities=").append(count);
+		buf.append(" seconds=").append(seconds);
+		buf.append(" fired=").append(fired);
+		buf.append(" sweepMs=").append(String.format("%.1f", sweepNanos / 1000000.0));
+		buf.append(" churnMs=").append(String.format("%.1f", churnNanos / 1000000.0));
+		buf.append(" perSimSecondUs=").append(String.format("%.1f", (sweepNanos + churnNanos) / 1000.0 / seconds));
+		System.out.println(buf.toString());
+	}
+
+	/** 模拟时钟。
+	 */
+	private static final class SimClock {
+		private long now;
+
+		private SimClock(long now) {
+			this.now = now;
+		}
+	}
+
+	/** 在时间轮上计划自身的实体，到期后按周期重新计划。
+	 */
+	private static final class WheelEntity implements Runnable {
+		private final TimingWheel wheel;
+		private final SimClock clock;
+		private final long period;
+		private TimingWheel.Timeout timeout;
+
+		private WheelEntity(TimingWheel wheel, SimClock clock, long period) {
+			this.wheel = wheel;
+			this.clock = clock;
+			this.period = period;
+		}
+
+		/** 在模拟时间 delay 毫秒后到期。
+		 */
+		private void schedule(long delay) {
+			// 时间轮按真实时间计算到期时间，换算为相对真实时间的延迟
+			long deadline = this.clock.now + delay;
+			this.timeout = this.wheel.schedule(this, deadline - System.currentTimeMillis());
+		}
+
+		/** 收到心跳，取消当前计划并从当前时间起重新计划。
+		 */
+		private void reschedule() {
+			this.timeout.cancel();
+			this.schedule(this.period);
+		}
+
+		@Override
+		public void run() {
+			this.schedule(this.period);
+		}
+	}
+
+	/** 由全量扫描检查的实体。
+	 */
+	private static final class SweepEntity {
+		private final long period;
+		private long deadline;
+
+		private SweepEntity(long period, long deadline) {
+			this.period = period;
+			this.deadline = deadline;
+		}
+	}
+}
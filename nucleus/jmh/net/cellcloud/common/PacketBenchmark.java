@@ -0,0 +1,126 @@
+/*
+-----------------------------------------------------------------------------
+This source file is part of Cell Cloud.
+
+Copyright (c) 2009-2013 Cell Cloud Team (www.cellcloud.net)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+-----------------------------------------------------------------------------
+*/
+
+package net.cellcloud.common;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** 数据包 v1 文本格式与 v2 二进制格式的编解码基准测试。
+ * 
+ * version 为 1 时使用文本格式，为 2 时使用二进制格式，两种格式使用相同的标签和子段数据。
+ * 运行：java -cp ... org.openjdk.jmh.Main PacketBenchmark -prof gc
+ * 
+ * @author Jiangwei Xu
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PacketBenchmark {
+
+	private static final byte[] TAG = {'C', 'T', 'D', 'L'};
+
+	/// 数据包主版本号
+	@Param({"1", "2"})
+	public int version;
+
+	/// 子段数量
+	@Param({"2", "16"})
+	public int subsegments;
+
+	/// 每个子段的字节数
+	@Param({"32", "1024"})
+	public int subsegmentSize;
+
+	private Packet packet;
+	private byte[] packed;
+	private ByteBuffer packedBuffer;
+	private ByteBuffer target;
+
+	@Setup
+	public void setup() {
+		Random random = new Random(7);
+		this.packet = new Packet(TAG, 99, this.version, 0);
+		for (int i = 0; i < this.subsegments; ++i) {
+			byte[] data = new byte[this.subsegmentSize];
+			random.nextBytes(data);
+			this.packet.appendSubsegment(data);
+		}
+
+		this.packed = Packet.pack(this.packet);
+		this.packedBuffer = ByteBuffer.allocateDirect(this.packed.length);
+		this.packedBuffer.put(this.packed);
+		this.packedBuffer.flip();
+		this.target = ByteBuffer.allocateDirect(this.packed.length);
+	}
+
+	/** 打包为新的字节数组。 */
+	@Benchmark
+	public byte[] pack() {
+		return Packet.pack(this.packet);
+	}
+
+	/** 打包写入复用的直接缓冲区。 */
+	@Benchmark
+	public ByteBuffer packTo() {
+		this.target.clear();
+		this.packet.packTo(this.target);
+		return this.target;
+	}
+
+	/** 解包并复制全部子段。 */
+	@Benchmark
+	public Packet unpack() {
+		return Packet.unpack(this.packed);
+	}
+
+	/** 在接收缓冲区上解析数据包视图并访问全部子段，不复制子段数据。 */
+	@Benchmark
+	public int view() {
+		PacketView view = PacketView.wrap(this.packedBuffer.duplicate());
+		int total = 0;
+		for (int i = 0, count = view.getSubsegmentCount(); i < count; ++i) {
+			total += view.getSubsegment(i).remaining();
+		}
+		return total;
+	}
+}
@@ -0,0 +1,124 @@
+/*
+-----------------------------------------------------------------------------
+This source file is part of Cell Cloud.
+
+Copyright (c) 2009-2013 Cell Cloud Team (www.cellcloud.net)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+-----------------------------------------------------------------------------
+*/
+
+package net.cellcloud.talk.stuff;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import net.cellcloud.talk.Primitive;
+import net.cellcloud.util.ByteArrayBuffer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** 原语编码的分配基准测试。
+ * 
+ * 原语包含 24 个字符串、整数、长整数和布尔类型的语素，部分字符串值含有需要转义的字符。
+ * encode 返回新的字节数组，唯一的分配应为返回的数组；writeTo 写入复用的 ByteArrayBuffer ，
+ * 稳定后每次操作的分配应为 0 。配合 gc 分析器查看 gc.alloc.rate.norm ：
+ * java -cp ... org.openjdk.jmh.Main PrimitiveEncodeBenchmark -prof gc
+ * 
+ * @author Jiangwei Xu
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PrimitiveEncodeBenchmark {
+
+	/// 是否使用二进制格式
+	@Param({"false", "true"})
+	public boolean binary;
+
+	/// 字符串语素值的长度，4096 超出原有 2048 字节的编码缓冲区
+	@Param({"16", "4096"})
+	public int valueLength;
+
+	private Primitive primitive;
+	private ByteArrayBuffer buffer;
+
+	@Setup
+	public void setup() {
+		Random random = new Random(20131016L);
+
+		this.primitive = new Primitive();
+		for (int i = 0; i < 4; ++i) {
+			this.primitive.commit(new SubjectStuff(randomValue(random, this.valueLength, i % 2 == 0)));
+			this.primitive.commit(new PredicateStuff(random.nextInt()));
+			this.primitive.commit(new ObjectiveStuff(random.nextLong()));
+			this.primitive.commit(new AttributiveStuff(randomValue(random, this.valueLength, false)));
+			this.primitive.commit(new AdverbialStuff(random.nextBoolean()));
+			this.primitive.commit(new ComplementStuff(randomValue(random, this.valueLength, i % 2 == 1)));
+		}
+
+		this.buffer = new ByteArrayBuffer(256);
+	}
+
+	/** 编码为新的字节数组。 */
+	@Benchmark
+	public byte[] encode() {
+		return PrimitiveSerializer.encode(this.primitive, this.binary);
+	}
+
+	/** 编码写入复用的缓冲区。 */
+	@Benchmark
+	public int writeTo() {
+		this.buffer.reset();
+		if (this.binary) {
+			PrimitiveSerializer.writeBinary(this.buffer, this.primitive);
+		}
+		else {
+			PrimitiveSerializer.write(this.buffer, this.primitive);
+		}
+		return this.buffer.size();
+	}
+
+	/** 生成指定长度的字符串，escaped 为 true 时混入文本格式需要转义的字符。 */
+	private static String randomValue(Random random, int length, boolean escaped) {
+		StringBuilder buf = new StringBuilder(length);
+		for (int i = 0; i < length; ++i) {
+			if (escaped && i % 8 == 7) {
+				buf.append("{}=:".charAt(random.nextInt(4)));
+			}
+			else {
+				buf.append((char) ('a' + random.nextInt(26)));
+			}
+		}
+		return buf.toString();
+	}
+}
@@ -42,6 +42,8 @@ import net.cellcloud.common.MessageErrorCode;
 import net.cellcloud.common.MessageHandler;
 import net.cellcloud.common.NonblockingConnector;
 import net.cellcloud.common.Session;
+import net.cellcloud.core.Nucleus;
+import net.cellcloud.core.NucleusConfig;
 import net.cellcloud.util.Utils;
 
 /** 集群连接器。
@@ -68,6 +70,9 @@ public final class ClusterConnector extends Observable implements MessageHandler
 		this.address = address;
 		this.hashCode = hashCode;
 		this.connector = new NonblockingConnector();
+		NucleusConfig config = Nucleus.getInstance().getConfig();
+		this.connector.setLocalTransport(config.localTransport, "cluster");
+		this.connector.setTransportProfile(config.getTransportProfile(config.cluster.transport));
 		this.buffer = ByteBuffer.allocate(this.bufferSize);
 		this.connector.setHandler(this);
 		this.protocolQueue = new LinkedList<ClusterProtocol>();
@@ -52,6 +52,8 @@ import net.cellcloud.common.MessageHandler;
 import net.cellcloud.common.NonblockingAcceptor;
 import net.cellcloud.common.Service;
 import net.cellcloud.common.Session;
+import net.cellcloud.core.Nucleus;
+import net.cellcloud.core.NucleusConfig;
 import net.cellcloud.util.Utils;
 
 /** 集群网络。
@@ -98,6 +100,9 @@ public final class ClusterNetwork extends Observable implements Service, Message
 		this.acceptor.setHandler(this);
 		this.acceptor.setMaxConnectNum(1000);
 		this.acceptor.setWorkerNum(4);
+		NucleusConfig config = Nucleus.getInstance().getConfig();
+		this.acceptor.setLocalTransport(config.localTransport, "cluster");
+		this.acceptor.setTransportProfile(config.getTransportProfile(config.cluster.transport));
 		if (!this.acceptor.bind(new InetSocketAddress(this.hostname, this.port))) {
 			Logger.e(this.getClass(), new StringBuilder("Cluster network can not bind socket on ")
 					.append(this.hostname).append(":").append(this.port).toString());
@@ -201,7 +206,9 @@ public final class ClusterNetwork extends Observable implements Service, Message
 	}
 
 	@Override
-	public void messageReceived(final Session session, final Message message) {
+	public void messageReceived(final Session session, Message received) {
+		// 消息在回调返回后交由线程池处理，需要脱离读缓冲区
+		final Message message = received.detach();
 		this.executor.execute(new Runnable() {
 			@Override
 			public void run() {
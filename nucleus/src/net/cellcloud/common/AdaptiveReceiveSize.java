@@ -0,0 +1,91 @@
+/*
+-----------------------------------------------------------------------------
+This source file is part of Cell Cloud.
+
+Copyright (c) 2009-2013 Cell Cloud Team (www.cellcloud.net)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+-----------------------------------------------------------------------------
+*/
+
+package net.cellcloud.common;
+
+/** 自适应的接收数据大小。
+ * 
+ * 根据实际读取到的数据量调整下一次读取使用的缓冲区大小：
+ * 读满缓冲区时立即扩大一级，连续两次读取量不超过下一级容量时缩小一级。
+ * 大小始终为 2 的幂，与 {@link ByteBufferPool} 的容量等级一致。
+ * 
+ * @author Jiangwei Xu
+ */
+public final class AdaptiveReceiveSize {
+
+	private int minimum;
+	private int maximum;
+	private int next;
+
+	// 上次读取量是否已不足以保持当前大小
+	private boolean decreaseNow;
+
+	/** 构造函数。
+	 */
+	public AdaptiveReceiveSize(int minimum, int initial, int maximum) {
+		this.minimum = roundUp(Math.max(minimum, ByteBufferPool.MIN_CAPACITY));
+		this.maximum = Math.max(roundUp(maximum), this.minimum);
+		this.next = Math.min(Math.max(roundUp(initial), this.minimum), this.maximum);
+		this.decreaseNow = false;
+	}
+
+	/** 返回下一次读取建议使用的缓冲区大小。
+	 */
+	public int next() {
+		return this.next;
+	}
+
+	/** 记录本次实际读取的字节数。
+	 */
+	public void record(int actual) {
+		if (actual >= this.next) {
+			// 读满了缓冲区
+			if (this.next < this.maximum) {
+				this.next <<= 1;
+			}
+			this.decreaseNow = false;
+		}
+		else if (actual <= (this.next >> 1) && this.next > this.minimum) {
+			if (this.decreaseNow) {
+				this.next >>= 1;
+				this.decreaseNow = false;
+			}
+			else {
+				this.decreaseNow = true;
+			}
+		}
+		else {
+			this.decreaseNow = false;
+		}
+	}
+
+	private static int roundUp(int size) {
+		if (size <= 1) {
+			return 1;
+		}
+		return Integer.highestOneBit(size - 1) << 1;
+	}
+}
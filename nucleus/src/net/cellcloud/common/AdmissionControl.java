@@ -0,0 +1,257 @@
+/*
+-----------------------------------------------------------------------------
+This source file is part of Cell Cloud.
+
+Copyright (c) 2009-2013 Cell Cloud Team (www.cellcloud.net)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+-----------------------------------------------------------------------------
+*/
+
+package net.cellcloud.common;
+
+import java.net.InetAddress;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/** 连接准入控制。
+ * 
+ * 接收器在接受连接后、创建会话之前检查准入条件，被拒绝的连接立即关闭。
+ * 检查顺序为：最大连接数、单个来源地址的并发连接数、单个来源地址的连接速率、全局接受速率。
+ * 速率限制使用令牌桶，桶容量决定允许的突发连接数。限制值为 0 时不检查该项。
+ * 
+ * 准入检查只在接收器的句柄线程内执行，连接数在会话销毁时由工作线程释放。
+ * 
+ * @author Jiangwei Xu
+ */
+public final class AdmissionControl {
+
+	/// 允许接入
+	public static final int ADMITTED = 0;
+	/// 超过最大连接数
+	public static final int REJECTED_MAX_CONNECTIONS = 1;
+	/// 超过单个来源地址的并发连接数
+	public static final int REJECTED_IP_CONNECTIONS = 2;
+	/// 超过单个来源地址的连接速率
+	public static final int REJECTED_IP_RATE = 3;
+	/// 超过全局接受速率
+	public static final int REJECTED_GLOBAL_RATE = 4;
+
+	// 空闲地址记录的保留时间，单位：毫秒
+	private static final long IDLE_TIMEOUT = 60000L;
+
+	// 全局接受速率及突发数量，单位：每秒连接数
+	private double globalRate = 0;
+	private double globalBurst = 0;
+	private TokenBucket globalBucket = new TokenBucket();
+
+	// 单个来源地址的连接速率及突发数量
+	private double ipRate = 0;
+	private double ipBurst = 0;
+	// 单个来源地址的最大并发连接数
+	private int ipMaxConnections = 0;
+
+	// 来源地址记录
+	private ConcurrentHashMap<InetAddress, AddressEntry> entries;
+
+	// 按原因统计的拒绝次数
+	private AtomicLongArray rejected;
+
+	public AdmissionControl() {
+		this.entries = new ConcurrentHashMap<InetAddress, AddressEntry>();
+		this.rejected = new AtomicLongArray(REJECTED_GLOBAL_RATE + 1);
+	}
+
+	/** 设置全局接受速率。
+	 * 
+	 * @param rate 每秒允许接受的连接数，为 0 时不限制。
+	 * @param burst 允许的突发连接数，小于 1 时使用 1 。
+	 */
+	public void setGlobalRate(double rate, double burst) {
+		this.globalRate = Math.max(0, rate);
+		this.globalBurst = Math.max(1, burst);
+		this.globalBucket.tokens = this.globalBurst;
+	}
+
+	/** 设置单个来源地址的连接速率。
+	 * 
+	 * @param rate 每秒允许的连接数，为 0 时不限制。
+	 * @param burst 允许的突发连接数，小于 1 时使用 1 。
+	 */
+	public void setPerAddressRate(double rate, double burst) {
+		this.ipRate = Math.max(0, rate);
+		this.ipBurst = Math.max(1, burst);
+	}
+
+	/** 设置单个来源地址的最大并发连接数，为 0 时不限制。
+	 */
+	public void setPerAddressMaxConnections(int max) {
+		this.ipMaxConnections = Math.max(0, max);
+	}
+
+	public double getGlobalRate() {
+		return this.globalRate;
+	}
+
+	public double getPerAddressRate() {
+		return this.ipRate;
+	}
+
+	public int getPerAddressMaxConnections() {
+		return this.ipMaxConnections;
+	}
+
+	/** 检查连接是否允许接入，允许时记录来源地址的连接数。
+	 * 
+	 * @param address 来源地址，为 null 时不检查地址相关的限制。
+	 * @param sessionNum 当前会话数量。
+	 * @param maxSessionNum 最大会话数量。
+	 * @param now 当前时间。
+	 * @return 返回 {@link #ADMITTED} 或拒绝原因。
+	 */
+	public int admit(InetAddress address, int sessionNum, int maxSessionNum, long now) {
+		if (sessionNum >= maxSessionNum) {
+			return this.reject(REJECTED_MAX_CONNECTIONS);
+		}
+
+		AddressEntry entry = null;
+		if (null != address) {
+			entry = this.entries.get(address);
+			if (null == entry) {
+				entry = new AddressEntry(this.ipBurst, now);
+				this.entries.put(address, entry);
+			}
+			entry.lastSeen = now;
+
+			if (this.ipMaxConnections > 0 && entry.connections.get() >= this.ipMaxConnections) {
+				return this.reject(REJECTED_IP_CONNECTIONS);
+			}
+
+			if (this.ipRate > 0 && !entry.bucket.tryAcquire(this.ipRate, this.ipBurst, now)) {
+				return this.reject(REJECTED_IP_RATE);
+			}
+		}
+
+		if (this.globalRate > 0 && !this.globalBucket.tryAcquire(this.globalRate, this.globalBurst, now)) {
+			return this.reject(REJECTED_GLOBAL_RATE);
+		}
+
+		if (null != entry) {
+			entry.connections.incrementAndGet();
+		}
+
+		return ADMITTED;
+	}
+
+	/** 释放来源地址的一个连接。
+	 */
+	public void release(InetAddress address) {
+		AddressEntry entry = this.entries.get(address);
+		if (null != entry) {
+			entry.connections.decrementAndGet();
+		}
+	}
+
+	/** 清理长时间没有连接的来源地址记录，在接收器句柄线程内周期调用。
+	 */
+	public void purge(long now) {
+		Iterator<AddressEntry> it = this.entries.values().iterator();
+		while (it.hasNext()) {
+			AddressEntry entry = it.next();
+			if (entry.connections.get() <= 0 && now - entry.lastSeen > IDLE_TIMEOUT) {
+				it.remove();
+			}
+		}
+	}
+
+	/** 返回指定原因的拒绝次数。
+	 */
+	public long getRejectedCount(int reason) {
+		return this.rejected.get(reason);
+	}
+
+	/** 返回拒绝的连接总数。
+	 */
+	public long getRejectedCount() {
+		long total = 0;
+		for (int i = REJECTED_MAX_CONNECTIONS; i < this.rejected.length(); ++i) {
+			total += this.rejected.get(i);
+		}
+		return total;
+	}
+
+	/** 返回当前记录的来源地址数量。
+	 */
+	public int getAddressNum() {
+		return this.entries.size();
+	}
+
+	/** 返回指定来源地址的当前连接数。
+	 */
+	public int getConnectionNum(InetAddress address) {
+		AddressEntry entry = this.entries.get(address);
+		return (null != entry) ? entry.connections.get() : 0;
+	}
+
+	private int reject(int reason) {
+		this.rejected.incrementAndGet(reason);
+		return reason;
+	}
+
+	/** 令牌桶，仅在接收器句柄线程内访问。
+	 */
+	private static final class TokenBucket {
+		private double tokens = 1;
+		private long last = 0;
+
+		private boolean tryAcquire(double rate, double burst, long now) {
+			if (this.last > 0 && now > this.last) {
+				this.tokens = Math.min(burst, this.tokens + (now - this.last) * rate / 1000.0);
+			}
+			else if (this.tokens > burst) {
+				this.tokens = burst;
+			}
+			this.last = now;
+
+			if (this.tokens >= 1) {
+				this.tokens -= 1;
+				return true;
+			}
+
+			return false;
+		}
+	}
+
+	/** 来源地址记录。
+	 */
+	private static final class AddressEntry {
+		private TokenBucket bucket;
+		private AtomicInteger connections;
+		private long lastSeen;
+
+		private AddressEntry(double burst, long now) {
+			this.bucket = new TokenBucket();
+			this.bucket.tokens = Math.max(1, burst);
+			this.connections = new AtomicInteger(0);
+			this.lastSeen = now;
+		}
+	}
+}
@@ -0,0 +1,214 @@
+/*
+-----------------------------------------------------------------------------
+This source file is part of Cell Cloud.
+
+Copyright (c) 2009-2013 Cell Cloud Team (www.cellcloud.net)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+-----------------------------------------------------------------------------
+*/
+
+package net.cellcloud.common;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** 直接内存缓冲区池。
+ * 
+ * 缓冲区按 2 的幂划分容量等级，每个等级从整块分配的直接内存（slab）中切分。
+ * 网络读写只在进行中借用缓冲区，结束后立即归还，
+ * 因此空闲连接不占用任何缓冲区，且通道读取无需再经过堆内存到直接内存的复制。
+ * 
+ * @author Jiangwei Xu
+ */
+public final class ByteBufferPool {
+
+	/// 最小缓冲区容量
+	public static final int MIN_CAPACITY = 256;
+	/// 最大缓冲区容量，超过该容量的请求不进行池化
+	public static final int MAX_CAPACITY = 64 * 1024;
+
+	// 每次向系统申请的 slab 大小
+	private static final int SLAB_SIZE = 256 * 1024;
+
+	private static final ByteBufferPool DEFAULT = new ByteBufferPool();
+
+	// 各容量等级的空闲缓冲区
+	private ConcurrentLinkedQueue<ByteBuffer>[] freeLists;
+
+	// 已从系统申请的直接内存字节数
+	private AtomicLong allocatedBytes;
+	// 借出次数
+	private AtomicLong acquireCount;
+	// 归还次数
+	private AtomicLong releaseCount;
+	// 未池化分配次数
+	private AtomicLong unpooledCount;
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public ByteBufferPool() {
+		int num = indexOf(MAX_CAPACITY) + 1;
+		this.freeLists = new ConcurrentLinkedQueue[num];
+		for (int i = 0; i < num; ++i) {
+			this.freeLists[i] = new ConcurrentLinkedQueue<ByteBuffer>();
+		}
+
+		this.allocatedBytes = new AtomicLong(0);
+		this.acquireCount = new AtomicLong(0);
+		this.releaseCount = new AtomicLong(0);
+		this.unpooledCount = new AtomicLong(0);
+	}
+
+	/** 返回默认的共享缓冲区池。
+	 */
+	public static ByteBufferPool getDefault() {
+		return DEFAULT;
+	}
+
+	/** 借用容量不小于指定大小的缓冲区。
+	 * 返回的缓冲区已被清空，用完后需要调用 {@link #release(ByteBuffer)} 归还。
+	 */
+	public ByteBuffer acquire(int size) {
+		this.acquireCount.incrementAndGet();
+
+		if (size > MAX_CAPACITY) {
+			this.unpooledCount.incrementAndGet();
+			return ByteBuffer.allocateDirect(size);
+		}
+
+		int index = indexOf(size);
+		ConcurrentLinkedQueue<ByteBuffer> list = this.freeLists[index];
+		ByteBuffer buf = list.poll();
+		if (null == buf) {
+			buf = this.allocate(index);
+		}
+
+		buf.clear();
+		return buf;
+	}
+
+	/** 归还缓冲区。
+	 */
+	public void release(ByteBuffer buf) {
+		if (null == buf) {
+			return;
+		}
+
+		this.releaseCount.incrementAndGet();
+
+		int capacity = buf.capacity();
+		if (!buf.isDirect() || capacity > MAX_CAPACITY || capacity < MIN_CAPACITY
+				|| Integer.bitCount(capacity) != 1) {
+			// 非池内缓冲区，交由 GC 回收
+			return;
+		}
+
+		this.freeLists[indexOf(capacity)].offer(buf);
+	}
+
+	/** 返回已从系统申请的直接内存字节数。
+	 */
+	public long getAllocatedBytes() {
+		return this.allocatedBytes.get();
+	}
+
+	/** 返回借出次数。
+	 */
+	public long getAcquireCount() {
+		return this.acquireCount.get();
+	}
+
+	/** 返回归还次数。
+	 */
+	public long getReleaseCount() {
+		return this.releaseCount.get();
+	}
+
+	/** 返回当前借出未归还的缓冲区数量。
+	 */
+	public long getInUseCount() {
+		return this.acquireCount.get() - this.releaseCount.get();
+	}
+
+	/** 返回超过最大容量而未池化的分配次数。
+	 */
+	public long getUnpooledCount() {
+		return this.unpooledCount.get();
+	}
+
+	/** 返回池内空闲缓冲区的总字节数。
+	 */
+	public long getIdleBytes() {
+		long bytes = 0;
+		for (int i = 0; i < this.freeLists.length; ++i) {
+			bytes += (long) this.freeLists[i].size() * (MIN_CAPACITY << i);
+		}
+		return bytes;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder buf = new StringBuilder("ByteBufferPool[allocated=");
+		buf.append(this.getAllocatedBytes());
+		buf.append(", idle=").append(this.getIdleBytes());
+		buf.append(", acquire=").append(this.getAcquireCount());
+		buf.append(", release=").append(this.getReleaseCount());
+		buf.append(", unpooled=").append(this.getUnpooledCount());
+		buf.append("]");
+		return buf.toString();
+	}
+
+	/** 申请一个 slab 并切分为指定等级的缓冲区，返回其中一个，其余放入空闲列表。
+	 */
+	private ByteBuffer allocate(int index) {
+		int capacity = MIN_CAPACITY << index;
+		int count = Math.max(SLAB_SIZE / capacity, 1);
+
+		ByteBuffer slab = ByteBuffer.allocateDirect(capacity * count);
+		this.allocatedBytes.addAndGet(capacity * count);
+
+		ByteBuffer first = null;
+		for (int i = 0; i < count; ++i) {
+			slab.limit(capacity * (i + 1));
+			slab.position(capacity * i);
+			ByteBuffer buf = slab.slice();
+			if (null == first) {
+				first = buf;
+			}
+			else {
+				this.freeLists[index].offer(buf);
+			}
+		}
+
+		return first;
+	}
+
+	/** 返回能容纳指定大小的容量等级。
+	 */
+	private static int indexOf(int size) {
+		if (size <= MIN_CAPACITY) {
+			return 0;
+		}
+
+		// 向上取整到 2 的幂
+		int bits = 32 - Integer.numberOfLeadingZeros(size - 1);
+		return bits - Integer.numberOfTrailingZeros(MIN_CAPACITY);
+	}
+}
@@ -0,0 +1,353 @@
+/*
+-----------------------------------------------------------------------------
+This source file is part of Cell Cloud.
+
+Copyright (c) 2009-2013 Cell Cloud Team (www.cellcloud.net)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+-----------------------------------------------------------------------------
+*/
+
+package net.cellcloud.common;
+
+import java.io.IOException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** 连接器反应器。
+ * 
+ * 由少量固定数量的选择器线程组成，多个 {@link NonblockingConnector} 注册到同一个反应器，
+ * 每个连接器固定由其中一个事件循环线程处理连接、读写和回调事件。
+ * 由于回调在共享的事件循环线程上执行，处理器不应在回调中长时间阻塞。
+ * 
+ * @author Jiangwei Xu
+ */
+public final class ConnectorReactor {
+
+	private static ConnectorReactor defaultReactor = null;
+
+	private EventLoop[] loops;
+
+	/** 构造函数。
+	 * 
+	 * @param numThreads 事件循环线程数量。
+	 */
+	public ConnectorReactor(int numThreads) {
+		this.loops = new EventLoop[Math.max(1, numThreads)];
+		for (int i = 0; i < this.loops.length; ++i) {
+			this.loops[i] = new EventLoop(i);
+		}
+	}
+
+	/** 返回默认反应器，线程数量为处理器数量，最多 4 个线程。
+	 */
+	public synchronized static ConnectorReactor getDefault() {
+		if (null == defaultReactor) {
+			int num = Math.min(4, Runtime.getRuntime().availableProcessors());
+			defaultReactor = new ConnectorReactor(num);
+		}
+
+		return defaultReactor;
+	}
+
+	/** 返回事件循环线程数量。
+	 */
+	public int getThreadNum() {
+		return this.loops.length;
+	}
+
+	/** 返回已注册的连接器数量。
+	 */
+	public int getConnectorNum() {
+		int num = 0;
+		for (EventLoop loop : this.loops) {
+			num += loop.connectorNum.get();
+		}
+		return num;
+	}
+
+	/** 关闭反应器，所有事件循环线程退出。
+	 */
+	public void shutdown() {
+		for (EventLoop loop : this.loops) {
+			loop.shutdown();
+		}
+
+		synchronized (ConnectorReactor.class) {
+			if (defaultReactor == this) {
+				defaultReactor = null;
+			}
+		}
+	}
+
+	/** 为连接器选择注册连接器最少的事件循环。
+	 */
+	protected EventLoop next() {
+		EventLoop selected = null;
+		int min = Integer.MAX_VALUE;
+		for (EventLoop loop : this.loops) {
+			int num = loop.connectorNum.get();
+			if (num < min) {
+				min = num;
+				selected = loop;
+			}
+		}
+
+		selected.start();
+		return selected;
+	}
+
+	/** 当前线程是否是事件循环线程。
+	 */
+	protected static boolean isReactorThread() {
+		return Thread.currentThread() instanceof EventLoop;
+	}
+
+	/** 事件循环线程。
+	 */
+	protected final class EventLoop extends Thread {
+
+		private Selector selector;
+
+		// 其他线程提交的任务
+		private ConcurrentLinkedQueue<Runnable> tasks;
+		// 请求执行发送的连接器
+		private ConcurrentLinkedQueue<NonblockingConnector> sends;
+		// 正在连接的连接器，仅在事件循环线程内访问
+		private ArrayList<NonblockingConnector> connecting;
+
+		private AtomicBoolean wakenUp;
+		private AtomicBoolean started;
+		private AtomicInteger connectorNum;
+		private volatile boolean spinning;
+
+		private EventLoop(int index) {
+			this.tasks = new ConcurrentLinkedQueue<Runnable>();
+			this.sends = new ConcurrentLinkedQueue<NonblockingConnector>();
+			this.connecting = new ArrayList<NonblockingConnector>();
+			this.wakenUp = new AtomicBoolean(false);
+			this.started = new AtomicBoolean(false);
+			this.connectorNum = new AtomicInteger(0);
+			this.spinning = false;
+			this.setName("ConnectorReactor-" + index);
+			this.setDaemon(true);
+		}
+
+		@Override
+		public void start() {
+			if (!this.started.compareAndSet(false, true)) {
+				return;
+			}
+
+			try {
+				this.selector = Selector.open();
+			} catch (IOException e) {
+				Logger.log(ConnectorReactor.class, e, LogLevel.ERROR);
+				this.started.set(false);
+				return;
+			}
+
+			this.spinning = true;
+			super.start();
+		}
+
+		/** 当前线程是否是该事件循环线程。
+		 */
+		protected boolean inLoop() {
+			return Thread.currentThread() == this;
+		}
+
+		/** 提交在事件循环线程内执行的任务。
+		 */
+		protected void execute(Runnable task) {
+			this.tasks.offer(task);
+			this.wakeup();
+		}
+
+		/** 请求事件循环为连接器执行发送。
+		 */
+		protected void scheduleSend(NonblockingConnector connector) {
+			this.sends.offer(connector);
+			this.wakeup();
+		}
+
+		/** 注册连接器。
+		 */
+		protected void register(final NonblockingConnector connector) {
+			this.connectorNum.incrementAndGet();
+			this.execute(new Runnable() {
+				@Override
+				public void run() {
+					connector.register(selector);
+				}
+			});
+		}
+
+		/** 注销连接器，在事件循环线程内调用。
+		 */
+		protected void deregister(NonblockingConnector connector) {
+			this.connecting.remove(connector);
+			this.connectorNum.decrementAndGet();
+		}
+
+		/** 记录正在连接的连接器以便检查连接超时，在事件循环线程内调用。
+		 */
+		protected void connecting(NonblockingConnector connector) {
+			this.connecting.add(connector);
+		}
+
+		/** 连接完成，在事件循环线程内调用。
+		 */
+		protected void connected(NonblockingConnector connector) {
+			this.connecting.remove(connector);
+		}
+
+		private void wakeup() {
+			if (this.wakenUp.compareAndSet(false, true)) {
+				Selector selector = this.selector;
+				if (null != selector) {
+					selector.wakeup();
+				}
+			}
+		}
+
+		private void shutdown() {
+			this.spinning = false;
+			this.wakeup();
+		}
+
+		@Override
+		public void run() {
+			while (this.spinning) {
+				try {
+					this.wakenUp.set(false);
+
+					int num = 0;
+					if (!this.tasks.isEmpty() || !this.sends.isEmpty()) {
+						num = this.selector.selectNow();
+					}
+					else {
+						num = this.selector.select(this.nextTimeout());
+					}
+
+					if (num > 0) {
+						this.processKeys();
+					}
+
+					this.runTasks();
+					this.runSends();
+					this.checkTimeout();
+				} catch (ClosedSelectorException e) {
+					break;
+				} catch (Exception e) {
+					Logger.log(ConnectorReactor.class, e, LogLevel.WARNING);
+				}
+			}
+
+			try {
+				this.selector.close();
+			} catch (IOException e) {
+				Logger.log(ConnectorReactor.class, e, LogLevel.DEBUG);
+			}
+		}
+
+		private void processKeys() {
+			Set<SelectionKey> keys = this.selector.selectedKeys();
+			Iterator<SelectionKey> it = keys.iterator();
+			while (it.hasNext()) {
+				SelectionKey key = it.next();
+				it.remove();
+
+				NonblockingConnector connector = (NonblockingConnector) key.attachment();
+				try {
+					connector.process(key);
+				} catch (Exception e) {
+					Logger.log(ConnectorReactor.class, e, LogLevel.WARNING);
+				}
+			}
+		}
+
+		private void runTasks() {
+			Runnable task = null;
+			while (null != (task = this.tasks.poll())) {
+				try {
+					task.run();
+				} catch (Exception e) {
+					Logger.log(ConnectorReactor.class, e, LogLevel.WARNING);
+				}
+			}
+		}
+
+		private void runSends() {
+			NonblockingConnector connector = null;
+			while (null != (connector = this.sends.poll())) {
+				try {
+					connector.processScheduledSend();
+				} catch (Exception e) {
+					Logger.log(ConnectorReactor.class, e, LogLevel.WARNING);
+				}
+			}
+		}
+
+		/** 返回距离最近的连接超时时间，没有正在连接的连接器时返回 0 。
+		 */
+		private long nextTimeout() {
+			if (this.connecting.isEmpty()) {
+				return 0;
+			}
+
+			long now = System.currentTimeMillis();
+			long timeout = Long.MAX_VALUE;
+			for (int i = 0, size = this.connecting.size(); i < size; ++i) {
+				long deadline = this.connecting.get(i).getConnectDeadline();
+				if (deadline > 0) {
+					timeout = Math.min(timeout, deadline - now);
+				}
+			}
+
+			if (timeout == Long.MAX_VALUE) {
+				return 0;
+			}
+
+			return Math.max(1, timeout);
+		}
+
+		private void checkTimeout() {
+			if (this.connecting.isEmpty()) {
+				return;
+			}
+
+			long now = System.currentTimeMillis();
+			for (int i = this.connecting.size() - 1; i >= 0; --i) {
+				NonblockingConnector connector = this.connecting.get(i);
+				long deadline = connector.getConnectDeadline();
+				if (deadline > 0 && now >= deadline) {
+					connector.connectTimeout();
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,148 @@
+/*
+-----------------------------------------------------------------------------
+This source file is part of Cell Cloud.
+
+Copyright (c) 2009-2013 Cell Cloud Team (www.cellcloud.net)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+-----------------------------------------------------------------------------
+*/
+
+package net.cellcloud.common;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/** 累积式数据帧解码器。
+ * 
+ * 负责在多次读取之间保留不完整的帧数据，子类只需实现单个缓冲区上的帧切分。
+ * 没有不完整数据时解码器不持有任何缓冲区。
+ * 
+ * @author Jiangwei Xu
+ */
+public abstract class CumulativeFrameDecoder implements FrameDecoder {
+
+	/// 默认的最大帧长度
+	public static final int DEFAULT_MAX_FRAME_LENGTH = 16 * 1024 * 1024;
+
+	// 缓存的不完整数据，处于读模式
+	private ByteBuffer cumulation;
+
+	private int maxFrameLength;
+
+	public CumulativeFrameDecoder(int maxFrameLength) {
+		this.cumulation = null;
+		this.maxFrameLength = maxFrameLength;
+	}
+
+	/** 返回最大帧长度。
+	 */
+	public int getMaxFrameLength() {
+		return this.maxFrameLength;
+	}
+
+	@Override
+	public final void decode(ByteBuffer input, List<Message> output) {
+		ByteBuffer src = input;
+		if (null != this.cumulation) {
+			this.append(input);
+			src = this.cumulation;
+		}
+
+		this.decodeFrames(src, output);
+
+		if (!src.hasRemaining()) {
+			// 全部数据已被解码
+			this.cumulation = null;
+			return;
+		}
+
+		if (src.remaining() > this.maxFrameLength) {
+			Logger.w(this.getClass(), "Frame length exceeds " + this.maxFrameLength + ", discard it");
+			this.reset();
+			this.discarded();
+			input.position(input.limit());
+			return;
+		}
+
+		if (src == input) {
+			// 保存不完整的数据，输入缓冲区在返回后会被复用
+			this.cumulation = ByteBuffer.allocate(Math.max(input.remaining() * 2, 1024));
+			this.cumulation.put(input);
+			this.cumulation.flip();
+		}
+	}
+
+	@Override
+	public void reset() {
+		this.cumulation = null;
+	}
+
+	/** 从缓冲区切分出完整的帧。
+	 * 已经处理的数据需要通过移动缓冲区的 position 来消费，
+	 * 剩余数据会被保留，下次解码时与新数据一起重新传入。
+	 */
+	protected abstract void decodeFrames(ByteBuffer in, List<Message> output);
+
+	/** 缓存的数据超过最大帧长度并被丢弃时调用。
+	 */
+	protected void discarded() {
+		// Nothing
+	}
+
+	/** 返回缓冲区中指定区域的零拷贝切片。
+	 */
+	protected static ByteBuffer slice(ByteBuffer buf, int start, int end) {
+		ByteBuffer dup = buf.duplicate();
+		dup.limit(end);
+		dup.position(start);
+		return dup.slice();
+	}
+
+	/** 将新数据追加到缓存。
+	 */
+	private void append(ByteBuffer input) {
+		ByteBuffer cum = this.cumulation;
+		int start = cum.position();
+
+		if (input.remaining() > cum.capacity() - cum.limit()) {
+			int required = cum.remaining() + input.remaining();
+			if (required > cum.capacity()) {
+				ByteBuffer bigger = ByteBuffer.allocate(Math.max(required, cum.capacity() * 2));
+				bigger.put(cum);
+				cum = bigger;
+			}
+			else {
+				// 已解码的帧在下一次解码前已完成回调，此时可以安全地整理缓存
+				cum.compact();
+			}
+			start = 0;
+		}
+		else {
+			// 空间足够时直接追加在数据末尾
+			cum.position(cum.limit());
+			cum.limit(cum.capacity());
+		}
+
+		cum.put(input);
+		cum.limit(cum.position());
+		cum.position(start);
+		this.cumulation = cum;
+	}
+}
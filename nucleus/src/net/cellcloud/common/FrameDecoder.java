@@ -0,0 +1,54 @@
+/*
+-----------------------------------------------------------------------------
+This source file is part of Cell Cloud.
+
+Copyright (c) 2009-2013 Cell Cloud Team (www.cellcloud.net)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+-----------------------------------------------------------------------------
+*/
+
+package net.cellcloud.common;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/** 数据帧解码器。
+ * 
+ * 每个会话使用独立的解码器实例，解码器直接在网络读缓冲区上工作，
+ * 不完整的帧由解码器保留，待后续数据到达后继续解码。
+ * 
+ * @author Jiangwei Xu
+ */
+public interface FrameDecoder {
+
+	/** 解码输入缓冲区 position 到 limit 之间的数据。
+	 * 调用返回后输入数据已全部被消费。
+	 * 解码出的消息可能直接引用输入缓冲区或解码器内部缓冲区，
+	 * 仅在下一次调用 decode 之前有效。
+	 * 
+	 * @param input 输入数据。
+	 * @param output 输出解码出的完整消息。
+	 */
+	public void decode(ByteBuffer input, List<Message> output);
+
+	/** 丢弃已缓存的不完整数据。
+	 */
+	public void reset();
+}
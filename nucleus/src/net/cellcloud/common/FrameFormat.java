@@ -0,0 +1,158 @@
+/*
+-----------------------------------------------------------------------------
+This source file is part of Cell Cloud.
+
+Copyright (c) 2009-2013 Cell Cloud Team (www.cellcloud.net)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+-----------------------------------------------------------------------------
+*/
+
+package net.cellcloud.common;
+
+/** 长度前缀分帧格式。
+ * 
+ * 帧格式为：标识字节 + 标志字节 + 数据长度 + 数据 [+ CRC-32C 校验和]。
+ * 数据长度使用变长整数（每字节 7 位，低位在前）或 4 字节大端整数表示，
+ * 校验和为 4 字节大端整数，仅对数据部分计算。
+ * 标识字节用于区分长度前缀帧与数据掩码帧。
+ * 
+ * @author Jiangwei Xu
+ */
+public final class FrameFormat {
+
+	/// 长度前缀帧的标识字节
+	public static final byte MAGIC = (byte) 0xC5;
+
+	/// 标志位：使用 4 字节定长长度
+	public static final byte FLAG_FIXED = 0x01;
+	/// 标志位：附带 CRC-32C 校验和
+	public static final byte FLAG_CHECKSUM = 0x02;
+
+	/// 变长长度
+	public static final FrameFormat VARINT = new FrameFormat((byte) 0);
+	/// 变长长度，附带校验和
+	public static final FrameFormat VARINT_CHECKSUM = new FrameFormat(FLAG_CHECKSUM);
+	/// 定长长度
+	public static final FrameFormat FIXED = new FrameFormat(FLAG_FIXED);
+	/// 定长长度，附带校验和
+	public static final FrameFormat FIXED_CHECKSUM = new FrameFormat((byte) (FLAG_FIXED | FLAG_CHECKSUM));
+
+	/// 帧头最大长度
+	protected static final int MAX_HEADER_LENGTH = 7;
+	/// 校验和长度
+	protected static final int CHECKSUM_LENGTH = 4;
+
+	private byte flags;
+
+	private FrameFormat(byte flags) {
+		this.flags = flags;
+	}
+
+	/** 返回指定标志位对应的格式。
+	 */
+	public static FrameFormat valueOf(byte flags) {
+		switch (flags & (FLAG_FIXED | FLAG_CHECKSUM)) {
+		case FLAG_FIXED:
+			return FIXED;
+		case FLAG_CHECKSUM:
+			return VARINT_CHECKSUM;
+		case FLAG_FIXED | FLAG_CHECKSUM:
+			return FIXED_CHECKSUM;
+		default:
+			return VARINT;
+		}
+	}
+
+	/** 解析格式描述串。
+	 * 可用的描述串为 "varint"、"varint+crc"、"fixed"、"fixed+crc" ，
+	 * 无法解析时返回 null 。
+	 */
+	public static FrameFormat parse(String text) {
+		if (null == text) {
+			return null;
+		}
+
+		String t = text.trim().toLowerCase();
+		if (t.equals("varint")) {
+			return VARINT;
+		}
+		else if (t.equals("varint+crc")) {
+			return VARINT_CHECKSUM;
+		}
+		else if (t.equals("fixed")) {
+			return FIXED;
+		}
+		else if (t.equals("fixed+crc")) {
+			return FIXED_CHECKSUM;
+		}
+
+		return null;
+	}
+
+	/** 返回标志位。
+	 */
+	public byte getFlags() {
+		return this.flags;
+	}
+
+	/** 是否使用定长长度。
+	 */
+	public boolean isFixed() {
+		return (this.flags & FLAG_FIXED) != 0;
+	}
+
+	/** 是否附带校验和。
+	 */
+	public boolean hasChecksum() {
+		return (this.flags & FLAG_CHECKSUM) != 0;
+	}
+
+	/** 写入帧头，返回帧头长度。
+	 * 
+	 * @param dst 目标数组，长度不小于 {@link #MAX_HEADER_LENGTH} 。
+	 * @param length 数据长度。
+	 */
+	protected int writeHeader(byte[] dst, int length) {
+		dst[0] = MAGIC;
+		dst[1] = this.flags;
+
+		if (this.isFixed()) {
+			dst[2] = (byte) (length >>> 24);
+			dst[3] = (byte) (length >>> 16);
+			dst[4] = (byte) (length >>> 8);
+			dst[5] = (byte) length;
+			return 6;
+		}
+
+		int index = 2;
+		int value = length;
+		while ((value & ~0x7F) != 0) {
+			dst[index++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		dst[index++] = (byte) value;
+		return index;
+	}
+
+	@Override
+	public String toString() {
+		return (this.isFixed() ? "fixed" : "varint") + (this.hasChecksum() ? "+crc" : "");
+	}
+}
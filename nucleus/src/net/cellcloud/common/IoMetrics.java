@@ -0,0 +1,236 @@
+/*
+-----------------------------------------------------------------------------
+This source file is part of Cell Cloud.
+
+Copyright (c) 2009-2013 Cell Cloud Team (www.cellcloud.net)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+-----------------------------------------------------------------------------
+*/
+
+package net.cellcloud.common;
+
+import net.cellcloud.util.Histogram;
+import net.cellcloud.util.StripedCounter;
+
+/** 网络 I/O 统计数据。
+ * 
+ * 每个消息服务持有一个统计实例，由读写线程在处理数据时更新。
+ * 计数器使用分段计数，不同工作线程之间没有竞争；
+ * 写入延迟为消息从进入发送队列到完整写入通道的时间，按会话抽样记录。
+ * 
+ * @author Jiangwei Xu
+ */
+public final class IoMetrics {
+
+	/// 接收字节数
+	public static final int BYTES_IN = 0;
+	/// 发送字节数，包括数据掩码和帧头
+	public static final int BYTES_OUT = 1;
+	/// 接收消息数
+	public static final int MESSAGES_IN = 2;
+	/// 发送消息数
+	public static final int MESSAGES_OUT = 3;
+	/// 读调用次数
+	public static final int READ_CALLS = 4;
+	/// 写调用次数
+	public static final int WRITE_CALLS = 5;
+	/// 打开的会话数
+	public static final int SESSIONS_OPENED = 6;
+	/// 关闭的会话数
+	public static final int SESSIONS_CLOSED = 7;
+	/// 准入控制拒绝的连接数
+	public static final int SESSIONS_REJECTED = 8;
+
+	private static final int COUNTER_NUM = 9;
+
+	private static final String[] NAMES = {
+		"bytesIn", "bytesOut", "messagesIn", "messagesOut",
+		"readCalls", "writeCalls", "sessionsOpened", "sessionsClosed", "sessionsRejected"
+	};
+
+	private final StripedCounter counters;
+
+	// 入队到写出的延迟，单位：微秒
+	private final Histogram writeLatency;
+	// 接收和发送的消息大小，单位：字节
+	private final Histogram inboundSize;
+	private final Histogram outboundSize;
+
+	public IoMetrics() {
+		this.counters = new StripedCounter(COUNTER_NUM);
+		this.writeLatency = new Histogram();
+		this.inboundSize = new Histogram();
+		this.outboundSize = new Histogram();
+	}
+
+	/** 增加计数。 */
+	public void add(int counter, long delta) {
+		this.counters.add(counter, delta);
+	}
+
+	/** 计数加一。 */
+	public void increment(int counter) {
+		this.counters.add(counter, 1L);
+	}
+
+	/** 返回计数。 */
+	public long get(int counter) {
+		return this.counters.get(counter);
+	}
+
+	/** 记录一次读调用及读取的字节数。 */
+	public void recordRead(int bytes) {
+		this.counters.add(READ_CALLS, 1L);
+		if (bytes > 0) {
+			this.counters.add(BYTES_IN, bytes);
+		}
+	}
+
+	/** 记录一次写调用及写出的字节数。 */
+	public void recordWrite(long bytes) {
+		this.counters.add(WRITE_CALLS, 1L);
+		if (bytes > 0) {
+			this.counters.add(BYTES_OUT, bytes);
+		}
+	}
+
+	/** 记录接收到的消息。 */
+	public void recordInbound(int size) {
+		this.counters.add(MESSAGES_IN, 1L);
+		this.inboundSize.record(size);
+	}
+
+	/** 记录完整写出的消息。 */
+	public void recordOutbound(int size) {
+		this.counters.add(MESSAGES_OUT, 1L);
+		this.outboundSize.record(size);
+	}
+
+	/** 记录消息从入队到写出的延迟。 */
+	public void recordWriteLatency(long nanos) {
+		this.writeLatency.record(nanos / 1000L);
+	}
+
+	/** 返回统计快照，不包含队列数据。 */
+	public Snapshot snapshot() {
+		return this.snapshot(0, 0, 0);
+	}
+
+	/** 返回统计快照。
+	 * 
+	 * @param sessionNum 当前会话数量。
+	 * @param pendingBytes 所有会话待发送的字节数。
+	 * @param pendingMessages 所有会话待发送的消息数。
+	 */
+	public Snapshot snapshot(int sessionNum, long pendingBytes, long pendingMessages) {
+		return new Snapshot(this.counters.getAll(), sessionNum, pendingBytes, pendingMessages,
+				this.writeLatency.snapshot(), this.inboundSize.snapshot(), this.outboundSize.snapshot());
+	}
+
+	/** 统计快照。
+	 */
+	public static final class Snapshot {
+
+		private final long timestamp;
+		private final long[] counters;
+		private final int sessionNum;
+		private final long pendingBytes;
+		private final long pendingMessages;
+		private final Histogram.Snapshot writeLatency;
+		private final Histogram.Snapshot inboundSize;
+		private final Histogram.Snapshot outboundSize;
+
+		private Snapshot(long[] counters, int sessionNum, long pendingBytes, long pendingMessages,
+				Histogram.Snapshot writeLatency, Histogram.Snapshot inboundSize, Histogram.Snapshot outboundSize) {
+			this.timestamp = System.currentTimeMillis();
+			this.counters = counters;
+			this.sessionNum = sessionNum;
+			this.pendingBytes = pendingBytes;
+			this.pendingMessages = pendingMessages;
+			this.writeLatency = writeLatency;
+			this.inboundSize = inboundSize;
+			this.outboundSize = outboundSize;
+		}
+
+		/** 返回快照时间。 */
+		public long getTimestamp() {
+			return this.timestamp;
+		}
+
+		/** 返回计数。 */
+		public long get(int counter) {
+			return this.counters[counter];
+		}
+
+		/** 返回相对于较早快照的每秒增量。 */
+		public double getRate(Snapshot earlier, int counter) {
+			long elapsed = this.timestamp - earlier.timestamp;
+			if (elapsed <= 0) {
+				return 0;
+			}
+			return (this.counters[counter] - earlier.counters[counter]) * 1000.0 / elapsed;
+		}
+
+		/** 返回当前会话数量。 */
+		public int getSessionNum() {
+			return this.sessionNum;
+		}
+
+		/** 返回所有会话待发送的字节数。 */
+		public long getPendingBytes() {
+			return this.pendingBytes;
+		}
+
+		/** 返回所有会话待发送的消息数。 */
+		public long getPendingMessages() {
+			return this.pendingMessages;
+		}
+
+		/** 返回入队到写出的延迟分布，单位：微秒。 */
+		public Histogram.Snapshot getWriteLatency() {
+			return this.writeLatency;
+		}
+
+		/** 返回接收消息大小分布，单位：字节。 */
+		public Histogram.Snapshot getInboundSize() {
+			return this.inboundSize;
+		}
+
+		/** 返回发送消息大小分布，单位：字节。 */
+		public Histogram.Snapshot getOutboundSize() {
+			return this.outboundSize;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder buf = new StringBuilder("IoMetrics[");
+			for (int i = 0; i < this.counters.length; ++i) {
+				buf.append(NAMES[i]).append("=").append(this.counters[i]).append(", ");
+			}
+			buf.append("sessions=").append(this.sessionNum)
+				.append(", pendingBytes=").append(this.pendingBytes)
+				.append(", pendingMessages=").append(this.pendingMessages)
+				.append(", writeLatencyUs={").append(this.writeLatency).append("}")
+				.append(", inboundSize={").append(this.inboundSize).append("}")
+				.append(", outboundSize={").append(this.outboundSize).append("}]");
+			return buf.toString();
+		}
+	}
+}
@@ -0,0 +1,199 @@
+/*
+-----------------------------------------------------------------------------
+This source file is part of Cell Cloud.
+
+Copyright (c) 2009-2013 Cell Cloud Team (www.cellcloud.net)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+-----------------------------------------------------------------------------
+*/
+
+package net.cellcloud.common;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import net.cellcloud.util.Crc32c;
+
+/** 长度前缀帧解码器。
+ * 
+ * 按帧识别对端使用的分帧方式：以 {@link FrameFormat#MAGIC} 开始的帧按长度前缀解码，
+ * 其他数据按服务定义的数据掩码解码，未定义数据掩码时直接作为一条消息。
+ * 因此同一连接上可以从数据掩码平滑切换到长度前缀分帧。
+ * 
+ * 帧校验失败或长度非法时无法确定下一帧的位置，解码器通知服务关闭会话，并丢弃之后收到的所有数据。
+ * 
+ * @author Jiangwei Xu
+ */
+public class LengthFrameDecoder extends CumulativeFrameDecoder {
+
+	private MessageService service;
+	private Session session;
+
+	// 数据掩码帧解码器
+	private MarkFrameDecoder markDecoder;
+
+	// 最近一次识别到的长度前缀帧标志位
+	private int lastFlags;
+
+	private Crc32c crc;
+
+	// 数据帧是否已损坏
+	private boolean corrupted;
+
+	public LengthFrameDecoder(MessageService service, Session session) {
+		this(service, session, DEFAULT_MAX_FRAME_LENGTH);
+	}
+
+	public LengthFrameDecoder(MessageService service, Session session, int maxFrameLength) {
+		super(maxFrameLength);
+		this.service = service;
+		this.session = session;
+		this.markDecoder = service.existDataMark()
+				? new MarkFrameDecoder(service.getHeadMark(), service.getTailMark(), maxFrameLength) : null;
+		this.lastFlags = -1;
+		this.crc = new Crc32c();
+		this.corrupted = false;
+	}
+
+	@Override
+	public void reset() {
+		super.reset();
+		if (null != this.markDecoder) {
+			this.markDecoder.reset();
+		}
+		this.corrupted = false;
+	}
+
+	@Override
+	protected void decodeFrames(ByteBuffer in, List<Message> output) {
+		if (this.corrupted) {
+			// 会话即将关闭，丢弃数据
+			in.position(in.limit());
+			return;
+		}
+
+		while (in.hasRemaining()) {
+			if (in.get(in.position()) == FrameFormat.MAGIC) {
+				if (!this.decodeFrame(in, output)) {
+					return;
+				}
+			}
+			else if (null != this.markDecoder) {
+				if (!this.markDecoder.decodeFrame(in, output)) {
+					return;
+				}
+			}
+			else {
+				output.add(new Message(in.slice()));
+				in.position(in.limit());
+			}
+		}
+	}
+
+	/** 解码一个长度前缀帧。
+	 * 
+	 * @return 数据不足一个完整帧时返回 false 。
+	 */
+	private boolean decodeFrame(ByteBuffer in, List<Message> output) {
+		int pos = in.position();
+		int limit = in.limit();
+
+		if (limit - pos < 3) {
+			return false;
+		}
+
+		byte flags = in.get(pos + 1);
+		boolean fixed = (flags & FrameFormat.FLAG_FIXED) != 0;
+		boolean checksum = (flags & FrameFormat.FLAG_CHECKSUM) != 0;
+
+		// 读取数据长度
+		int index = pos + 2;
+		long length = 0;
+		if (fixed) {
+			if (limit - index < 4) {
+				return false;
+			}
+			length = in.getInt(index) & 0xFFFFFFFFL;
+			index += 4;
+		}
+		else {
+			int shift = 0;
+			while (true) {
+				if (index >= limit) {
+					return false;
+				}
+
+				byte b = in.get(index++);
+				length |= (long) (b & 0x7F) << shift;
+				if ((b & 0x80) == 0) {
+					break;
+				}
+
+				shift += 7;
+				if (shift > 28) {
+					length = Long.MAX_VALUE;
+					break;
+				}
+			}
+		}
+
+		if (length > this.getMaxFrameLength()) {
+			// 数据已损坏，无法继续分帧
+			Logger.w(LengthFrameDecoder.class, "Illegal frame length " + length + " from session " + this.session.getId());
+			this.corrupt(in);
+			return false;
+		}
+
+		int start = index;
+		int end = start + (int) length;
+		int frameEnd = end + (checksum ? FrameFormat.CHECKSUM_LENGTH : 0);
+		if (frameEnd > limit) {
+			return false;
+		}
+
+		in.position(frameEnd);
+
+		if (checksum) {
+			this.crc.reset();
+			this.crc.update(in, start, end);
+			if ((int) this.crc.getValue() != in.getInt(end)) {
+				Logger.w(LengthFrameDecoder.class, "Frame checksum error from session " + this.session.getId());
+				this.corrupt(in);
+				return false;
+			}
+		}
+
+		if (flags != this.lastFlags) {
+			this.lastFlags = flags;
+			this.service.frameFormatDetected(this.session, FrameFormat.valueOf(flags));
+		}
+
+		output.add(new Message(slice(in, start, end)));
+		return true;
+	}
+
+	/** 标记数据帧已损坏，丢弃剩余数据并通知服务关闭会话。
+	 */
+	private void corrupt(ByteBuffer in) {
+		this.corrupted = true;
+		in.position(in.limit());
+		this.service.frameCorrupted(this.session);
+	}
+}
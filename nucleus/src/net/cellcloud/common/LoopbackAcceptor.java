@@ -0,0 +1,204 @@
+/*
+-----------------------------------------------------------------------------
+This source file is part of Cell Cloud.
+
+Copyright (c) 2009-2013 Cell Cloud Team (www.cellcloud.net)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+-----------------------------------------------------------------------------
+*/
+
+package net.cellcloud.common;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.cellcloud.util.KeyedSerialExecutor;
+
+/** 进程内回环消息接收器。
+ * 
+ * 回环接收器按端口注册到进程内的回环表，目标地址是本机地址且端口已注册时，
+ * {@link LoopbackConnector} 不经过网络，直接通过内存队列与接收器交换消息。
+ * 每个会话每个方向上的事件和消息严格按序投递。
+ * 
+ * @author Jiangwei Xu
+ */
+public class LoopbackAcceptor extends MessageService implements MessageAcceptor {
+
+	/// 端口与回环接收器的映射
+	private static final ConcurrentHashMap<Integer, LoopbackAcceptor> registry = new ConcurrentHashMap<Integer, LoopbackAcceptor>();
+
+	/// 投递回环消息的执行器，按接收方串行投递
+	private static volatile KeyedSerialExecutor deliverer = null;
+
+	private int port;
+	private ConcurrentHashMap<Long, LoopbackConnector> links;
+
+	public LoopbackAcceptor() {
+		this.port = 0;
+		this.links = new ConcurrentHashMap<Long, LoopbackConnector>();
+	}
+
+	/** 返回指定地址上已注册的回环接收器，地址不是本机地址或端口未注册时返回 null 。
+	 */
+	public static LoopbackAcceptor lookup(InetSocketAddress address) {
+		if (registry.isEmpty() || !isLocalAddress(address.getAddress())) {
+			return null;
+		}
+
+		return registry.get(address.getPort());
+	}
+
+	/** 判断是否是本机地址。
+	 */
+	public static boolean isLocalAddress(InetAddress address) {
+		if (null == address) {
+			return false;
+		}
+
+		if (address.isLoopbackAddress() || address.isAnyLocalAddress()) {
+			return true;
+		}
+
+		try {
+			return null != NetworkInterface.getByInetAddress(address);
+		} catch (SocketException e) {
+			return false;
+		}
+	}
+
+	@Override
+	public boolean bind(int port) {
+		if (0 != this.port) {
+			return false;
+		}
+
+		if (null != registry.putIfAbsent(port, this)) {
+			Logger.w(LoopbackAcceptor.class, "Loopback port " + port + " is already bound");
+			return false;
+		}
+
+		this.port = port;
+		return true;
+	}
+
+	@Override
+	public boolean bind(InetSocketAddress address) {
+		return this.bind(address.getPort());
+	}
+
+	@Override
+	public void unbind() {
+		if (0 == this.port) {
+			return;
+		}
+
+		registry.remove(this.port, this);
+		this.port = 0;
+
+		// 断开所有回环连接
+		for (LoopbackConnector connector : this.links.values()) {
+			connector.disconnect();
+		}
+		this.links.clear();
+	}
+
+	/** 返回绑定的端口，未绑定时返回 0 。
+	 */
+	public int getPort() {
+		return this.port;
+	}
+
+	/** 返回当前所有回环会话。
+	 */
+	public Collection<LoopbackConnector> getLinks() {
+		return this.links.values();
+	}
+
+	@Override
+	public void close(Session session) {
+		LoopbackConnector connector = this.links.get(session.getId());
+		if (null != connector) {
+			connector.disconnect();
+		}
+	}
+
+	@Override
+	public void write(Session session, Message message) {
+		LoopbackConnector connector = this.links.get(session.getId());
+		if (null != connector) {
+			connector.deliverToConnector(message);
+		}
+	}
+
+	@Override
+	public void read(Message message, Session session) {
+		// Nothing
+	}
+
+	@Override
+	public void setOutboundFrameFormat(Session session, FrameFormat format) {
+		// 回环连接不需要分帧
+	}
+
+	@Override
+	protected void frameCorrupted(Session session) {
+		// 回环连接不解码数据帧
+	}
+
+	/** 建立回环连接。
+	 */
+	protected void link(LoopbackConnector connector) {
+		this.links.put(connector.getPeerSession().getId(), connector);
+	}
+
+	/** 移除回环连接。
+	 */
+	protected void unlink(LoopbackConnector connector) {
+		this.links.remove(connector.getPeerSession().getId(), connector);
+	}
+
+	/** 当前线程是否是回环投递线程。
+	 */
+	protected static boolean inDeliveryThread() {
+		KeyedSerialExecutor executor = deliverer;
+		return null != executor && executor.inWorkerThread();
+	}
+
+	/** 按接收方串行投递任务。
+	 */
+	protected static boolean deliver(Object target, Runnable task) {
+		KeyedSerialExecutor executor = deliverer;
+		if (null == executor) {
+			synchronized (registry) {
+				if (null == deliverer) {
+					deliverer = KeyedSerialExecutor.newKeyedSerialThreadPool("Loopback",
+							Math.max(2, Runtime.getRuntime().availableProcessors()), 64 * 1024);
+				}
+				executor = deliverer;
+			}
+		}
+
+		return executor.execute(target, task);
+	}
+}
@@ -0,0 +1,262 @@
+/*
+-----------------------------------------------------------------------------
+This source file is part of Cell Cloud.
+
+Copyright (c) 2009-2013 Cell Cloud Team (www.cellcloud.net)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+-----------------------------------------------------------------------------
+*/
+
+package net.cellcloud.common;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/** 进程内回环消息连接器。
+ * 
+ * 连接到本机已注册的 {@link LoopbackAcceptor} ，消息不经过网络协议栈和分帧，
+ * 直接通过内存队列投递给对端的消息句柄。
+ * 
+ * @author Jiangwei Xu
+ */
+public class LoopbackConnector extends MessageService implements MessageConnector {
+
+	private InetSocketAddress address;
+	private LoopbackAcceptor acceptor;
+
+	// 连接器端会话
+	private Session session;
+	// 接收器端会话
+	private Session peerSession;
+
+	private AtomicBoolean connected;
+
+	public LoopbackConnector() {
+		this.connected = new AtomicBoolean(false);
+	}
+
+	/** 目标地址是否存在可用的回环接收器。
+	 */
+	public static boolean isReachable(InetSocketAddress address) {
+		return null != LoopbackAcceptor.lookup(address);
+	}
+
+	@Override
+	public boolean connect(InetSocketAddress address) {
+		if (this.connected.get()) {
+			this.disconnect();
+		}
+
+		LoopbackAcceptor acceptor = LoopbackAcceptor.lookup(address);
+		if (null == acceptor) {
+			return false;
+		}
+
+		this.address = address;
+		this.acceptor = acceptor;
+		this.session = new Session(this, address);
+		this.peerSession = new Session(acceptor, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+		this.connected.set(true);
+		acceptor.link(this);
+
+		final MessageHandler peerHandler = acceptor.getHandler();
+		final Session peer = this.peerSession;
+		this.deliver(peer, new Runnable() {
+			@Override
+			public void run() {
+				if (null != peerHandler) {
+					peerHandler.sessionCreated(peer);
+					peerHandler.sessionOpened(peer);
+				}
+			}
+		});
+
+		// 连接器方向以连接器为键，重连后的事件排在之前的关闭事件之后
+		final Session local = this.session;
+		this.deliver(this, new Runnable() {
+			@Override
+			public void run() {
+				if (null != handler) {
+					handler.sessionCreated(local);
+					handler.sessionOpened(local);
+				}
+			}
+		});
+
+		return true;
+	}
+
+	@Override
+	public void disconnect() {
+		if (!this.connected.compareAndSet(true, false)) {
+			return;
+		}
+
+		this.acceptor.unlink(this);
+
+		final MessageHandler peerHandler = this.acceptor.getHandler();
+		final Session peer = this.peerSession;
+		LoopbackAcceptor.deliver(peer, new Runnable() {
+			@Override
+			public void run() {
+				if (null != peerHandler) {
+					peerHandler.sessionClosed(peer);
+					peerHandler.sessionDestroyed(peer);
+				}
+			}
+		});
+
+		final Session local = this.session;
+		final CountDownLatch latch = new CountDownLatch(1);
+		LoopbackAcceptor.deliver(this, new Runnable() {
+			@Override
+			public void run() {
+				try {
+					if (null != handler) {
+						handler.sessionClosed(local);
+						handler.sessionDestroyed(local);
+					}
+				} finally {
+					latch.countDown();
+				}
+			}
+		});
+
+		// 与网络连接器一致，等待关闭事件处理完成，投递线程中不能等待
+		if (!LoopbackAcceptor.inDeliveryThread()) {
+			try {
+				latch.await(3000, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Logger.log(LoopbackConnector.class, e, LogLevel.DEBUG);
+			}
+		}
+	}
+
+	@Override
+	public void setConnectTimeout(long timeout) {
+		// 回环连接立即建立
+	}
+
+	@Override
+	public void setBlockSize(int size) {
+		// 回环连接不使用缓存块
+	}
+
+	@Override
+	public Session getSession() {
+		return this.session;
+	}
+
+	/** 返回接收器端会话。
+	 */
+	protected Session getPeerSession() {
+		return this.peerSession;
+	}
+
+	@Override
+	public InetSocketAddress getAddress() {
+		return this.address;
+	}
+
+	@Override
+	public boolean isConnected() {
+		return this.connected.get();
+	}
+
+	@Override
+	public void write(Message message) {
+		this.write(this.session, message);
+	}
+
+	@Override
+	public void write(Session session, Message message) {
+		if (!this.connected.get()) {
+			return;
+		}
+
+		// 发送方可能在返回后复用缓冲区，投递前脱离
+		final Message msg = message.detach();
+		final MessageHandler peerHandler = this.acceptor.getHandler();
+		final Session peer = this.peerSession;
+		final Session local = this.session;
+		this.deliver(peer, new Runnable() {
+			@Override
+			public void run() {
+				if (null != peerHandler) {
+					peerHandler.messageReceived(peer, msg);
+				}
+				if (null != handler) {
+					handler.messageSent(local, msg);
+				}
+			}
+		});
+	}
+
+	@Override
+	public void read(Message message, Session session) {
+		// Nothing
+	}
+
+	@Override
+	public void setOutboundFrameFormat(Session session, FrameFormat format) {
+		// 回环连接不需要分帧
+	}
+
+	@Override
+	protected void frameCorrupted(Session session) {
+		// 回环连接不解码数据帧
+	}
+
+	/** 接收器向连接器写入消息。
+	 */
+	protected void deliverToConnector(Message message) {
+		if (!this.connected.get()) {
+			return;
+		}
+
+		final Message msg = message.detach();
+		final MessageHandler peerHandler = this.acceptor.getHandler();
+		final Session peer = this.peerSession;
+		final Session local = this.session;
+		this.deliver(this, new Runnable() {
+			@Override
+			public void run() {
+				if (null != handler) {
+					handler.messageReceived(local, msg);
+				}
+				if (null != peerHandler) {
+					peerHandler.messageSent(peer, msg);
+				}
+			}
+		});
+	}
+
+	/** 投递任务，队列已满时断开连接。
+	 */
+	private void deliver(Object target, Runnable task) {
+		if (!LoopbackAcceptor.deliver(target, task)) {
+			Logger.w(LoopbackConnector.class, "Loopback queue is full, disconnect " + this.address);
+			this.disconnect();
+		}
+	}
+}
@@ -0,0 +1,123 @@
+/*
+-----------------------------------------------------------------------------
+This source file is part of Cell Cloud.
+
+Copyright (c) 2009-2013 Cell Cloud Team (www.cellcloud.net)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+-----------------------------------------------------------------------------
+*/
+
+package net.cellcloud.common;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/** 基于数据头尾掩码的帧解码器。
+ * 
+ * 帧格式为：头掩码 + 数据 + 尾掩码。
+ * 
+ * @author Jiangwei Xu
+ */
+public class MarkFrameDecoder extends CumulativeFrameDecoder {
+
+	private byte[] headMark;
+	private byte[] tailMark;
+
+	// 当前不完整帧中已经查找过尾掩码的字节数
+	private int scanned;
+
+	public MarkFrameDecoder(byte[] headMark, byte[] tailMark) {
+		this(headMark, tailMark, DEFAULT_MAX_FRAME_LENGTH);
+	}
+
+	public MarkFrameDecoder(byte[] headMark, byte[] tailMark, int maxFrameLength) {
+		super(maxFrameLength);
+		this.headMark = headMark;
+		this.tailMark = tailMark;
+		this.scanned = 0;
+	}
+
+	@Override
+	public void reset() {
+		super.reset();
+		this.scanned = 0;
+	}
+
+	@Override
+	protected void decodeFrames(ByteBuffer in, List<Message> output) {
+		while (in.hasRemaining() && this.decodeFrame(in, output)) {
+			// Nothing
+		}
+	}
+
+	/** 解码一个数据帧。
+	 * 
+	 * @return 数据不足一个完整帧时返回 false 。
+	 */
+	protected boolean decodeFrame(ByteBuffer in, List<Message> output) {
+		int pos = in.position();
+		int limit = in.limit();
+
+		int head = indexOf(in, this.headMark, pos, limit);
+		if (head < 0) {
+			// 丢弃头掩码之前的数据，保留可能不完整的头掩码
+			in.position(Math.max(pos, limit - (this.headMark.length - 1)));
+			this.scanned = 0;
+			return false;
+		}
+
+		int start = head + this.headMark.length;
+		int tail = indexOf(in, this.tailMark, Math.max(start, head + this.scanned), limit);
+		if (tail < 0) {
+			// 帧未结束，等待后续数据
+			in.position(head);
+			this.scanned = Math.max(limit - head - (this.tailMark.length - 1), 0);
+			return false;
+		}
+
+		this.scanned = 0;
+		output.add(new Message(slice(in, start, tail)));
+		in.position(tail + this.tailMark.length);
+		return true;
+	}
+
+	/** 在缓冲区的指定范围内查找掩码。
+	 */
+	private static int indexOf(ByteBuffer buf, byte[] mark, int from, int to) {
+		byte first = mark[0];
+		int last = to - mark.length;
+		for (int i = from; i <= last; ++i) {
+			if (buf.get(i) != first) {
+				continue;
+			}
+
+			int j = 1;
+			while (j < mark.length && buf.get(i + j) == mark[j]) {
+				++j;
+			}
+
+			if (j == mark.length) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+}
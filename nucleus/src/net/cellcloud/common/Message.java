@@ -26,49 +26,101 @@ THE SOFTWARE.
 
 package net.cellcloud.common;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 
 /** 消息描述类。
+ * 
+ * 接收到的消息可能直接引用网络读缓冲区中的数据（零拷贝），
+ * 这类消息只在 {@link MessageHandler#messageReceived(Session, Message)} 回调期间有效，
+ * 需要在回调返回后继续使用时应先调用 {@link #detach()} 。
  * 
  * @author Jiangwei Xu
  */
 public class Message {
 
 	private byte[] data;
+	// 直接引用的数据
+	private ByteBuffer buffer;
 
 	/** 构造函数。
 	 */
 	public Message(byte[] data) {
 		this.data = data;
+		this.buffer = null;
+	}
+
+	/** 构造函数。
+	 * 消息直接引用缓冲区 position 到 limit 之间的数据，不进行复制。
+	 */
+	public Message(ByteBuffer buffer) {
+		this.data = null;
+		this.buffer = buffer;
 	}
 
 	/** 构造函数。
 	 */
 	public Message(String data) {
 		this.data = data.getBytes(Charset.forName("UTF-8"));
+		this.buffer = null;
 	}
 
 	/** 返回消息数据。
+	 * 如果消息引用的是缓冲区，首次调用时将数据复制到数组。
 	 */
 	public byte[] get() {
+		if (null == this.data) {
+			byte[] bytes = new byte[this.buffer.remaining()];
+			this.buffer.duplicate().get(bytes);
+			this.data = bytes;
+			this.buffer = null;
+		}
+
 		return this.data;
 	}
 
+	/** 返回消息数据的只读缓冲区视图，不复制数据。
+	 */
+	public ByteBuffer getBuffer() {
+		if (null != this.data) {
+			return ByteBuffer.wrap(this.data).asReadOnlyBuffer();
+		}
+
+		return this.buffer.asReadOnlyBuffer();
+	}
+
+	/** 返回用于发送的缓冲区，不复制数据。
+	 */
+	protected ByteBuffer getWriteBuffer() {
+		if (null != this.data) {
+			return ByteBuffer.wrap(this.data);
+		}
+
+		return this.buffer.duplicate();
+	}
+
+	/** 使消息数据脱离网络读缓冲区，以便在接收回调返回后继续使用。
+	 */
+	public Message detach() {
+		this.get();
+		return this;
+	}
+
 	/** 消息数据长度。
 	 */
 	public int length() {
-		return this.data.length;
+		return (null != this.data) ? this.data.length : this.buffer.remaining();
 	}
 
 	/** 返回 UTF-8 字符集编码的字符串形式的消息数据。
 	 */
 	public String getAsString() {
-		return new String(this.data, Charset.forName("UTF-8"));
+		return new String(this.get(), Charset.forName("UTF-8"));
 	}
 
 	/** 返回指定字符集的消息数据的字符串形式。
 	 */
 	public String getAsString(String charsetName) {
-		return new String(this.data, Charset.forName(charsetName));
+		return new String(this.get(), Charset.forName(charsetName));
 	}
 }
@@ -48,4 +48,13 @@ public interface MessageConnector {
 
 	/** 返回会话实例。 */
 	public Session getSession();
+
+	/** 返回连接地址。 */
+	public InetSocketAddress getAddress();
+
+	/** 是否已经连接。 */
+	public boolean isConnected();
+
+	/** 向已连接的对端写入消息。 */
+	public void write(Message message);
 }
@@ -62,6 +62,10 @@ public final class MessageErrorCode {
 	public static final int WRITE_FAILED = 403;
 	/// 读取数据时发生错误。
 	public static final int READ_FAILED = 404;
+	/// 待发送数据超过上限。
+	public static final int WRITE_OVERFLOW = 405;
+	/// 接收的数据帧已损坏。
+	public static final int FRAME_CORRUPTED = 406;
 
 	private MessageErrorCode() {
 	}
@@ -50,6 +50,7 @@ public interface MessageHandler {
 	public void sessionClosed(Session session);
 
 	/** 接收到消息。
+	 * 消息可能引用网络读缓冲区，回调返回后如需继续使用应调用 {@link Message#detach()} 。
 	*/
 	public void messageReceived(Session session, Message message);
 
@@ -0,0 +1,520 @@
+/*
+-----------------------------------------------------------------------------
+This source file is part of Cell Cloud.
+
+Copyright (c) 2009-2013 Cell Cloud Team (www.cellcloud.net)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+-----------------------------------------------------------------------------
+*/
+
+package net.cellcloud.common;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.cellcloud.util.Crc32c;
+import net.cellcloud.util.KeyedSerialExecutor;
+
+/** 消息发送队列。
+ * 
+ * 队列中的消息以聚集写（gathering write）方式批量写入通道，
+ * 数据头尾掩码直接包装共享的掩码数组，不复制消息数据。
+ * 设置了长度前缀分帧格式后，消息改为按该格式分帧，帧头和校验和使用队列预先分配的数组。
+ * 一次未能全部写出的数据会被保留，在下一次通道可写时继续写出。
+ * 
+ * 队列按消息数据字节数统计待发送数据量，
+ * 并依据所属服务配置的高低水位线和上限维护可写状态、执行溢出策略。
+ * 阻塞策略只阻塞应用线程，且最长等待服务配置的时间；
+ * I/O 线程和数据包分发线程阻塞会拖住其他会话，在这些线程上超过上限时按断开策略处理。
+ * 
+ * 同一时间队列只追踪一条抽样消息的入队时间，该消息写出后记录入队到写出的延迟，
+ * 随后入队的下一条消息成为新的抽样消息。
+ * 
+ * @author Jiangwei Xu
+ */
+final class MessageSendQueue {
+
+	// 每次聚集写最多合并的消息数量
+	private static final int MAX_GATHERING = 64;
+
+	/// 消息已入队。
+	static final int OFFER_OK = 0;
+	/// 消息已入队，会话因此变为不可写。
+	static final int OFFER_UNWRITABLE = 1;
+	/// 超过上限，消息被拒绝，会话需要断开。
+	static final int OFFER_REJECTED = 2;
+	/// 队列已拒绝过消息，等待会话断开，消息被丢弃。
+	static final int OFFER_DISCARDED = 3;
+
+	private MessageService service;
+	private IoMetrics metrics;
+
+	// 待发送消息
+	private ConcurrentLinkedQueue<Message> messages;
+
+	// 待发送数据字节数，包括正在写出的消息
+	private AtomicLong pendingBytes;
+	// 待发送消息数，包括正在写出的消息
+	private AtomicInteger pendingMessages;
+	// 是否可写
+	private AtomicBoolean writable;
+	// 阻塞等待的写入线程数量
+	private volatile int waiters;
+	// 是否已经拒绝过消息
+	private volatile boolean rejected;
+	// 会话是否已经关闭
+	private volatile boolean closed;
+
+	// 正在写出的缓冲区，每条消息占用 1 到 3 个缓冲区
+	private ByteBuffer[] buffers;
+	// 正在写出的消息
+	private Message[] inflight;
+	// 每条正在写出的消息的最后一个缓冲区的索引
+	private int[] inflightEnds;
+	private int inflightCount;
+	private int inflightIndex;
+
+	// 未写完的缓冲区范围
+	private int offset;
+	private int length;
+
+	// 长度前缀分帧格式，为 null 时使用数据掩码
+	private volatile FrameFormat frameFormat;
+	// 每条正在写出的消息的帧头和校验和
+	private byte[][] headers;
+	private byte[][] checksums;
+	private Crc32c crc;
+
+	// 抽样消息的入队时间，为 0 时没有抽样消息
+	private AtomicLong sampleTime;
+	// 抽样消息
+	private volatile Message sampleMessage;
+	// 最近一次和最大的入队到写出延迟，单位：纳秒
+	private volatile long lastWriteLatency;
+	private volatile long maxWriteLatency;
+
+	MessageSendQueue(MessageService service) {
+		this.service = service;
+		this.metrics = service.getMetrics();
+		this.messages = new ConcurrentLinkedQueue<Message>();
+		this.pendingBytes = new AtomicLong(0);
+		this.pendingMessages = new AtomicInteger(0);
+		this.sampleTime = new AtomicLong(0);
+		this.sampleMessage = null;
+		this.lastWriteLatency = 0;
+		this.maxWriteLatency = 0;
+		this.writable = new AtomicBoolean(true);
+		this.waiters = 0;
+		this.rejected = false;
+		this.closed = false;
+		this.frameFormat = null;
+		this.inflightCount = 0;
+		this.inflightIndex = 0;
+		this.offset = 0;
+		this.length = 0;
+	}
+
+	/** 添加待发送消息。
+	 * 
+	 * @param message 待发送消息。
+	 * @return 返回 {@link #OFFER_OK}、{@link #OFFER_UNWRITABLE}、{@link #OFFER_REJECTED} 或 {@link #OFFER_DISCARDED} 。
+	 */
+	int offer(Message message) {
+		if (this.rejected || this.closed) {
+			return OFFER_DISCARDED;
+		}
+
+		int size = message.length();
+
+		int limit = this.service.getWriteLimit();
+		if (limit > 0 && this.pendingBytes.get() + size > limit) {
+			// 超过上限，执行溢出策略
+			int threshold = Math.max(limit - size, 0);
+			switch (this.service.getWriteOverflowPolicy()) {
+			case BLOCK:
+				if (!isBlockableThread()) {
+					// 不能阻塞 I/O 线程，按断开策略处理
+					this.rejected = true;
+					return OFFER_REJECTED;
+				}
+				if (!this.await(threshold)) {
+					if (this.closed) {
+						return OFFER_DISCARDED;
+					}
+					// 等待超时，对端可能已停止读取
+					this.rejected = true;
+					return OFFER_REJECTED;
+				}
+				break;
+			case DROP_OLDEST:
+				this.drop(threshold);
+				break;
+			default:
+				this.rejected = true;
+				return OFFER_REJECTED;
+			}
+		}
+
+		long pending = this.pendingBytes.addAndGet(size);
+		this.pendingMessages.incrementAndGet();
+
+		// 没有抽样消息时抽样当前消息
+		if (this.sampleTime.get() == 0 && this.sampleTime.compareAndSet(0, System.nanoTime())) {
+			this.sampleMessage = message;
+		}
+
+		this.messages.offer(message);
+
+		int high = this.service.getWriteHighWatermark();
+		if (high > 0 && pending > high && this.writable.compareAndSet(true, false)) {
+			return OFFER_UNWRITABLE;
+		}
+
+		return OFFER_OK;
+	}
+
+	/** 设置长度前缀分帧格式，在下一批消息开始写出时生效。
+	 * 为 null 时使用数据掩码分帧。
+	 */
+	void setFrameFormat(FrameFormat format) {
+		this.frameFormat = format;
+	}
+
+	/** 返回长度前缀分帧格式。
+	 */
+	FrameFormat getFrameFormat() {
+		return this.frameFormat;
+	}
+
+	/** 是否可写。
+	 */
+	boolean isWritable() {
+		return this.writable.get();
+	}
+
+	/** 返回待发送数据字节数。
+	 */
+	long getPendingBytes() {
+		return this.pendingBytes.get();
+	}
+
+	/** 返回待发送消息数。
+	 */
+	int getPendingMessages() {
+		return this.pendingMessages.get();
+	}
+
+	/** 返回最近一次抽样的入队到写出延迟，单位：纳秒。
+	 */
+	long getLastWriteLatency() {
+		return this.lastWriteLatency;
+	}
+
+	/** 返回抽样的最大入队到写出延迟，单位：纳秒。
+	 */
+	long getMaxWriteLatency() {
+		return this.maxWriteLatency;
+	}
+
+	/** 待发送数据回落到低水位线时恢复可写状态。
+	 * 
+	 * @return 如果由不可写变为可写返回 true 。
+	 */
+	boolean restoreWritable() {
+		if (!this.writable.get()
+				&& this.pendingBytes.get() <= this.service.getWriteLowWatermark()) {
+			return this.writable.compareAndSet(false, true);
+		}
+
+		return false;
+	}
+
+	/** 是否没有任何待发送数据。
+	 */
+	boolean isEmpty() {
+		return this.length == 0 && this.messages.isEmpty();
+	}
+
+	/** 清空队列。
+	 */
+	void clear() {
+		this.messages.clear();
+		this.release();
+
+		this.pendingBytes.set(0);
+		this.pendingMessages.set(0);
+		this.writable.set(true);
+		this.resetSample();
+		this.signal();
+	}
+
+	/** 关闭队列，丢弃待发送消息并唤醒阻塞等待的写入线程。
+	 * 关闭后的队列丢弃新消息，直到调用 {@link #reset()} 。
+	 */
+	void close() {
+		this.closed = true;
+		this.clear();
+	}
+
+	/** 清空队列并重新接受消息。
+	 */
+	void reset() {
+		this.clear();
+		this.rejected = false;
+		this.closed = false;
+		this.frameFormat = null;
+	}
+
+	/** 将队列里的数据写入通道。
+	 * 
+	 * @param channel 目标通道。
+	 * @param head 数据头掩码，无掩码时为 null 。
+	 * @param tail 数据尾掩码，无掩码时为 null 。
+	 * @param sent 输出已经完整写出的消息。
+	 * @param spinCount 通道暂时不可写时的最大写入次数。
+	 * @return 如果所有数据都已写出返回 true ，如果通道暂时不可写返回 false 。
+	 * @throws IOException
+	 */
+	boolean flush(GatheringByteChannel channel, byte[] head, byte[] tail, List<Message> sent,
+			int spinCount) throws IOException {
+		int spin = 0;
+		while (true) {
+			if (this.length == 0) {
+				this.fill(head, tail);
+				if (this.length == 0) {
+					return true;
+				}
+			}
+
+			long written = channel.write(this.buffers, this.offset, this.length);
+			this.metrics.recordWrite(written);
+
+			// 跳过已经写完的缓冲区
+			while (this.length > 0 && !this.buffers[this.offset].hasRemaining()) {
+				this.buffers[this.offset] = null;
+
+				if (this.inflightEnds[this.inflightIndex] == this.offset) {
+					Message message = this.inflight[this.inflightIndex];
+					this.pendingBytes.addAndGet(-message.length());
+					this.pendingMessages.decrementAndGet();
+					this.metrics.recordOutbound(message.length());
+					if (message == this.sampleMessage) {
+						this.recordSample();
+					}
+					sent.add(message);
+					this.inflight[this.inflightIndex] = null;
+					++this.inflightIndex;
+				}
+
+				++this.offset;
+				--this.length;
+			}
+
+			this.signal();
+
+			if (this.length > 0 && ++spin >= spinCount) {
+				// 通道发送缓存已满，保留剩余数据
+				return false;
+			}
+		}
+	}
+
+	/** 阻塞当前线程直到待发送数据不超过指定阈值。
+	 * 
+	 * @return 超时、队列关闭或线程被中断时返回 false 。
+	 */
+	private boolean await(long threshold) {
+		long deadline = System.currentTimeMillis() + this.service.getWriteBlockTimeout();
+		synchronized (this) {
+			++this.waiters;
+			try {
+				while (this.pendingBytes.get() > threshold) {
+					if (this.closed || this.rejected) {
+						return false;
+					}
+
+					long remaining = deadline - System.currentTimeMillis();
+					if (remaining <= 0) {
+						return false;
+					}
+
+					this.wait(Math.min(remaining, 100));
+				}
+
+				return !this.closed;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			} finally {
+				--this.waiters;
+			}
+		}
+	}
+
+	/** 当前线程是否允许在写入时阻塞。
+	 * 接收器的接收线程和工作线程、连接器事件循环线程以及分发执行器的线程不允许阻塞。
+	 */
+	static boolean isBlockableThread() {
+		return !(Thread.currentThread() instanceof NonblockingAcceptorWorker)
+				&& !NonblockingAcceptor.isAcceptThread()
+				&& !ConnectorReactor.isReactorThread()
+				&& !KeyedSerialExecutor.isWorkerThread();
+	}
+
+	/** 唤醒阻塞等待的写入线程。
+	 */
+	private void signal() {
+		if (this.waiters > 0) {
+			synchronized (this) {
+				this.notifyAll();
+			}
+		}
+	}
+
+	/** 丢弃最早的待发送消息直到待发送数据不超过指定阈值。
+	 * 正在写出的消息不会被丢弃。
+	 */
+	private void drop(long threshold) {
+		while (this.pendingBytes.get() > threshold) {
+			Message message = this.messages.poll();
+			if (null == message) {
+				break;
+			}
+
+			this.pendingBytes.addAndGet(-message.length());
+			this.pendingMessages.decrementAndGet();
+			if (message == this.sampleMessage) {
+				this.resetSample();
+			}
+		}
+	}
+
+	/** 记录抽样消息的入队到写出延迟。
+	 */
+	private void recordSample() {
+		long latency = System.nanoTime() - this.sampleTime.get();
+		this.lastWriteLatency = latency;
+		if (latency > this.maxWriteLatency) {
+			this.maxWriteLatency = latency;
+		}
+		this.metrics.recordWriteLatency(latency);
+		this.resetSample();
+	}
+
+	/** 结束当前抽样。
+	 */
+	private void resetSample() {
+		this.sampleMessage = null;
+		this.sampleTime.set(0);
+	}
+
+	/** 从消息队列中取出消息装填缓冲区。
+	 */
+	private void fill(byte[] head, byte[] tail) {
+		if (null == this.buffers) {
+			this.buffers = new ByteBuffer[MAX_GATHERING * 3];
+			this.inflight = new Message[MAX_GATHERING];
+			this.inflightEnds = new int[MAX_GATHERING];
+		}
+
+		FrameFormat format = this.frameFormat;
+		if (null != format && null == this.headers) {
+			this.headers = new byte[MAX_GATHERING][FrameFormat.MAX_HEADER_LENGTH];
+			this.checksums = new byte[MAX_GATHERING][FrameFormat.CHECKSUM_LENGTH];
+			this.crc = new Crc32c();
+		}
+
+		boolean marked = (null == format && null != head && null != tail);
+
+		int index = 0;
+		this.inflightCount = 0;
+		this.inflightIndex = 0;
+
+		Message message = null;
+		while (this.inflightCount < MAX_GATHERING
+				&& null != (message = this.messages.poll())) {
+			// 引用缓冲区的消息直接发送，不复制数据
+			ByteBuffer data = message.getWriteBuffer();
+
+			if (null != format) {
+				byte[] header = this.headers[this.inflightCount];
+				this.buffers[index++] = ByteBuffer.wrap(header, 0, format.writeHeader(header, data.remaining()));
+			}
+			else if (marked) {
+				this.buffers[index++] = ByteBuffer.wrap(head);
+			}
+
+			this.buffers[index++] = data;
+
+			if (null != format) {
+				if (format.hasChecksum()) {
+					this.crc.reset();
+					if (data.hasArray()) {
+						this.crc.update(data.array(), data.arrayOffset() + data.position(), data.remaining());
+					}
+					else {
+						this.crc.update(data, data.position(), data.limit());
+					}
+					int value = (int) this.crc.getValue();
+					byte[] checksum = this.checksums[this.inflightCount];
+					checksum[0] = (byte) (value >>> 24);
+					checksum[1] = (byte) (value >>> 16);
+					checksum[2] = (byte) (value >>> 8);
+					checksum[3] = (byte) value;
+					this.buffers[index++] = ByteBuffer.wrap(checksum);
+				}
+			}
+			else if (marked) {
+				this.buffers[index++] = ByteBuffer.wrap(tail);
+			}
+
+			this.inflight[this.inflightCount] = message;
+			this.inflightEnds[this.inflightCount] = index - 1;
+			++this.inflightCount;
+		}
+
+		this.offset = 0;
+		this.length = index;
+	}
+
+	/** 释放缓冲区。
+	 */
+	private void release() {
+		if (null != this.buffers) {
+			for (int i = 0; i < this.buffers.length; ++i) {
+				this.buffers[i] = null;
+			}
+			for (int i = 0; i < this.inflight.length; ++i) {
+				this.inflight[i] = null;
+			}
+		}
+
+		this.inflightCount = 0;
+		this.inflightIndex = 0;
+		this.offset = 0;
+		this.length = 0;
+	}
+}
@@ -26,6 +26,8 @@ THE SOFTWARE.
 
 package net.cellcloud.common;
 
+import java.util.Collection;
+
 /** 消息服务。
  * 
  * @author Jiangwei Xu
@@ -38,12 +40,46 @@ public abstract class MessageService {
 	private byte[] tailMark;
 	private int maxConnectNum;
 
+	// 待发送数据低水位线
+	private int writeLowWatermark;
+	// 待发送数据高水位线
+	private int writeHighWatermark;
+	// 待发送数据上限，0 表示不限制
+	private int writeLimit;
+	private WriteOverflowPolicy writeOverflowPolicy;
+	// 阻塞策略下写入线程的最长等待时间，单位：毫秒
+	private long writeBlockTimeout;
+
+	// 读写使用的缓冲区池
+	private ByteBufferPool bufferPool;
+
+	// 数据帧解码器工厂
+	private FrameDecoderFactory frameDecoderFactory;
+	// 服务支持的长度前缀分帧格式
+	private FrameFormat frameFormat;
+
+	// 传输参数配置
+	private TransportProfile transportProfile;
+
+	// I/O 统计数据
+	private final IoMetrics metrics;
+
 	public MessageService() {
 		this.handler = null;
 		this.interceptor = null;
 		this.headMark = null;
 		this.tailMark = null;
 		this.maxConnectNum = 32;
+		this.writeLowWatermark = 256 * 1024;
+		this.writeHighWatermark = 1024 * 1024;
+		this.writeLimit = 0;
+		this.writeOverflowPolicy = WriteOverflowPolicy.DISCONNECT;
+		this.writeBlockTimeout = 5000L;
+		this.bufferPool = ByteBufferPool.getDefault();
+		this.frameDecoderFactory = null;
+		this.frameFormat = null;
+		this.transportProfile = TransportProfile.createDefault();
+		this.metrics = new IoMetrics();
 	}
 
 	/** 返回消息句柄。
@@ -108,9 +144,187 @@ public abstract class MessageService {
 		return this.maxConnectNum;
 	}
 
+	/** 设置每个会话待发送数据的高低水位线，单位：字节。
+	 * 待发送数据超过高水位线时会话变为不可写，回落到低水位线时恢复可写。
+	 * 消息句柄实现 {@link WritabilityHandler} 时可以收到状态变化通知。
+	 * 高水位线为 0 时不检测可写状态。
+	 */
+	public void setWriteWatermark(int low, int high) {
+		this.writeLowWatermark = Math.min(low, high);
+		this.writeHighWatermark = high;
+	}
+
+	/** 返回待发送数据低水位线。
+	 */
+	public int getWriteLowWatermark() {
+		return this.writeLowWatermark;
+	}
+
+	/** 返回待发送数据高水位线。
+	 */
+	public int getWriteHighWatermark() {
+		return this.writeHighWatermark;
+	}
+
+	/** 设置每个会话待发送数据的上限及超过上限时的处理策略。
+	 * 上限为 0 时不限制待发送数据量。
+	 */
+	public void setWriteLimit(int limit, WriteOverflowPolicy policy) {
+		this.writeLimit = limit;
+		this.writeOverflowPolicy = policy;
+	}
+
+	/** 返回待发送数据上限。
+	 */
+	public int getWriteLimit() {
+		return this.writeLimit;
+	}
+
+	/** 返回待发送数据超过上限时的处理策略。
+	 */
+	public WriteOverflowPolicy getWriteOverflowPolicy() {
+		return this.writeOverflowPolicy;
+	}
+
+	/** 设置阻塞策略下写入线程的最长等待时间，单位：毫秒。
+	 * 超时后按断开策略处理。
+	 */
+	public void setWriteBlockTimeout(long timeout) {
+		this.writeBlockTimeout = Math.max(1, timeout);
+	}
+
+	/** 返回阻塞策略下写入线程的最长等待时间，单位：毫秒。
+	 */
+	public long getWriteBlockTimeout() {
+		return this.writeBlockTimeout;
+	}
+
+	/** 返回缓冲区池。
+	 */
+	public ByteBufferPool getBufferPool() {
+		return this.bufferPool;
+	}
+
+	/** 设置缓冲区池。默认使用共享的 {@link ByteBufferPool#getDefault()} 。
+	 */
+	public void setBufferPool(ByteBufferPool pool) {
+		this.bufferPool = pool;
+	}
+
+	/** 返回数据帧解码器工厂。
+	 */
+	public FrameDecoderFactory getFrameDecoderFactory() {
+		return this.frameDecoderFactory;
+	}
+
+	/** 设置数据帧解码器工厂。
+	 * 未设置时，定义了数据掩码的服务使用 {@link MarkFrameDecoder} ，否则使用 {@link RawFrameDecoder} 。
+	 */
+	public void setFrameDecoderFactory(FrameDecoderFactory factory) {
+		this.frameDecoderFactory = factory;
+	}
+
+	/** 设置服务支持的长度前缀分帧格式。
+	 * 设置后服务同时接受长度前缀帧和数据掩码帧，
+	 * 并在识别到对端使用长度前缀分帧后以相同格式向该对端发送数据。
+	 * 为 null 时仅使用数据掩码分帧。
+	 */
+	public void setFrameFormat(FrameFormat format) {
+		this.frameFormat = format;
+	}
+
+	/** 返回服务支持的长度前缀分帧格式。
+	 */
+	public FrameFormat getFrameFormat() {
+		return this.frameFormat;
+	}
+
+	/** 设置传输参数配置，需要在绑定或连接之前设置。
+	 * 为 null 时使用默认配置。
+	 */
+	public void setTransportProfile(TransportProfile profile) {
+		this.transportProfile = (null != profile) ? profile : TransportProfile.createDefault();
+	}
+
+	/** 返回传输参数配置。
+	 */
+	public TransportProfile getTransportProfile() {
+		return this.transportProfile;
+	}
+
+	/** 返回 I/O 统计数据。
+	 */
+	public IoMetrics getMetrics() {
+		return this.metrics;
+	}
+
+	/** 返回 I/O 统计快照。
+	 * 管理发送队列的服务在快照中包含当前会话数量和待发送数据量。
+	 */
+	public IoMetrics.Snapshot getMetricsSnapshot() {
+		return this.metrics.snapshot();
+	}
+
+	/** 设置向指定会话发送数据时使用的长度前缀分帧格式。
+	 * 为 null 时使用数据掩码分帧。
+	 */
+	public abstract void setOutboundFrameFormat(Session session, FrameFormat format);
+
+	/** 识别到对端使用长度前缀分帧时调用，默认以相同格式回应对端。
+	 */
+	protected void frameFormatDetected(Session session, FrameFormat format) {
+		if (null != this.frameFormat) {
+			this.setOutboundFrameFormat(session, format);
+		}
+	}
+
+	/** 接收的长度前缀帧校验失败或长度非法时调用。
+	 * 数据帧损坏后无法继续分帧，实现需要报告错误并关闭会话。
+	 */
+	protected abstract void frameCorrupted(Session session);
+
+	/** 为会话创建数据帧解码器。
+	 */
+	public FrameDecoder createFrameDecoder(Session session) {
+		if (null != this.frameDecoderFactory) {
+			return this.frameDecoderFactory.create(session);
+		}
+
+		if (null != this.frameFormat) {
+			return new LengthFrameDecoder(this, session);
+		}
+
+		if (this.existDataMark()) {
+			return new MarkFrameDecoder(this.headMark, this.tailMark);
+		}
+
+		return new RawFrameDecoder();
+	}
+
 	/** 写入消息数据。 */
 	public abstract void write(Session session, Message message);
 
+	/** 向多个会话写入同一条消息数据。 */
+	public void write(Collection<Session> sessions, Message message) {
+		for (Session session : sessions) {
+			this.write(session, message);
+		}
+	}
+
 	/** 读取消息数据。 */
 	public abstract void read(Message message, Session session);
+
+	/** 通知会话不可写。 */
+	protected void fireSessionUnwritable(Session session) {
+		if (this.handler instanceof WritabilityHandler) {
+			((WritabilityHandler) this.handler).sessionUnwritable(session);
+		}
+	}
+
+	/** 通知会话恢复可写。 */
+	protected void fireSessionWritable(Session session) {
+		if (this.handler instanceof WritabilityHandler) {
+			((WritabilityHandler) this.handler).sessionWritable(session);
+		}
+	}
 }
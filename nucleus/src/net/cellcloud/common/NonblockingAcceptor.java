@@ -26,31 +26,47 @@ THE SOFTWARE.
 
 package net.cellcloud.common;
 
+import java.io.File;
 import java.io.IOException;
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.nio.channels.CancelledKeyException;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
-import java.util.Map;
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 
 
 /** 非阻塞网络接收器。
+ * 
+ * 接收器采用多 Reactor 模型：句柄线程只负责接受连接，
+ * 每个新连接被交给一个工作线程，由该工作线程的选择器独立完成数据读写。
  * 
  * @author Jiangwei Xu
  */
 public class NonblockingAcceptor extends MessageService implements MessageAcceptor {
 
+	// 标记接收线程，接收线程写入时不允许阻塞
+	private static final ThreadLocal<Boolean> ACCEPT_THREAD = new ThreadLocal<Boolean>();
+
 	// 缓存数据块大小
 	protected int block = 8192;
 
 	private ServerSocketChannel channel;
 	private Selector selector;
 
+	// 同主机传输地址及套接字文件名称
+	private String localTransport;
+	private String localName;
+	// Unix 域服务端通道
+	private ServerSocketChannel unixChannel;
+	private String unixPath;
+
 	private InetSocketAddress bindAddress;
 	private Thread handleThread;
 	private boolean spinning;
@@ -60,15 +76,111 @@ public class NonblockingAcceptor extends MessageService implements MessageAccept
 	private NonblockingAcceptorWorker[] workers;
 	private int workerNum;
 
-	// 存储 Session 的 Map
-	private ConcurrentHashMap<Integer, NonblockingAcceptorSession> sessions;
+	// 工作线程分配策略
+	private WorkerAssignStrategy assignStrategy;
+	// 负载采样周期，单位：毫秒
+	private long sampleInterval = 1000L;
+	private long lastSampleTime = 0;
+	// 热点 Session 迁移周期，单位：毫秒，为 0 时不迁移
+	private long rebalanceInterval = 0;
+	private long lastRebalanceTime = 0;
+	// 触发迁移的最小负载差，单位：字节每秒
+	private long rebalanceThreshold = 1024 * 1024;
+
+	// 连接准入控制
+	private AdmissionControl admission;
+
+	// 存储 Session 的 Map，Key 为 Session ID
+	private ConcurrentHashMap<Long, NonblockingAcceptorSession> sessions;
 
 	public NonblockingAcceptor() {
 		this.spinning = false;
 		this.running = false;
-		this.sessions = new ConcurrentHashMap<Integer, NonblockingAcceptorSession>();
+		this.sessions = new ConcurrentHashMap<Long, NonblockingAcceptorSession>();
 		// 默认 8 线程
 		this.workerNum = 8;
+		this.assignStrategy = WorkerAssignStrategy.LEAST_SESSIONS;
+		this.admission = new AdmissionControl();
+	}
+
+	/** 返回连接准入控制，用于设置速率和连接数限制以及查询拒绝次数。
+	 * 最大连接数由 {@link #setMaxConnectNum(int)} 设置。
+	 */
+	public AdmissionControl getAdmissionControl() {
+		return this.admission;
+	}
+
+	/** 设置工作线程分配策略。默认分配给 Session 数量最少的工作线程。
+	 */
+	public void setAssignStrategy(WorkerAssignStrategy strategy) {
+		this.assignStrategy = (null != strategy) ? strategy : WorkerAssignStrategy.LEAST_SESSIONS;
+	}
+
+	/** 返回工作线程分配策略。
+	 */
+	public WorkerAssignStrategy getAssignStrategy() {
+		return this.assignStrategy;
+	}
+
+	/** 设置热点 Session 迁移。
+	 * 每个周期比较工作线程的每秒收发字节数，负载最高与最低的工作线程相差超过阈值时，
+	 * 从负载最高的工作线程迁出一个能最大程度缩小差距的 Session 。
+	 * 
+	 * @param interval 迁移周期，单位：毫秒，为 0 时不迁移。
+	 * @param threshold 触发迁移的最小负载差，单位：字节每秒。
+	 */
+	public void setRebalance(long interval, long threshold) {
+		this.rebalanceInterval = Math.max(0, interval);
+		this.rebalanceThreshold = Math.max(1, threshold);
+	}
+
+	/** 返回热点 Session 迁移周期。
+	 */
+	public long getRebalanceInterval() {
+		return this.rebalanceInterval;
+	}
+
+	/** 返回所有工作线程的负载快照。
+	 */
+	public List<WorkerLoad> getWorkerLoads() {
+		NonblockingAcceptorWorker[] workers = this.workers;
+		ArrayList<WorkerLoad> list = new ArrayList<WorkerLoad>();
+		if (null != workers) {
+			for (NonblockingAcceptorWorker worker : workers) {
+				list.add(new WorkerLoad(worker));
+			}
+		}
+		return list;
+	}
+
+	/** 设置传输参数配置，需要在绑定之前设置。
+	 * 配置指定的工作线程数量和数据块大小覆盖接收器当前的设置。
+	 */
+	@Override
+	public void setTransportProfile(TransportProfile profile) {
+		super.setTransportProfile(profile);
+		profile = this.getTransportProfile();
+		if (profile.getWorkerNum() > 0) {
+			this.workerNum = profile.getWorkerNum();
+		}
+		if (profile.getBlockSize() > 0) {
+			this.block = profile.getBlockSize();
+		}
+	}
+
+	/** 设置同主机传输地址，需要在绑定前设置。
+	 * 传输地址为 "unix:&lt;目录&gt;" 时，除 TCP 端口外同时在该目录下绑定
+	 * "&lt;名称&gt;-&lt;端口&gt;.sock" 套接字文件。
+	 */
+	public void setLocalTransport(String transport, String name) {
+		this.localTransport = transport;
+		this.localName = name;
+	}
+
+	/** 返回绑定的 Unix 域套接字文件路径，未绑定时返回 null 。
+	 */
+	public String getUnixSocketPath() {
+		return (null != this.unixChannel) ? this.unixPath : null;
 	}
 
 	@Override
@@ -78,26 +190,29 @@ public class NonblockingAcceptor extends MessageService implements MessageAccept
 
 	@Override
 	public boolean bind(InetSocketAddress address) {
-		// 创建工作线程
-		if (null == this.workers) {
-			// 创建工作线程
-			this.workers = new NonblockingAcceptorWorker[this.workerNum];
-			for (int i = 0; i < this.workerNum; ++i) {
-				this.workers[i] = new NonblockingAcceptorWorker(this);
-			}
-		}
-
 		// 打开 Socket channel 并绑定服务
 		try {
+			// 创建工作线程，每个工作线程持有独立的选择器
+			if (null == this.workers) {
+				this.workers = new NonblockingAcceptorWorker[this.workerNum];
+				for (int i = 0; i < this.workerNum; ++i) {
+					this.workers[i] = new NonblockingAcceptorWorker(this, i);
+				}
+			}
+
 			this.channel = ServerSocketChannel.open();
 			this.selector = Selector.open();
 
-			this.channel.socket().bind(address);
+			this.getTransportProfile().configure(this.channel.socket());
+			this.channel.socket().bind(address, this.getTransportProfile().getBacklog());
 			this.channel.configureBlocking(false);
 			this.channel.register(this.selector, SelectionKey.OP_ACCEPT);
 
 			this.bindAddress = address;
 
+			// 同主机 Unix 域套接字
+			this.bindUnixChannel(address.getPort());
+
 		} catch (IOException e) {
 			Logger.log(NonblockingAcceptor.class, e, LogLevel.ERROR);
 
@@ -109,6 +224,8 @@ public class NonblockingAcceptor extends MessageService implements MessageAccept
 		this.handleThread = new Thread() {
 			@Override
 			public void run() {
+				ACCEPT_THREAD.set(Boolean.TRUE);
+
 				running = true;
 				spinning = true;
 
@@ -148,12 +265,6 @@ public class NonblockingAcceptor extends MessageService implements MessageAccept
 		// 退出事件循环
 		this.spinning = false;
 
-		Iterator<NonblockingAcceptorSession> iter = this.sessions.values().iterator();
-		while (iter.hasNext()) {
-			NonblockingAcceptorSession session = iter.next();
-			this.close(session);
-		}
-
 		// 关闭 Channel
 		try {
 			this.channel.close();
@@ -161,13 +272,23 @@ public class NonblockingAcceptor extends MessageService implements MessageAccept
 		} catch (IOException e) {
 			Logger.log(NonblockingAcceptor.class, e, LogLevel.DEBUG);
 		}
+		if (null != this.unixChannel) {
+			try {
+				this.unixChannel.close();
+			} catch (IOException e) {
+				Logger.log(NonblockingAcceptor.class, e, LogLevel.DEBUG);
+			}
+			this.unixChannel = null;
+			new File(this.unixPath).delete();
+		}
 		try {
+			this.selector.wakeup();
 			this.selector.close();
 		} catch (IOException e) {
 			Logger.log(NonblockingAcceptor.class, e, LogLevel.DEBUG);
 		}
 
-		// 关闭工作线程
+		// 关闭工作线程，工作线程退出时关闭其管理的所有 Session
 		if (null != this.workers) {
 			for (NonblockingAcceptorWorker worker : this.workers) {
 				if (worker.isWorking()) {
@@ -178,17 +299,20 @@ public class NonblockingAcceptor extends MessageService implements MessageAccept
 			int stoppedCount = 0;
 			while (stoppedCount != this.workerNum) {
 				try {
-					Thread.sleep(100);
+					Thread.sleep(10);
 				} catch (InterruptedException e) {
 					Logger.log(NonblockingAcceptor.class, e, LogLevel.DEBUG);
 				}
 
+				stoppedCount = 0;
 				for (NonblockingAcceptorWorker worker : this.workers) {
 					if (!worker.isWorking()) {
 						++stoppedCount;
 					}
 				}
 			}
+
+			this.workers = null;
 		}
 
 		// 控制主线程超时退出
@@ -210,12 +334,6 @@ public class NonblockingAcceptor extends MessageService implements MessageAccept
 				}
 			}
 
-			try {
-				Thread.sleep(10);
-			} catch (InterruptedException e) {
-				Logger.log(NonblockingAcceptor.class, e, LogLevel.DEBUG);
-			}
-
 			if (count >= timeout) {
 				try {
 					this.handleThread.interrupt();
@@ -232,32 +350,99 @@ public class NonblockingAcceptor extends MessageService implements MessageAccept
 
 	@Override
 	public void close(Session session) {
-		Iterator<NonblockingAcceptorSession> iter = this.sessions.values().iterator();
-		while (iter.hasNext()) {
-			NonblockingAcceptorSession nas = iter.next();
-			if (nas.getId().longValue() == session.getId().longValue()) {
-				try {
-					nas.socket.close();
-				} catch (IOException e) {
-					Logger.log(NonblockingAcceptor.class, e, LogLevel.DEBUG);
-				}
-				break;
-			}
+		NonblockingAcceptorSession nas = this.sessions.get(session.getId());
+		if (null != nas) {
+			// 由 Session 所属的工作线程执行关闭
+			nas.worker.pushCloseSession(nas);
 		}
 	}
 
 	@Override
 	public void write(Session session, Message message) {
-		Iterator<NonblockingAcceptorSession> iter = this.sessions.values().iterator();
-		while (iter.hasNext()) {
-			NonblockingAcceptorSession nas = iter.next();
-			if (nas.getId().longValue() == session.getId().longValue()) {
-				nas.messages.add(message);
-				break;
+		NonblockingAcceptorSession nas = this.sessions.get(session.getId());
+		if (null != nas && this.offer(nas, message)) {
+			// 通知工作线程发送
+			nas.worker.pushSendSession(nas, true);
+		}
+	}
+
+	/** 向多个 Session 写入同一条消息。
+	 * 每个工作线程最多只被唤醒一次。
+	 */
+	@Override
+	public void write(Collection<Session> sessions, Message message) {
+		NonblockingAcceptorWorker[] workers = this.workers;
+		if (null == workers) {
+			return;
+		}
+
+		boolean[] wakeups = new boolean[workers.length];
+
+		for (Session session : sessions) {
+			NonblockingAcceptorSession nas = this.sessions.get(session.getId());
+			if (null == nas) {
+				continue;
+			}
+
+			if (!this.offer(nas, message)) {
+				continue;
+			}
+
+			if (nas.worker.pushSendSession(nas, false)) {
+				wakeups[nas.worker.getIndex()] = true;
+			}
+		}
+
+		for (int i = 0; i < workers.length; ++i) {
+			if (wakeups[i]) {
+				workers[i].wakeup();
 			}
 		}
 	}
 
+	/** 当前线程是否是接收器的接收线程。
+	 */
+	protected static boolean isAcceptThread() {
+		return null != ACCEPT_THREAD.get();
+	}
+
+	@Override
+	public void setOutboundFrameFormat(Session session, FrameFormat format) {
+		NonblockingAcceptorSession nas = this.sessions.get(session.getId());
+		if (null != nas) {
+			nas.sendQueue.setFrameFormat(format);
+		}
+	}
+
+	@Override
+	protected void frameCorrupted(Session session) {
+		this.fireErrorOccurred(session, MessageErrorCode.FRAME_CORRUPTED);
+		this.close(session);
+	}
+
+	/** 将消息放入会话的发送队列，并按水位线和上限处理可写状态。
+	 * I/O 线程写入时不会被阻塞。
+	 * 
+	 * @return 消息被拒绝时返回 false 。
+	 */
+	private boolean offer(NonblockingAcceptorSession session, Message message) {
+		int state = session.sendQueue.offer(message);
+		if (state == MessageSendQueue.OFFER_REJECTED) {
+			Logger.w(NonblockingAcceptor.class, "Session " + session.getId() + " outbound data overflow, disconnect it");
+			this.fireErrorOccurred(session, MessageErrorCode.WRITE_OVERFLOW);
+			this.close(session);
+			return false;
+		}
+		else if (state == MessageSendQueue.OFFER_DISCARDED) {
+			return false;
+		}
+		else if (state == MessageSendQueue.OFFER_UNWRITABLE) {
+			this.fireSessionUnwritable(session);
+		}
+
+		return true;
+	}
+
 	@Override
 	public void read(Message message, Session session) {
 		// Nothing
@@ -278,6 +463,7 @@ public class NonblockingAcceptor extends MessageService implements MessageAccept
 	}
 
 	/** 设置工作器数量。
+	 * @note 在 bind 之前设置才能生效。
 	 */
 	public void setWorkerNum(int num) {
 		this.workerNum = num;
@@ -288,36 +474,57 @@ public class NonblockingAcceptor extends MessageService implements MessageAccept
 		return this.workerNum;
 	}
 
+	/** 返回 I/O 统计快照，包含当前所有会话的待发送数据量。
+	 */
+	@Override
+	public IoMetrics.Snapshot getMetricsSnapshot() {
+		int num = 0;
+		long pendingBytes = 0;
+		long pendingMessages = 0;
+		for (NonblockingAcceptorSession session : this.sessions.values()) {
+			++num;
+			pendingBytes += session.getPendingBytes();
+			pendingMessages += session.sendQueue.getPendingMessages();
+		}
+		return this.getMetrics().snapshot(num, pendingBytes, pendingMessages);
+	}
+
+	/** 返回所有会话的 I/O 统计快照。
+	 */
+	public List<SessionMetrics> getSessionMetrics() {
+		ArrayList<SessionMetrics> list = new ArrayList<SessionMetrics>(this.sessions.size());
+		for (NonblockingAcceptorSession session : this.sessions.values()) {
+			list.add(session.getMetrics());
+		}
+		return list;
+	}
+
 	/** 返回所有 Session 。
 	 */
 	public Collection<NonblockingAcceptorSession> getSessions() {
 		return this.sessions.values();
 	}
 
+	/** 返回指定 ID 的 Session 。
+	 */
+	public NonblockingAcceptorSession getSession(Long id) {
+		return this.sessions.get(id);
+	}
+
 	/** 从接收器里删除指定的 Session 。
 	 */
-	protected synchronized void eraseSession(NonblockingAcceptorSession session) {
-		if (null == session.socket) {
+	protected void eraseSession(NonblockingAcceptorSession session) {
+		if (!session.open) {
 			return;
 		}
 
-		boolean exist = false;
-
-		Iterator<Map.Entry<Integer, NonblockingAcceptorSession>> iter = this.sessions.entrySet().iterator();
-		while (iter.hasNext()) {
-			Map.Entry<Integer, NonblockingAcceptorSession> entry = iter.next();
-			Integer hashCode = entry.getKey();
-			NonblockingAcceptorSession nas = entry.getValue();
-			if (nas.getId().longValue() == session.getId().longValue()) {
-				this.sessions.remove(hashCode);
-				exist = true;
-				break;
+		if (this.sessions.remove(session.getId(), session)) {
+			if (null != session.admittedAddress) {
+				this.admission.release(session.admittedAddress);
 			}
-		}
 
-		if (exist) {
 			this.fireSessionDestroyed(session);
-			session.socket = null;
+			session.open = false;
 		}
 	}
 
@@ -376,7 +583,18 @@ public class NonblockingAcceptor extends MessageService implements MessageAccept
 	/** 事件循环。 */
 	private void loopDispatch() throws IOException, Exception {
 		while (this.spinning) {
-			while (this.selector.isOpen() && this.selector.select() > 0) {
+			if (!this.selector.isOpen()) {
+				break;
+			}
+
+			int num = this.selector.select(this.sampleInterval);
+
+			long now = System.currentTimeMillis();
+			if (now - this.lastSampleTime >= this.sampleInterval) {
+				this.sample(now);
+			}
+
+			if (num > 0) {
 				Iterator<SelectionKey> it = this.selector.selectedKeys().iterator();
 				while (it.hasNext()) {
 					SelectionKey key = (SelectionKey) it.next();
@@ -386,12 +604,6 @@ public class NonblockingAcceptor extends MessageService implements MessageAccept
 						if (key.isAcceptable()) {
 							accept(key);
 						}
-						else if (key.isReadable()) {
-							receive(key);
-						}
-						else if (key.isWritable()) {
-							send(key);
-						}
 					}
 					catch (Exception e) {
 						if (this.spinning) {
@@ -403,112 +615,212 @@ public class NonblockingAcceptor extends MessageService implements MessageAccept
 						}
 					}
 				}
-
-				try {
-					Thread.sleep(1);
-				} catch (InterruptedException e) {
-					Logger.log(NonblockingAcceptor.class, e, LogLevel.DEBUG);
-				}
-			} // # while
-
-			Thread.yield();
+			}
 		} // # while
 	}
 
-	/** 处理 Accept */
-	private void accept(SelectionKey key) {
-		ServerSocketChannel channel = (ServerSocketChannel)key.channel();
-
-		try {
-			SocketChannel clientChannel = channel.accept();
-			if (this.sessions.size() >= this.getMaxConnectNum()) {
-				clientChannel.socket().close();
-				clientChannel.close();
-				return;
-			}
+	/** 采样工作线程负载，到达迁移周期时迁移热点 Session 。 */
+	private void sample(long now) {
+		NonblockingAcceptorWorker[] workers = this.workers;
+		if (null == workers) {
+			return;
+		}
 
-			clientChannel.configureBlocking(false);
-			clientChannel.register(this.selector, SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+		long elapsed = now - this.lastSampleTime;
+		this.lastSampleTime = now;
+		if (elapsed <= 0 || elapsed > this.sampleInterval * 10) {
+			// 首次采样或间隔异常时只记录基准值
+			elapsed = this.sampleInterval;
+		}
 
-			// 创建 Session
-			InetSocketAddress address = new InetSocketAddress(clientChannel.socket().getInetAddress().getHostAddress(),
-					clientChannel.socket().getPort());
-			NonblockingAcceptorSession session = new NonblockingAcceptorSession(this, address, this.block);
-			// 设置 Socket
-			session.socket = clientChannel.socket();
+		for (NonblockingAcceptorWorker worker : workers) {
+			worker.sample(elapsed);
+		}
 
-			// 为 Session 选择工作线程
-			int index = (int)(session.getId() % this.workerNum);
-			session.worker = this.workers[index];
+		this.admission.purge(now);
 
-			// 记录
-			this.sessions.put(clientChannel.socket().hashCode(), session);
+		if (this.rebalanceInterval <= 0 || workers.length < 2) {
+			return;
+		}
 
-			// 回调事件
-			this.fireSessionCreated(session);
+		for (NonblockingAcceptorSession session : this.sessions.values()) {
+			session.sample(elapsed);
+		}
 
-			// 回调事件
-			this.fireSessionOpened(session);
-		} catch (IOException e) {
-			// Nothing
-		} catch (Exception e) {
-			// Nothing
+		if (now - this.lastRebalanceTime >= this.rebalanceInterval) {
+			this.lastRebalanceTime = now;
+			this.rebalance(workers, now);
 		}
 	}
 
-	/** 处理 Read */
-	private void receive(SelectionKey key) {
-		SocketChannel channel = (SocketChannel) key.channel();
+	/** 从负载最高的工作线程向负载最低的工作线程迁移一个 Session 。 */
+	private void rebalance(NonblockingAcceptorWorker[] workers, long now) {
+		NonblockingAcceptorWorker hot = workers[0];
+		NonblockingAcceptorWorker cold = workers[0];
+		for (int i = 1; i < workers.length; ++i) {
+			if (workers[i].getBytesPerSecond() > hot.getBytesPerSecond()) {
+				hot = workers[i];
+			}
+			if (workers[i].getBytesPerSecond() < cold.getBytesPerSecond()) {
+				cold = workers[i];
+			}
+		}
 
-		if (!channel.isConnected()) {
+		long gap = hot.getBytesPerSecond() - cold.getBytesPerSecond();
+		if (gap < this.rebalanceThreshold) {
 			return;
 		}
 
-		NonblockingAcceptorSession session = this.sessions.get(channel.socket().hashCode());
-		if (null == session) {
+		// 迁移速率为 r 的 Session 后差距变为 |gap - 2r| ，选择最接近 gap / 2 的 Session ，
+		// 刚迁移过的 Session 在两个周期内不再迁移，避免来回迁移
+		NonblockingAcceptorSession selected = null;
+		long best = gap;
+		for (NonblockingAcceptorSession session : this.sessions.values()) {
+			if (session.worker != hot || session.bytesPerSecond <= 0
+					|| now - session.migrateTime < this.rebalanceInterval * 2) {
+				continue;
+			}
+
+			long remain = Math.abs(gap - session.bytesPerSecond * 2);
+			if (remain < best) {
+				best = remain;
+				selected = session;
+			}
+		}
+
+		if (null != selected) {
+			selected.migrateTime = now;
+			hot.pushMigrateSession(selected, cold);
+
 			if (Logger.isDebugLevel()) {
-				Logger.d(NonblockingAcceptor.class, "Not found session");
+				Logger.d(NonblockingAcceptor.class, "Migrate session " + selected.getId() + " ("
+						+ selected.bytesPerSecond + " B/s) from worker " + hot.getIndex() + " to worker " + cold.getIndex());
 			}
-			return;
 		}
+	}
 
-		// 推入 Worker
-		session.selectionKey = key;
-		session.worker.pushReceiveSession(session);
+	/** 绑定同主机 Unix 域套接字，失败时仅使用 TCP 。 */
+	private void bindUnixChannel(int port) {
+		String path = UnixDomainSockets.bindPath(this.localTransport, this.localName, port);
+		if (null == path) {
+			return;
+		}
 
+		ServerSocketChannel unix = null;
 		try {
-			if (channel.isOpen())
-				channel.register(this.selector, SelectionKey.OP_WRITE | SelectionKey.OP_READ);
+			// 删除上次运行遗留的套接字文件
+			File file = new File(path);
+			file.delete();
+			if (null != file.getParentFile()) {
+				file.getParentFile().mkdirs();
+			}
+
+			unix = UnixDomainSockets.openServerChannel();
+			unix.bind(UnixDomainSockets.toAddress(path), this.getTransportProfile().getBacklog());
+			unix.configureBlocking(false);
+			unix.register(this.selector, SelectionKey.OP_ACCEPT);
+
+			this.unixChannel = unix;
+			this.unixPath = path;
 		} catch (IOException e) {
-			Logger.log(NonblockingAcceptor.class, e, LogLevel.DEBUG);
+			Logger.w(NonblockingAcceptor.class, "Can not bind unix domain socket " + path + ": " + e.getMessage());
+			if (null != unix) {
+				try {
+					unix.close();
+				} catch (IOException ce) {
+					// Nothing
+				}
+			}
 		}
 	}
 
-	/** 处理 Write */
-	private void send(SelectionKey key) {
-		SocketChannel channel = (SocketChannel) key.channel();
+	/** 处理 Accept */
+	private void accept(SelectionKey key) {
+		ServerSocketChannel channel = (ServerSocketChannel)key.channel();
 
-		if (!channel.isConnected()) {
+		SocketChannel clientChannel = null;
+		try {
+			clientChannel = channel.accept();
+		} catch (IOException e) {
+			Logger.log(NonblockingAcceptor.class, e, LogLevel.WARNING);
 			return;
 		}
+		if (null == clientChannel) {
+			return;
+		}
+
+		// Unix 域套接字没有网络地址，不检查地址相关的准入限制
+		InetAddress remote = (channel == this.unixChannel) ? null : clientChannel.socket().getInetAddress();
+
+		// 准入检查，拒绝的连接在创建 Session 之前关闭
+		int result = this.admission.admit(remote, this.sessions.size(), this.getMaxConnectNum(),
+				System.currentTimeMillis());
+		if (result != AdmissionControl.ADMITTED) {
+			this.getMetrics().increment(IoMetrics.SESSIONS_REJECTED);
+			closeChannel(clientChannel);
 
-		NonblockingAcceptorSession session = this.sessions.get(channel.socket().hashCode());
-		if (null == session) {
 			if (Logger.isDebugLevel()) {
-				Logger.d(NonblockingAcceptor.class, "Not found session");
+				Logger.d(NonblockingAcceptor.class, "Reject connection from " + remote + ", reason: " + result);
 			}
 			return;
 		}
 
-		// 推入 Worker
-		session.selectionKey = key;
-		session.worker.pushSendSession(session);
+		NonblockingAcceptorSession session = null;
+		try {
+			clientChannel.configureBlocking(false);
 
+			// 创建 Session
+			InetSocketAddress address = null;
+			if (null == remote) {
+				// 使用本机回环地址
+				address = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+			}
+			else {
+				this.getTransportProfile().configure(clientChannel);
+				address = new InetSocketAddress(remote.getHostAddress(), clientChannel.socket().getPort());
+			}
+			session = new NonblockingAcceptorSession(this, address, this.block);
+			session.admittedAddress = remote;
+			session.open = true;
+			this.getMetrics().increment(IoMetrics.SESSIONS_OPENED);
+
+			// 为 Session 选择工作线程
+			this.assignStrategy.select(this.workers, session).assign(session);
+
+			// 记录
+			this.sessions.put(session.getId(), session);
+
+			// 回调事件
+			this.fireSessionCreated(session);
+
+			// 回调事件
+			this.fireSessionOpened(session);
+
+			// 交由工作线程注册并处理该连接的读写事件
+			session.worker.pushRegisterSession(session, clientChannel);
+		} catch (Exception e) {
+			Logger.log(NonblockingAcceptor.class, e, LogLevel.WARNING);
+
+			if (null != session && null != session.worker) {
+				// 已经分配了工作线程，由工作线程关闭连接、移除 Session 并释放准入名额
+				session.channel = clientChannel;
+				session.worker.pushCloseSession(session);
+				return;
+			}
+
+			if (null != remote) {
+				this.admission.release(remote);
+			}
+			closeChannel(clientChannel);
+		}
+	}
+
+	/** 关闭未交给工作线程的连接。 */
+	private static void closeChannel(SocketChannel channel) {
 		try {
-			if (channel.isOpen())
-				channel.register(this.selector, SelectionKey.OP_WRITE | SelectionKey.OP_READ);
+			channel.close();
 		} catch (IOException e) {
-			Logger.log(NonblockingAcceptor.class, e, LogLevel.WARNING);
+			Logger.log(NonblockingAcceptor.class, e, LogLevel.DEBUG);
 		}
 	}
 }
@@ -26,11 +26,11 @@ THE SOFTWARE.
 
 package net.cellcloud.common;
 
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
-import java.net.Socket;
-import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
-import java.util.Vector;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /** 非阻塞网络接收器会话。
  * 
@@ -38,34 +38,85 @@ import java.util.Vector;
  */
 public class NonblockingAcceptorSession extends Session {
 
-	private ByteBuffer readBuffer;
-	private ByteBuffer writeBuffer;
+	// 自适应接收数据大小
+	protected AdaptiveReceiveSize receiveSize;
+	// 数据帧解码器
+	protected FrameDecoder frameDecoder;
 
-	// 待发送消息列表
-	protected Vector<Message> messages = new Vector<Message>();
+	// 待发送消息队列
+	protected MessageSendQueue sendQueue;
+
+	// 是否已经提交发送任务
+	protected AtomicBoolean sendScheduled = new AtomicBoolean(false);
 
 	protected SelectionKey selectionKey = null;
-	protected Socket socket = null;
+	protected SocketChannel channel = null;
+	// 连接是否处于打开状态
+	protected volatile boolean open = false;
+	// 准入控制记录的来源地址，会话销毁时释放
+	protected InetAddress admittedAddress = null;
+
+	// 所属的工作线程，迁移时由原工作线程修改
+	protected volatile NonblockingAcceptorWorker worker = null;
+	// 等待迁入的目标工作线程
+	protected volatile NonblockingAcceptorWorker migrateTarget = null;
+	// 最近一次迁移的时间
+	protected long migrateTime = 0;
 
-	// 所属的工作线程
-	protected NonblockingAcceptorWorker worker = null;
+	// 累计接收和发送的字节数，仅由所属工作线程更新
+	protected volatile long receivedBytes = 0;
+	protected volatile long sentBytes = 0;
+	// 累计接收和发送的消息数，仅由所属工作线程更新
+	protected volatile long messagesIn = 0;
+	protected volatile long messagesOut = 0;
+	// 最近一个采样周期的每秒收发字节数，由接收器采样更新
+	protected long bytesPerSecond = 0;
+	private long lastSampleBytes = 0;
 
 	/** 构造函数。
 	 */
 	public NonblockingAcceptorSession(MessageService service,
 			InetSocketAddress address, int block) {
 		super(service, address);
-		this.readBuffer = ByteBuffer.allocate(block);
-		this.writeBuffer = ByteBuffer.allocate(block);
+		this.receiveSize = new AdaptiveReceiveSize(ByteBufferPool.MIN_CAPACITY, 2048, block);
+		this.sendQueue = new MessageSendQueue(service);
+		this.frameDecoder = service.createFrameDecoder(this);
+	}
+
+	/** 会话当前是否可写。
+	 * 待发送数据超过高水位线后不可写，回落到低水位线后恢复可写。
+	 */
+	public boolean isWritable() {
+		return this.sendQueue.isWritable();
+	}
+
+	/** 返回待发送数据的字节数。 */
+	public long getPendingBytes() {
+		return this.sendQueue.getPendingBytes();
+	}
+
+	/** 返回累计接收的字节数。 */
+	public long getReceivedBytes() {
+		return this.receivedBytes;
 	}
 
-	/** 返回读缓存。 */
-	public ByteBuffer getReadBuffer() {
-		return this.readBuffer;
+	/** 返回累计发送的字节数。 */
+	public long getSentBytes() {
+		return this.sentBytes;
 	}
 
-	/** 返回写缓存。 */
-	public ByteBuffer getWriteBuffer() {
-		return this.writeBuffer;
+	/** 返回会话的 I/O 统计快照。 */
+	public SessionMetrics getMetrics() {
+		NonblockingAcceptorWorker worker = this.worker;
+		return new SessionMetrics(this, (null != worker) ? worker.getIndex() : -1,
+				this.receivedBytes, this.sentBytes, this.messagesIn, this.messagesOut, this.sendQueue);
+	}
+
+	/** 采样每秒收发字节数。
+	 */
+	protected void sample(long elapsed) {
+		long total = this.receivedBytes + this.sentBytes;
+		this.bytesPerSecond = (total - this.lastSampleBytes) * 1000L / elapsed;
+		this.lastSampleBytes = total;
 	}
 }
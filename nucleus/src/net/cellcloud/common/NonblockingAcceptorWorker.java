@@ -28,32 +28,74 @@ package net.cellcloud.common;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
-import java.util.Vector;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 
 /** 非阻塞网络接收器工作线程。
+ * 
+ * 每个工作线程持有独立的选择器，负责分配给它的所有 Session 的读写。
+ * Session 可以在工作线程之间迁移，迁移由原工作线程发起，
+ * 迁移后原工作线程收到的发送和关闭任务转交给新的工作线程。
  * 
  * @author Jiangwei Xu
  */
 public final class NonblockingAcceptorWorker extends Thread {
 
-	// 控制线程生命周期的条件变量
-	private byte[] mutex = new byte[0];
+	/// 每次读就绪事件最多读取的次数，未读完的数据在下一次选择时继续读取，避免单个 Session 占用工作线程
+	private static final int MAX_READS_PER_EVENT = 16;
+
 	// 是否处于自旋
-	private boolean spinning = false;
+	private volatile boolean spinning = false;
 	// 是否正在工作
-	private boolean working = false;
+	private volatile boolean working = false;
 
 	private NonblockingAcceptor acceptor;
+	// 工作线程在接收器中的索引
+	private int index;
 
-	// 需要执行接收数据任务的 Session 列表
-	private Vector<NonblockingAcceptorSession> receiveSessions = new Vector<NonblockingAcceptorSession>();
-	// 需要执行发送数据任务的 Session 列表
-	private Vector<NonblockingAcceptorSession> sendSessions = new Vector<NonblockingAcceptorSession>();
+	// 工作线程独占的选择器
+	private Selector selector;
 
-	public NonblockingAcceptorWorker(NonblockingAcceptor acceptor) {
+	// 等待注册到选择器的 Session 列表
+	private ConcurrentLinkedQueue<NonblockingAcceptorSession> registerSessions = new ConcurrentLinkedQueue<NonblockingAcceptorSession>();
+	// 需要执行发送数据任务的 Session 列表
+	private ConcurrentLinkedQueue<NonblockingAcceptorSession> sendSessions = new ConcurrentLinkedQueue<NonblockingAcceptorSession>();
+	// 需要关闭的 Session 列表
+	private ConcurrentLinkedQueue<NonblockingAcceptorSession> closeSessions = new ConcurrentLinkedQueue<NonblockingAcceptorSession>();
+	// 需要迁出的 Session 列表
+	private ConcurrentLinkedQueue<NonblockingAcceptorSession> migrateSessions = new ConcurrentLinkedQueue<NonblockingAcceptorSession>();
+
+	// 分配给本线程的 Session 数量
+	private AtomicInteger sessionNum = new AtomicInteger(0);
+	// 累计接收和发送的字节数，仅由本线程更新
+	private volatile long receivedBytes = 0;
+	private volatile long sentBytes = 0;
+	// 最近一个采样周期的每秒收发字节数
+	private volatile long bytesPerSecond = 0;
+	private long lastSampleBytes = 0;
+	// 迁入和迁出的 Session 数量
+	private AtomicLong migratedIn = new AtomicLong(0);
+	private AtomicLong migratedOut = new AtomicLong(0);
+
+	// 已发送消息的临时列表
+	private ArrayList<Message> sentMessages = new ArrayList<Message>();
+	// 已接收消息的临时列表
+	private ArrayList<Message> receivedMessages = new ArrayList<Message>();
+
+	public NonblockingAcceptorWorker(NonblockingAcceptor acceptor, int index) throws IOException {
 		this.acceptor = acceptor;
+		this.index = index;
+		this.selector = Selector.open();
 		this.setName("NonblockingAcceptorWorker@" + this.toString());
 	}
 
@@ -61,40 +103,89 @@ public final class NonblockingAcceptorWorker extends Thread {
 	public void run() {
 		this.working = true;
 		this.spinning = true;
-		NonblockingAcceptorSession session = null;
 
 		while (this.spinning) {
-			// 如果没有任务，则线程 wait
-			synchronized (this.mutex) {
-				if (this.receiveSessions.isEmpty()
-					&& this.sendSessions.isEmpty()
-					&& this.spinning) {
-					try {
-						this.mutex.wait();
-					} catch (InterruptedException e) {
-						Logger.log(NonblockingAcceptorWorker.class, e, LogLevel.DEBUG);
+			try {
+				this.selector.select();
+			} catch (IOException e) {
+				Logger.log(NonblockingAcceptorWorker.class, e, LogLevel.WARNING);
+				break;
+			} catch (ClosedSelectorException e) {
+				break;
+			}
+
+			// 注册新连接
+			this.processRegister();
+
+			// 处理读事件
+			Iterator<SelectionKey> it = this.selector.selectedKeys().iterator();
+			while (it.hasNext()) {
+				SelectionKey key = it.next();
+				it.remove();
+
+				try {
+					NonblockingAcceptorSession session = (NonblockingAcceptorSession) key.attachment();
+					if (key.isValid() && key.isReadable()) {
+						processReceive(session);
+					}
+					if (key.isValid() && key.isWritable()) {
+						processSend(session);
 					}
+				} catch (CancelledKeyException e) {
+					// Nothing
+				} catch (Exception e) {
+					Logger.log(NonblockingAcceptorWorker.class, e, LogLevel.ERROR);
 				}
 			}
 
-			if (!this.receiveSessions.isEmpty()) {
-				// 执行接收数据任务，并移除已执行的 Session
-				session = this.receiveSessions.remove(0);
-				if (null != session.socket) {
-					processReceive(session);
+			// 处理发送任务
+			NonblockingAcceptorSession session = null;
+			while (null != (session = this.sendSessions.poll())) {
+				session.sendScheduled.set(false);
+				if (session.worker != this) {
+					// 已迁出，转交给新的工作线程
+					session.worker.pushSendSession(session, true);
+				}
+				else if (session.open && null != session.selectionKey) {
+					processSend(session);
 				}
 			}
 
-			if (!this.sendSessions.isEmpty()) {
-				// 执行发送数据任务，并移除已执行的 Session
-				session = this.sendSessions.remove(0);
-				if (null != session.socket) {
-					processSend(session);
+			// 处理关闭任务
+			while (null != (session = this.closeSessions.poll())) {
+				if (session.worker != this) {
+					session.worker.pushCloseSession(session);
+				}
+				else {
+					this.close(session);
 				}
 			}
 
-			// 让步
-			Thread.yield();
+			// 处理迁移任务
+			while (null != (session = this.migrateSessions.poll())) {
+				this.migrate(session);
+			}
+		}
+
+		// 关闭所有由本线程管理的 Session
+		for (SelectionKey key : this.selector.keys()) {
+			NonblockingAcceptorSession session = (NonblockingAcceptorSession) key.attachment();
+			if (null != session && session.worker == this) {
+				this.close(session);
+			}
+		}
+		NonblockingAcceptorSession session = null;
+		while (null != (session = this.registerSessions.poll())) {
+			this.close(session);
+		}
+		this.sendSessions.clear();
+		this.closeSessions.clear();
+		this.migrateSessions.clear();
+
+		try {
+			this.selector.close();
+		} catch (IOException e) {
+			Logger.log(NonblockingAcceptorWorker.class, e, LogLevel.DEBUG);
 		}
 
 		this.working = false;
@@ -105,9 +196,7 @@ public final class NonblockingAcceptorWorker extends Thread {
 	protected void stopSpinning(boolean blockingCheck) {
 		this.spinning = false;
 
-		synchronized (this.mutex) {
-			this.mutex.notifyAll();
-		}
+		this.selector.wakeup();
 
 		if (blockingCheck) {
 			while (this.working) {
@@ -120,16 +209,73 @@ public final class NonblockingAcceptorWorker extends Thread {
 		}
 	}
 
+	/** 返回工作线程索引。
+	 */
+	protected int getIndex() {
+		return this.index;
+	}
+
+	/** 唤醒工作线程的选择器。
+	 */
+	protected void wakeup() {
+		this.selector.wakeup();
+	}
+
 	/** 返回线程是否正在工作。
 	 */
 	protected boolean isWorking() {
 		return this.working;
 	}
 
-	/** 返回当前未处理的接收任务 Session 数量。
+	/** 返回分配给本线程的 Session 数量。
+	 */
+	public int getSessionNum() {
+		return this.sessionNum.get();
+	}
+
+	/** 返回累计接收的字节数。
+	 */
+	public long getReceivedBytes() {
+		return this.receivedBytes;
+	}
+
+	/** 返回累计发送的字节数。
+	 */
+	public long getSentBytes() {
+		return this.sentBytes;
+	}
+
+	/** 返回最近一个采样周期的每秒收发字节数。
+	 */
+	public long getBytesPerSecond() {
+		return this.bytesPerSecond;
+	}
+
+	/** 返回迁入的 Session 数量。
+	 */
+	public long getMigratedInNum() {
+		return this.migratedIn.get();
+	}
+
+	/** 返回迁出的 Session 数量。
 	 */
-	protected int getReceiveSessionNum() {
-		return this.receiveSessions.size();
+	public long getMigratedOutNum() {
+		return this.migratedOut.get();
+	}
+
+	/** 采样每秒收发字节数，由接收器周期调用。
+	 */
+	protected void sample(long elapsed) {
+		long total = this.receivedBytes + this.sentBytes;
+		this.bytesPerSecond = (total - this.lastSampleBytes) * 1000L / elapsed;
+		this.lastSampleBytes = total;
+	}
+
+	/** 记录分配给本线程的 Session 。
+	 */
+	protected void assign(NonblockingAcceptorSession session) {
+		session.worker = this;
+		this.sessionNum.incrementAndGet();
 	}
 
 	/** 返回当前未处理的发送任务 Session 数量。
@@ -138,270 +284,279 @@ public final class NonblockingAcceptorWorker extends Thread {
 		return this.sendSessions.size();
 	}
 
-	/** 添加执行接收数据的 Session 。
+	/** 添加需要注册到本线程选择器的 Session 。
 	 */
-	protected void pushReceiveSession(NonblockingAcceptorSession session) {
+	protected void pushRegisterSession(NonblockingAcceptorSession session, SocketChannel channel) {
+		session.channel = channel;
+		this.registerSessions.offer(session);
+		this.selector.wakeup();
+	}
+
+	/** 添加执行发送数据的 Session 。
+	 * @return 如果 Session 新加入了发送任务列表返回 true 。
+	 */
+	protected boolean pushSendSession(NonblockingAcceptorSession session, boolean wakeup) {
 		if (!this.spinning) {
-			return;
+			return false;
 		}
 
-		this.receiveSessions.add(session);
+		if (session.sendQueue.isEmpty()) {
+			return false;
+		}
 
-		synchronized (this.mutex) {
-			this.mutex.notifyAll();
+		if (session.sendScheduled.compareAndSet(false, true)) {
+			this.sendSessions.offer(session);
+			if (wakeup) {
+				this.selector.wakeup();
+			}
+			return true;
 		}
+
+		return false;
 	}
 
-	/** 添加执行发送数据的 Session 。
+	/** 添加需要关闭的 Session 。
 	 */
-	protected void pushSendSession(NonblockingAcceptorSession session) {
-		if (!this.spinning) {
-			return;
-		}
+	protected void pushCloseSession(NonblockingAcceptorSession session) {
+		this.closeSessions.offer(session);
+		this.selector.wakeup();
+	}
+
+	/** 请求将 Session 迁移到指定的工作线程。
+	 */
+	protected void pushMigrateSession(NonblockingAcceptorSession session, NonblockingAcceptorWorker target) {
+		session.migrateTarget = target;
+		this.migrateSessions.offer(session);
+		this.selector.wakeup();
+	}
+
+	/** 将 Session 从本线程的选择器注销并交给目标工作线程注册。
+	 */
+	private void migrate(NonblockingAcceptorSession session) {
+		NonblockingAcceptorWorker target = session.migrateTarget;
+		session.migrateTarget = null;
 
-		if (session.messages.isEmpty()) {
+		if (!session.open || session.worker != this || null == session.selectionKey
+				|| null == target || target == this || !target.spinning) {
 			return;
 		}
 
-		this.sendSessions.add(session);
+		session.selectionKey.cancel();
+		session.selectionKey = null;
+
+		this.sessionNum.decrementAndGet();
+		this.migratedOut.incrementAndGet();
+		target.sessionNum.incrementAndGet();
+		target.migratedIn.incrementAndGet();
 
-		synchronized (this.mutex) {
-			this.mutex.notifyAll();
+		// 修改所属线程后本线程不再访问该 Session 的通道和解码器
+		session.worker = target;
+		target.pushRegisterSession(session, session.channel);
+	}
+
+	/** 将新连接注册到本线程的选择器。
+	 */
+	private void processRegister() {
+		NonblockingAcceptorSession session = null;
+		while (null != (session = this.registerSessions.poll())) {
+			if (session.worker != this) {
+				// 注册前已迁出
+				continue;
+			}
+
+			if (!session.open) {
+				// 注册前已关闭
+				try {
+					session.channel.close();
+				} catch (IOException e) {
+					Logger.log(NonblockingAcceptorWorker.class, e, LogLevel.DEBUG);
+				}
+				continue;
+			}
+
+			try {
+				session.selectionKey = session.channel.register(this.selector, SelectionKey.OP_READ, session);
+			} catch (ClosedChannelException e) {
+				Logger.log(NonblockingAcceptorWorker.class, e, LogLevel.DEBUG);
+				this.close(session);
+				continue;
+			}
+
+			// 发送在注册之前写入的消息
+			if (!session.sendQueue.isEmpty()) {
+				processSend(session);
+			}
 		}
 	}
 
-	/** 从所有列表中移除指定的 Session 。
+	/** 关闭 Session 的连接并从接收器中移除。
 	 */
-	private void removeSession(NonblockingAcceptorSession session) {
-		boolean exist = this.receiveSessions.remove(session);
-		while (exist) {
-			exist = this.receiveSessions.remove(session);
+	private void close(NonblockingAcceptorSession session) {
+		if (!session.open) {
+			return;
 		}
 
-		exist = this.sendSessions.remove(session);
-		while (exist) {
-			exist = this.sendSessions.remove(session);
+		this.sessionNum.decrementAndGet();
+		this.acceptor.getMetrics().increment(IoMetrics.SESSIONS_CLOSED);
+
+		this.acceptor.fireSessionClosed(session);
+
+		if (null != session.selectionKey) {
+			session.selectionKey.cancel();
 		}
+
+		// 在回调中关闭的 Session 可能还没有移交通道，通道在注册时关闭
+		try {
+			if (null != session.channel && session.channel.isOpen())
+				session.channel.close();
+		} catch (IOException e) {
+			Logger.log(NonblockingAcceptorWorker.class, e, LogLevel.DEBUG);
+		}
+
+		session.sendQueue.close();
+
+		// 移除 Session
+		this.acceptor.eraseSession(session);
 	}
 
 	/** 处理接收。
 	 */
 	private void processReceive(NonblockingAcceptorSession session) {
-		SocketChannel channel = (SocketChannel) session.selectionKey.channel();
+		SocketChannel channel = session.channel;
 
 		if (!channel.isConnected()) {
 			return;
 		}
 
-		// 获取 Session 的读缓存。
-		ByteBuffer buf = session.getReadBuffer();
+		ByteBufferPool pool = this.acceptor.getBufferPool();
+		IoMetrics metrics = this.acceptor.getMetrics();
 		int read = 0;
+		int reads = 0;
 		do {
-			synchronized (buf) {
-				try {
-					if (channel.isOpen())
-						read = channel.read(buf);
-					else
-						read = -1;
-				} catch (IOException e) {
-					if (Logger.isDebugLevel()) {
-						Logger.d(this.getClass(), "Remote host has closed the connection.");
-					}
-
-					if (null != session.socket) {
-						this.acceptor.fireSessionClosed(session);
-					}
-
-					try {
-						if (channel.isOpen())
-							channel.close();
-					} catch (IOException ioe) {
-						Logger.log(NonblockingAcceptorWorker.class, ioe, LogLevel.DEBUG);
-					}
-
-					// 移除 Session
-					this.acceptor.eraseSession(session);
-
-					this.removeSession(session);
-
-					session.selectionKey.cancel();
-
-					return;
-				}
-
-				if (read == 0) {
-					break;
+			// 仅在读取期间从池中借用缓冲区
+			ByteBuffer buf = pool.acquire(session.receiveSize.next());
+			try {
+				if (channel.isOpen())
+					read = channel.read(buf);
+				else
+					read = -1;
+			} catch (IOException e) {
+				pool.release(buf);
+
+				if (Logger.isDebugLevel()) {
+					Logger.d(this.getClass(), "Remote host has closed the connection.");
 				}
-				else if (read == -1) {
-					if (null != session.socket) {
-						this.acceptor.fireSessionClosed(session);
-					}
 
-					try {
-						if (channel.isOpen())
-							channel.close();
-					} catch (IOException ioe) {
-						Logger.log(NonblockingAcceptorWorker.class, ioe, LogLevel.DEBUG);
-					}
-
-					// 移除 Session
-					this.acceptor.eraseSession(session);
+				this.close(session);
+				return;
+			}
 
-					this.removeSession(session);
+			metrics.recordRead(read);
 
-					session.selectionKey.cancel();
+			if (read <= 0) {
+				pool.release(buf);
 
+				if (read == -1) {
+					this.close(session);
 					return;
 				}
+				break;
+			}
 
-				buf.flip();
-
-				byte[] array = new byte[read];
-				buf.get(array);
+			session.receiveSize.record(read);
+			session.receivedBytes += read;
+			this.receivedBytes += read;
 
-				// 解析数据
-				parse(session, array);
+			buf.flip();
 
-				buf.clear();
+			// 解码数据，解码出的消息在回调期间直接引用读缓冲区
+			try {
+				this.decode(session, buf);
+			} finally {
+				pool.release(buf);
 			}
-		} while (read > 0);
+		} while (read > 0 && ++reads < MAX_READS_PER_EVENT);
 	}
 
 	/** 处理发送。
 	 */
 	private void processSend(NonblockingAcceptorSession session) {
-		SocketChannel channel = (SocketChannel) session.selectionKey.channel();
+		SocketChannel channel = session.channel;
 
 		if (!channel.isConnected()) {
 			return;
 		}
 
-		if (!session.messages.isEmpty()) {
-			// 有消息，进行发送
-
-			Message message = null;
-
-			// 获取 Session 的写缓存
-			ByteBuffer buf = session.getWriteBuffer();
-			synchronized (buf) {
-				while (!session.messages.isEmpty()) {
-					message = session.messages.remove(0);
-
-					// 根据是否有数据掩码组装数据包
-					if (this.acceptor.existDataMark()) {
-						byte[] data = message.get();
-						byte[] head = this.acceptor.getHeadMark();
-						byte[] tail = this.acceptor.getTailMark();
-						byte[] pd = new byte[data.length + head.length + tail.length];
-						System.arraycopy(head, 0, pd, 0, head.length);
-						System.arraycopy(data, 0, pd, head.length, data.length);
-						System.arraycopy(tail, 0, pd, head.length + data.length, tail.length);
-						buf.put(pd);
-					}
-					else {
-						buf.put(message.get());
-					}
-
-					buf.flip();
+		boolean drained = false;
+		try {
+			drained = session.sendQueue.flush(channel, this.acceptor.getHeadMark(),
+					this.acceptor.getTailMark(), this.sentMessages,
+					this.acceptor.getTransportProfile().getWriteSpinCount());
+		} catch (IOException e) {
+			Logger.log(NonblockingAcceptorWorker.class, e, LogLevel.DEBUG);
+
+			this.sentMessages.clear();
+			this.acceptor.fireErrorOccurred(session, MessageErrorCode.WRITE_FAILED);
+			this.close(session);
+			return;
+		}
 
-					try {
-						channel.write(buf);
-					} catch (IOException e) {
-						Logger.log(NonblockingAcceptorWorker.class, e, LogLevel.WARNING);
-					}
+		// 回调事件
+		long bytes = 0;
+		for (int i = 0, size = this.sentMessages.size(); i < size; ++i) {
+			Message message = this.sentMessages.get(i);
+			bytes += message.length();
+			this.acceptor.fireMessageSent(session, message);
+		}
+		session.messagesOut += this.sentMessages.size();
+		this.sentMessages.clear();
+		session.sentBytes += bytes;
+		this.sentBytes += bytes;
 
-					buf.clear();
+		if (session.sendQueue.restoreWritable()) {
+			this.acceptor.fireSessionWritable(session);
+		}
 
-					// 回调事件
-					this.acceptor.fireMessageSent(session, message);
+		// 数据未写完时关注可写事件，写完后取消关注
+		SelectionKey key = session.selectionKey;
+		try {
+			if (drained) {
+				if ((key.interestOps() & SelectionKey.OP_WRITE) != 0) {
+					key.interestOps(SelectionKey.OP_READ);
 				}
-			} //# synchronized
+			}
+			else {
+				key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+			}
+		} catch (CancelledKeyException e) {
+			// Nothing
 		}
 	}
 
-	/** 解析数据格式。
+	/** 解码数据并回调已接收的消息。
 	 */
-	private void parse(NonblockingAcceptorSession session, byte[] data) {
+	private void decode(NonblockingAcceptorSession session, ByteBuffer buf) {
 		// 拦截器返回 true 则该数据被拦截，不再进行数据解析。
-		if (this.acceptor.fireIntercepted(session, data)) {
-			return;
+		if (null != this.acceptor.getInterceptor()) {
+			byte[] data = new byte[buf.remaining()];
+			buf.duplicate().get(data);
+			if (this.acceptor.fireIntercepted(session, data)) {
+				return;
+			}
 		}
 
-		// 根据数据标志获取数据
-		if (this.acceptor.existDataMark()) {
-			byte[] headMark = this.acceptor.getHeadMark();
-			byte[] tailMark = this.acceptor.getTailMark();
-
-			int cursor = 0;
-			int length = data.length;
-			boolean head = false;
-			boolean tail = false;
-			byte[] buf = new byte[this.acceptor.block];
-			int bufIndex = 0;
-
-			while (cursor < length) {
-				head = true;
-				tail = true;
-
-				byte b = data[cursor];
-
-				// 判断是否是头标识
-				if (b == headMark[0]) {
-					for (int i = 1, len = headMark.length; i < len; ++i) {
-						if (data[cursor + i] != headMark[i]) {
-							head = false;
-							break;
-						}
-					}
-				}
-				else {
-					head = false;
-				}
+		session.frameDecoder.decode(buf, this.receivedMessages);
 
-				// 判断是否是尾标识
-				if (b == tailMark[0]) {
-					for (int i = 1, len = tailMark.length; i < len; ++i) {
-						if (data[cursor + i] != tailMark[i]) {
-							tail = false;
-							break;
-						}
-					}
-				}
-				else {
-					tail = false;
-				}
-
-				if (head) {
-					// 遇到头标识，开始记录数据
-					cursor += headMark.length;
-					bufIndex = 0;
-					buf[bufIndex] = data[cursor];
-				}
-				else if (tail) {
-					// 遇到尾标识，提取 buf 内数据
-					byte[] pdata = new byte[bufIndex + 1];
-					System.arraycopy(buf, 0, pdata, 0, bufIndex + 1);
-					Message message = new Message(pdata);
-					this.acceptor.fireMessageReceived(session, message);
-
-					cursor += tailMark.length;
-					// 后面要移动到下一个字节因此这里先减1
-					cursor -= 1;
-				}
-				else {
-					++bufIndex;
-					buf[bufIndex] = b;
-				}
-
-				// 下一个字节
-				++cursor;
+		try {
+			IoMetrics metrics = this.acceptor.getMetrics();
+			for (int i = 0, size = this.receivedMessages.size(); i < size; ++i) {
+				Message message = this.receivedMessages.get(i);
+				metrics.recordInbound(message.length());
+				this.acceptor.fireMessageReceived(session, message);
 			}
-
-			buf = null;
-		}
-		else {
-			Message message = new Message(data);
-			this.acceptor.fireMessageReceived(session, message);
+			session.messagesIn += this.receivedMessages.size();
+		} finally {
+			this.receivedMessages.clear();
 		}
 	}
 }
@@ -34,51 +34,125 @@ import java.nio.channels.ClosedChannelException;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
-import java.util.Iterator;
-import java.util.Set;
-import java.util.Vector;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 
 /** 非阻塞式网络连接器。
+ * 
+ * 连接器不再独占线程，而是注册到 {@link ConnectorReactor} ，
+ * 由反应器的事件循环线程处理连接、读写和回调事件。
  * 
  * @author Jiangwei Xu
  */
 public class NonblockingConnector extends MessageService implements MessageConnector {
 
+	/// 每次读就绪事件最多读取的次数，避免单个连接占用共享的事件循环
+	private static final int MAX_READS_PER_EVENT = 16;
+
 	// 缓冲块大小，默认：8192
 	private int block = 8192;
 
 	private InetSocketAddress address;
 	private long connectTimeout;
 	private SocketChannel channel;
-	private Selector selector;
 
-	private Session session;
+	// 同主机传输地址及套接字文件名称
+	private String localTransport;
+	private String localName;
 
-	private Thread handleThread;
-	private boolean spinning = false;
-	private boolean running = false;
+	private Session session;
 
-	private ByteBuffer readBuffer;
-	private ByteBuffer writeBuffer;
-	// 待发送消息列表
-	private Vector<Message> messages;
+	// 反应器
+	private ConnectorReactor reactor;
+	// 处理该连接器的事件循环
+	private volatile ConnectorReactor.EventLoop loop;
+	private SelectionKey key;
+	// 连接超时的截止时间
+	private long connectDeadline;
+	// 连接是否处于活跃状态，从注册到反应器开始至 Session 销毁为止
+	private volatile boolean running = false;
+	private final Object runningMonitor = new Object();
+
+	// 自适应接收数据大小
+	private AdaptiveReceiveSize receiveSize;
+	// 数据帧解码器
+	private FrameDecoder frameDecoder;
+	// 已接收消息的临时列表
+	private ArrayList<Message> receivedMessages;
+	// 待发送消息队列
+	private MessageSendQueue messages;
+	// 已发送消息的临时列表
+	private ArrayList<Message> sentMessages;
+	// 是否已请求事件循环执行发送
+	private AtomicBoolean sendScheduled;
+
+	// 在事件循环内关闭连接的任务
+	private final Runnable closeTask = new Runnable() {
+		@Override
+		public void run() {
+			close();
+		}
+	};
 
+	private boolean opened = false;
 	private boolean closed = false;
 
+	// 当前连接累计收发的字节数和消息数，仅由事件循环线程更新
+	private volatile long bytesIn = 0;
+	private volatile long bytesOut = 0;
+	private volatile long messagesIn = 0;
+	private volatile long messagesOut = 0;
+
 	public NonblockingConnector() {
 		this.connectTimeout = 10000;
-		this.readBuffer = ByteBuffer.allocate(this.block);
-		this.writeBuffer = ByteBuffer.allocate(this.block);
-		this.messages = new Vector<Message>();
+		this.receiveSize = new AdaptiveReceiveSize(ByteBufferPool.MIN_CAPACITY, 2048, this.block);
+		this.messages = new MessageSendQueue(this);
+		this.sentMessages = new ArrayList<Message>();
+		this.receivedMessages = new ArrayList<Message>();
+		this.sendScheduled = new AtomicBoolean(false);
 	}
 
 	/** 返回连接地址。
 	 */
+	@Override
 	public InetSocketAddress getAddress() {
 		return this.address;
 	}
 
+	/** 设置使用的反应器，未设置时使用默认反应器。
+	 * 需要在连接之前设置。
+	 */
+	public void setReactor(ConnectorReactor reactor) {
+		this.reactor = reactor;
+	}
+
+	/** 返回使用的反应器。
+	 */
+	public ConnectorReactor getReactor() {
+		return this.reactor;
+	}
+
+	/** 设置传输参数配置，需要在连接之前设置。
+	 * 配置指定数据块大小时同时修改连接器的数据块大小。
+	 */
+	@Override
+	public void setTransportProfile(TransportProfile profile) {
+		super.setTransportProfile(profile);
+		if (this.getTransportProfile().getBlockSize() > 0) {
+			this.setBlockSize(this.getTransportProfile().getBlockSize());
+		}
+	}
+
+	/** 设置同主机传输地址。
+	 * 传输地址为 "unix:&lt;目录&gt;" 时，连接本机地址且目录下存在 "&lt;名称&gt;-&lt;端口&gt;.sock"
+	 * 套接字文件时使用 Unix 域套接字连接，否则使用 TCP 连接。
+	 */
+	public void setLocalTransport(String transport, String name) {
+		this.localTransport = transport;
+		this.localName = name;
+	}
+
 	@Override
 	public boolean connect(InetSocketAddress address) {
 		if (this.channel != null && this.channel.isConnected()) {
@@ -86,61 +160,43 @@ public class NonblockingConnector extends MessageService implements MessageConne
 			return true;
 		}
 
-		if (this.running && null != this.channel) {
-			this.spinning = false;
+		if (this.running) {
+			// 结束上一次连接
+			this.disconnect();
 
-			try {
-				if (this.channel.isOpen()) {
-					this.channel.close();
-				}
-
-				if (null != this.selector) {
-					this.selector.close();
-				}
-			} catch (IOException e) {
-				Logger.log(NonblockingConnector.class, e, LogLevel.DEBUG);
-			}
-
-			while (this.running) {
-				try {
-					Thread.sleep(10);
-				} catch (InterruptedException e) {
-					Logger.log(NonblockingConnector.class, e, LogLevel.DEBUG);
-					break;
-				}
+			if (this.running) {
+				// 在其他事件循环线程内无法等待上一次连接关闭
+				Logger.w(NonblockingConnector.class, "Connector is closing, retry later: " + address);
+				return false;
 			}
-
-			Thread.yield();
 		}
 
 		// 状态初始化
-		this.readBuffer.clear();
-		this.writeBuffer.clear();
-		this.messages.clear();
+		this.messages.reset();
+		this.messages.setFrameFormat(this.existDataMark() ? null : this.getFrameFormat());
+		this.sendScheduled.set(false);
 		this.address = address;
 
 		try {
-			this.channel = SocketChannel.open();
-			this.channel.configureBlocking(false);
-
-			// 配置
-			// 以下为 JDK7 的代码
-			this.channel.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
-			this.channel.setOption(StandardSocketOptions.SO_RCVBUF, this.block);
-			this.channel.setOption(StandardSocketOptions.SO_SNDBUF, this.block);
-			// 以下为 JDK6 的代码
-			/*
-			this.channel.socket().setKeepAlive(true);
-			this.channel.socket().setReceiveBufferSize(this.block);
-			this.channel.socket().setSendBufferSize(this.block);
-			*/
-
-			this.selector = Selector.open();
-			// 注册事件
-			this.channel.register(this.selector, SelectionKey.OP_CONNECT);
-
-			// 连接
-			this.channel.connect(this.address);
+			String path = (null != this.localTransport)
+					? UnixDomainSockets.resolvePath(this.localTransport, this.localName, address) : null;
+			if (null != path) {
+				// 同主机使用 Unix 域套接字
+				this.channel = UnixDomainSockets.openChannel();
+				this.channel.configureBlocking(false);
+				this.channel.connect(UnixDomainSockets.toAddress(path));
+			}
+			else {
+				this.channel = SocketChannel.open();
+				this.channel.configureBlocking(false);
+
+				// 配置
+				this.channel.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
+				this.getTransportProfile().configure(this.channel);
+
+				// 连接
+				this.channel.connect(this.address);
+			}
 		} catch (IOException e) {
 			Logger.log(NonblockingConnector.class, e, LogLevel.DEBUG);
 
@@ -154,13 +210,6 @@ public class NonblockingConnector extends MessageService implements MessageConne
 			} catch (Exception ce) {
 				// Nothing
 			}
-			try {
-				if (null != this.selector) {
-					this.selector.close();
-				}
-			} catch (Exception se) {
-				// Nothing
-			}
 
 			return false;
 		} catch (Exception e) {
@@ -170,93 +219,59 @@ public class NonblockingConnector extends MessageService implements MessageConne
 
 		// 创建 Session
 		this.session = new Session(this, this.address);
-
-		this.handleThread = new Thread() {
-
-			@Override
-			public void run() {
-				running = true;
-
-				// 通知 Session 创建。
-				fireSessionCreated();
-
-				try {
-					loopDispatch();
-				} catch (Exception e) {
-					spinning = false;
-//					Logger.logException(e, LogLevel.DEBUG);
-				}
-
-				// 通知 Session 销毁。
-				fireSessionDestroyed();
-
-				running = false;
-
-				try {
-					if (null != selector && selector.isOpen())
-						selector.close();
-					if (null != channel && channel.isOpen())
-						channel.close();
-
-					channel = null;
-				} catch (IOException e) {
-					// Nothing
-					channel = null;
-				}
-			}
-		};
-		this.handleThread.setName(new StringBuilder("NonblockingConnector[").append(this.handleThread).append("]@")
-			.append(this.address.getAddress().getHostAddress()).append(":").append(this.address.getPort()).toString());
-		// 启动线程
-		this.handleThread.start();
+		this.bytesIn = 0;
+		this.bytesOut = 0;
+		this.messagesIn = 0;
+		this.messagesOut = 0;
+		this.frameDecoder = this.createFrameDecoder(this.session);
+		this.opened = false;
+		this.closed = false;
+
+		// 注册到反应器
+		if (null == this.reactor) {
+			this.reactor = ConnectorReactor.getDefault();
+		}
+		this.running = true;
+		this.loop = this.reactor.next();
+		this.loop.register(this);
 
 		return true;
 	}
 
 	@Override
 	public void disconnect() {
-		this.spinning = false;
-
-		if (null != this.channel) {
-			if (this.channel.isConnected()) {
-				fireSessionClosed();
-			}
-
-			try {
-				if (this.channel.isOpen()) {
-					this.channel.close();
-				}
-			} catch (Exception e) {
-				Logger.log(NonblockingConnector.class, e, LogLevel.DEBUG);
-			}
+		ConnectorReactor.EventLoop loop = this.loop;
+		if (!this.running || null == loop) {
+			return;
+		}
 
-			try {
-				this.channel.socket().close();
-			} catch (Exception e) {
-				//Logger.logException(e, LogLevel.DEBUG);
-			}
+		if (loop.inLoop()) {
+			this.close();
+			return;
 		}
 
-		if (null != this.selector && this.selector.isOpen()) {
-			try {
-				this.selector.wakeup();
-				this.selector.close();
-			} catch (Exception e) {
-				Logger.log(NonblockingConnector.class, e, LogLevel.DEBUG);
-			}
+		loop.execute(this.closeTask);
+
+		if (ConnectorReactor.isReactorThread()) {
+			// 避免事件循环之间相互等待
+			return;
 		}
 
-		int count = 0;
-		while (this.running) {
-			try {
-				Thread.sleep(10);
-			} catch (InterruptedException e) {
-				Logger.log(NonblockingConnector.class, e, LogLevel.DEBUG);
-			}
+		synchronized (this.runningMonitor) {
+			long deadline = System.currentTimeMillis() + 3000;
+			while (this.running) {
+				long wait = deadline - System.currentTimeMillis();
+				if (wait <= 0) {
+					Logger.w(NonblockingConnector.class, "Disconnect timeout: " + this.address);
+					break;
+				}
 
-			if (++count >= 300) {
-				this.handleThread.interrupt();
-				this.running = false;
+				try {
+					this.runningMonitor.wait(wait);
+				} catch (InterruptedException e) {
+					Logger.log(NonblockingConnector.class, e, LogLevel.DEBUG);
+					break;
+				}
 			}
 		}
 	}
@@ -270,20 +285,13 @@ public class NonblockingConnector extends MessageService implements MessageConne
 		return this.connectTimeout;
 	}
 
+	/** 设置数据块大小。
+	 * 套接字缓冲区大小由传输参数配置决定，不随数据块大小变化。
+	 */
 	@Override
 	public void setBlockSize(int size) {
 		this.block = size;
-		this.readBuffer = ByteBuffer.allocate(this.block);
-		this.writeBuffer = ByteBuffer.allocate(this.block);
-
-		if (null != this.channel) {
-			try {
-				this.channel.socket().setReceiveBufferSize(this.block);
-				this.channel.socket().setSendBufferSize(this.block);
-			} catch (Exception e) {
-				// ignore
-			}
-		}
+		this.receiveSize = new AdaptiveReceiveSize(ByteBufferPool.MIN_CAPACITY, 2048, this.block);
 	}
 
 	public int getBlockSize() {
@@ -292,8 +300,10 @@ public class NonblockingConnector extends MessageService implements MessageConne
 
 	/** 是否已连接。
 	 */
+	@Override
 	public boolean isConnected() {
-		return (null != this.channel && this.channel.isConnected());
+		SocketChannel channel = this.channel;
+		return (null != channel && channel.isConnected());
 	}
 
 	@Override
@@ -301,13 +311,37 @@ public class NonblockingConnector extends MessageService implements MessageConne
 		return this.session;
 	}
 
+	@Override
 	public void write(Message message) {
-		this.write(null, message);
+		this.write(this.session, message);
 	}
 
 	@Override
 	public void write(Session session, Message message) {
-		this.messages.add(message);
+		int state = this.messages.offer(message);
+		if (state == MessageSendQueue.OFFER_REJECTED) {
+			Logger.w(NonblockingConnector.class, "Outbound data overflow, disconnect from " + this.address);
+			this.fireErrorOccurred(MessageErrorCode.WRITE_OVERFLOW);
+			this.disconnect();
+			return;
+		}
+		else if (state == MessageSendQueue.OFFER_DISCARDED) {
+			return;
+		}
+		else if (state == MessageSendQueue.OFFER_UNWRITABLE) {
+			this.fireSessionUnwritable(this.session);
+		}
+
+		// 请求事件循环执行发送，连接建立时会发送之前写入的消息
+		if (this.sendScheduled.compareAndSet(false, true)) {
+			ConnectorReactor.EventLoop loop = this.loop;
+			if (null != loop && this.running) {
+				loop.scheduleSend(this);
+			}
+			else {
+				this.sendScheduled.set(false);
+			}
+		}
 	}
 
 	@Override
@@ -315,19 +349,162 @@ public class NonblockingConnector extends MessageService implements MessageConne
 		// Nothing
 	}
 
+	/** 设置发送数据使用的长度前缀分帧格式。
+	 * 每次连接时重置：定义了数据掩码时先使用数据掩码，以便与不支持长度前缀分帧的对端协商。
+	 */
+	@Override
+	public void setOutboundFrameFormat(Session session, FrameFormat format) {
+		this.messages.setFrameFormat(format);
+	}
+
+	@Override
+	protected void frameCorrupted(Session session) {
+		this.fireErrorOccurred(MessageErrorCode.FRAME_CORRUPTED);
+		this.disconnect();
+	}
+
+	/** 返回 I/O 统计快照，包含当前连接的待发送数据量。
+	 */
+	@Override
+	public IoMetrics.Snapshot getMetricsSnapshot() {
+		return this.getMetrics().snapshot(this.isConnected() ? 1 : 0,
+				this.messages.getPendingBytes(), this.messages.getPendingMessages());
+	}
+
+	/** 返回当前连接会话的 I/O 统计快照，未连接时返回 null 。
+	 */
+	public SessionMetrics getSessionMetrics() {
+		Session session = this.session;
+		if (null == session) {
+			return null;
+		}
+		return new SessionMetrics(session, -1, this.bytesIn, this.bytesOut,
+				this.messagesIn, this.messagesOut, this.messages);
+	}
+
+	/** 返回连接超时的截止时间，未设置超时返回 0 。
+	 */
+	protected long getConnectDeadline() {
+		return this.connectDeadline;
+	}
+
+	/** 在事件循环线程内注册通道。
+	 */
+	protected void register(Selector selector) {
+		// 通知 Session 创建。
+		fireSessionCreated();
+
+		try {
+			if (this.channel.isConnected()) {
+				this.key = this.channel.register(selector, SelectionKey.OP_READ, this);
+				this.doConnect(this.key);
+			}
+			else {
+				this.key = this.channel.register(selector, SelectionKey.OP_CONNECT, this);
+				this.connectDeadline = (this.connectTimeout > 0) ? System.currentTimeMillis() + this.connectTimeout : 0;
+				this.loop.connecting(this);
+			}
+		} catch (ClosedChannelException e) {
+			// 注册前已断开
+			this.close();
+		}
+	}
+
+	/** 在事件循环线程内处理选择键事件。
+	 */
+	protected void process(SelectionKey key) {
+		if (!key.isValid()) {
+			return;
+		}
+
+		// 当前通道选择器产生连接已经准备就绪事件，并且客户端套接字通道尚未连接到服务端套接字通道
+		if (key.isConnectable()) {
+			this.doConnect(key);
+		}
+		else {
+			if (key.isReadable()) {
+				this.receive(key);
+			}
+			if (key.isValid() && key.isWritable()) {
+				this.send(key);
+			}
+		}
+	}
+
+	/** 在事件循环线程内处理其他线程写入的消息。
+	 */
+	protected void processScheduledSend() {
+		this.sendScheduled.set(false);
+
+		SelectionKey key = this.key;
+		if (this.running && null != key && key.isValid() && this.channel.isConnected()) {
+			this.send(key);
+		}
+	}
+
+	/** 在事件循环线程内处理连接超时。
+	 */
+	protected void connectTimeout() {
+		fireErrorOccurred(MessageErrorCode.CONNECT_TIMEOUT);
+		this.close();
+	}
+
+	/** 在事件循环线程内关闭连接并注销。
+	 */
+	private void close() {
+		if (!this.running) {
+			return;
+		}
+
+		if (this.opened) {
+			this.getMetrics().increment(IoMetrics.SESSIONS_CLOSED);
+		}
+
+		fireSessionClosed();
+
+		if (null != this.key) {
+			this.key.cancel();
+			this.key = null;
+		}
+
+		try {
+			if (null != this.channel && this.channel.isOpen()) {
+				this.channel.close();
+			}
+		} catch (IOException e) {
+			Logger.log(NonblockingConnector.class, e, LogLevel.DEBUG);
+		}
+		this.channel = null;
+
+		this.loop.deregister(this);
+
+		// 通知 Session 销毁。
+		fireSessionDestroyed();
+
+		// 释放未发送的数据，唤醒等待写入的线程
+		this.messages.close();
+
+		synchronized (this.runningMonitor) {
+			this.running = false;
+			this.runningMonitor.notifyAll();
+		}
+	}
+
 	private void fireSessionCreated() {
 		if (null != this.handler) {
 			this.handler.sessionCreated(this.session);
 		}
 	}
 	private void fireSessionOpened() {
+		this.opened = true;
+		this.getMetrics().increment(IoMetrics.SESSIONS_OPENED);
 		if (null != this.handler) {
 			this.closed = false;
 			this.handler.sessionOpened(this.session);
 		}
 	}
 	private void fireSessionClosed() {
-		if (null != this.handler) {
+		if (null != this.handler && this.opened) {
 			if (!this.closed) {
 				this.closed = true;
 				this.handler.sessionClosed(this.session);
@@ -345,83 +522,39 @@ public class NonblockingConnector extends MessageService implements MessageConne
 		}
 	}
 
-	/** 事件循环。 */
-	private void loopDispatch() throws Exception {
-		// 自旋
-		this.spinning = true;
-
-		while (this.spinning) {
-			while (this.selector.isOpen()
-					&& this.selector.select(this.channel.isConnected() ? 0 : this.connectTimeout) > 0) {
-				Set<SelectionKey> keys = this.selector.selectedKeys();
-				Iterator<SelectionKey> it = keys.iterator();
-				while (it.hasNext()) {
-					SelectionKey key = (SelectionKey) it.next();
-					it.remove();
-
-					// 当前通道选择器产生连接已经准备就绪事件，并且客户端套接字通道尚未连接到服务端套接字通道
-					if (key.isConnectable()) {
-						if (!doConnect(key)) {
-							this.spinning = false;
-							return;
-						}
-					}
-					else if (key.isReadable()) {
-						receive(key);
-					}
-					else if (key.isWritable()) {
-						send(key);
-					}
-				} //# while
-
-				try {
-					if (!this.spinning) {
-						return;
-					}
-
-					Thread.sleep(1);
-				} catch (InterruptedException e) {
-					Logger.log(NonblockingConnector.class, e, LogLevel.DEBUG);
-				}
-			} //# while
-		} // # while
-	}
-
-	private boolean doConnect(SelectionKey key) {
+	private void doConnect(SelectionKey key) {
 		// 获取创建通道选择器事件键的套接字通道
 		SocketChannel channel = (SocketChannel)key.channel();
 
+		this.loop.connected(this);
+
 		// 判断此通道上是否正在进行连接操作。  
         // 完成套接字通道的连接过程。
 		if (channel.isConnectionPending()) {
 			try {
 				channel.finishConnect();
 			} catch (IOException e) {
-				//Logger.logException(e, LogLevel.DEBUG);
-
-				try {
-					this.channel.close();
-					this.selector.close();
-				} catch (IOException ce) {
-					Logger.log(NonblockingConnector.class, ce, LogLevel.DEBUG);
-				}
-
 				// 连接失败
 				fireErrorOccurred(MessageErrorCode.CONNECT_TIMEOUT);
-				return false;
+				this.close();
+				return;
 			}
-
-			// 连接成功，打开 Session
-			fireSessionOpened();
 		}
 
-		try {
-			channel.register(this.selector, SelectionKey.OP_READ | SelectionKey.OP_WRITE);
-		} catch (ClosedChannelException e) {
-			Logger.log(NonblockingConnector.class, e, LogLevel.DEBUG);
+		// 连接成功，打开 Session
+		fireSessionOpened();
+
+		if (!key.isValid()) {
+			return;
 		}
 
-		return true;
+		// 仅关注读事件，写事件在有待发送数据时开启
+		key.interestOps(SelectionKey.OP_READ);
+
+		// 发送连接建立前写入的消息
+		if (!this.messages.isEmpty()) {
+			send(key);
+		}
 	}
 
 	private void receive(SelectionKey key) {
@@ -431,202 +564,114 @@ public class NonblockingConnector extends MessageService implements MessageConne
 			return;
 		}
 
+		ByteBufferPool pool = this.getBufferPool();
+		IoMetrics metrics = this.getMetrics();
 		int read = 0;
+		int reads = 0;
 		do {
+			// 仅在读取期间从池中借用缓冲区
+			ByteBuffer buf = pool.acquire(this.receiveSize.next());
 			try {
-				read = channel.read(this.readBuffer);
+				read = channel.read(buf);
+				metrics.recordRead(read);
 			} catch (IOException e) {
-//				Logger.logException(e, LogLevel.DEBUG);
-
-				fireSessionClosed();
-
-				try {
-					if (null != this.channel)
-						this.channel.close();
-					if (null != this.selector)
-						this.selector.close();
-				} catch (IOException ce) {
-					Logger.log(NonblockingConnector.class, ce, LogLevel.DEBUG);
-				}
+				pool.release(buf);
 
 				// 不能继续进行数据接收
-				this.spinning = false;
-
+				this.close();
 				return;
 			}
 
 			if (read == 0) {
+				pool.release(buf);
 				break;
 			}
 			else if (read == -1) {
-				fireSessionClosed();
-
-				try {
-					this.channel.close();
-					this.selector.close();
-				} catch (IOException ce) {
-					Logger.log(NonblockingConnector.class, ce, LogLevel.DEBUG);
-				}
+				pool.release(buf);
 
 				// 不能继续进行数据接收
-				this.spinning = false;
-
+				this.close();
 				return;
 			}
 
-			this.readBuffer.flip();
+			this.receiveSize.record(read);
+			this.bytesIn += read;
 
-			byte[] array = new byte[read];
-			this.readBuffer.get(array);
+			buf.flip();
 
-			process(array);
+			// 解码数据，解码出的消息在回调期间直接引用读缓冲区
+			this.frameDecoder.decode(buf, this.receivedMessages);
 
-			this.readBuffer.clear();
-		} while (read > 0);
+			try {
+				for (int i = 0, size = this.receivedMessages.size(); i < size; ++i) {
+					metrics.recordInbound(this.receivedMessages.get(i).length());
+				}
+				this.messagesIn += this.receivedMessages.size();
 
-		try {
-			// 注册
-			channel.register(this.selector, SelectionKey.OP_WRITE | SelectionKey.OP_READ);
-		} catch (IOException e) {
-			Logger.log(NonblockingConnector.class, e, LogLevel.DEBUG);
-			this.fireErrorOccurred(MessageErrorCode.READ_FAILED);
-		}
+				if (null != this.handler) {
+					for (int i = 0, size = this.receivedMessages.size(); i < size; ++i) {
+						this.handler.messageReceived(this.session, this.receivedMessages.get(i));
+					}
+				}
+			} finally {
+				this.receivedMessages.clear();
+				pool.release(buf);
+			}
+		} while (read > 0 && this.running && ++reads < MAX_READS_PER_EVENT);
 	}
 
 	private void send(SelectionKey key) {
-		try {
-			SocketChannel channel = (SocketChannel) key.channel();
-
-			if (!channel.isConnected()) {
-				fireSessionClosed();
-				return;
-			}
+		SocketChannel channel = (SocketChannel) key.channel();
 
-			if (!this.messages.isEmpty()) {
-				// 有消息，进行发送
-
-				Message message = null;
-				for (int i = 0, len = this.messages.size(); i < len; ++i) {
-					message = this.messages.remove(0);
-
-					if (this.existDataMark()) {
-						byte[] data = message.get();
-						byte[] head = this.getHeadMark();
-						byte[] tail = this.getTailMark();
-						byte[] pd = new byte[data.length + head.length + tail.length];
-						System.arraycopy(head, 0, pd, 0, head.length);
-						System.arraycopy(data, 0, pd, head.length, data.length);
-						System.arraycopy(tail, 0, pd, head.length + data.length, tail.length);
-						this.writeBuffer.put(pd);
-					}
-					else {
-						this.writeBuffer.put(message.get());
-					}
+		if (!channel.isConnected()) {
+			this.close();
+			return;
+		}
 
-					this.writeBuffer.flip();
+		if (!this.messages.isEmpty()) {
+			// 有消息，进行发送
+			try {
+				this.messages.flush(channel, this.getHeadMark(), this.getTailMark(), this.sentMessages,
+						this.getTransportProfile().getWriteSpinCount());
+			} catch (IOException e) {
+				Logger.log(NonblockingConnector.class, e, LogLevel.DEBUG);
 
-					channel.write(this.writeBuffer);
+				// 连接已不可写，关闭连接，避免写事件在事件循环上反复触发
+				this.sentMessages.clear();
+				this.fireErrorOccurred(MessageErrorCode.WRITE_FAILED);
+				this.close();
+				return;
+			}
 
-					this.writeBuffer.clear();
+			long bytes = 0;
+			for (int i = 0, size = this.sentMessages.size(); i < size; ++i) {
+				bytes += this.sentMessages.get(i).length();
+			}
+			this.bytesOut += bytes;
+			this.messagesOut += this.sentMessages.size();
 
-					if (null != this.handler) {
-						this.handler.messageSent(this.session, message);
-					}
+			if (null != this.handler) {
+				for (int i = 0, size = this.sentMessages.size(); i < size; ++i) {
+					this.handler.messageSent(this.session, this.sentMessages.get(i));
 				}
 			}
+			this.sentMessages.clear();
 
-			try {
-				// 注册
-				channel.register(this.selector, SelectionKey.OP_READ | SelectionKey.OP_WRITE);
-			} catch (ClosedChannelException ce) {
-				Logger.log(NonblockingConnector.class, ce, LogLevel.DEBUG);
-				this.fireErrorOccurred(MessageErrorCode.WRITE_FAILED);
+			if (this.messages.restoreWritable()) {
+				this.fireSessionWritable(this.session);
 			}
-		} catch (IOException e) {
-			Logger.log(NonblockingConnector.class, e, LogLevel.WARNING);
 		}
-	}
-
-	private void process(byte[] data) {
-		// 根据数据标志获取数据
-		if (this.existDataMark()) {
-			byte[] headMark = this.getHeadMark();
-			byte[] tailMark = this.getTailMark();
-
-			int cursor = 0;
-			int length = data.length;
-			boolean head = false;
-			boolean tail = false;
-			byte[] buf = new byte[this.block];
-			int bufIndex = 0;
-
-			while (cursor < length) {
-				head = true;
-				tail = true;
 
-				byte b = data[cursor];
-
-				// 判断是否是头标识
-				if (b == headMark[0]) {
-					for (int i = 1, len = headMark.length; i < len; ++i) {
-						if (data[cursor + i] != headMark[i]) {
-							head = false;
-							break;
-						}
-					}
-				}
-				else {
-					head = false;
-				}
-
-				// 判断是否是尾标识
-				if (b == tailMark[0]) {
-					for (int i = 1, len = tailMark.length; i < len; ++i) {
-						if (data[cursor + i] != tailMark[i]) {
-							tail = false;
-							break;
-						}
-					}
-				}
-				else {
-					tail = false;
-				}
-
-				if (head) {
-					// 遇到头标识，开始记录数据
-					cursor += headMark.length;
-					bufIndex = 0;
-					buf[bufIndex] = data[cursor];
-				}
-				else if (tail) {
-					// 遇到尾标识，提取 buf 内数据
-					byte[] pdata = new byte[bufIndex + 1];
-					System.arraycopy(buf, 0, pdata, 0, bufIndex + 1);
-					Message message = new Message(pdata);
-					if (null != this.handler) {
-						this.handler.messageReceived(this.session, message);
-					}
-
-					cursor += tailMark.length;
-					// 后面要移动到下一个字节因此这里先减1
-					cursor -= 1;
-				}
-				else {
-					++bufIndex;
-					buf[bufIndex] = b;
-				}
-
-				// 下一个字节
-				++cursor;
-			}
+		if (!key.isValid()) {
+			return;
+		}
 
-			buf = null;
+		// 数据未发送完时关注写事件，发送完毕后取消
+		if (this.messages.isEmpty()) {
+			key.interestOps(SelectionKey.OP_READ);
 		}
 		else {
-			Message message = new Message(data);
-			if (null != this.handler) {
-				this.handler.messageReceived(this.session, message);
-			}
+			key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
 		}
 	}
 }
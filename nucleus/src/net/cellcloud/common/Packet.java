@@ -26,6 +26,10 @@ THE SOFTWARE.
 
 package net.cellcloud.common;
 
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
 import java.util.ArrayList;
 
 
@@ -56,7 +60,19 @@ import java.util.ArrayList;
 	[SMN] - 4 <br />
 	[SML] - 8 <br />
 	[SMD] - {!} 由 SML 决定 <br />
-	SML 和 SMD 数据一致，且由 SMN 决定。
+	SML 和 SMD 数据一致，且由 SMN 决定。<br />
+	<br />
+	主版本号大于等于 2 的数据包使用二进制格式（v2），所有数值字段均为无符号变长整数，
+	每字节低 7 位为数据，最高位为后续字节标识。格式如下：<br />
+	TAG | MAJ | MIN | FLG | SEN | LEN | DAT <br />
+	[TAG] - 4 <br />
+	[MAJ] - 1 主版本号 <br />
+	[MIN] - 1 副版本号 <br />
+	[FLG] - 1 标志位，最低位为 1 时表示 DAT 段为子段格式 <br />
+	[SEN] - 变长 <br />
+	[LEN] - 变长，最大 64 位 <br />
+	子段格式的 DAT 段与 v1 相同，其中 SMN 和 SML 均为变长整数。<br />
+	v1 格式的第 5 个字节总是 ASCII 数字，因此解包时可以据此区分两种格式。
 */
 public final class Packet {
 	
@@ -67,6 +83,13 @@ public final class Packet {
 	protected static final int PSL_SUBSEGMENT_NUM = 4;
 	protected static final int PSL_SUBSEGMENT_LENGTH = 8;
 
+	/// 使用二进制格式的最小主版本号
+	public static final int BINARY_MAJOR_VERSION = 2;
+
+	protected static final int PSL_V2_VERSION = 2;
+	protected static final int PSL_V2_FLAGS = 1;
+	protected static final byte V2_FLAG_SUBSEGMENT = 0x01;
+
 	private byte[] tag;
 	private int sn;
 	private int major;
@@ -173,17 +196,19 @@ public final class Packet {
 		return this.subsegments.size();
 	}
 
+	/** 返回 Body 段长度。
+	 */
 	public int getBodyLength() {
 		int len = 0;
+		boolean binary = (this.major >= BINARY_MAJOR_VERSION);
 
 		if (!this.subsegments.isEmpty()) {
-			len += PSL_SUBSEGMENT_NUM;
-
 			int size = this.subsegments.size();
-			len += (size * PSL_SUBSEGMENT_LENGTH);
+			len += binary ? varintSize(size) : PSL_SUBSEGMENT_NUM + (size * PSL_SUBSEGMENT_LENGTH);
 
 			for (int i = 0; i < size; ++i) {
-				len += this.subsegments.get(i).length;
+				int length = this.subsegments.get(i).length;
+				len += binary ? varintSize(length) + length : length;
 			}
 		}
 		else if (null != this.body) {
@@ -193,212 +218,197 @@ public final class Packet {
 		return len;
 	}
 
-	/** 打包。 */
-	public static byte[] pack(Packet packet) {
-		int ssNum = packet.getSubsegmentCount();
-
-		// 计算总长度
-		int bodyLength = (ssNum == 0 ? (null != packet.body ? packet.body.length : 0) : PSL_SUBSEGMENT_NUM + (ssNum * PSL_SUBSEGMENT_LENGTH));
-		int totalLength = PSL_TAG + PSL_VERSION + PSL_SN + PSL_BODY_LENGTH + bodyLength;
-		for (int i = 0; i < ssNum; ++i) {
-			totalLength += packet.getSubsegment(i).length;
-			bodyLength += packet.getSubsegment(i).length;
-		}
+	/** 返回打包后的数据长度。
+	 */
+	public int getPackedLength() {
+		return this.getHeadLength(this.getBodyLength()) + this.getDataLength();
+	}
 
-		byte[] data = new byte[totalLength];
+	/** 将数据包打包写入指定缓冲区。
+	 * 数据从缓冲区当前位置开始写入，剩余空间不足时抛出 {@link BufferOverflowException} 。
+	 */
+	public void packTo(ByteBuffer dst) {
+		int bodyLength = this.getBodyLength();
+		if (dst.remaining() < this.getHeadLength(bodyLength) + this.getDataLength()) {
+			throw new BufferOverflowException();
+		}
 
-		// 填写 Tag
-		System.arraycopy(packet.getTag(), 0, data, 0, PSL_TAG);
+		this.putHead(dst, bodyLength);
 
-		// 填写 Version
-		String sMinor = fastFormatNumber(packet.getMinorVersion(), 2);
-		String sMajor = fastFormatNumber(packet.getMajorVersion(), 2);
-		System.arraycopy(sMinor.getBytes(), 0, data, PSL_TAG, 2);
-		System.arraycopy(sMajor.getBytes(), 0, data, PSL_TAG + 2, 2);
+		if (!this.subsegments.isEmpty()) {
+			for (int i = 0, size = this.subsegments.size(); i < size; ++i) {
+				dst.put(this.subsegments.get(i));
+			}
+		}
+		else if (null != this.body) {
+			dst.put(this.body);
+		}
+	}
 
-		// 填写 SN
-		String sVersion = fastFormatNumber(packet.getSequenceNumber(), PSL_SN);
-		System.arraycopy(sVersion.getBytes(), 0, data, PSL_TAG + PSL_VERSION, PSL_SN);
+	/** 将数据包以聚集写方式写入指定通道，子段数据不进行复制。
+	 * 该方法写完整个数据包后返回，因此通道应当处于阻塞模式。
+	 *
+	 * @return 返回写入的字节数。
+	 */
+	public long writeTo(GatheringByteChannel channel) throws IOException {
+		int bodyLength = this.getBodyLength();
+		int size = this.subsegments.size();
 
-		// 填写 Body 段长度
-		String sLength = fastFormatNumber(bodyLength, PSL_BODY_LENGTH);
-		System.arraycopy(sLength.getBytes(), 0, data, PSL_TAG + PSL_VERSION + PSL_SN, PSL_BODY_LENGTH);
+		ByteBuffer[] buffers = new ByteBuffer[1 + (size > 0 ? size : (null != this.body ? 1 : 0))];
 
-		// 填写 Body 子段
-		if (bodyLength > 0) {
-			if (null == packet.body) {
-				// 子段格式打包
+		byte[] head = new byte[this.getHeadLength(bodyLength)];
+		this.putHead(ByteBuffer.wrap(head), bodyLength);
+		buffers[0] = ByteBuffer.wrap(head);
 
-				String sSubNum = fastFormatNumber(ssNum, PSL_SUBSEGMENT_NUM);
-				System.arraycopy(sSubNum.getBytes(), 0, data, PSL_TAG + PSL_VERSION + PSL_SN + PSL_BODY_LENGTH, PSL_SUBSEGMENT_NUM);
-	
-				int begin = PSL_TAG + PSL_VERSION + PSL_SN + PSL_BODY_LENGTH + PSL_SUBSEGMENT_NUM;
-	
-				// 填充各子段长度
-				for (int i = 0; i < ssNum; ++i) {
-					int length = packet.getSubsegment(i).length;
-					String sLen = fastFormatNumber(length, PSL_SUBSEGMENT_LENGTH);
-					System.arraycopy(sLen.getBytes(), 0, data, begin, PSL_SUBSEGMENT_LENGTH);
-					begin += PSL_SUBSEGMENT_LENGTH;
-				}
-	
-				// 填充各子段数据
-				for (int i = 0; i < ssNum; ++i) {
-					byte[] subData = packet.getSubsegment(i);
-					System.arraycopy(subData, 0, data, begin, subData.length);
-					begin += subData.length;
-				}
-			}
-			else {
-				System.arraycopy(packet.body, 0, data, PSL_TAG + PSL_VERSION + PSL_SN + PSL_BODY_LENGTH, packet.body.length);
+		if (size > 0) {
+			for (int i = 0; i < size; ++i) {
+				buffers[i + 1] = ByteBuffer.wrap(this.subsegments.get(i));
 			}
 		}
+		else if (null != this.body) {
+			buffers[1] = ByteBuffer.wrap(this.body);
+		}
+
+		long total = head.length + this.getDataLength();
+		long written = 0;
+		while (written < total) {
+			written += channel.write(buffers);
+		}
+
+		return written;
+	}
 
+	/** 打包。
+	 * 主版本号大于等于 {@link #BINARY_MAJOR_VERSION} 时使用二进制格式。
+	 */
+	public static byte[] pack(Packet packet) {
+		byte[] data = new byte[packet.getPackedLength()];
+		packet.packTo(ByteBuffer.wrap(data));
 		return data;
 	}
 
-	/** 解包。 */
+	/** 解包。
+	 * 自动识别文本格式和二进制格式。
+	 */
 	public static Packet unpack(byte[] data) {
-		int datalen = data.length;
-		if (datalen < PSL_TAG + PSL_VERSION + PSL_SN + PSL_BODY_LENGTH) {
+		PacketView view = PacketView.wrap(ByteBuffer.wrap(data));
+		if (null == view) {
 			return null;
 		}
 
-		// 解析 Tag
-		byte[] bTag = new byte[PSL_TAG];
-		System.arraycopy(data, 0, bTag, 0, PSL_TAG);
-
-		// 解析 Version
-		byte[] bMinor = new byte[2];
-		byte[] bMajor = new byte[2];
-		System.arraycopy(data, PSL_TAG, bMinor, 0, 2);
-		System.arraycopy(data, PSL_TAG + 2, bMajor, 0, 2);
-		int minor = 0;
-		int major = 0;
-		try {
-			minor = Integer.parseInt(new String(bMinor));
-			major = Integer.parseInt(new String(bMajor));
-		} catch (NumberFormatException e) {
-			Logger.log(Packet.class, e, LogLevel.ERROR);
-			return null;
+		return view.toPacket();
+	}
+
+	/** 返回子段数据或 Body 数据的总长度。
+	 */
+	private int getDataLength() {
+		int len = 0;
+
+		if (!this.subsegments.isEmpty()) {
+			for (int i = 0, size = this.subsegments.size(); i < size; ++i) {
+				len += this.subsegments.get(i).length;
+			}
+		}
+		else if (null != this.body) {
+			len = this.body.length;
 		}
 
-		// 解析 SN
-		byte[] bSN = new byte[PSL_SN];
-		System.arraycopy(data, PSL_TAG + PSL_VERSION, bSN, 0, PSL_SN);
-		int sn = Integer.parseInt(new String(bSN));
+		return len;
+	}
 
-		// 解析 Body 段长度
-		byte[] bBodyLength = new byte[PSL_BODY_LENGTH];
-		System.arraycopy(data, PSL_TAG + PSL_VERSION + PSL_SN,
-				bBodyLength, 0, PSL_BODY_LENGTH);
-		int bodyLength = Integer.parseInt(new String(bBodyLength));
+	/** 返回数据包头长度，包含子段数量和子段长度。
+	 */
+	private int getHeadLength(int bodyLength) {
+		int dataLength = this.getDataLength();
+		if (this.major >= BINARY_MAJOR_VERSION) {
+			return PSL_TAG + PSL_V2_VERSION + PSL_V2_FLAGS + varintSize(this.sn & 0xFFFFFFFFL)
+					+ varintSize(bodyLength) + (bodyLength - dataLength);
+		}
 
-		// 创建实例
-		Packet packet = new Packet(bTag, sn, major, minor);
+		return PSL_TAG + PSL_VERSION + PSL_SN + PSL_BODY_LENGTH + (bodyLength - dataLength);
+	}
 
-		if (datalen > PSL_TAG + PSL_VERSION + PSL_SN + PSL_BODY_LENGTH) {
-			// 确认有 BODY 段，校验 BODY 段长度
-			if ((datalen - (PSL_TAG + PSL_VERSION + PSL_SN + PSL_BODY_LENGTH)) != bodyLength) {
-				Logger.w(Packet.class, "Packet length exception : bytes-length=" + datalen + " body-length=" + bodyLength);
-			}
+	/** 写入数据包头，包含子段数量和子段长度。
+	 */
+	private void putHead(ByteBuffer dst, int bodyLength) {
+		int size = this.subsegments.size();
 
-			int begin = PSL_TAG + PSL_VERSION + PSL_SN + PSL_BODY_LENGTH;
-
-			// 判断是否符合子段分割形式
-			byte[] bSubNum = new byte[PSL_SUBSEGMENT_NUM];
-			System.arraycopy(data, begin, bSubNum, 0, PSL_SUBSEGMENT_NUM);
-			// 判断是否是数字
-			for (int i = 0; i < PSL_SUBSEGMENT_NUM; ++i) {
-				if (false == Character.isDigit(bSubNum[i])) {
-					// 不是数字，直接使用 Body
-					byte[] body = new byte[bodyLength];
-					System.arraycopy(data, begin, body, 0, bodyLength);
-					packet.setBody(body);
-					return packet;
+		// 填写 Tag
+		dst.put(this.tag, 0, PSL_TAG);
+
+		if (this.major >= BINARY_MAJOR_VERSION) {
+			// 填写 Version 和标志位
+			dst.put((byte) this.major);
+			dst.put((byte) this.minor);
+			dst.put((size > 0) ? V2_FLAG_SUBSEGMENT : 0);
+
+			// 填写 SN 和 Body 段长度
+			putVarint(dst, this.sn & 0xFFFFFFFFL);
+			putVarint(dst, bodyLength);
+
+			// 填写子段数量和各子段长度
+			if (size > 0) {
+				putVarint(dst, size);
+				for (int i = 0; i < size; ++i) {
+					putVarint(dst, this.subsegments.get(i).length);
 				}
 			}
-
-			// 解析子段数量
-			int subNum = Integer.parseInt(new String(bSubNum));
-			bSubNum = null;
-
-			int[] subsegmentLengthArray = new int[subNum];
-			begin += PSL_SUBSEGMENT_NUM;
-
-			// 解析子段长度
-			for (int i = 0; i < subNum; ++i) {
-				byte[] bSubLength = new byte[PSL_SUBSEGMENT_LENGTH];
-				System.arraycopy(data, begin, bSubLength, 0, PSL_SUBSEGMENT_LENGTH);
-				subsegmentLengthArray[i] = Integer.parseInt(new String(bSubLength));
-				begin += PSL_SUBSEGMENT_LENGTH;
-				bSubLength = null;
+		}
+		else {
+			// 填写 Version
+			putDigits(dst, this.minor, 2);
+			putDigits(dst, this.major, 2);
+
+			// 填写 SN 和 Body 段长度
+			putDigits(dst, this.sn, PSL_SN);
+			putDigits(dst, bodyLength, PSL_BODY_LENGTH);
+
+			// 填写子段数量和各子段长度
+			if (size > 0) {
+				putDigits(dst, size, PSL_SUBSEGMENT_NUM);
+				for (int i = 0; i < size; ++i) {
+					putDigits(dst, this.subsegments.get(i).length, PSL_SUBSEGMENT_LENGTH);
+				}
 			}
+		}
+	}
 
-			// 解析子段数据
-			for (int i = 0; i < subNum; ++i) {
-				int length = subsegmentLengthArray[i];
-				byte[] subsegment = new byte[length];
-				System.arraycopy(data, begin, subsegment, 0, length);
-				begin += length;
+	/** 判断版本字段首字节是否是二进制格式的主版本号。
+	 */
+	protected static boolean isBinary(byte first) {
+		return first >= BINARY_MAJOR_VERSION && first < '0';
+	}
 
-				// 添加子段
-				packet.appendSubsegment(subsegment);
-			}
+	/** 返回变长整数的编码长度。
+	 */
+	private static int varintSize(long value) {
+		int size = 1;
+		while ((value & ~0x7FL) != 0) {
+			value >>>= 7;
+			++size;
 		}
+		return size;
+	}
 
-		return packet;
+	/** 写入变长整数。
+	 */
+	private static void putVarint(ByteBuffer dst, long value) {
+		while ((value & ~0x7FL) != 0) {
+			dst.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		dst.put((byte) value);
 	}
 
-	private static String fastFormatNumber(int number, int limit) {
-		switch (limit) {
-		case 2:
-			if (number < 10) {
-				return "0" + number;
-			}
-			else {
-				return Integer.toString(number);
-			}
-		case 4:
-			if (number < 10) {
-				return "000" + number;
-			}
-			else if (number >= 10 && number < 100) {
-				return "00" + number;
-			}
-			else if (number >= 100 && number < 1000) {
-				return "0" + number;
-			}
-			else {
-				return Integer.toString(number);
-			}
-		case 8:
-			if (number < 10) {
-				return "0000000" + number;
-			}
-			else if (number >= 10 && number < 100) {
-				return "000000" + number;
-			}
-			else if (number >= 100 && number < 1000) {
-				return "00000" + number;
-			}
-			else if (number >= 1000 && number < 10000) {
-				return "0000" + number;
-			}
-			else if (number >= 10000 && number < 100000) {
-				return "000" + number;
-			}
-			else if (number >= 100000 && number < 1000000) {
-				return "00" + number;
-			}
-			else if (number >= 1000000 && number < 10000000) {
-				return "0" + number;
-			}
-			else {
-				return Integer.toString(number);
-			}
-		default:
-			return Integer.toString(number);
+	/** 写入定长的十进制 ASCII 数字，不足位数时高位补零。
+	 */
+	private static void putDigits(ByteBuffer dst, int number, int width) {
+		int pos = dst.position();
+		int value = number;
+		for (int i = width - 1; i >= 0; --i) {
+			dst.put(pos + i, (byte) ('0' + value % 10));
+			value /= 10;
 		}
+		dst.position(pos + width);
 	}
 }
@@ -0,0 +1,369 @@
+/*
+-----------------------------------------------------------------------------
+This source file is part of Cell Cloud.
+
+Copyright (c) 2009-2013 Cell Cloud Team (www.cellcloud.net)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+-----------------------------------------------------------------------------
+*/
+
+package net.cellcloud.common;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/** 数据包视图。
+ * 
+ * 直接在缓冲区上解析数据包头，只记录各子段的位置，
+ * 子段和 Body 以只读缓冲区切片的形式按需返回，不复制数据。
+ * 视图引用接收缓冲区时只在消息接收回调期间有效，需要保留数据时使用 {@link #toPacket()} 。
+ * 
+ * @author Jiangwei Xu
+ */
+public final class PacketView {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final ByteBuffer buffer;
+
+	private byte[] tag;
+	private int sn;
+	private int major;
+	private int minor;
+
+	// 是否是子段格式
+	private boolean segmented;
+	// 子段数量
+	private int count;
+	// 各子段在缓冲区中的位置和长度
+	private int[] offsets;
+	private int[] lengths;
+
+	// Body 在缓冲区中的位置和长度
+	private int bodyOffset;
+	private int bodyLength;
+
+	// 解析游标
+	private int cursor;
+
+	private PacketView(ByteBuffer buffer) {
+		this.buffer = buffer;
+		this.segmented = false;
+		this.count = 0;
+		this.bodyOffset = 0;
+		this.bodyLength = 0;
+	}
+
+	/** 在缓冲区 position 到 limit 之间的数据上创建数据包视图。
+	 * 自动识别文本格式和二进制格式，数据格式错误时返回 null 。
+	 */
+	public static PacketView wrap(ByteBuffer buffer) {
+		PacketView view = new PacketView(buffer.isReadOnly() ? buffer.duplicate() : buffer.asReadOnlyBuffer());
+
+		int base = buffer.position();
+		boolean ok = false;
+		if (buffer.remaining() > Packet.PSL_TAG && Packet.isBinary(buffer.get(base + Packet.PSL_TAG))) {
+			ok = view.parseBinary();
+		}
+		else {
+			ok = view.parseText();
+		}
+
+		return ok ? view : null;
+	}
+
+	/** 返回包标签。
+	 */
+	public byte[] getTag() {
+		return this.tag;
+	}
+
+	/** 返回主版本号。
+	 */
+	public int getMajorVersion() {
+		return this.major;
+	}
+
+	/** 返回副版本号。
+	 */
+	public int getMinorVersion() {
+		return this.minor;
+	}
+
+	/** 返回包序号。
+	 */
+	public int getSequenceNumber() {
+		return this.sn;
+	}
+
+	/** 返回子段数量。
+	 */
+	public int getSubsegmentCount() {
+		return this.count;
+	}
+
+	/** 返回指定子段的长度，索引无效时返回 -1 。
+	 */
+	public int getSubsegmentLength(int index) {
+		if (index < 0 || index >= this.count) {
+			return -1;
+		}
+
+		return this.lengths[index];
+	}
+
+	/** 返回指定子段的只读缓冲区切片，索引无效时返回 null 。
+	 */
+	public ByteBuffer getSubsegment(int index) {
+		if (index < 0 || index >= this.count) {
+			return null;
+		}
+
+		return this.slice(this.offsets[index], this.lengths[index]);
+	}
+
+	/** 返回 UTF-8 字符集解码的子段字符串，索引无效时返回 null 。
+	 */
+	public String getSubsegmentAsString(int index) {
+		ByteBuffer slice = this.getSubsegment(index);
+		if (null == slice) {
+			return null;
+		}
+
+		return UTF8.decode(slice).toString();
+	}
+
+	/** 返回 Body 数据的只读缓冲区切片，子段格式的数据包返回 null 。
+	 */
+	public ByteBuffer getBody() {
+		if (this.segmented || this.bodyLength == 0) {
+			return null;
+		}
+
+		return this.slice(this.bodyOffset, this.bodyLength);
+	}
+
+	/** 复制数据创建数据包实例。
+	 */
+	public Packet toPacket() {
+		Packet packet = new Packet(this.tag, this.sn, this.major, this.minor);
+
+		if (this.segmented) {
+			for (int i = 0; i < this.count; ++i) {
+				byte[] subsegment = new byte[this.lengths[i]];
+				this.slice(this.offsets[i], this.lengths[i]).get(subsegment);
+				packet.appendSubsegment(subsegment);
+			}
+		}
+		else if (this.bodyLength > 0) {
+			byte[] body = new byte[this.bodyLength];
+			this.slice(this.bodyOffset, this.bodyLength).get(body);
+			packet.setBody(body);
+		}
+
+		return packet;
+	}
+
+	private ByteBuffer slice(int offset, int length) {
+		ByteBuffer dup = this.buffer.duplicate();
+		dup.limit(offset + length);
+		dup.position(offset);
+		return dup.slice();
+	}
+
+	/** 解析文本格式。
+	 */
+	private boolean parseText() {
+		int base = this.buffer.position();
+		int limit = this.buffer.limit();
+		int headLength = Packet.PSL_TAG + Packet.PSL_VERSION + Packet.PSL_SN + Packet.PSL_BODY_LENGTH;
+		if (limit - base < headLength) {
+			return false;
+		}
+
+		this.readTag(base);
+
+		// 解析 Version 、SN 和 Body 段长度
+		this.cursor = base + Packet.PSL_TAG;
+		this.minor = this.readDigits(2);
+		this.major = this.readDigits(2);
+		this.sn = this.readDigits(Packet.PSL_SN);
+		int length = this.readDigits(Packet.PSL_BODY_LENGTH);
+		if (this.minor < 0 || this.major < 0 || this.sn < 0 || length < 0) {
+			Logger.w(PacketView.class, "Packet header format error");
+			return false;
+		}
+
+		int available = limit - this.cursor;
+		if (available == 0) {
+			return true;
+		}
+
+		if (available != length) {
+			Logger.w(PacketView.class, "Packet length exception : bytes-length=" + (limit - base) + " body-length=" + length);
+		}
+
+		// 判断是否符合子段分割形式
+		int begin = this.cursor;
+		int num = (available >= Packet.PSL_SUBSEGMENT_NUM) ? this.readDigits(Packet.PSL_SUBSEGMENT_NUM) : -1;
+		if (num < 0) {
+			// 不是数字，直接使用 Body
+			if (length > available) {
+				return false;
+			}
+
+			this.bodyOffset = begin;
+			this.bodyLength = length;
+			return true;
+		}
+
+		if ((long) num * Packet.PSL_SUBSEGMENT_LENGTH > limit - this.cursor) {
+			return false;
+		}
+
+		// 解析子段长度
+		this.segmented = true;
+		this.count = num;
+		this.offsets = new int[num];
+		this.lengths = new int[num];
+		for (int i = 0; i < num; ++i) {
+			this.lengths[i] = this.readDigits(Packet.PSL_SUBSEGMENT_LENGTH);
+			if (this.lengths[i] < 0) {
+				return false;
+			}
+		}
+
+		return this.locateSubsegments(limit);
+	}
+
+	/** 解析二进制格式。
+	 */
+	private boolean parseBinary() {
+		int base = this.buffer.position();
+		int limit = this.buffer.limit();
+		if (limit - base < Packet.PSL_TAG + Packet.PSL_V2_VERSION + Packet.PSL_V2_FLAGS + 2) {
+			return false;
+		}
+
+		this.readTag(base);
+
+		// 解析 Version 和标志位
+		this.cursor = base + Packet.PSL_TAG;
+		this.major = this.buffer.get(this.cursor++) & 0xFF;
+		this.minor = this.buffer.get(this.cursor++) & 0xFF;
+		byte flags = this.buffer.get(this.cursor++);
+
+		// 解析 SN 和 Body 段长度
+		long sn = this.readVarint();
+		long length = this.readVarint();
+		if (sn < 0 || length < 0 || length != limit - this.cursor) {
+			Logger.w(PacketView.class, "Packet length exception : bytes-length=" + (limit - base) + " body-length=" + length);
+			return false;
+		}
+		this.sn = (int) sn;
+
+		if ((flags & Packet.V2_FLAG_SUBSEGMENT) == 0) {
+			this.bodyOffset = this.cursor;
+			this.bodyLength = (int) length;
+			return true;
+		}
+
+		// 解析子段数量和子段长度
+		long num = this.readVarint();
+		if (num < 0 || num > limit - this.cursor) {
+			Logger.w(PacketView.class, "Packet subsegment exception : number=" + num);
+			return false;
+		}
+
+		this.segmented = true;
+		this.count = (int) num;
+		this.offsets = new int[this.count];
+		this.lengths = new int[this.count];
+		for (int i = 0; i < this.count; ++i) {
+			long len = this.readVarint();
+			if (len < 0 || len > limit - this.cursor) {
+				Logger.w(PacketView.class, "Packet subsegment exception : length=" + len);
+				return false;
+			}
+			this.lengths[i] = (int) len;
+		}
+
+		return this.locateSubsegments(limit);
+	}
+
+	/** 从游标位置开始依次计算各子段位置。
+	 */
+	private boolean locateSubsegments(int limit) {
+		int offset = this.cursor;
+		for (int i = 0; i < this.count; ++i) {
+			this.offsets[i] = offset;
+			offset += this.lengths[i];
+			if (offset > limit || offset < 0) {
+				Logger.w(PacketView.class, "Packet subsegment exception : length=" + this.lengths[i]);
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private void readTag(int base) {
+		this.tag = new byte[Packet.PSL_TAG];
+		for (int i = 0; i < Packet.PSL_TAG; ++i) {
+			this.tag[i] = this.buffer.get(base + i);
+		}
+	}
+
+	/** 读取定长的十进制 ASCII 数字，包含非数字字符时返回 -1 。
+	 */
+	private int readDigits(int width) {
+		int value = 0;
+		for (int i = 0; i < width; ++i) {
+			int b = this.buffer.get(this.cursor + i) - '0';
+			if (b < 0 || b > 9) {
+				return -1;
+			}
+			value = value * 10 + b;
+		}
+
+		this.cursor += width;
+		return value;
+	}
+
+	/** 读取变长整数，数据不完整或溢出时返回 -1 。
+	 */
+	private long readVarint() {
+		int limit = this.buffer.limit();
+		long value = 0;
+		for (int shift = 0; shift < 63; shift += 7) {
+			if (this.cursor >= limit) {
+				return -1;
+			}
+
+			byte b = this.buffer.get(this.cursor++);
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+
+		return -1;
+	}
+}
@@ -0,0 +1,141 @@
+/*
+-----------------------------------------------------------------------------
+This source file is part of Cell Cloud.
+
+Copyright (c) 2009-2013 Cell Cloud Team (www.cellcloud.net)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+-----------------------------------------------------------------------------
+*/
+
+package net.cellcloud.common;
+
+import java.net.InetSocketAddress;
+
+/** 会话 I/O 统计快照。
+ * 
+ * @author Jiangwei Xu
+ */
+public final class SessionMetrics {
+
+	private Long id;
+	private InetSocketAddress address;
+	private int workerIndex;
+	private long bytesIn;
+	private long bytesOut;
+	private long messagesIn;
+	private long messagesOut;
+	private long pendingBytes;
+	private int pendingMessages;
+	private boolean writable;
+	private long lastWriteLatency;
+	private long maxWriteLatency;
+
+	protected SessionMetrics(Session session, int workerIndex, long bytesIn, long bytesOut,
+			long messagesIn, long messagesOut, MessageSendQueue queue) {
+		this.id = session.getId();
+		this.address = session.getAddress();
+		this.workerIndex = workerIndex;
+		this.bytesIn = bytesIn;
+		this.bytesOut = bytesOut;
+		this.messagesIn = messagesIn;
+		this.messagesOut = messagesOut;
+		this.pendingBytes = queue.getPendingBytes();
+		this.pendingMessages = queue.getPendingMessages();
+		this.writable = queue.isWritable();
+		this.lastWriteLatency = queue.getLastWriteLatency() / 1000L;
+		this.maxWriteLatency = queue.getMaxWriteLatency() / 1000L;
+	}
+
+	/** 返回会话 ID 。 */
+	public Long getId() {
+		return this.id;
+	}
+
+	/** 返回会话地址。 */
+	public InetSocketAddress getAddress() {
+		return this.address;
+	}
+
+	/** 返回所属工作线程索引，连接器会话返回 -1 。 */
+	public int getWorkerIndex() {
+		return this.workerIndex;
+	}
+
+	/** 返回接收的字节数。 */
+	public long getBytesIn() {
+		return this.bytesIn;
+	}
+
+	/** 返回发送的消息数据字节数。 */
+	public long getBytesOut() {
+		return this.bytesOut;
+	}
+
+	/** 返回接收的消息数。 */
+	public long getMessagesIn() {
+		return this.messagesIn;
+	}
+
+	/** 返回发送的消息数。 */
+	public long getMessagesOut() {
+		return this.messagesOut;
+	}
+
+	/** 返回待发送的字节数。 */
+	public long getPendingBytes() {
+		return this.pendingBytes;
+	}
+
+	/** 返回待发送的消息数。 */
+	public int getPendingMessages() {
+		return this.pendingMessages;
+	}
+
+	/** 返回会话是否可写。 */
+	public boolean isWritable() {
+		return this.writable;
+	}
+
+	/** 返回最近一次抽样的入队到写出延迟，单位：微秒。 */
+	public long getLastWriteLatency() {
+		return this.lastWriteLatency;
+	}
+
+	/** 返回抽样的最大入队到写出延迟，单位：微秒。 */
+	public long getMaxWriteLatency() {
+		return this.maxWriteLatency;
+	}
+
+	@Override
+	public String toString() {
+		return new StringBuilder("Session#").append(this.id)
+				.append("[").append(this.address)
+				.append(", worker=").append(this.workerIndex)
+				.append(", bytesIn=").append(this.bytesIn)
+				.append(", bytesOut=").append(this.bytesOut)
+				.append(", messagesIn=").append(this.messagesIn)
+				.append(", messagesOut=").append(this.messagesOut)
+				.append(", pendingBytes=").append(this.pendingBytes)
+				.append(", pendingMessages=").append(this.pendingMessages)
+				.append(", writable=").append(this.writable)
+				.append(", lastWriteLatencyUs=").append(this.lastWriteLatency)
+				.append(", maxWriteLatencyUs=").append(this.maxWriteLatency).append("]").toString();
+	}
+}
@@ -0,0 +1,222 @@
+/*
+-----------------------------------------------------------------------------
+This source file is part of Cell Cloud.
+
+Copyright (c) 2009-2013 Cell Cloud Team (www.cellcloud.net)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+-----------------------------------------------------------------------------
+*/
+
+package net.cellcloud.common;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.StandardSocketOptions;
+import java.nio.channels.SocketChannel;
+
+/** 传输参数配置。
+ * 
+ * 描述一个网络端点使用的套接字选项、缓冲区大小、连接队列长度、工作线程数量、
+ * 数据块大小以及单次发送的写入重试次数。数值为 0 的参数使用系统或服务的默认值。
+ * 
+ * 内置三种配置：默认配置、低延迟配置和高吞吐量配置。
+ * 
+ * @author Jiangwei Xu
+ */
+public final class TransportProfile {
+
+	/// 默认配置名称
+	public static final String DEFAULT = "default";
+	/// 低延迟配置名称
+	public static final String LATENCY = "latency";
+	/// 高吞吐量配置名称
+	public static final String THROUGHPUT = "throughput";
+
+	private String name;
+
+	// 是否禁用 Nagle 算法
+	private boolean tcpNoDelay = false;
+	// 套接字接收缓冲区大小，0 表示使用系统默认值
+	private int receiveBufferSize = 0;
+	// 套接字发送缓冲区大小，0 表示使用系统默认值
+	private int sendBufferSize = 0;
+	// 等待接受的连接队列长度，0 表示使用系统默认值
+	private int backlog = 0;
+	// 接收器工作线程数量，0 表示使用服务默认值
+	private int workerNum = 0;
+	// 读写数据块大小，0 表示使用服务默认值
+	private int blockSize = 0;
+	// 通道暂时不可写时单次发送的最大写入次数
+	private int writeSpinCount = 1;
+
+	/** 构造函数。
+	 */
+	public TransportProfile(String name) {
+		this.name = name;
+	}
+
+	/** 创建默认配置。
+	 * 所有参数使用系统或服务的默认值。
+	 */
+	public static TransportProfile createDefault() {
+		return new TransportProfile(DEFAULT);
+	}
+
+	/** 创建低延迟配置。
+	 * 禁用 Nagle 算法，发送缓存满时多次重试写入以减少选择器往返。
+	 */
+	public static TransportProfile createLatency() {
+		TransportProfile profile = new TransportProfile(LATENCY);
+		profile.tcpNoDelay = true;
+		profile.backlog = 1024;
+		profile.writeSpinCount = 8;
+		return profile;
+	}
+
+	/** 创建高吞吐量配置。
+	 * 使用较大的套接字缓冲区和数据块，以便在较高的往返时延下保持带宽。
+	 */
+	public static TransportProfile createThroughput() {
+		TransportProfile profile = new TransportProfile(THROUGHPUT);
+		profile.receiveBufferSize = 1024 * 1024;
+		profile.sendBufferSize = 1024 * 1024;
+		profile.backlog = 256;
+		profile.workerNum = 4;
+		profile.blockSize = 65536;
+		profile.writeSpinCount = 16;
+		return profile;
+	}
+
+	/** 创建指定名称的内置配置，名称未知时返回 null 。
+	 */
+	public static TransportProfile create(String name) {
+		if (DEFAULT.equals(name)) {
+			return createDefault();
+		}
+		else if (LATENCY.equals(name)) {
+			return createLatency();
+		}
+		else if (THROUGHPUT.equals(name)) {
+			return createThroughput();
+		}
+		return null;
+	}
+
+	/** 复制配置。
+	 */
+	public TransportProfile copy(String name) {
+		TransportProfile profile = new TransportProfile(name);
+		profile.tcpNoDelay = this.tcpNoDelay;
+		profile.receiveBufferSize = this.receiveBufferSize;
+		profile.sendBufferSize = this.sendBufferSize;
+		profile.backlog = this.backlog;
+		profile.workerNum = this.workerNum;
+		profile.blockSize = this.blockSize;
+		profile.writeSpinCount = this.writeSpinCount;
+		return profile;
+	}
+
+	/** 返回配置名称。
+	 */
+	public String getName() {
+		return this.name;
+	}
+
+	public boolean isTcpNoDelay() {
+		return this.tcpNoDelay;
+	}
+	public void setTcpNoDelay(boolean value) {
+		this.tcpNoDelay = value;
+	}
+
+	public int getReceiveBufferSize() {
+		return this.receiveBufferSize;
+	}
+	public void setReceiveBufferSize(int size) {
+		this.receiveBufferSize = Math.max(0, size);
+	}
+
+	public int getSendBufferSize() {
+		return this.sendBufferSize;
+	}
+	public void setSendBufferSize(int size) {
+		this.sendBufferSize = Math.max(0, size);
+	}
+
+	public int getBacklog() {
+		return this.backlog;
+	}
+	public void setBacklog(int backlog) {
+		this.backlog = Math.max(0, backlog);
+	}
+
+	public int getWorkerNum() {
+		return this.workerNum;
+	}
+	public void setWorkerNum(int num) {
+		this.workerNum = Math.max(0, num);
+	}
+
+	public int getBlockSize() {
+		return this.blockSize;
+	}
+	public void setBlockSize(int size) {
+		this.blockSize = Math.max(0, size);
+	}
+
+	public int getWriteSpinCount() {
+		return this.writeSpinCount;
+	}
+	public void setWriteSpinCount(int count) {
+		this.writeSpinCount = Math.max(1, count);
+	}
+
+	/** 配置服务端套接字，需要在绑定之前调用。
+	 * 接收缓冲区大于 64 KB 时需要在监听前设置才能协商窗口缩放。
+	 */
+	public void configure(ServerSocket socket) throws IOException {
+		if (this.receiveBufferSize > 0) {
+			socket.setReceiveBufferSize(this.receiveBufferSize);
+		}
+	}
+
+	/** 配置 TCP 连接通道。
+	 */
+	public void configure(SocketChannel channel) throws IOException {
+		channel.setOption(StandardSocketOptions.TCP_NODELAY, this.tcpNoDelay);
+		if (this.receiveBufferSize > 0) {
+			channel.setOption(StandardSocketOptions.SO_RCVBUF, this.receiveBufferSize);
+		}
+		if (this.sendBufferSize > 0) {
+			channel.setOption(StandardSocketOptions.SO_SNDBUF, this.sendBufferSize);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return new StringBuilder(this.name).append("[nodelay=").append(this.tcpNoDelay)
+				.append(", rcvbuf=").append(this.receiveBufferSize)
+				.append(", sndbuf=").append(this.sendBufferSize)
+				.append(", backlog=").append(this.backlog)
+				.append(", workers=").append(this.workerNum)
+				.append(", block=").append(this.blockSize)
+				.append(", spin=").append(this.writeSpinCount).append("]").toString();
+	}
+}
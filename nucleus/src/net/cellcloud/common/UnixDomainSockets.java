@@ -0,0 +1,159 @@
+/*
+-----------------------------------------------------------------------------
+This source file is part of Cell Cloud.
+
+Copyright (c) 2009-2013 Cell Cloud Team (www.cellcloud.net)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+-----------------------------------------------------------------------------
+*/
+
+package net.cellcloud.common;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/** Unix 域套接字工具。
+ * 
+ * 同主机节点间的传输地址使用 "unix:&lt;目录&gt;" 格式配置，
+ * 服务在该目录下创建名为 "&lt;名称&gt;-&lt;端口&gt;.sock" 的套接字文件，
+ * 连接本机地址时如果对应的套接字文件存在则使用 Unix 域套接字连接，否则使用 TCP 。
+ * 
+ * Unix 域套接字通道需要 JDK 16 及以上版本，低版本运行时不启用，始终使用 TCP 。
+ * 
+ * @author Jiangwei Xu
+ */
+public final class UnixDomainSockets {
+
+	/// 传输地址前缀
+	public static final String SCHEME = "unix:";
+
+	private static final ProtocolFamily UNIX;
+	private static final Method ADDRESS_OF;
+	private static final Method OPEN_CHANNEL;
+	private static final Method OPEN_SERVER_CHANNEL;
+
+	static {
+		ProtocolFamily family = null;
+		Method of = null;
+		Method open = null;
+		Method openServer = null;
+		try {
+			family = StandardProtocolFamily.valueOf("UNIX");
+			of = Class.forName("java.net.UnixDomainSocketAddress").getMethod("of", String.class);
+			open = SocketChannel.class.getMethod("open", ProtocolFamily.class);
+			openServer = ServerSocketChannel.class.getMethod("open", ProtocolFamily.class);
+		} catch (Exception e) {
+			// 运行时不支持 Unix 域套接字
+			family = null;
+		}
+
+		UNIX = family;
+		ADDRESS_OF = of;
+		OPEN_CHANNEL = open;
+		OPEN_SERVER_CHANNEL = openServer;
+	}
+
+	private UnixDomainSockets() {
+	}
+
+	/** 运行时是否支持 Unix 域套接字通道。
+	 */
+	public static boolean isSupported() {
+		return null != UNIX;
+	}
+
+	/** 返回传输地址中的目录，不是 Unix 域传输地址或运行时不支持时返回 null 。
+	 */
+	public static String parseDirectory(String transport) {
+		if (null == transport || !transport.startsWith(SCHEME) || !isSupported()) {
+			return null;
+		}
+
+		String dir = transport.substring(SCHEME.length()).trim();
+		return dir.isEmpty() ? null : dir;
+	}
+
+	/** 返回服务端套接字文件路径，不使用 Unix 域传输时返回 null 。
+	 */
+	public static String bindPath(String transport, String name, int port) {
+		String dir = parseDirectory(transport);
+		if (null == dir) {
+			return null;
+		}
+
+		return new File(dir, name + "-" + port + ".sock").getPath();
+	}
+
+	/** 返回连接指定地址使用的套接字文件路径。
+	 * 地址不是本机地址或套接字文件不存在时返回 null ，应使用 TCP 连接。
+	 */
+	public static String resolvePath(String transport, String name, InetSocketAddress address) {
+		String path = bindPath(transport, name, address.getPort());
+		if (null == path || !LoopbackAcceptor.isLocalAddress(address.getAddress())) {
+			return null;
+		}
+
+		return new File(path).exists() ? path : null;
+	}
+
+	/** 创建套接字文件对应的地址。
+	 */
+	public static SocketAddress toAddress(String path) throws IOException {
+		return (SocketAddress) invoke(ADDRESS_OF, path);
+	}
+
+	/** 打开 Unix 域套接字通道。
+	 */
+	public static SocketChannel openChannel() throws IOException {
+		return (SocketChannel) invoke(OPEN_CHANNEL, UNIX);
+	}
+
+	/** 打开 Unix 域服务端套接字通道。
+	 */
+	public static ServerSocketChannel openServerChannel() throws IOException {
+		return (ServerSocketChannel) invoke(OPEN_SERVER_CHANNEL, UNIX);
+	}
+
+	private static Object invoke(Method method, Object arg) throws IOException {
+		if (null == method) {
+			throw new IOException("Unix domain socket is not supported");
+		}
+
+		try {
+			return method.invoke(null, arg);
+		} catch (InvocationTargetException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			throw new IOException(cause);
+		} catch (IllegalAccessException e) {
+			throw new IOException(e);
+		}
+	}
+}
@@ -0,0 +1,157 @@
+/*
+-----------------------------------------------------------------------------
+This source file is part of Cell Cloud.
+
+Copyright (c) 2009-2013 Cell Cloud Team (www.cellcloud.net)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+-----------------------------------------------------------------------------
+*/
+
+package net.cellcloud.common;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/** 接收器工作线程分配策略。
+ * 
+ * 接收器接受新连接时使用分配策略为 Session 选择工作线程。
+ * 内置策略：按 Session ID 取模、最少 Session 数、最低每秒字节数以及随机两选一。
+ * 
+ * @author Jiangwei Xu
+ */
+public abstract class WorkerAssignStrategy {
+
+	/// 按 Session ID 取模分配
+	public static final WorkerAssignStrategy SESSION_ID = new WorkerAssignStrategy("id") {
+		@Override
+		public NonblockingAcceptorWorker select(NonblockingAcceptorWorker[] workers, NonblockingAcceptorSession session) {
+			return workers[(int) (Math.abs(session.getId().longValue()) % workers.length)];
+		}
+	};
+
+	/// 分配给 Session 数量最少的工作线程
+	public static final WorkerAssignStrategy LEAST_SESSIONS = new WorkerAssignStrategy("least-sessions") {
+		@Override
+		public NonblockingAcceptorWorker select(NonblockingAcceptorWorker[] workers, NonblockingAcceptorSession session) {
+			NonblockingAcceptorWorker selected = workers[0];
+			for (int i = 1; i < workers.length; ++i) {
+				if (workers[i].getSessionNum() < selected.getSessionNum()) {
+					selected = workers[i];
+				}
+			}
+			return selected;
+		}
+	};
+
+	/// 分配给最近一个采样周期每秒字节数最低的工作线程，字节数相同时选择 Session 较少的线程
+	public static final WorkerAssignStrategy LEAST_BYTES = new WorkerAssignStrategy("least-bytes") {
+		@Override
+		public NonblockingAcceptorWorker select(NonblockingAcceptorWorker[] workers, NonblockingAcceptorSession session) {
+			NonblockingAcceptorWorker selected = workers[0];
+			for (int i = 1; i < workers.length; ++i) {
+				if (lighter(workers[i], selected)) {
+					selected = workers[i];
+				}
+			}
+			return selected;
+		}
+	};
+
+	/// 随机选择两个工作线程，分配给其中每秒字节数较低的一个。
+	/// 采样数据滞后时可以避免新连接集中分配到同一个工作线程。
+	public static final WorkerAssignStrategy TWO_CHOICES = new WorkerAssignStrategy("two-choices") {
+		@Override
+		public NonblockingAcceptorWorker select(NonblockingAcceptorWorker[] workers, NonblockingAcceptorSession session) {
+			if (workers.length == 1) {
+				return workers[0];
+			}
+
+			ThreadLocalRandom random = ThreadLocalRandom.current();
+			int a = random.nextInt(workers.length);
+			int b = random.nextInt(workers.length - 1);
+			if (b >= a) {
+				++b;
+			}
+
+			return lighter(workers[b], workers[a]) ? workers[b] : workers[a];
+		}
+	};
+
+	private String name;
+
+	protected WorkerAssignStrategy(String name) {
+		this.name = name;
+	}
+
+	/** 解析策略名称。
+	 * 可用的名称为 "id"、"least-sessions"、"least-bytes"、"two-choices" ，
+	 * 无法解析时返回 null 。
+	 */
+	public static WorkerAssignStrategy parse(String text) {
+		if (null == text) {
+			return null;
+		}
+
+		String t = text.trim().toLowerCase();
+		if (t.equals(SESSION_ID.name)) {
+			return SESSION_ID;
+		}
+		else if (t.equals(LEAST_SESSIONS.name)) {
+			return LEAST_SESSIONS;
+		}
+		else if (t.equals(LEAST_BYTES.name)) {
+			return LEAST_BYTES;
+		}
+		else if (t.equals(TWO_CHOICES.name)) {
+			return TWO_CHOICES;
+		}
+
+		return null;
+	}
+
+	/** 返回策略名称。
+	 */
+	public String getName() {
+		return this.name;
+	}
+
+	/** 为新 Session 选择工作线程。
+	 * 
+	 * @param workers 接收器的工作线程，至少包含一个元素。
+	 * @param session 新建的 Session 。
+	 * @return 返回选中的工作线程。
+	 */
+	public abstract NonblockingAcceptorWorker select(NonblockingAcceptorWorker[] workers, NonblockingAcceptorSession session);
+
+	/** 工作线程 a 的负载是否低于 b 。
+	 */
+	protected static boolean lighter(NonblockingAcceptorWorker a, NonblockingAcceptorWorker b) {
+		long ra = a.getBytesPerSecond();
+		long rb = b.getBytesPerSecond();
+		if (ra != rb) {
+			return ra < rb;
+		}
+		return a.getSessionNum() < b.getSessionNum();
+	}
+
+	@Override
+	public String toString() {
+		return this.name;
+	}
+}
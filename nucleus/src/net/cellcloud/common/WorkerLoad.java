@@ -0,0 +1,98 @@
+/*
+-----------------------------------------------------------------------------
+This source file is part of Cell Cloud.
+
+Copyright (c) 2009-2013 Cell Cloud Team (www.cellcloud.net)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+-----------------------------------------------------------------------------
+*/
+
+package net.cellcloud.common;
+
+/** 接收器工作线程负载快照。
+ * 
+ * @author Jiangwei Xu
+ */
+public final class WorkerLoad {
+
+	private int index;
+	private int sessionNum;
+	private long receivedBytes;
+	private long sentBytes;
+	private long bytesPerSecond;
+	private long migratedIn;
+	private long migratedOut;
+
+	protected WorkerLoad(NonblockingAcceptorWorker worker) {
+		this.index = worker.getIndex();
+		this.sessionNum = worker.getSessionNum();
+		this.receivedBytes = worker.getReceivedBytes();
+		this.sentBytes = worker.getSentBytes();
+		this.bytesPerSecond = worker.getBytesPerSecond();
+		this.migratedIn = worker.getMigratedInNum();
+		this.migratedOut = worker.getMigratedOutNum();
+	}
+
+	/** 返回工作线程索引。 */
+	public int getIndex() {
+		return this.index;
+	}
+
+	/** 返回工作线程管理的 Session 数量。 */
+	public int getSessionNum() {
+		return this.sessionNum;
+	}
+
+	/** 返回累计接收的字节数。 */
+	public long getReceivedBytes() {
+		return this.receivedBytes;
+	}
+
+	/** 返回累计发送的字节数。 */
+	public long getSentBytes() {
+		return this.sentBytes;
+	}
+
+	/** 返回最近一个采样周期的每秒收发字节数。 */
+	public long getBytesPerSecond() {
+		return this.bytesPerSecond;
+	}
+
+	/** 返回迁入的 Session 数量。 */
+	public long getMigratedInNum() {
+		return this.migratedIn;
+	}
+
+	/** 返回迁出的 Session 数量。 */
+	public long getMigratedOutNum() {
+		return this.migratedOut;
+	}
+
+	@Override
+	public String toString() {
+		return new StringBuilder("Worker#").append(this.index)
+				.append("[sessions=").append(this.sessionNum)
+				.append(", recv=").append(this.receivedBytes)
+				.append(", sent=").append(this.sentBytes)
+				.append(", bps=").append(this.bytesPerSecond)
+				.append(", in=").append(this.migratedIn)
+				.append(", out=").append(this.migratedOut).append("]").toString();
+	}
+}
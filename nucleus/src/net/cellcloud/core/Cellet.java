@@ -26,6 +26,8 @@ THE SOFTWARE.
 
 package net.cellcloud.core;
 
+import java.util.List;
+
 import net.cellcloud.talk.Primitive;
 import net.cellcloud.talk.TalkService;
 import net.cellcloud.talk.dialect.Dialect;
@@ -58,6 +60,11 @@ public abstract class Cellet extends AbstractCellet {
 	public void talk(final String targetTag, final Primitive primitive) {
 		TalkService.getInstance().notice(targetTag, primitive, this, this.sandbox);
 	}
+	/** 按顺序发送一组原语到消费端进行会话。
+	 */
+	public void talk(final String targetTag, final List<Primitive> primitives) {
+		TalkService.getInstance().notice(targetTag, primitives, this, this.sandbox);
+	}
 	/** 发送方言到消费端进行会话。
 	 */
 	public void talk(final String targetTag, final Dialect dialect) {
@@ -188,6 +188,19 @@ public final class Nucleus {
 			if (this.config.talk.enable) {
 				// 设置服务端口号
 				this.talkService.setPort(this.config.talk.port);
+				this.talkService.setWriteControl(this.config.talk.writeLowWatermark, this.config.talk.writeHighWatermark,
+						this.config.talk.writeLimit, this.config.talk.writeOverflowPolicy);
+				this.talkService.setFrameFormat(this.config.talk.framing);
+				this.talkService.setBinaryPrimitive(this.config.talk.binaryPrimitive);
+				this.talkService.setCoalescing(this.config.talk.coalesceDelay, this.config.talk.coalesceBytes);
+				this.talkService.setLocalTransport(this.config.localTransport);
+				this.talkService.setTransportProfile(this.config.getTransportProfile(this.config.talk.transport));
+				this.talkService.setWorkerBalance(this.config.talk.workerAssign, this.config.talk.rebalanceInterval,
+						this.config.talk.rebalanceThreshold);
+				this.talkService.setAdmission(this.config.talk.acceptRate, this.config.talk.connectRatePerAddress,
+						this.config.talk.maxConnectionsPerAddress);
+				this.talkService.setDispatchExecutor(this.config.talk.dispatchThreads,
+						this.config.talk.dispatchQueueCapacity);
 
 				// 启动 Talk Service
 				if (this.talkService.startup()) {
@@ -228,6 +241,9 @@ public final class Nucleus {
 				}
 			}
 
+			// Speaker 使用的对话原语合并窗口
+			this.talkService.setCoalescing(this.config.talk.coalesceDelay, this.config.talk.coalesceBytes);
+
 			// 启动守护线程
 			this.talkService.startDaemon();
 		}
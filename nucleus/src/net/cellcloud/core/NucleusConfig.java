@@ -28,6 +28,13 @@ package net.cellcloud.core;
 
 import java.net.InetSocketAddress;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.cellcloud.common.FrameFormat;
+import net.cellcloud.common.Logger;
+import net.cellcloud.common.TransportProfile;
+import net.cellcloud.common.WorkerAssignStrategy;
+import net.cellcloud.common.WriteOverflowPolicy;
 
 /** 内核参数配置描述。
  * 
@@ -84,6 +91,13 @@ public final class NucleusConfig {
 	/// 是否启用 HTTP 服务器
 	public boolean httpd = true;
 
+	/// 同主机节点间的传输地址，格式为 "unix:<目录>" ，Talk 和集群服务在该目录下创建 Unix 域套接字，
+	/// 为 null 时仅使用 TCP
+	public String localTransport = null;
+
+	/// 传输参数配置表，Key 为配置名称，默认包含 "default"、"latency" 和 "throughput"
+	public ConcurrentHashMap<String, TransportProfile> transportProfiles;
+
 	/// Talk Service 配置
 	public TalkConfig talk;
 
@@ -93,6 +107,33 @@ public final class NucleusConfig {
 	public NucleusConfig() {
 		this.talk = new TalkConfig();
 		this.cluster = new ClusterConfig();
+
+		this.transportProfiles = new ConcurrentHashMap<String, TransportProfile>();
+		this.addTransportProfile(TransportProfile.createDefault());
+		this.addTransportProfile(TransportProfile.createLatency());
+		this.addTransportProfile(TransportProfile.createThroughput());
+	}
+
+	/** 添加或替换传输参数配置。
+	 */
+	public void addTransportProfile(TransportProfile profile) {
+		this.transportProfiles.put(profile.getName(), profile);
+	}
+
+	/** 返回指定名称的传输参数配置，名称不存在时返回默认配置。
+	 */
+	public TransportProfile getTransportProfile(String name) {
+		TransportProfile profile = (null != name) ? this.transportProfiles.get(name) : null;
+		if (null == profile) {
+			if (null != name) {
+				Logger.w(NucleusConfig.class, "Unknown transport profile: " + name + ", use default");
+			}
+			profile = this.transportProfiles.get(TransportProfile.DEFAULT);
+			if (null == profile) {
+				profile = TransportProfile.createDefault();
+			}
+		}
+		return profile;
 	}
 
 	/**
@@ -108,6 +149,60 @@ public final class NucleusConfig {
 		/// 是否使用 HTTP 服务
 		public boolean httpd = false;
 
+		/// 单个会话待发送数据低水位线，单位：字节
+		public int writeLowWatermark = 256 * 1024;
+
+		/// 单个会话待发送数据高水位线，单位：字节
+		public int writeHighWatermark = 1024 * 1024;
+
+		/// 单个会话待发送数据上限，单位：字节，为 0 时不限制
+		public int writeLimit = 16 * 1024 * 1024;
+
+		/// 待发送数据超过上限时的处理策略
+		public WriteOverflowPolicy writeOverflowPolicy = WriteOverflowPolicy.DISCONNECT;
+
+		/// 长度前缀分帧格式，为 null 时仅使用数据掩码
+		public FrameFormat framing = null;
+
+		/// 是否与支持的对端使用二进制原语格式
+		public boolean binaryPrimitive = true;
+
+		/// 对话原语合并窗口，单位：毫秒，为 0 时不合并
+		public long coalesceDelay = 0;
+
+		/// 合并窗口内暂存数据的字节上限，达到上限时立即发送
+		public int coalesceBytes = 16 * 1024;
+
+		/// Cellet 在本进程内时 Speaker 是否使用进程内回环连接
+		public boolean loopback = true;
+
+		/// 入站数据包分发线程数，为 0 时使用处理器数量
+		public int dispatchThreads = 0;
+
+		/// 每个 Session 待分发数据包数量上限
+		public int dispatchQueueCapacity = 1024;
+
+		/// 传输参数配置名称
+		public String transport = TransportProfile.LATENCY;
+
+		/// 接收器工作线程分配策略
+		public WorkerAssignStrategy workerAssign = WorkerAssignStrategy.LEAST_SESSIONS;
+
+		/// 热点 Session 迁移周期，单位：毫秒，为 0 时不迁移
+		public long rebalanceInterval = 0;
+
+		/// 触发热点 Session 迁移的工作线程最小负载差，单位：字节每秒
+		public long rebalanceThreshold = 1024 * 1024;
+
+		/// 全局每秒接受的连接数，为 0 时不限制
+		public double acceptRate = 0;
+
+		/// 单个来源地址每秒的连接数，为 0 时不限制
+		public double connectRatePerAddress = 0;
+
+		/// 单个来源地址的最大并发连接数，为 0 时不限制
+		public int maxConnectionsPerAddress = 0;
+
 		private TalkConfig() {
 		}
 	}
@@ -131,6 +226,9 @@ public final class NucleusConfig {
 		/// 是否自动扫描地址
 		public boolean autoScan = false;
 
+		/// 传输参数配置名称
+		public String transport = TransportProfile.DEFAULT;
+
 		private ClusterConfig() {
 		}
 	}
@@ -35,6 +35,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
+import net.cellcloud.common.FrameFormat;
 import net.cellcloud.common.LogLevel;
 import net.cellcloud.common.Logger;
 import net.cellcloud.common.Message;
@@ -42,6 +43,7 @@ import net.cellcloud.common.MessageHandler;
 import net.cellcloud.common.NonblockingAcceptor;
 import net.cellcloud.common.Packet;
 import net.cellcloud.common.Session;
+import net.cellcloud.common.TransportProfile;
 import net.cellcloud.exception.StorageException;
 import net.cellcloud.storage.ResultSet;
 import net.cellcloud.storage.file.FileStorage;
@@ -87,11 +89,16 @@ public final class FileExpress implements MessageHandler, ExpressTaskListener {
 	private ExecutorService executor;
 	private FileStorage mainStorage;
 
+	private FrameFormat frameFormat;
+	// 传输参数配置，默认使用高吞吐量配置
+	private TransportProfile transportProfile;
+
 	private ArrayList<FileExpressListener> listeners;
 	private byte[] listenerMonitor = new byte[0];
 
 	public FileExpress() {
 		this.executor = null;
+		this.transportProfile = TransportProfile.createThroughput();
 	}
 
 	/** 设置线程池。
@@ -100,6 +107,23 @@ public final class FileExpress implements MessageHandler, ExpressTaskListener {
 		this.executor = executorService;
 	}
 
+	/** 设置传输参数配置，服务器模式需要在启动前设置。
+	 * 默认使用高吞吐量配置。
+	 */
+	public void setTransportProfile(TransportProfile profile) {
+		this.transportProfile = profile;
+	}
+
+	/** 设置长度前缀分帧格式。
+	 * 服务器模式下向客户端声明支持该分帧格式，客户端模式下在服务器声明支持后切换。
+	 */
+	public void setFrameFormat(FrameFormat format) {
+		this.frameFormat = format;
+		if (null != this.acceptor) {
+			this.acceptor.setFrameFormat(format);
+		}
+	}
+
 	/** 添加监听器。
 	 */
 	public void addListener(FileExpressListener listener) {
@@ -149,6 +173,8 @@ public final class FileExpress implements MessageHandler, ExpressTaskListener {
 		// 创建任务
 		FileExpressTask task = new FileExpressTask(ctx);
 		task.setListener(this);
+		task.setFrameFormat(this.frameFormat);
+		task.setTransportProfile(this.transportProfile);
 
 		// 提交任务执行
 		if (null == this.executor) {
@@ -170,6 +196,8 @@ public final class FileExpress implements MessageHandler, ExpressTaskListener {
 		// 创建任务
 		FileExpressTask task = new FileExpressTask(ctx);
 		task.setListener(this);
+		task.setFrameFormat(this.frameFormat);
+		task.setTransportProfile(this.transportProfile);
 
 		// 提交任务执行
 		if (null == this.executor) {
@@ -206,9 +234,15 @@ public final class FileExpress implements MessageHandler, ExpressTaskListener {
 		byte[] tail = {0x11, 0x24, 0x10, 0x04};
 		this.acceptor.defineDataMark(head, tail);
 
+		// 设置长度前缀分帧
+		this.acceptor.setFrameFormat(this.frameFormat);
+
 		// 设置最大连接数
 		this.acceptor.setMaxConnectNum(maxConnNum);
 
+		// 设置传输参数
+		this.acceptor.setTransportProfile(this.transportProfile);
+
 		// 设置处理器
 		this.acceptor.setHandler(this);
 
@@ -570,7 +604,7 @@ public final class FileExpress implements MessageHandler, ExpressTaskListener {
 			record.addAuthCode(eac);
 		}
 
-		// 包格式：授权码能力描述
+		// 包格式：授权码能力描述|特性
 
 		Packet response = new Packet(FileExpressDefinition.PT_AUTH, 1, 1, 0);
 
@@ -600,6 +634,10 @@ public final class FileExpress implements MessageHandler, ExpressTaskListener {
 			response.appendSubsegment(FileExpressDefinition.AUTH_NOACCESS);
 		}
 
+		if (null != this.acceptor.getFrameFormat()) {
+			response.appendSubsegment(FileExpressDefinition.FEATURE_LENGTH_FRAMING);
+		}
+
 		// 发送响应包
 		byte[] data = Packet.pack(response);
 		Message message = new Message(data);
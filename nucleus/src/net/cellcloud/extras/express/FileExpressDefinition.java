@@ -45,6 +45,9 @@ public final class FileExpressDefinition {
 	protected final static byte[] AUTH_READ = {'r'};
 	protected final static byte[] AUTH_NOACCESS = {'n','o'};
 
+	// 长度前缀分帧特性
+	protected final static byte[] FEATURE_LENGTH_FRAMING = {'l','f'};
+
 	// 数据包标签
 
 	// 权限校验
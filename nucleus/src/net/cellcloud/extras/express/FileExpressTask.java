@@ -26,6 +26,9 @@ THE SOFTWARE.
 
 package net.cellcloud.extras.express;
 
+import java.util.Arrays;
+
+import net.cellcloud.common.FrameFormat;
 import net.cellcloud.common.LogLevel;
 import net.cellcloud.common.Logger;
 import net.cellcloud.common.Message;
@@ -33,6 +36,7 @@ import net.cellcloud.common.MessageHandler;
 import net.cellcloud.common.NonblockingConnector;
 import net.cellcloud.common.Packet;
 import net.cellcloud.common.Session;
+import net.cellcloud.common.TransportProfile;
 import net.cellcloud.exception.StorageException;
 import net.cellcloud.storage.ResultSet;
 import net.cellcloud.storage.StorageEnumerator;
@@ -78,6 +82,9 @@ public final class FileExpressTask implements MessageHandler, Runnable {
 	private LocalFileStorage fileStorage;
 	private long progress;
 
+	private FrameFormat frameFormat;
+	private TransportProfile transportProfile;
+
 	private byte[] monitor = new byte[0];
 
 	public FileExpressTask(FileExpressContext context) {
@@ -97,6 +104,18 @@ public final class FileExpressTask implements MessageHandler, Runnable {
 		this.listener = listener;
 	}
 
+	/** 设置长度前缀分帧格式。
+	 */
+	public void setFrameFormat(FrameFormat format) {
+		this.frameFormat = format;
+	}
+
+	/** 设置传输参数配置。
+	 */
+	public void setTransportProfile(TransportProfile profile) {
+		this.transportProfile = profile;
+	}
+
 	@Override
 	public void run() {
 		switch (this.context.getOperate()) {
@@ -185,6 +204,8 @@ public final class FileExpressTask implements MessageHandler, Runnable {
 		byte[] headMark = {0x10, 0x04, 0x11, 0x24};
 		byte[] tailMark = {0x11, 0x24, 0x10, 0x04};
 		connector.defineDataMark(headMark, tailMark);
+		connector.setFrameFormat(this.frameFormat);
+		connector.setTransportProfile(this.transportProfile);
 		connector.setConnectTimeout(5000);
 		connector.setHandler(this);
 
@@ -474,6 +495,8 @@ public final class FileExpressTask implements MessageHandler, Runnable {
 		byte[] headMark = {0x10, 0x04, 0x11, 0x24};
 		byte[] tailMark = {0x11, 0x24, 0x10, 0x04};
 		connector.defineDataMark(headMark, tailMark);
+		connector.setFrameFormat(this.frameFormat);
+		connector.setTransportProfile(this.transportProfile);
 		connector.setConnectTimeout(10000);
 		connector.setHandler(this);
 
@@ -1063,6 +1086,12 @@ public final class FileExpressTask implements MessageHandler, Runnable {
 				byte[] auth = packet.getSubsegment(0);
 				this.context.getAuthCode().changeAuth(auth);
 
+				// 服务器支持长度前缀分帧时切换分帧格式
+				if (packet.getSubsegmentCount() > 1 && null != this.frameFormat
+					&& Arrays.equals(packet.getSubsegment(1), FileExpressDefinition.FEATURE_LENGTH_FRAMING)) {
+					session.getService().setOutboundFrameFormat(session, this.frameFormat);
+				}
+
 				boolean authorized = false;
 				switch (this.context.getOperate()) {
 				case FileExpressContext.OP_DOWNLOAD:
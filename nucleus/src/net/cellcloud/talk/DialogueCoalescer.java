@@ -0,0 +1,135 @@
+/*
+-----------------------------------------------------------------------------
+This source file is part of Cell Cloud.
+
+Copyright (c) 2009-2013 Cell Cloud Team (www.cellcloud.net)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+-----------------------------------------------------------------------------
+*/
+
+package net.cellcloud.talk;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/** 对话原语合并器。
+ * 
+ * 在时间窗口内暂存序列化后的原语，达到字节上限或窗口到期时合并为一个批量数据包发送。
+ * 发送在合并器锁内执行，因此各批次按照提交顺序写出。
+ * 
+ * @author Jiangwei Xu
+ */
+public final class DialogueCoalescer {
+
+	/** 批量数据发送器。
+	 */
+	public interface Sender {
+		/** 发送一批序列化后的原语，原语顺序即提交顺序。
+		 */
+		void send(List<byte[]> batch);
+	}
+
+	private final ScheduledExecutorService scheduler;
+	private final long maxDelay;
+	private final int maxBytes;
+	private final Sender sender;
+
+	private ArrayList<byte[]> pending;
+	private int pendingBytes;
+	private ScheduledFuture<?> timer;
+
+	private final Runnable flushTask = new Runnable() {
+		@Override
+		public void run() {
+			flush();
+		}
+	};
+
+	/** 构造函数。
+	 * @param scheduler 窗口定时器使用的调度器。
+	 * @param maxDelay 原语最长暂存时间，单位：毫秒。
+	 * @param maxBytes 暂存数据达到该字节数时立即发送。
+	 * @param sender 批量数据发送器。
+	 */
+	public DialogueCoalescer(ScheduledExecutorService scheduler, long maxDelay, int maxBytes, Sender sender) {
+		this.scheduler = scheduler;
+		this.maxDelay = maxDelay;
+		this.maxBytes = maxBytes;
+		this.sender = sender;
+		this.pending = new ArrayList<byte[]>();
+		this.pendingBytes = 0;
+		this.timer = null;
+	}
+
+	/** 提交一个序列化后的原语。
+	 */
+	public synchronized void offer(byte[] primitive) {
+		this.pending.add(primitive);
+		this.pendingBytes += primitive.length;
+
+		if (this.pendingBytes >= this.maxBytes
+			|| this.pending.size() >= TalkDefinition.DIALOGUE_BATCH_MAX) {
+			this.flush();
+		}
+		else if (null == this.timer) {
+			this.timer = this.scheduler.schedule(this.flushTask, this.maxDelay, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/** 立即发送所有暂存的原语。
+	 */
+	public synchronized void flush() {
+		if (null != this.timer) {
+			this.timer.cancel(false);
+			this.timer = null;
+		}
+
+		if (this.pending.isEmpty()) {
+			return;
+		}
+
+		ArrayList<byte[]> batch = this.pending;
+		this.pending = new ArrayList<byte[]>();
+		this.pendingBytes = 0;
+
+		this.sender.send(batch);
+	}
+
+	/** 丢弃所有暂存的原语。
+	 */
+	public synchronized void clear() {
+		if (null != this.timer) {
+			this.timer.cancel(false);
+			this.timer = null;
+		}
+
+		this.pending.clear();
+		this.pendingBytes = 0;
+	}
+
+	/** 返回暂存的原语数量。
+	 */
+	public synchronized int size() {
+		return this.pending.size();
+	}
+}
@@ -42,11 +42,12 @@ public class HttpSessionListener implements SessionListener {
 
 	@Override
 	public void onCreate(HttpSession session) {
-		// Nothing
+		TalkService.getInstance().scheduleHttpSessionCheck(session);
 	}
 
 	@Override
 	public void onDestroy(HttpSession session) {
+		TalkService.getInstance().cancelHttpSessionCheck(session);
 		TalkService.getInstance().closeSession(session);
 	}
 }
@@ -28,6 +28,7 @@ package net.cellcloud.talk;
 
 import java.net.InetSocketAddress;
 import java.nio.charset.Charset;
+import java.util.List;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeoutException;
 
@@ -37,6 +38,7 @@ import net.cellcloud.common.Logger;
 import net.cellcloud.core.Nucleus;
 import net.cellcloud.http.HttpResponse;
 import net.cellcloud.talk.stuff.PrimitiveSerializer;
+import net.cellcloud.util.TimingWheel;
 
 import org.eclipse.jetty.client.HttpClient;
 import org.eclipse.jetty.client.api.ContentResponse;
@@ -79,6 +81,9 @@ public class HttpSpeaker implements Speakable {
 	private int hbPeriod;
 	/// 心跳失败累计次数
 	private int hbFailCounts;
+	/// 心跳计时任务，由 tickMonitor 保护
+	private TimingWheel.Timeout tickTimeout;
+	private final Object tickMonitor = new Object();
 
 	public HttpSpeaker(String identifier, SpeakerDelegate delegate, int heartbeatPeriod) {
 		this.identifier = identifier;
@@ -184,6 +189,13 @@ public class HttpSpeaker implements Speakable {
 
 	@Override
 	public void hangUp() {
+		synchronized (this.tickMonitor) {
+			if (null != this.tickTimeout) {
+				this.tickTimeout.cancel();
+				this.tickTimeout = null;
+			}
+		}
+
 		this.stopClient();
 
 		if (this.state != SpeakerState.HANGUP) {
@@ -192,6 +204,17 @@ public class HttpSpeaker implements Speakable {
 		}
 	}
 
+	@Override
+	public boolean speak(List<Primitive> primitives) {
+		// HTTP 方式不支持批量对话，逐个发送
+		for (Primitive primitive : primitives) {
+			if (!this.speak(primitive)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
 	@Override
 	public boolean speak(Primitive primitive) {
 		if (this.state != SpeakerState.CALLED
@@ -270,7 +293,44 @@ public class HttpSpeaker implements Speakable {
 	}
 
 	/**
-	 * 每秒计时。
+	 * 设置下一次计时。
+	 */
+	private void scheduleTick() {
+		synchronized (this.tickMonitor) {
+			if (null != this.tickTimeout) {
+				this.tickTimeout.cancel();
+			}
+
+			TickTask task = new TickTask();
+			task.timeout = TalkService.getInstance().schedule(task, 5000);
+			this.tickTimeout = task.timeout;
+		}
+	}
+
+	/**
+	 * 计时任务，已被取消或被新的任务替换时不再执行。
+	 */
+	private final class TickTask implements Runnable {
+		private TimingWheel.Timeout timeout;
+
+		@Override
+		public void run() {
+			synchronized (tickMonitor) {
+				if (tickTimeout != this.timeout) {
+					return;
+				}
+				tickTimeout = null;
+			}
+
+			if (state == SpeakerState.CALLED) {
+				tick();
+				scheduleTick();
+			}
+		}
+	}
+
+	/**
+	 * 每 5 秒计时。
 	 */
 	protected void tick() {
 		if (this.state != SpeakerState.CALLED) {
@@ -451,6 +511,9 @@ public class HttpSpeaker implements Speakable {
 				// 变更状态
 				this.state = SpeakerState.CALLED;
 
+				// 开始心跳计时
+				this.scheduleTick();
+
 				// 回调事件
 				this.fireContacted();
 			}
@@ -28,6 +28,7 @@ package net.cellcloud.talk;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -292,9 +293,31 @@ public class Primitive {
 		return stream;
 	}
 
+	/** 按照指定格式将原语数据写入序列化流。
+	 * @param binary 是否使用二进制格式，仅在对端声明支持时使用。
+	*/
+	public ByteArrayOutputStream write(boolean binary) {
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		PrimitiveSerializer.write(stream, this, binary);
+		return stream;
+	}
+
+	/** 按照指定格式序列化原语，直接返回序列化数据。
+	 * 使用线程内复用的编码缓冲区，不经过中间输出流。
+	*/
+	public byte[] toByteArray(boolean binary) {
+		return PrimitiveSerializer.encode(this, binary);
+	}
+
 	/** 从序列化流读取原语数据。
 	*/
 	public void read(ByteArrayInputStream stream) {
 		PrimitiveSerializer.read(this, stream);
 	}
+
+	/** 从缓冲区读取原语数据，不复制缓冲区内容。
+	*/
+	public void read(ByteBuffer buffer) {
+		PrimitiveSerializer.read(this, buffer);
+	}
 }
@@ -47,7 +47,7 @@ public final class ServerCheckCommand extends ServerCommand {
 
 	@Override
 	public void execute() {
-		// 包格式：原文
+		// 包格式：原文|客户端采用的特性列表
 
 		Certificate cert = this.service.getCertificate(this.session);
 		if (null == cert) {
@@ -75,12 +75,21 @@ public final class ServerCheckCommand extends ServerCommand {
 
 		if (checkin) {
 			log.append(" checkin.");
-			this.service.acceptSession(this.session);
+			// 对端以二进制格式应答时，后续数据包均使用相同版本
+			// 对端确认采用二进制原语时，后续原语均使用二进制格式
+			boolean binaryPrimitive = this.service.isBinaryPrimitive()
+					&& this.packet.getSubsegmentCount() > 1
+					&& TalkDefinition.hasFeature(this.packet.getSubsegment(1), TalkDefinition.FEATURE_BINARY_PRIMITIVE);
+			// 对端确认支持批量对话时，可以合并发送原语
+			boolean dialogueBatch = this.packet.getSubsegmentCount() > 1
+					&& TalkDefinition.hasFeature(this.packet.getSubsegment(1), TalkDefinition.FEATURE_DIALOGUE_BATCH);
+			this.service.acceptSession(this.session, this.packet.getMajorVersion(), binaryPrimitive, dialogueBatch);
 
 			// 包格式：成功码|内核标签
 
 			// 数据打包
-			Packet packet = new Packet(TalkDefinition.TPT_CHECK, 2, 1, 0);
+			Packet packet = new Packet(TalkDefinition.TPT_CHECK, 2,
+					this.packet.getMajorVersion(), this.packet.getMinorVersion());
 			packet.appendSubsegment(TalkDefinition.SC_SUCCESS);
 			packet.appendSubsegment(Nucleus.getInstance().getTagAsString().getBytes());
 
@@ -26,10 +26,11 @@ THE SOFTWARE.
 
 package net.cellcloud.talk;
 
-import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
 
 import net.cellcloud.common.Logger;
 import net.cellcloud.common.Packet;
+import net.cellcloud.common.PacketView;
 import net.cellcloud.common.Session;
 import net.cellcloud.util.Utils;
 
@@ -39,6 +40,10 @@ import net.cellcloud.util.Utils;
  */
 public final class ServerDialogueCommand extends ServerCommand {
 
+	// 已解析的源标签和原语
+	private String speakerTag;
+	private Primitive primitive;
+
 	protected ServerDialogueCommand(TalkService service) {
 		super(service, null, null);
 	}
@@ -48,25 +53,49 @@ public final class ServerDialogueCommand extends ServerCommand {
 		super(service, session, packet);
 	}
 
-	@Override
-	public void execute() {
+	/** 直接从数据包视图解析对话数据，不复制原语数据。
+	 * 视图引用的缓冲区只在解析期间使用，解析后可以在其他线程执行命令。
+	 */
+	protected boolean decode(PacketView view) {
 		// 包格式：序列化的原语|源标签
 
-		if (this.packet.getSubsegmentCount() < 2) {
+		if (view.getSubsegmentCount() < 2) {
 			Logger.e(ServerDialogueCommand.class, "Dialogue packet format error");
-			return;
+			return false;
 		}
 
-		byte[] pridata = this.packet.getSubsegment(0);
-		ByteArrayInputStream stream = new ByteArrayInputStream(pridata);
-
-		byte[] tagdata = this.packet.getSubsegment(1);
-		String speakerTag = Utils.bytes2String(tagdata);
+		this.speakerTag = view.getSubsegmentAsString(1);
 
 		// 反序列化原语
-		Primitive primitive = new Primitive(speakerTag);
-		primitive.read(stream);
+		this.primitive = new Primitive(this.speakerTag);
+		this.primitive.read(view.getSubsegment(0));
+
+		return true;
+	}
+
+	@Override
+	public void execute() {
+		if (null == this.primitive) {
+			// 包格式：序列化的原语|源标签
+
+			if (this.packet.getSubsegmentCount() < 2) {
+				Logger.e(ServerDialogueCommand.class, "Dialogue packet format error");
+				return;
+			}
+
+			byte[] pridata = this.packet.getSubsegment(0);
+
+			byte[] tagdata = this.packet.getSubsegment(1);
+			this.speakerTag = Utils.bytes2String(tagdata);
+
+			// 反序列化原语
+			this.primitive = new Primitive(this.speakerTag);
+			this.primitive.read(ByteBuffer.wrap(pridata));
+		}
+
+		this.service.processDialogue(this.session, this.speakerTag, this.primitive);
 
-		this.service.processDialogue(this.session, speakerTag, primitive);
+		this.speakerTag = null;
+		this.primitive = null;
 	}
 }
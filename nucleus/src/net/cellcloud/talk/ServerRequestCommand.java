@@ -53,7 +53,8 @@ public final class ServerRequestCommand extends ServerCommand {
 		// 成功：请求方标签|成功码|Cellet识别串|Cellet版本
 		// 失败：请求方标签|失败码
 
-		Packet packet = new Packet(TalkDefinition.TPT_REQUEST, 3, 1, 0);
+		Packet packet = new Packet(TalkDefinition.TPT_REQUEST, 3,
+				this.packet.getMajorVersion(), this.packet.getMinorVersion());
 		// 请求方标签
 		packet.appendSubsegment(talkTag);
 
@@ -27,6 +27,7 @@ THE SOFTWARE.
 package net.cellcloud.talk;
 
 import java.net.InetSocketAddress;
+import java.util.List;
 
 /**
  * 通信会话器接口。
@@ -66,6 +67,13 @@ public interface Speakable {
 	 */
 	public boolean speak(Primitive primitive);
 
+	/**
+	 * 向 Cellet 按顺序发送一组原语数据。
+	 * @param primitives
+	 * @return
+	 */
+	public boolean speak(List<Primitive> primitives);
+
 	/**
 	 * 是否已经与 Cellet 建立服务。
 	 * @return
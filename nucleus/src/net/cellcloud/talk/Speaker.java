@@ -26,17 +26,24 @@ THE SOFTWARE.
 
 package net.cellcloud.talk;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 
 import net.cellcloud.common.Cryptology;
+import net.cellcloud.common.FrameFormat;
 import net.cellcloud.common.Logger;
+import net.cellcloud.common.LoopbackConnector;
 import net.cellcloud.common.Message;
+import net.cellcloud.common.MessageConnector;
 import net.cellcloud.common.NonblockingConnector;
 import net.cellcloud.common.Packet;
+import net.cellcloud.common.PacketView;
 import net.cellcloud.common.Session;
 import net.cellcloud.core.Nucleus;
+import net.cellcloud.core.NucleusConfig;
+import net.cellcloud.util.TimingWheel;
 import net.cellcloud.util.Utils;
 
 /**
@@ -51,7 +58,7 @@ public class Speaker implements Speakable {
 
 	private String celletIdentifier;
 	private SpeakerDelegate delegate;
-	private NonblockingConnector connector;
+	private MessageConnector connector;
 
 	protected TalkCapacity capacity;
 
@@ -60,10 +67,26 @@ public class Speaker implements Speakable {
 	private boolean authenticated = false;
 	private volatile int state = SpeakerState.HANGUP;
 
+	// 数据包主版本号，服务器支持时使用二进制格式
+	private int packetVersion = 1;
+	// 是否使用二进制原语格式
+	private boolean binaryPrimitive = false;
+	// 服务器是否支持批量对话
+	private boolean dialogueBatch = false;
+	// 对话原语合并器，未启用合并时为 null
+	private volatile DialogueCoalescer coalescer = null;
+
 	// 是否需要重新连接
 	protected boolean lost = false;
 	protected long timestamp = 0;
 
+	// 定时任务会在时间轮线程、连接器线程和应用线程上设置及取消，由该锁保护
+	private final Object timeoutMonitor = new Object();
+	// 心跳定时任务
+	private TimingWheel.Timeout heartbeatTimeout;
+	// 重连定时任务
+	private TimingWheel.Timeout retryTimeout;
+
 	/** 构造函数。
 	 */
 	public Speaker(String identifier, SpeakerDelegate delegate) {
@@ -111,14 +134,38 @@ public class Speaker implements Speakable {
 			return false;
 		}
 
+		// Cellet 在本进程内时使用回环连接
+		boolean loopback = Nucleus.getInstance().getConfig().talk.loopback
+				&& LoopbackConnector.isReachable(address);
+		if (null != this.connector && loopback != (this.connector instanceof LoopbackConnector)) {
+			this.connector.disconnect();
+			this.connector = null;
+		}
+
 		if (null == this.connector) {
-			this.connector = new NonblockingConnector();
+			if (loopback) {
+				LoopbackConnector connector = new LoopbackConnector();
+				connector.setHandler(new SpeakerConnectorHandler(this));
+				this.connector = connector;
+			}
+			else {
+				NonblockingConnector connector = new NonblockingConnector();
+
+				byte[] headMark = {0x20, 0x10, 0x11, 0x10};
+				byte[] tailMark = {0x19, 0x78, 0x10, 0x04};
+				connector.defineDataMark(headMark, tailMark);
+
+				connector.setHandler(new SpeakerConnectorHandler(this));
 
-			byte[] headMark = {0x20, 0x10, 0x11, 0x10};
-			byte[] tailMark = {0x19, 0x78, 0x10, 0x04};
-			this.connector.defineDataMark(headMark, tailMark);
+				// 服务器声明支持后切换到长度前缀分帧
+				connector.setFrameFormat(Nucleus.getInstance().getConfig().talk.framing);
 
-			this.connector.setHandler(new SpeakerConnectorHandler(this));
+				// 同主机时使用 Unix 域套接字
+				NucleusConfig config = Nucleus.getInstance().getConfig();
+				connector.setLocalTransport(config.localTransport, "talk");
+				connector.setTransportProfile(config.getTransportProfile(config.talk.transport));
+				this.connector = connector;
+			}
 		}
 		else {
 			InetSocketAddress curAddr = this.connector.getAddress();
@@ -154,7 +201,7 @@ public class Speaker implements Speakable {
 		if (this.state == SpeakerState.CALLED) {
 			// 包格式：内核标签|有效时长
 
-			Packet packet = new Packet(TalkDefinition.TPT_SUSPEND, 5, 1, 0);
+			Packet packet = new Packet(TalkDefinition.TPT_SUSPEND, 5, this.packetVersion, 0);
 			packet.appendSubsegment(this.nucleusTag);
 			packet.appendSubsegment(Utils.string2Bytes(Long.toString(duration)));
 
@@ -178,7 +225,7 @@ public class Speaker implements Speakable {
 			|| this.state == SpeakerState.CALLED) {
 			// 包格式：内核标签|需要恢复的原语起始时间戳
 
-			Packet packet = new Packet(TalkDefinition.TPT_RESUME, 6, 1, 0);
+			Packet packet = new Packet(TalkDefinition.TPT_RESUME, 6, this.packetVersion, 0);
 			packet.appendSubsegment(this.nucleusTag);
 			packet.appendSubsegment(Utils.string2Bytes(Long.toString(startTime)));
 
@@ -198,10 +245,18 @@ public class Speaker implements Speakable {
 	*/
 	@Override
 	public void hangUp() {
+		// 断开前发送合并窗口内的原语
+		DialogueCoalescer coalescer = this.coalescer;
+		if (null != coalescer) {
+			coalescer.flush();
+		}
+
 		if (null != this.connector) {
 			this.connector.disconnect();
 		}
 
+		this.cancelTimeouts();
+
 		this.lost = false;
 		this.authenticated = false;
 		this.state = SpeakerState.HANGUP;
@@ -218,11 +273,17 @@ public class Speaker implements Speakable {
 		}
 
 		// 序列化原语
-		ByteArrayOutputStream stream = primitive.write();
+		byte[] pridata = primitive.toByteArray(this.binaryPrimitive);
+
+		if (null != this.coalescer) {
+			// 暂存原语，由合并器按窗口发送
+			this.coalescer.offer(pridata);
+			return true;
+		}
 
 		// 封装数据包
-		Packet packet = new Packet(TalkDefinition.TPT_DIALOGUE, 99, 1, 0);
-		packet.appendSubsegment(stream.toByteArray());
+		Packet packet = new Packet(TalkDefinition.TPT_DIALOGUE, 99, this.packetVersion, 0);
+		packet.appendSubsegment(pridata);
 		packet.appendSubsegment(this.nucleusTag);
 
 		// 发送数据
@@ -233,6 +294,49 @@ public class Speaker implements Speakable {
 		return true;
 	}
 
+	/** 向 Cellet 发送一组原语数据。
+	 * 服务器支持批量对话时原语合并为批量数据包发送，Cellet 按列表顺序处理。
+	 */
+	@Override
+	public synchronized boolean speak(List<Primitive> primitives) {
+		if (null == this.connector
+			|| !this.connector.isConnected()
+			|| this.state != SpeakerState.CALLED) {
+			return false;
+		}
+
+		if (!this.dialogueBatch) {
+			// 服务器不支持批量对话，逐个发送
+			for (Primitive primitive : primitives) {
+				this.speak(primitive);
+			}
+			return true;
+		}
+
+		if (null != this.coalescer) {
+			// 与窗口内已暂存的原语一并发送，保持顺序
+			for (Primitive primitive : primitives) {
+				this.coalescer.offer(primitive.toByteArray(this.binaryPrimitive));
+			}
+			this.coalescer.flush();
+			return true;
+		}
+
+		ArrayList<byte[]> batch = new ArrayList<byte[]>(Math.min(primitives.size(), TalkDefinition.DIALOGUE_BATCH_MAX));
+		for (Primitive primitive : primitives) {
+			batch.add(primitive.toByteArray(this.binaryPrimitive));
+			if (batch.size() == TalkDefinition.DIALOGUE_BATCH_MAX) {
+				this.connector.write(this.packetDialogueBatch(batch));
+				batch.clear();
+			}
+		}
+		if (!batch.isEmpty()) {
+			this.connector.write(this.packetDialogueBatch(batch));
+		}
+
+		return true;
+	}
+
 	/** 是否已经与 Cellet 建立服务。
 	 */
 	@Override
@@ -252,19 +356,42 @@ public class Speaker implements Speakable {
 		this.remoteTag = tag;
 		// 标记为已验证
 		this.authenticated = true;
+
+		// 开始周期心跳
+		this.scheduleHeartbeat();
 	}
 
 	/** 发送心跳。 */
 	protected void heartbeat() {
 		if (this.authenticated && !this.lost) {
-			Packet packet = new Packet(TalkDefinition.TPT_HEARTBEAT, 9, 1, 0);
+			Packet packet = new Packet(TalkDefinition.TPT_HEARTBEAT, 9, this.packetVersion, 0);
 			byte[] data = Packet.pack(packet);
 			Message message = new Message(data);
 			this.connector.write(message);
 		}
 	}
 
+	/** 标记连接丢失，延迟后重新连接。 */
+	protected void markLost() {
+		this.lost = true;
+		this.timestamp = System.currentTimeMillis();
+		this.scheduleRetry();
+	}
+
 	protected void notifySessionClosed() {
+		synchronized (this.timeoutMonitor) {
+			if (null != this.heartbeatTimeout) {
+				this.heartbeatTimeout.cancel();
+				this.heartbeatTimeout = null;
+			}
+		}
+
+		// 连接已断开，丢弃未发送的合并原语
+		DialogueCoalescer coalescer = this.coalescer;
+		if (null != coalescer) {
+			coalescer.clear();
+		}
+
 		// 判断是否要通知被挂起
 		if (null != this.capacity && SpeakerState.CALLED == this.state) {
 			if (this.capacity.autoSuspend) {
@@ -272,7 +399,7 @@ public class Speaker implements Speakable {
 				this.fireSuspended(System.currentTimeMillis(), SuspendMode.PASSIVE);
 
 				// 需要进行重连
-				this.lost = true;
+				this.markLost();
 			}
 		}
 
@@ -283,6 +410,118 @@ public class Speaker implements Speakable {
 		this.fireQuitted();
 	}
 
+	/** 设置下一次心跳。 */
+	private void scheduleHeartbeat() {
+		synchronized (this.timeoutMonitor) {
+			if (null != this.heartbeatTimeout) {
+				this.heartbeatTimeout.cancel();
+			}
+
+			// 120 秒一次心跳
+			HeartbeatTask task = new HeartbeatTask();
+			task.timeout = TalkService.getInstance().schedule(task, 120000);
+			this.heartbeatTimeout = task.timeout;
+		}
+	}
+
+	/** 设置重新连接。 */
+	private void scheduleRetry() {
+		synchronized (this.timeoutMonitor) {
+			if (null != this.retryTimeout) {
+				this.retryTimeout.cancel();
+			}
+
+			// 5 秒后重连
+			RetryTask task = new RetryTask();
+			task.timeout = TalkService.getInstance().schedule(task, 5000);
+			this.retryTimeout = task.timeout;
+		}
+	}
+
+	/** 重新连接丢失连接的 Cellet 。 */
+	private void retry() {
+		TalkService service = TalkService.getInstance();
+		if (!this.lost || null == service.speakers || service.speakers.get(this.celletIdentifier) != this) {
+			return;
+		}
+
+		InetSocketAddress address = this.getAddress();
+		if (null == address) {
+			return;
+		}
+
+		if (Logger.isDebugLevel()) {
+			StringBuilder buf = new StringBuilder();
+			buf.append("Retry call cellet ");
+			buf.append(this.celletIdentifier);
+			buf.append(" at ");
+			buf.append(address.getAddress().getHostAddress());
+			buf.append(":");
+			buf.append(address.getPort());
+			Logger.d(Speaker.class, buf.toString());
+			buf = null;
+		}
+
+		// 重连，未能发起连接时稍后再试
+		if (!this.call(address)) {
+			this.scheduleRetry();
+		}
+	}
+
+	private void cancelTimeouts() {
+		synchronized (this.timeoutMonitor) {
+			if (null != this.heartbeatTimeout) {
+				this.heartbeatTimeout.cancel();
+				this.heartbeatTimeout = null;
+			}
+			if (null != this.retryTimeout) {
+				this.retryTimeout.cancel();
+				this.retryTimeout = null;
+			}
+		}
+	}
+
+	/** 心跳定时任务。
+	 * 任务执行时如果已被取消或被新的任务替换，则不再执行。
+	 */
+	private final class HeartbeatTask implements Runnable {
+		private TimingWheel.Timeout timeout;
+
+		@Override
+		public void run() {
+			synchronized (timeoutMonitor) {
+				if (heartbeatTimeout != this.timeout) {
+					return;
+				}
+				heartbeatTimeout = null;
+			}
+
+			if (authenticated && !lost) {
+				heartbeat();
+				scheduleHeartbeat();
+			}
+		}
+	}
+
+	/** 重连定时任务。
+	 * 任务执行时如果已被取消或被新的任务替换，则不再执行。
+	 */
+	private final class RetryTask implements Runnable {
+		private TimingWheel.Timeout timeout;
+
+		@Override
+		public void run() {
+			synchronized (timeoutMonitor) {
+				if (retryTimeout != this.timeout) {
+					return;
+				}
+				retryTimeout = null;
+			}
+
+			retry();
+		}
+	}
+
 	protected void fireDialogue(Primitive primitive) {
 		this.delegate.onDialogue(this, primitive);
 	}
@@ -308,7 +547,7 @@ public class Speaker implements Speakable {
 	}
 
 	protected void requestCheck(Packet packet, Session session) {
-		// 包格式：密文|密钥
+		// 包格式：密文|密钥|特性列表
 
 		byte[] ciphertext = packet.getSubsegment(0);
 		byte[] key = packet.getSubsegment(1);
@@ -316,9 +555,43 @@ public class Speaker implements Speakable {
 		// 解密
 		byte[] plaintext = Cryptology.getInstance().simpleDecrypt(ciphertext, key);
 
-		// 发送响应数据
-		Packet response = new Packet(TalkDefinition.TPT_CHECK, 2, 1, 0);
+		byte[] features = packet.getSubsegment(2);
+
+		// 服务器支持长度前缀分帧时，从识别响应开始切换分帧格式
+		if (TalkDefinition.hasFeature(features, TalkDefinition.FEATURE_LENGTH_FRAMING)) {
+			FrameFormat format = session.getService().getFrameFormat();
+			if (null != format) {
+				session.getService().setOutboundFrameFormat(session, format);
+			}
+		}
+
+		// 服务器支持二进制数据包时，从识别响应开始使用二进制格式
+		this.packetVersion = TalkDefinition.hasFeature(features, TalkDefinition.FEATURE_PACKET_V2)
+				? Packet.BINARY_MAJOR_VERSION : 1;
+
+		// 服务器支持二进制原语时，在响应中确认采用，旧版本服务器忽略该扩展段
+		this.binaryPrimitive = TalkDefinition.hasFeature(features, TalkDefinition.FEATURE_BINARY_PRIMITIVE);
+
+		// 服务器支持批量对话时，在响应中确认采用
+		this.dialogueBatch = TalkDefinition.hasFeature(features, TalkDefinition.FEATURE_DIALOGUE_BATCH);
+		this.updateCoalescer();
+
+		// 发送响应数据，包格式：原文|采用的特性列表
+		Packet response = new Packet(TalkDefinition.TPT_CHECK, 2, this.packetVersion, 0);
 		response.appendSubsegment(plaintext);
+		StringBuilder accepted = new StringBuilder();
+		if (this.binaryPrimitive) {
+			accepted.append(TalkDefinition.FEATURE_BINARY_PRIMITIVE);
+		}
+		if (this.dialogueBatch) {
+			if (accepted.length() > 0) {
+				accepted.append(",");
+			}
+			accepted.append(TalkDefinition.FEATURE_DIALOGUE_BATCH);
+		}
+		if (accepted.length() > 0) {
+			response.appendSubsegment(accepted.toString().getBytes());
+		}
 		// 数据打包
 		byte[] data = Packet.pack(response);
 		Message message = new Message(data);
@@ -328,7 +601,7 @@ public class Speaker implements Speakable {
 	protected void requestCellet(Session session) {
 		// 包格式：Cellet标识串|标签
 
-		Packet packet = new Packet(TalkDefinition.TPT_REQUEST, 3, 1, 0);
+		Packet packet = new Packet(TalkDefinition.TPT_REQUEST, 3, this.packetVersion, 0);
 		packet.appendSubsegment(this.celletIdentifier.getBytes());
 		packet.appendSubsegment(this.nucleusTag);
 
@@ -424,20 +697,35 @@ public class Speaker implements Speakable {
 		}
 	}
 
-	protected void doDialogue(Packet packet, Session session) {
+	protected void doDialogue(PacketView view, Session session) {
 		// 包格式：序列化的原语
 
-		byte[] pridata = packet.getBody();
-		ByteArrayInputStream stream = new ByteArrayInputStream(pridata);
+		ByteBuffer pridata = view.getBody();
+		if (null == pridata) {
+			return;
+		}
 
 		// 反序列化原语
 		Primitive primitive = new Primitive(this.remoteTag);
 		primitive.setCelletIdentifier(this.celletIdentifier);
-		primitive.read(stream);
+		primitive.read(pridata);
 
 		this.fireDialogue(primitive);
 	}
 
+	protected void doDialogueBatch(PacketView view, Session session) {
+		// 包格式：序列化的原语|序列化的原语|...
+
+		for (int i = 0, count = view.getSubsegmentCount(); i < count; ++i) {
+			// 反序列化原语
+			Primitive primitive = new Primitive(this.remoteTag);
+			primitive.setCelletIdentifier(this.celletIdentifier);
+			primitive.read(view.getSubsegment(i));
+
+			this.fireDialogue(primitive);
+		}
+	}
+
 	protected void doSuspend(Packet packet, Session session) {
 		// 包格式：请求方标签|成功码|时间戳
 
@@ -460,22 +748,63 @@ public class Speaker implements Speakable {
 
 		long timestamp = Long.parseLong(Utils.bytes2String(packet.getSubsegment(1)));
 		byte[] pridata = packet.getSubsegment(2);
-		ByteArrayInputStream stream = new ByteArrayInputStream(pridata);
 
 		// 反序列化原语
 		Primitive primitive = new Primitive(this.remoteTag);
 		primitive.setCelletIdentifier(this.celletIdentifier);
-		primitive.read(stream);
+		primitive.read(ByteBuffer.wrap(pridata));
 
 		this.fireResumed(timestamp, primitive);
 	}
 
+	/** 根据协商结果创建或移除对话原语合并器。
+	 */
+	private void updateCoalescer() {
+		DialogueCoalescer old = this.coalescer;
+		if (null != old) {
+			old.clear();
+		}
+
+		TalkService service = TalkService.getInstance();
+		if (this.dialogueBatch && null != service && service.getCoalesceDelay() > 0) {
+			this.coalescer = new DialogueCoalescer(service.getCoalesceScheduler(),
+					service.getCoalesceDelay(), service.getCoalesceBytes(), new DialogueCoalescer.Sender() {
+				@Override
+				public void send(List<byte[]> batch) {
+					// 直接写连接器，不获取 Speaker 锁
+					MessageConnector connector = Speaker.this.connector;
+					if (null != connector && connector.isConnected()) {
+						connector.write(packetDialogueBatch(batch));
+					}
+				}
+			});
+		}
+		else {
+			this.coalescer = null;
+		}
+	}
+
+	/** 打包批量对话原语。
+	 */
+	private Message packetDialogueBatch(List<byte[]> batch) {
+		// 包格式：源标签|序列化的原语|...|序列化的原语
+
+		Packet packet = new Packet(TalkDefinition.TPT_DIALOGUE_BATCH, 99, this.packetVersion, 0);
+		packet.appendSubsegment(this.nucleusTag);
+		for (int i = 0, size = batch.size(); i < size; ++i) {
+			packet.appendSubsegment(batch.get(i));
+		}
+
+		byte[] data = Packet.pack(packet);
+		return new Message(data);
+	}
+
 	/** 向 Cellet 协商能力
 	 */
 	private void consult(TalkCapacity capacity) {
 		// 包格式：源标签|能力描述序列化数据
 
-		Packet packet = new Packet(TalkDefinition.TPT_CONSULT, 4, 1, 0);
+		Packet packet = new Packet(TalkDefinition.TPT_CONSULT, 4, this.packetVersion, 0);
 		packet.appendSubsegment(Utils.string2Bytes(Nucleus.getInstance().getTagAsString()));
 		packet.appendSubsegment(TalkCapacity.serialize(capacity));
 
@@ -31,6 +31,7 @@ import net.cellcloud.common.Message;
 import net.cellcloud.common.MessageErrorCode;
 import net.cellcloud.common.MessageHandler;
 import net.cellcloud.common.Packet;
+import net.cellcloud.common.PacketView;
 import net.cellcloud.common.Session;
 import net.cellcloud.util.Utils;
 
@@ -86,10 +87,24 @@ public final class SpeakerConnectorHandler implements MessageHandler {
 	@Override
 	public void messageReceived(Session session, Message message) {
 		// 解包
-		Packet packet = Packet.unpack(message.get());
-		if (null != packet) {
+		PacketView view = PacketView.wrap(message.getBuffer());
+		if (null == view) {
+			return;
+		}
+
+		byte[] tag = view.getTag();
+		if (TalkDefinition.TPT_DIALOGUE[2] == tag[2]
+			&& TalkDefinition.TPT_DIALOGUE[3] == tag[3]) {
+			// 直接从接收缓冲区反序列化原语
+			this.speaker.doDialogue(view, session);
+		}
+		else if (TalkDefinition.isDialogueBatch(tag)) {
+			// 按顺序回调批量数据包内的原语
+			this.speaker.doDialogueBatch(view, session);
+		}
+		else {
 			// 解析数据包
-			interpret(session, packet);
+			interpret(session, view.toPacket());
 		}
 	}
 
@@ -119,7 +134,7 @@ public final class SpeakerConnectorHandler implements MessageHandler {
 			this.speaker.fireFailed(failure);
 
 			if (null != this.speaker.capacity && this.speaker.capacity.retryAttempts > 0) {
-				this.speaker.lost = true;
+				this.speaker.markLost();
 			}
 		}
 	}
@@ -129,11 +144,7 @@ public final class SpeakerConnectorHandler implements MessageHandler {
 
 		byte[] tag = packet.getTag();
 
-		if (TalkDefinition.TPT_DIALOGUE[2] == tag[2]
-			&& TalkDefinition.TPT_DIALOGUE[3] == tag[3]) {
-			this.speaker.doDialogue(packet, session);
-		}
-		else if (TalkDefinition.TPT_RESUME[2] == tag[2]
+		if (TalkDefinition.TPT_RESUME[2] == tag[2]
 			&& TalkDefinition.TPT_RESUME[3] == tag[3]) {
 			this.speaker.doResume(packet, session);
 		}
@@ -132,6 +132,12 @@ public final class SuspendedTracker {
 		return (System.currentTimeMillis() - this.startTime) >= this.liveDuration;
 	}
 
+	/** 返回距离超时的剩余时间，单位：毫秒。
+	 */
+	protected long getRemainingTime() {
+		return this.startTime + this.liveDuration - System.currentTimeMillis();
+	}
+
 	protected List<Cellet> getCelletList () {
 		List<Cellet> list = new ArrayList<Cellet>();
 		Iterator<Record> iter = this.records.values().iterator();
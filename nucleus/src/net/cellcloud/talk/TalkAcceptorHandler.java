@@ -32,8 +32,10 @@ import java.util.Queue;
 import net.cellcloud.common.LogLevel;
 import net.cellcloud.common.Logger;
 import net.cellcloud.common.Message;
+import net.cellcloud.common.MessageAcceptor;
 import net.cellcloud.common.MessageHandler;
 import net.cellcloud.common.Packet;
+import net.cellcloud.common.PacketView;
 import net.cellcloud.common.Session;
 
 /** Talk 服务句柄。
@@ -76,15 +78,112 @@ public final class TalkAcceptorHandler implements MessageHandler {
 
 	@Override
 	public void messageReceived(final Session session, final Message message) {
-		byte[] data = message.get();
-		final Packet packet = Packet.unpack(data);
-		if (null != packet) {
-			this.talkService.executor.execute(new Runnable() {
+		PacketView view = PacketView.wrap(message.getBuffer());
+		if (null == view) {
+			return;
+		}
+
+		if (TalkDefinition.isDialogue(view.getTag())) {
+			// 直接从接收缓冲区反序列化原语，再交由线程池处理
+			final ServerDialogueCommand cmd = borrowDialogueCommand(session);
+			try {
+				if (!cmd.decode(view)) {
+					returnDialogueCommand(cmd);
+					return;
+				}
+			} catch (Exception e) {
+				Logger.log(TalkAcceptorHandler.class, e, LogLevel.ERROR);
+				returnDialogueCommand(cmd);
+				return;
+			}
+
+			boolean accepted = this.talkService.dispatcher.execute(session, new Runnable() {
 				@Override
 				public void run() {
-					interpret(session, packet);
+					try {
+						cmd.execute();
+					} catch (Exception e) {
+						Logger.log(TalkAcceptorHandler.class, e, LogLevel.ERROR);
+					} finally {
+						returnDialogueCommand(cmd);
+					}
 				}
 			});
+			if (!accepted) {
+				returnDialogueCommand(cmd);
+				this.rejectOverload(session);
+			}
+			return;
+		}
+
+		if (TalkDefinition.isDialogueBatch(view.getTag())) {
+			this.dispatchDialogueBatch(session, view);
+			return;
+		}
+
+		// 其他数据包数量较少，复制数据后交由线程池处理
+		final Packet packet = view.toPacket();
+		boolean accepted = this.talkService.dispatcher.execute(session, new Runnable() {
+			@Override
+			public void run() {
+				interpret(session, packet);
+			}
+		});
+		if (!accepted) {
+			this.rejectOverload(session);
+		}
+	}
+
+	/** 反序列化批量对话数据包内的原语，按包内顺序交由线程池处理。
+	 */
+	private void dispatchDialogueBatch(final Session session, PacketView view) {
+		// 包格式：源标签|序列化的原语|...|序列化的原语
+
+		int count = view.getSubsegmentCount();
+		if (count < 2) {
+			Logger.e(TalkAcceptorHandler.class, "Dialogue batch packet format error");
+			return;
+		}
+
+		final String speakerTag = view.getSubsegmentAsString(0);
+		final Primitive[] primitives = new Primitive[count - 1];
+		try {
+			for (int i = 1; i < count; ++i) {
+				Primitive primitive = new Primitive(speakerTag);
+				primitive.read(view.getSubsegment(i));
+				primitives[i - 1] = primitive;
+			}
+		} catch (Exception e) {
+			Logger.log(TalkAcceptorHandler.class, e, LogLevel.ERROR);
+			return;
+		}
+
+		boolean accepted = this.talkService.dispatcher.execute(session, new Runnable() {
+			@Override
+			public void run() {
+				for (Primitive primitive : primitives) {
+					try {
+						talkService.processDialogue(session, speakerTag, primitive);
+					} catch (Exception e) {
+						Logger.log(TalkAcceptorHandler.class, e, LogLevel.ERROR);
+					}
+				}
+			}
+		});
+		if (!accepted) {
+			this.rejectOverload(session);
+		}
+	}
+
+	/** 分发队列已满时断开连接。
+	 * 丢弃数据包会使对话及控制命令缺失，因此关闭持续超出处理能力的 Session 。
+	 */
+	private void rejectOverload(Session session) {
+		Logger.w(TalkAcceptorHandler.class, "Dispatch queue is full, close session from "
+				+ session.getAddress().getAddress().getHostAddress());
+
+		if (session.getService() instanceof MessageAcceptor) {
+			((MessageAcceptor) session.getService()).close(session);
 		}
 	}
 
@@ -101,16 +200,7 @@ public final class TalkAcceptorHandler implements MessageHandler {
 	private void interpret(Session session, Packet packet) {
 		byte[] tag = packet.getTag();
 
-		if (TalkDefinition.isDialogue(tag)) {
-			try {
-				ServerDialogueCommand cmd = borrowDialogueCommand(session, packet);
-				cmd.execute();
-				returnDialogueCommand(cmd);
-			} catch (Exception e) {
-				Logger.log(TalkAcceptorHandler.class, e, LogLevel.ERROR);
-			}
-		}
-		else if (TalkDefinition.isHeartbeat(tag)) {
+		if (TalkDefinition.isHeartbeat(tag)) {
 			try {
 				ServerHeartbeatCommand cmd = borrowHeartbeatCommand(session, packet);
 				cmd.execute();
@@ -166,7 +256,7 @@ public final class TalkAcceptorHandler implements MessageHandler {
 		}
 	}
 
-	private ServerDialogueCommand borrowDialogueCommand(Session session, Packet packet) {
+	private ServerDialogueCommand borrowDialogueCommand(Session session) {
 		synchronized (this.dialogueCmdQueue) {
 			ServerDialogueCommand cmd = null;
 
@@ -178,7 +268,6 @@ public final class TalkAcceptorHandler implements MessageHandler {
 			}
 
 			cmd.session = session;
-			cmd.packet = packet;
 
 			return cmd;
 		}
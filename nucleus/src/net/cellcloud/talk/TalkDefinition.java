@@ -26,6 +26,8 @@ THE SOFTWARE.
 
 package net.cellcloud.talk;
 
+import java.nio.charset.Charset;
+
 /** Talk 服务器网络包定义。
  * 
  * @author Jiangwei Xu
@@ -52,6 +54,9 @@ public final class TalkDefinition {
 	// Cellet 对话
 	public static final byte[] TPT_DIALOGUE = {'C', 'T', 'D', 'L'};
 
+	// Cellet 批量对话
+	public static final byte[] TPT_DIALOGUE_BATCH = {'C', 'T', 'D', 'B'};
+
 	// 网络心跳
 	public static final byte[] TPT_HEARTBEAT = {'C', 'T', 'H', 'B'};
 
@@ -68,6 +73,39 @@ public final class TalkDefinition {
 	protected static final byte[] SC_FAILURE_NOCELLET = {'0', '0', '1', '0'};
 
 
+	// 特性标识，服务器在 INTERROGATE 包的扩展段中以逗号分隔列出所支持的特性
+
+	// 长度前缀分帧
+	protected static final String FEATURE_LENGTH_FRAMING = "lf";
+	// 二进制数据包格式
+	protected static final String FEATURE_PACKET_V2 = "pv2";
+	// 二进制原语格式，客户端在 CHECK 包的扩展段中回应是否采用
+	protected static final String FEATURE_BINARY_PRIMITIVE = "bin";
+	// 批量对话数据包，客户端在 CHECK 包的扩展段中回应是否采用
+	protected static final String FEATURE_DIALOGUE_BATCH = "batch";
+
+	// 每个批量对话数据包包含的最大原语数量
+	protected static final int DIALOGUE_BATCH_MAX = 1000;
+
+
+	/** 判断特性列表中是否包含指定特性。
+	 */
+	protected static boolean hasFeature(final byte[] features, final String feature) {
+		if (null == features) {
+			return false;
+		}
+
+		String[] list = new String(features, Charset.forName("UTF-8")).split(",");
+		for (String f : list) {
+			if (f.trim().equals(feature)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+
 	/** 判断是否是 INTERROGATE 包。
 	 */
 	public static boolean isInterrogate(final byte[] ptg) {
@@ -145,6 +183,17 @@ public final class TalkDefinition {
 		}
 	}
 
+	/** 判断是否是批量 DIALOGUE 包。
+	 */
+	public static boolean isDialogueBatch(final byte[] ptg) {
+		if (ptg[2] == TPT_DIALOGUE_BATCH[2] && ptg[3] == TPT_DIALOGUE_BATCH[3]) {
+			return true;
+		}
+		else {
+			return false;
+		}
+	}
+
 	/** 判断是否是 HEARTBEAT 包。
 	 */
 	public static boolean isHeartbeat(final byte[] ptg) {
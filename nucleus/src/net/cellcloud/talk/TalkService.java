@@ -26,7 +26,6 @@ THE SOFTWARE.
 
 package net.cellcloud.talk;
 
-import java.io.ByteArrayOutputStream;
 import java.net.InetSocketAddress;
 import java.util.ArrayList;
 import java.util.Iterator;
@@ -36,15 +35,27 @@ import java.util.Queue;
 import java.util.Vector;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
 
+import net.cellcloud.common.AdmissionControl;
 import net.cellcloud.common.Cryptology;
+import net.cellcloud.common.FrameFormat;
 import net.cellcloud.common.LogLevel;
 import net.cellcloud.common.Logger;
+import net.cellcloud.common.LoopbackAcceptor;
 import net.cellcloud.common.Message;
+import net.cellcloud.common.MessageAcceptor;
 import net.cellcloud.common.NonblockingAcceptor;
+import net.cellcloud.common.NonblockingAcceptorSession;
 import net.cellcloud.common.Packet;
 import net.cellcloud.common.Service;
 import net.cellcloud.common.Session;
+import net.cellcloud.common.TransportProfile;
+import net.cellcloud.common.WorkerAssignStrategy;
+import net.cellcloud.common.WorkerLoad;
+import net.cellcloud.common.WriteOverflowPolicy;
 import net.cellcloud.core.Cellet;
 import net.cellcloud.core.CelletSandbox;
 import net.cellcloud.core.Nucleus;
@@ -59,6 +70,8 @@ import net.cellcloud.talk.dialect.ActionDialectFactory;
 import net.cellcloud.talk.dialect.Dialect;
 import net.cellcloud.talk.dialect.DialectEnumerator;
 import net.cellcloud.util.CachedQueueExecutor;
+import net.cellcloud.util.KeyedSerialExecutor;
+import net.cellcloud.util.TimingWheel;
 import net.cellcloud.util.Utils;
 
 /** 会话服务。
@@ -69,21 +82,58 @@ public final class TalkService implements Service, SpeakerDelegate {
 
 	private static TalkService instance = null;
 
+	/// Session 校验超时时间，单位：毫秒
+	private static final long SESSION_CHECK_TIMEOUT = 10000L;
+	/// HTTP Session 心跳超时时间，单位：毫秒
+	private static final long HTTP_SESSION_TIMEOUT = 60000L;
+
 	private int port;
 	private int httpPort;
 	// 服务器端是否启用 HTTP 服务
 	private boolean httpEnabled;
+	// 长度前缀分帧格式
+	private FrameFormat frameFormat;
+	// 是否向对端声明支持二进制原语格式
+	private boolean binaryPrimitive = true;
+	// 对话原语合并窗口，单位：毫秒，为 0 时不合并
+	private long coalesceDelay = 0;
+	// 合并窗口内暂存数据的字节上限
+	private int coalesceBytes = 16 * 1024;
+	private String localTransport;
+	// 传输参数配置
+	private TransportProfile transportProfile;
+	// 工作线程分配策略及热点 Session 迁移周期、迁移阈值
+	private WorkerAssignStrategy assignStrategy;
+	private long rebalanceInterval;
+	private long rebalanceThreshold;
+	// 连接准入限制
+	private double acceptRate;
+	private double connectRatePerAddress;
+	private int maxConnectionsPerAddress;
 
 	private CookieSessionManager httpSessionManager;
 	private HttpSessionListener httpSessionListener;
 
 	private NonblockingAcceptor acceptor;
+	// 进程内 Speaker 使用的回环接收器
+	private LoopbackAcceptor loopbackAcceptor;
 	private NucleusContext nucleusContext;
 	private TalkAcceptorHandler talkHandler;
 
+	// 单个会话待发送数据的高低水位线、上限及溢出策略
+	private int writeLowWatermark;
+	private int writeHighWatermark;
+	private int writeLimit;
+	private WriteOverflowPolicy writeOverflowPolicy;
+
 	// 线程执行器
 	protected ExecutorService executor;
 
+	// 入站数据包分发执行器，同一 Session 的数据包按序执行
+	protected KeyedSerialExecutor dispatcher;
+	private int dispatchThreadNum;
+	private int dispatchQueueCapacity;
+
 	/// 待检验 Session
 	private ConcurrentHashMap<Long, Certificate> unidentifiedSessions;
 	/// Session context
@@ -101,6 +151,13 @@ public final class TalkService implements Service, SpeakerDelegate {
 	private TalkServiceDaemon daemon;
 	private ArrayList<TalkListener> listeners;
 
+	/// 由守护线程推进的定时任务时间轮
+	protected TimingWheel timingWheel;
+	/// 对话原语合并窗口定时器，启用合并后创建
+	private ScheduledExecutorService coalesceScheduler;
+	/// HTTP Session 心跳超时任务
+	private ConcurrentHashMap<Long, TimingWheel.Timeout> httpSessionTimeouts;
+
 	/** 构造函数。
 	 * @throws SingletonException 
 	 */
@@ -115,9 +172,23 @@ public final class TalkService implements Service, SpeakerDelegate {
 			this.httpPort = 7070;
 			this.httpEnabled = true;
 
+			this.writeLowWatermark = 256 * 1024;
+			this.writeHighWatermark = 1024 * 1024;
+			this.writeLimit = 16 * 1024 * 1024;
+			this.writeOverflowPolicy = WriteOverflowPolicy.DISCONNECT;
+
+			this.dispatchThreadNum = Math.max(2, Runtime.getRuntime().availableProcessors());
+			this.dispatchQueueCapacity = 1024;
+
+			this.rebalanceThreshold = 1024 * 1024;
+
 			// 创建执行器
 			this.executor = CachedQueueExecutor.newCachedQueueThreadPool(8);
 
+			// 创建时间轮，Tick 时长 100 毫秒
+			this.timingWheel = new TimingWheel(100);
+			this.httpSessionTimeouts = new ConcurrentHashMap<Long, TimingWheel.Timeout>();
+
 			// 添加默认方言工厂
 			DialectEnumerator.getInstance().addFactory(new ActionDialectFactory());
 		}
@@ -152,6 +223,11 @@ public final class TalkService implements Service, SpeakerDelegate {
 			this.suspendedTrackers = new ConcurrentHashMap<String, SuspendedTracker>();
 		}
 
+		if (null == this.dispatcher) {
+			this.dispatcher = KeyedSerialExecutor.newKeyedSerialThreadPool("TalkDispatcher",
+					this.dispatchThreadNum, this.dispatchQueueCapacity);
+		}
+
 		if (null == this.acceptor) {
 			// 创建网络适配器
 			this.acceptor = new NonblockingAcceptor();
@@ -169,8 +245,38 @@ public final class TalkService implements Service, SpeakerDelegate {
 		// 最大连接数
 		this.acceptor.setMaxConnectNum(1000);
 
+		// 单个会话待发送数据的水位线和上限，超过上限的慢速会话按溢出策略处理
+		this.acceptor.setWriteWatermark(this.writeLowWatermark, this.writeHighWatermark);
+		this.acceptor.setWriteLimit(this.writeLimit, this.writeOverflowPolicy);
+
+		// 长度前缀分帧
+		this.acceptor.setFrameFormat(this.frameFormat);
+
+		// 同主机 Unix 域套接字
+		this.acceptor.setLocalTransport(this.localTransport, "talk");
+
+		// 套接字选项、工作线程数量及数据块大小
+		this.acceptor.setTransportProfile(this.transportProfile);
+
+		// 工作线程负载均衡
+		this.acceptor.setAssignStrategy(this.assignStrategy);
+		this.acceptor.setRebalance(this.rebalanceInterval, this.rebalanceThreshold);
+
+		// 连接准入控制，突发数量为每秒速率的两倍
+		AdmissionControl admission = this.acceptor.getAdmissionControl();
+		admission.setGlobalRate(this.acceptRate, this.acceptRate * 2);
+		admission.setPerAddressRate(this.connectRatePerAddress, this.connectRatePerAddress * 2);
+		admission.setPerAddressMaxConnections(this.maxConnectionsPerAddress);
+
 		boolean succeeded = this.acceptor.bind(this.port);
 		if (succeeded) {
+			// 同一进程内的 Speaker 通过回环接收器直接交换数据
+			if (null == this.loopbackAcceptor) {
+				this.loopbackAcceptor = new LoopbackAcceptor();
+				this.loopbackAcceptor.setHandler(this.talkHandler);
+			}
+			this.loopbackAcceptor.bind(this.port);
+
 			startDaemon();
 		}
 
@@ -190,12 +296,28 @@ public final class TalkService implements Service, SpeakerDelegate {
 			this.acceptor.unbind();
 		}
 
+		if (null != this.loopbackAcceptor) {
+			this.loopbackAcceptor.unbind();
+		}
+
 		stopDaemon();
 
 		if (null != this.executor) {
 			this.executor.shutdown();
 		}
 
+		if (null != this.dispatcher) {
+			this.dispatcher.shutdown();
+			this.dispatcher = null;
+		}
+
+		synchronized (this) {
+			if (null != this.coalesceScheduler) {
+				this.coalesceScheduler.shutdown();
+				this.coalesceScheduler = null;
+			}
+		}
+
 		if (this.httpEnabled && null != HttpService.getInstance()) {
 			HttpService.getInstance().removeCapsule(this.httpPort);
 		}
@@ -238,6 +360,16 @@ public final class TalkService implements Service, SpeakerDelegate {
 		return this.httpPort;
 	}
 
+	/** 设置单个会话待发送数据的高低水位线、上限及超过上限时的处理策略，单位：字节。
+	 * 需要在服务启动前设置。
+	 */
+	public void setWriteControl(int lowWatermark, int highWatermark, int limit, WriteOverflowPolicy policy) {
+		this.writeLowWatermark = lowWatermark;
+		this.writeHighWatermark = highWatermark;
+		this.writeLimit = limit;
+		this.writeOverflowPolicy = policy;
+	}
+
 	/** 设置是否激活 HTTP 服务。
 	 */
 	public void httpEnabled(boolean enabled) {
@@ -248,6 +380,134 @@ public final class TalkService implements Service, SpeakerDelegate {
 		this.httpEnabled = enabled;
 	}
 
+	/** 设置长度前缀分帧格式。
+	 * 设置后服务器向对端声明支持长度前缀分帧，对端切换后服务器以相同格式回应，
+	 * 不支持的对端继续使用数据掩码分帧。
+	 */
+	public void setFrameFormat(FrameFormat format) {
+		this.frameFormat = format;
+		if (null != this.acceptor) {
+			this.acceptor.setFrameFormat(format);
+		}
+	}
+
+	/** 返回长度前缀分帧格式。
+	 */
+	public FrameFormat getFrameFormat() {
+		return this.frameFormat;
+	}
+
+	/** 设置是否支持二进制原语格式。
+	 * 启用后服务器向对端声明支持二进制原语，对端在识别响应中确认后双方使用二进制格式，
+	 * 旧版本对端继续使用文本格式。
+	 */
+	public void setBinaryPrimitive(boolean enabled) {
+		this.binaryPrimitive = enabled;
+	}
+
+	/** 是否支持二进制原语格式。
+	 */
+	public boolean isBinaryPrimitive() {
+		return this.binaryPrimitive;
+	}
+
+	/** 设置对话原语合并窗口。
+	 * 启用后发往支持批量对话的对端的原语最多暂存 maxDelay 毫秒，
+	 * 暂存数据达到 maxBytes 字节时立即发送，窗口内的原语合并为一个数据包。
+	 * @note 对已建立的会话不生效。
+	 * @param maxDelay 最长暂存时间，单位：毫秒，为 0 时不合并。
+	 * @param maxBytes 暂存数据的字节上限。
+	 */
+	public void setCoalescing(long maxDelay, int maxBytes) {
+		this.coalesceDelay = Math.max(0, maxDelay);
+		this.coalesceBytes = Math.max(1, maxBytes);
+	}
+
+	/** 返回对话原语合并窗口，单位：毫秒。
+	 */
+	public long getCoalesceDelay() {
+		return this.coalesceDelay;
+	}
+
+	/** 返回合并窗口内暂存数据的字节上限。
+	 */
+	public int getCoalesceBytes() {
+		return this.coalesceBytes;
+	}
+
+	/** 设置同主机传输地址，格式为 "unix:&lt;目录&gt;" 。需要在服务启动前设置。
+	 */
+	public void setLocalTransport(String transport) {
+		this.localTransport = transport;
+	}
+
+	/** 设置传输参数配置。需要在服务启动前设置。
+	 */
+	public void setTransportProfile(TransportProfile profile) {
+		this.transportProfile = profile;
+	}
+
+	/** 设置入站数据包分发执行器的线程数和每个 Session 的队列容量。
+	 * 需要在服务启动前设置。
+	 */
+	public void setDispatchExecutor(int threadNum, int queueCapacity) {
+		if (threadNum > 0) {
+			this.dispatchThreadNum = threadNum;
+		}
+		if (queueCapacity > 0) {
+			this.dispatchQueueCapacity = queueCapacity;
+		}
+	}
+
+	/** 返回入站数据包分发执行器，用于查询分发统计数据。
+	 */
+	public KeyedSerialExecutor getDispatchExecutor() {
+		return this.dispatcher;
+	}
+
+	/** 设置接收器工作线程分配策略及热点 Session 迁移周期，迁移周期为 0 时不迁移。
+	 * 需要在服务启动前设置。
+	 * 
+	 * @param strategy 工作线程分配策略。
+	 * @param rebalanceInterval 迁移周期，单位：毫秒。
+	 * @param rebalanceThreshold 触发迁移的工作线程最小负载差，单位：字节每秒。
+	 */
+	public void setWorkerBalance(WorkerAssignStrategy strategy, long rebalanceInterval, long rebalanceThreshold) {
+		this.assignStrategy = strategy;
+		this.rebalanceInterval = rebalanceInterval;
+		this.rebalanceThreshold = rebalanceThreshold;
+	}
+
+	/** 设置连接准入限制，限制值为 0 时不限制。需要在服务启动前设置。
+	 * 
+	 * @param acceptRate 全局每秒接受的连接数。
+	 * @param connectRatePerAddress 单个来源地址每秒的连接数。
+	 * @param maxConnectionsPerAddress 单个来源地址的最大并发连接数。
+	 */
+	public void setAdmission(double acceptRate, double connectRatePerAddress, int maxConnectionsPerAddress) {
+		this.acceptRate = acceptRate;
+		this.connectRatePerAddress = connectRatePerAddress;
+		this.maxConnectionsPerAddress = maxConnectionsPerAddress;
+	}
+
+	/** 返回准入控制拒绝的连接数。
+	 */
+	public long getRejectedConnectionCount() {
+		if (null == this.acceptor) {
+			return 0;
+		}
+		return this.acceptor.getAdmissionControl().getRejectedCount();
+	}
+
+	/** 返回接收器工作线程的负载快照。
+	 */
+	public List<WorkerLoad> getWorkerLoads() {
+		if (null == this.acceptor) {
+			return new ArrayList<WorkerLoad>();
+		}
+		return this.acceptor.getWorkerLoads();
+	}
+
 	/** 启动任务表守护线程。
 	 */
 	public void startDaemon() {
@@ -361,27 +621,122 @@ public final class TalkService implements Service, SpeakerDelegate {
 			return false;
 		}
 
-		Message message = null;
+		synchronized (contexts) {
+			TalkSessionContext ctx = this.findDialogueContext(contexts, targetTag, cellet);
+			if (null == ctx) {
+				return false;
+			}
+
+			if (null != ctx.coalescer) {
+				// 暂存原语，由合并器按窗口发送
+				ctx.coalescer.offer(primitive.toByteArray(ctx.binaryPrimitive));
+			}
+			else {
+				ctx.getSession().write(this.packetDialogue(primitive, ctx));
+			}
+		}
+
+		return true;
+	}
+
+	/** 通知对端 Speaker 一组原语。
+	 * 对端支持批量对话时原语合并为批量数据包发送，对端按列表顺序回调。
+	 */
+	public boolean notice(final String targetTag, final List<Primitive> primitives,
+			final Cellet cellet, final CelletSandbox sandbox) {
+		// 检查 Cellet 合法性
+		if (!Nucleus.getInstance().checkSandbox(cellet, sandbox)) {
+			Logger.w(TalkService.class, "Illegal cellet : " + cellet.getFeature().getIdentifier());
+			return false;
+		}
+
+		if (null == this.tagSessionsMap) {
+			Logger.w(TalkService.class, "Unknown target tag : " + targetTag);
+			return false;
+		}
+
+		if (primitives.isEmpty()) {
+			return true;
+		}
+
+		// 尝试在已挂起的的追踪器里查找
+		if (this.tryOfferPrimitives(targetTag, cellet, primitives)) {
+			// 因为没有直接发送出去原语，所以返回 false
+			return false;
+		}
+
+		Vector<TalkSessionContext> contexts = this.tagSessionsMap.get(targetTag);
+		if (null == contexts) {
+			if (Logger.isDebugLevel()) {
+				Logger.d(TalkService.class, "Can't find target tag in context list : " + targetTag);
+			}
+			return false;
+		}
 
 		synchronized (contexts) {
-			for (TalkSessionContext ctx : contexts) {
-				// 查找上文里指定的会话追踪器
-				TalkTracker tracker = ctx.getTracker(targetTag);
-				if (null != tracker) {
-					// 判断是否是同一个 Cellet
-					if (tracker.activeCellet == cellet) {
-						Session session = ctx.getSession();
-						message = this.packetDialogue(primitive);
-						if (null != message) {
-							session.write(message);
-						}
-						break;
+			TalkSessionContext ctx = this.findDialogueContext(contexts, targetTag, cellet);
+			if (null == ctx) {
+				return false;
+			}
+
+			if (null != ctx.coalescer) {
+				// 与窗口内已暂存的原语一并发送，保持顺序
+				for (Primitive primitive : primitives) {
+					ctx.coalescer.offer(primitive.toByteArray(ctx.binaryPrimitive));
+				}
+				ctx.coalescer.flush();
+			}
+			else if (ctx.dialogueBatch) {
+				Session session = ctx.getSession();
+				ArrayList<byte[]> batch = new ArrayList<byte[]>(Math.min(primitives.size(), TalkDefinition.DIALOGUE_BATCH_MAX));
+				for (Primitive primitive : primitives) {
+					batch.add(primitive.toByteArray(ctx.binaryPrimitive));
+					if (batch.size() == TalkDefinition.DIALOGUE_BATCH_MAX) {
+						session.write(this.packetDialogueBatch(batch, ctx));
+						batch.clear();
 					}
 				}
+				if (!batch.isEmpty()) {
+					session.write(this.packetDialogueBatch(batch, ctx));
+				}
+			}
+			else {
+				// 对端不支持批量对话，逐个发送
+				Session session = ctx.getSession();
+				for (Primitive primitive : primitives) {
+					session.write(this.packetDialogue(primitive, ctx));
+				}
+			}
+		}
+
+		return true;
+	}
+
+	/** 返回指定标签的对端当前是否可写。
+	 * 对端待发送数据超过高水位线时返回 false ，
+	 * 持续推送数据的 Cellet 可以据此暂停推送。
+	 */
+	public boolean isWritable(final String targetTag) {
+		if (null == this.tagSessionsMap) {
+			return false;
+		}
+
+		Vector<TalkSessionContext> contexts = this.tagSessionsMap.get(targetTag);
+		if (null == contexts) {
+			return false;
+		}
+
+		synchronized (contexts) {
+			for (TalkSessionContext ctx : contexts) {
+				Session session = ctx.getSession();
+				if (session instanceof NonblockingAcceptorSession
+						&& !((NonblockingAcceptorSession) session).isWritable()) {
+					return false;
+				}
 			}
 		}
 
-		return (null != message);
+		return true;
 	}
 
 	/** 通知对端 Speaker 方言。
@@ -545,6 +900,30 @@ public final class TalkService implements Service, SpeakerDelegate {
 		return false;
 	}
 
+	/** 向指定 Cellet 发送一组原语。
+	 * 
+	 * @note Client
+	 */
+	public boolean talk(final String identifier, final List<Primitive> primitives) {
+		if (null != this.speakers) {
+			Speaker speaker = this.speakers.get(identifier);
+			if (null != speaker) {
+				// Speak
+				return speaker.speak(primitives);
+			}
+		}
+
+		if (null != this.httpSpeakers) {
+			HttpSpeaker hs = this.httpSpeakers.get(identifier);
+			if (null != hs) {
+				// Speak
+				return hs.speak(primitives);
+			}
+		}
+
+		return false;
+	}
+
 	/** 向指定 Cellet 发送方言。
 	 * 
 	 * @note Client
@@ -743,12 +1122,24 @@ public final class TalkService implements Service, SpeakerDelegate {
 			return this.unidentifiedSessions.get(sid);
 		}
 
-		Certificate cert = new Certificate();
+		final Certificate cert = new Certificate();
 		cert.session = session;
 		cert.key = Utils.randomString(8);
 		cert.plaintext = Utils.randomString(16);
 		this.unidentifiedSessions.put(sid, cert);
 
+		// 设置校验超时
+		cert.timeout = this.timingWheel.schedule(new Runnable() {
+			@Override
+			public void run() {
+				checkTimeout(cert);
+			}
+		}, SESSION_CHECK_TIMEOUT);
+
+		// 立即发送校验请求
+		cert.checked = true;
+		deliverChecking(session, cert.plaintext, cert.key);
+
 		return cert;
 	}
 
@@ -816,22 +1207,52 @@ public final class TalkService implements Service, SpeakerDelegate {
 				}
 			} // # while
 
+			// 丢弃未发送的合并原语
+			if (null != ctx.coalescer) {
+				ctx.coalescer.clear();
+			}
+
 			// 清理上下文记录
 			this.sessionContexts.remove(session);
 		}
 
 		// 清理未授权表
-		this.unidentifiedSessions.remove(session.getId());
+		this.removeCertificate(session.getId());
 	}
 
 	/** 允许指定 Session 连接。
 	 */
-	protected synchronized void acceptSession(Session session) {
+	protected void acceptSession(Session session) {
+		this.acceptSession(session, 1);
+	}
+
+	/** 允许指定 Session 连接，并记录对端使用的数据包主版本号。
+	 */
+	protected void acceptSession(Session session, int packetVersion) {
+		this.acceptSession(session, packetVersion, false, false);
+	}
+
+	/** 允许指定 Session 连接，并记录对端使用的数据包主版本号、原语格式及是否支持批量对话。
+	 */
+	protected synchronized void acceptSession(Session session, int packetVersion,
+			boolean binaryPrimitive, boolean dialogueBatch) {
 		Long sid = session.getId();
-		this.unidentifiedSessions.remove(sid);
+		this.removeCertificate(sid);
 
-		TalkSessionContext ctx = new TalkSessionContext(session);
+		final TalkSessionContext ctx = new TalkSessionContext(session);
 		ctx.tickTime = this.getTickTime();
+		ctx.packetVersion = packetVersion;
+		ctx.binaryPrimitive = binaryPrimitive;
+		ctx.dialogueBatch = dialogueBatch;
+		if (dialogueBatch && this.coalesceDelay > 0) {
+			ctx.coalescer = new DialogueCoalescer(this.getCoalesceScheduler(),
+					this.coalesceDelay, this.coalesceBytes, new DialogueCoalescer.Sender() {
+				@Override
+				public void send(List<byte[]> batch) {
+					ctx.getSession().write(packetDialogueBatch(batch, ctx));
+				}
+			});
+		}
 		this.sessionContexts.put(session, ctx);
 	}
 
@@ -850,11 +1271,11 @@ public final class TalkService implements Service, SpeakerDelegate {
 		Logger.w(TalkService.class, log.toString());
 		log = null;
 
-		this.unidentifiedSessions.remove(sid);
+		this.removeCertificate(sid);
 		this.sessionContexts.remove(session);
 
 		if (!(session instanceof HttpSession)) {
-			this.acceptor.close(session);
+			this.closeTransport(session);
 		}
 	}
 
@@ -1029,7 +1450,7 @@ public final class TalkService implements Service, SpeakerDelegate {
 							Long timestamp = timestampQueue.poll();
 							Primitive primitive = primitiveQueue.poll();
 							if (timestamp.longValue() >= startTime) {
-								message = this.packetResume(targetTag, timestamp, primitive);
+								message = this.packetResume(targetTag, timestamp, primitive, ctx);
 								if (null != message) {
 									session.write(message);
 								}
@@ -1049,66 +1470,49 @@ public final class TalkService implements Service, SpeakerDelegate {
 		return this.unidentifiedSessions.get(session.getId());
 	}
 
-	/** 处理未识别 Session 。
+	/** 删除 Session 证书并取消其校验超时。
 	 */
-	protected void processUnidentifiedSessions(long time) {
-		if (null == this.unidentifiedSessions || this.unidentifiedSessions.isEmpty()) {
-			return;
+	private void removeCertificate(Long sid) {
+		Certificate cert = this.unidentifiedSessions.remove(sid);
+		if (null != cert && null != cert.timeout) {
+			cert.timeout.cancel();
+			cert.timeout = null;
 		}
+	}
 
-		// 存储超时的 Session
-		ArrayList<Session> sessionList = null;
-
-		Long sid = null;
-		Iterator<Long> iter = this.unidentifiedSessions.keySet().iterator();
-		while (iter.hasNext()) {
-			sid = iter.next();
-			Certificate cert = this.unidentifiedSessions.get(sid);
-			if (false == cert.checked) {
-				cert.checked = true;
-				deliverChecking(cert.session, cert.plaintext, cert.key);
-			}
-			else {
-				// 10 秒超时检测
-				if (time - cert.time > 10000) {
-					if (null == sessionList) {
-						sessionList = new ArrayList<Session>();
-					}
+	/** 处理校验超时的 Session 。
+	 */
+	private void checkTimeout(Certificate cert) {
+		Session session = cert.session;
 
-					sessionList.add(cert.session);
-				}
-			}
+		// 已经通过校验或者已经关闭
+		if (!this.unidentifiedSessions.remove(session.getId(), cert)) {
+			return;
 		}
 
-		if (null != sessionList) {
-			// 关闭所有超时的 Session
-			Iterator<Session> siter = sessionList.iterator();
-			while (siter.hasNext()) {
-				Session session = siter.next();
-
-				StringBuilder log = new StringBuilder();
-				log.append("Talk service session timeout: ");
-				log.append(session.getAddress().getAddress().getHostAddress());
-				log.append(":");
-				log.append(session.getAddress().getPort());
-				Logger.i(TalkService.class, log.toString());
-				log = null;
-
-				// 从记录中删除
-				this.unidentifiedSessions.remove(session.getId());
+		StringBuilder log = new StringBuilder();
+		log.append("Talk service session timeout: ");
+		log.append(session.getAddress().getAddress().getHostAddress());
+		log.append(":");
+		log.append(session.getAddress().getPort());
+		Logger.i(TalkService.class, log.toString());
+		log = null;
 
-				if (session instanceof HttpSession) {
-					// 删除 HTTP 的 Session
-					this.httpSessionManager.unmanage((HttpSession)session);
-				}
-				else {
-					// 关闭私有协议的 Session
-					this.acceptor.close(session);
-				}
-			}
+		if (session instanceof HttpSession) {
+			// 删除 HTTP 的 Session
+			this.httpSessionManager.unmanage((HttpSession)session);
+		}
+		else {
+			// 关闭私有协议的 Session
+			this.closeTransport(session);
+		}
+	}
 
-			sessionList.clear();
-			sessionList = null;
+	/** 关闭私有协议 Session 的网络连接或回环连接。
+	 */
+	private void closeTransport(Session session) {
+		if (session.getService() instanceof MessageAcceptor) {
+			((MessageAcceptor) session.getService()).close(session);
 		}
 	}
 
@@ -1132,57 +1536,95 @@ public final class TalkService implements Service, SpeakerDelegate {
 		return this.daemon.getTickTime();
 	}
 
-	/** 检查 HTTP Session 心跳。
+	/** 添加在指定延迟后由守护线程执行的定时任务。
+	 */
+	protected TimingWheel.Timeout schedule(Runnable task, long delay) {
+		return this.timingWheel.schedule(task, delay);
+	}
+
+	/** 设置 HTTP Session 的心跳超时检查。
+	 */
+	protected void scheduleHttpSessionCheck(HttpSession session) {
+		this.scheduleHttpSessionCheck(session, HTTP_SESSION_TIMEOUT);
+	}
+
+	private void scheduleHttpSessionCheck(final HttpSession session, long delay) {
+		TimingWheel.Timeout timeout = this.timingWheel.schedule(new Runnable() {
+			@Override
+			public void run() {
+				checkHttpSessionHeartbeat(session);
+			}
+		}, delay);
+
+		TimingWheel.Timeout old = this.httpSessionTimeouts.put(session.getId(), timeout);
+		if (null != old) {
+			old.cancel();
+		}
+	}
+
+	/** 取消 HTTP Session 的心跳超时检查。
+	 */
+	protected void cancelHttpSessionCheck(HttpSession session) {
+		TimingWheel.Timeout timeout = this.httpSessionTimeouts.remove(session.getId());
+		if (null != timeout) {
+			timeout.cancel();
+		}
+	}
+
+	/** 检查 HTTP Session 心跳，未超时则按最近心跳时间重新设置检查。
 	 */
-	protected void checkHttpSessionHeartbeat() {
+	private void checkHttpSessionHeartbeat(HttpSession session) {
 		if (null == this.httpSessionManager) {
 			return;
 		}
 
-		this.executor.execute(new Runnable() {
+		long idle = System.currentTimeMillis() - session.getHeartbeat();
+		if (idle > HTTP_SESSION_TIMEOUT) {
+			this.httpSessionTimeouts.remove(session.getId());
+			this.httpSessionManager.unmanage(session);
+		}
+		else {
+			this.scheduleHttpSessionCheck(session, HTTP_SESSION_TIMEOUT - idle + 1);
+		}
+	}
+
+	/** 设置挂起会话的超时检查。
+	 */
+	private void scheduleSuspendedCheck(final SuspendedTracker tracker, long delay) {
+		this.timingWheel.schedule(new Runnable() {
 			@Override
 			public void run() {
-				long time = daemon.getTickTime();
-				List<HttpSession> list = httpSessionManager.getSessions();
-				for (HttpSession session : list) {
-					if (time - session.getHeartbeat() > 60000) {
-						httpSessionManager.unmanage(session);
-					}
-				}
+				checkSuspendedTalk(tracker);
 			}
-		});
+		}, delay);
 	}
 
-	/** 检查并删除挂起的会话。
+	/** 检查挂起会话是否超时，超时则删除。
 	 */
-	protected void checkAndDeleteSuspendedTalk() {
-		// 两个判断依据，满足任一一个时即可进行删除：
-		// 1、挂起会话超时
-		// 2、挂起会话所标识的消费端已经和 Cellet 重建连接
-
-		if (null == this.tagSessionsMap) {
+	private void checkSuspendedTalk(SuspendedTracker tracker) {
+		// 挂起记录已被替换或删除
+		if (this.suspendedTrackers.get(tracker.getTag()) != tracker) {
 			return;
 		}
 
-		// 检查超时的挂起会话
-		Iterator<Map.Entry<String, SuspendedTracker>> eiter = this.suspendedTrackers.entrySet().iterator();
-		while (eiter.hasNext()) {
-			Map.Entry<String, SuspendedTracker> entry = eiter.next();
-			SuspendedTracker tracker = entry.getValue();
-			if (tracker.isTimeout()) {
-				// 如果当前指定的对端已经不在线则，通知 Cellet 对端已退出。
-				if (!this.tagSessionsMap.containsKey(tracker.getTag())) {
-					// 回调退出函数
-					List<Cellet> list = tracker.getCelletList();
-					for (int i = 0, size = list.size(); i < size; ++i) {
-						list.get(i).quitted(entry.getKey());
-					}
-				}
+		long remaining = tracker.getRemainingTime();
+		if (remaining > 0) {
+			// 挂起期间重新跟踪过，按新的起始时间再次检查
+			this.scheduleSuspendedCheck(tracker, remaining);
+			return;
+		}
 
-				// 删除对应标签的挂起记录
-				eiter.remove();
+		// 如果当前指定的对端已经不在线则，通知 Cellet 对端已退出。
+		if (null != this.tagSessionsMap && !this.tagSessionsMap.containsKey(tracker.getTag())) {
+			// 回调退出函数
+			List<Cellet> list = tracker.getCelletList();
+			for (int i = 0, size = list.size(); i < size; ++i) {
+				list.get(i).quitted(tracker.getTag());
 			}
 		}
+
+		// 删除对应标签的挂起记录
+		this.suspendedTrackers.remove(tracker.getTag(), tracker);
 	}
 
 	/** 挂起会话。
@@ -1202,6 +1644,9 @@ public final class TalkService implements Service, SpeakerDelegate {
 		tracker.track(talkTracker.activeCellet, suspendMode);
 		tracker.liveDuration = talkTracker.getSuspendDuration();
 		this.suspendedTrackers.put(talkTracker.getTag(), tracker);
+
+		// 到期后检查并删除
+		this.scheduleSuspendedCheck(tracker, tracker.liveDuration);
 		return tracker;
 	}
 
@@ -1232,6 +1677,70 @@ public final class TalkService implements Service, SpeakerDelegate {
 		return false;
 	}
 
+	/** 尝试记录挂起会话的一组原语。
+	 */
+	private boolean tryOfferPrimitives(String tag, Cellet cellet, List<Primitive> primitives) {
+		SuspendedTracker tracker = this.suspendedTrackers.get(tag);
+		if (null != tracker) {
+			long timestamp = System.currentTimeMillis();
+			for (Primitive primitive : primitives) {
+				tracker.offerPrimitive(cellet, timestamp, primitive);
+			}
+			return true;
+		}
+
+		return false;
+	}
+
+	/** 在上下文列表中查找与指定 Cellet 对话的上下文。
+	 * @note 调用方需持有 contexts 的锁。
+	 */
+	private TalkSessionContext findDialogueContext(Vector<TalkSessionContext> contexts, String targetTag, Cellet cellet) {
+		for (TalkSessionContext ctx : contexts) {
+			// 查找上文里指定的会话追踪器
+			TalkTracker tracker = ctx.getTracker(targetTag);
+			// 判断是否是同一个 Cellet
+			if (null != tracker && tracker.activeCellet == cellet) {
+				return ctx;
+			}
+		}
+
+		return null;
+	}
+
+	/** 返回合并窗口定时器，首次调用时创建。
+	 */
+	protected synchronized ScheduledExecutorService getCoalesceScheduler() {
+		if (null == this.coalesceScheduler) {
+			this.coalesceScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "TalkCoalescer");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return this.coalesceScheduler;
+	}
+
+	/** 返回服务器支持的特性列表，以逗号分隔。
+	 */
+	private String listFeatures() {
+		StringBuilder buf = new StringBuilder(TalkDefinition.FEATURE_PACKET_V2);
+		if (null != this.frameFormat) {
+			buf.append(",");
+			buf.append(TalkDefinition.FEATURE_LENGTH_FRAMING);
+		}
+		if (this.binaryPrimitive) {
+			buf.append(",");
+			buf.append(TalkDefinition.FEATURE_BINARY_PRIMITIVE);
+		}
+		buf.append(",");
+		buf.append(TalkDefinition.FEATURE_DIALOGUE_BATCH);
+		return buf.toString();
+	}
+
 	/** 向指定 Session 发送识别指令。
 	 */
 	private void deliverChecking(Session session, String text, String key) {
@@ -1240,7 +1749,7 @@ public final class TalkService implements Service, SpeakerDelegate {
 			return;
 		}
 
-		// 包格式：密文|密钥
+		// 包格式：密文|密钥|特性列表
 
 		byte[] ciphertext = Cryptology.getInstance().simpleEncrypt(text.getBytes(), key.getBytes());
 
@@ -1248,27 +1757,32 @@ public final class TalkService implements Service, SpeakerDelegate {
 		packet.appendSubsegment(ciphertext);
 		packet.appendSubsegment(key.getBytes());
 
+		String features = this.listFeatures();
+		if (features.length() > 0) {
+			packet.appendSubsegment(features.getBytes());
+		}
+
 		byte[] data = Packet.pack(packet);
 		if (null != data) {
 			Message message = new Message(data);
-			this.acceptor.write(session, message);
+			session.write(message);
 			message = null;
 		}
 
 		packet = null;
 	}
 
-	private Message packetResume(String targetTag, Long timestamp, Primitive primitive) {
+	private Message packetResume(String targetTag, Long timestamp, Primitive primitive, TalkSessionContext ctx) {
 		// 包格式：目的标签|时间戳|原语序列
 
 		// 序列化原语
-		ByteArrayOutputStream stream = primitive.write();
+		byte[] pridata = primitive.toByteArray(ctx.binaryPrimitive);
 
 		// 封装数据包
-		Packet packet = new Packet(TalkDefinition.TPT_RESUME, 6, 1, 0);
+		Packet packet = new Packet(TalkDefinition.TPT_RESUME, 6, ctx.packetVersion, 0);
 		packet.appendSubsegment(Utils.string2Bytes(targetTag));
 		packet.appendSubsegment(Utils.string2Bytes(timestamp.toString()));
-		packet.appendSubsegment(stream.toByteArray());
+		packet.appendSubsegment(pridata);
 
 		// 打包数据
 		byte[] data = Packet.pack(packet);
@@ -1278,15 +1792,31 @@ public final class TalkService implements Service, SpeakerDelegate {
 
 	/** 打包对话原语。
 	 */
-	private Message packetDialogue(Primitive primitive) {
+	private Message packetDialogue(Primitive primitive, TalkSessionContext ctx) {
 		// 包格式：原语序列
 
 		// 序列化原语
-		ByteArrayOutputStream stream = primitive.write();
+		byte[] pridata = primitive.toByteArray(ctx.binaryPrimitive);
 
 		// 封装数据包
-		Packet packet = new Packet(TalkDefinition.TPT_DIALOGUE, 99, 1, 0);
-		packet.setBody(stream.toByteArray());
+		Packet packet = new Packet(TalkDefinition.TPT_DIALOGUE, 99, ctx.packetVersion, 0);
+		packet.setBody(pridata);
+
+		// 打包数据
+		byte[] data = Packet.pack(packet);
+		Message message = new Message(data);
+		return message;
+	}
+
+	/** 打包批量对话原语。
+	 */
+	private Message packetDialogueBatch(List<byte[]> batch, TalkSessionContext ctx) {
+		// 包格式：原语序列|原语序列|...
+
+		Packet packet = new Packet(TalkDefinition.TPT_DIALOGUE_BATCH, 99, ctx.packetVersion, 0);
+		for (int i = 0, size = batch.size(); i < size; ++i) {
+			packet.appendSubsegment(batch.get(i));
+		}
 
 		// 打包数据
 		byte[] data = Packet.pack(packet);
@@ -1304,6 +1834,7 @@ public final class TalkService implements Service, SpeakerDelegate {
 			this.plaintext = null;
 			this.time = System.currentTimeMillis();
 			this.checked = false;
+			this.timeout = null;
 		}
 
 		/// 相关 Session
@@ -1316,5 +1847,7 @@ public final class TalkService implements Service, SpeakerDelegate {
 		protected long time;
 		/// 是否已经发送校验请求
 		protected boolean checked;
+		/// 校验超时任务
+		protected TimingWheel.Timeout timeout;
 	}
 }
@@ -33,6 +33,7 @@ import net.cellcloud.common.Logger;
 import net.cellcloud.talk.dialect.ActionDialect;
 import net.cellcloud.talk.dialect.ActionDialectFactory;
 import net.cellcloud.talk.dialect.DialectEnumerator;
+import net.cellcloud.util.TimingWheel;
 
 /** Talk Service 守护线程。
  * 
@@ -61,86 +62,24 @@ public final class TalkServiceDaemon extends Thread {
 
 		TalkService service = TalkService.getInstance();
 
-		int heartbeatCount = 0;
-		int checkSuspendedCount = 0;
+		TimingWheel wheel = service.timingWheel;
+		long tickDuration = wheel.getTickDuration();
 
 		do {
 			// 当前时间
 			this.tickTime = System.currentTimeMillis();
 
-			// 心跳计数
-			++heartbeatCount;
+			// 执行到期的定时任务：心跳、重连、Session 校验超时和挂起会话超时
+			wheel.advance(this.tickTime);
 
-			// HTTP 客户端管理
-			if (heartbeatCount % 5 == 0) {
-				// 每 5 秒一次计数
-				if (null != service.httpSpeakers) {
-					for (HttpSpeaker speaker : service.httpSpeakers.values()) {
-						speaker.tick();
-					}
-				}
-			}
-
-			// HTTP 服务器 Session 管理
-			if (heartbeatCount % 60 == 0) {
-				service.checkHttpSessionHeartbeat();
-			}
-
-			if (heartbeatCount >= 120) {
-				// 120 秒一次心跳
-				if (null != service.speakers) {
-					for (Speaker speaker : service.speakers.values()) {
-						speaker.heartbeat();
-					}
-				}
-
-				heartbeatCount = 0;
-			}
-
-			// 检查丢失连接的 Speaker
-			if (null != service.speakers) {
-				Iterator<Speaker> iter = service.speakers.values().iterator();
-				while (iter.hasNext()) {
-					Speaker speaker = iter.next();
-
-					if (speaker.lost && this.tickTime - speaker.timestamp >= 5000) {
-						if (Logger.isDebugLevel()) {
-							StringBuilder buf = new StringBuilder();
-							buf.append("Retry call cellet ");
-							buf.append(speaker.getIdentifier());
-							buf.append(" at ");
-							buf.append(speaker.getAddress().getAddress().getHostAddress());
-							buf.append(":");
-							buf.append(speaker.getAddress().getPort());
-							Logger.d(TalkServiceDaemon.class, buf.toString());
-							buf = null;
-						}
-
-						// 重连
-						speaker.call(speaker.getAddress());
-					}
-				}
-			}
-
-			// 处理未识别 Session
-			service.processUnidentifiedSessions(this.tickTime);
-
-			// 1 分钟检查一次挂起状态下的会话器是否失效
-			++checkSuspendedCount;
-			if (checkSuspendedCount >= 60) {
-				// 检查并删除挂起的会话
-				service.checkAndDeleteSuspendedTalk();
-				checkSuspendedCount = 0;
-			}
-
-			// 休眠 1 秒
+			// 休眠到下一个 Tick
 			try {
 				long dt = System.currentTimeMillis() - this.tickTime;
-				if (dt <= 1000) {
-					dt = 1000 - dt;
+				if (dt <= tickDuration) {
+					dt = tickDuration - dt;
 				}
 				else {
-					dt = dt % 1000;
+					dt = dt % tickDuration;
 				}
 
 				Thread.sleep(dt);
@@ -45,6 +45,18 @@ public final class TalkSessionContext {
 
 	public long tickTime = 0;
 
+	/// 对端使用的数据包主版本号
+	public int packetVersion = 1;
+
+	/// 是否向对端发送二进制格式的原语
+	public boolean binaryPrimitive = false;
+
+	/// 对端是否支持批量对话数据包
+	public boolean dialogueBatch = false;
+
+	/// 对话原语合并器，未启用合并时为 null
+	protected DialogueCoalescer coalescer = null;
+
 	/** 构造函数。
 	 */
 	public TalkSessionContext(Session session) {
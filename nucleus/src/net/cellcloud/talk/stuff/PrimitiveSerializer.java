@@ -31,7 +31,6 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
-import java.util.Iterator;
 import java.util.List;
 
 import net.cellcloud.common.LogLevel;
@@ -39,6 +38,7 @@ import net.cellcloud.common.Logger;
 import net.cellcloud.talk.Primitive;
 import net.cellcloud.talk.dialect.Dialect;
 import net.cellcloud.talk.dialect.DialectEnumerator;
+import net.cellcloud.util.ByteArrayBuffer;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -60,14 +60,6 @@ public final class PrimitiveSerializer {
 	private static final byte TOKEN_AT = '@';
 	private static final String TOKEN_AT_STR = "@";
 
-	private static final byte PARSE_PHASE_UNKNOWN = 0;
-	private static final byte PARSE_PHASE_VERSION = 1;
-	private static final byte PARSE_PHASE_TYPE = 2;
-	private static final byte PARSE_PHASE_LITERAL = 3;
-	private static final byte PARSE_PHASE_VALUE = 4;
-	private static final byte PARSE_PHASE_STUFF = 5;
-	private static final byte PARSE_PHASE_DIALECT = 6;
-
 	private static final String LITERALBASE_STRING = "string";
 	private static final String LITERALBASE_INT = "int";
 	private static final String LITERALBASE_UINT = "uint";
@@ -111,7 +103,52 @@ public final class PrimitiveSerializer {
 	private static final String JSONKEY_NAME = "name";
 	private static final String JSONKEY_TRACKER = "tracker";
 
-	private static final int BLOCK = 2048;
+	private static final byte[] VERSION_BYTES = {'0', '1', TOKEN_POINT, '0', '0'};
+	private static final byte[] TRUE_BYTES = {'t', 'r', 'u', 'e'};
+	private static final byte[] FALSE_BYTES = {'f', 'a', 'l', 's', 'e'};
+
+	/// 线程内复用的编码缓冲区
+	private static final ThreadLocal<ByteArrayBuffer> ENCODE_BUFFER = new ThreadLocal<ByteArrayBuffer>() {
+		@Override
+		protected ByteArrayBuffer initialValue() {
+			return new ByteArrayBuffer(512);
+		}
+	};
+	/// 线程内复用的解码缓冲区，用于解除转义
+	private static final ThreadLocal<ByteArrayBuffer> DECODE_BUFFER = new ThreadLocal<ByteArrayBuffer>() {
+		@Override
+		protected ByteArrayBuffer initialValue() {
+			return new ByteArrayBuffer(512);
+		}
+	};
+	/// 编解码缓冲区保留的最大容量，超过时在使用后释放
+	private static final int ENCODE_BUFFER_RETAIN = 64 * 1024;
+
+	/// 二进制格式起始标识，文本格式总是以 '[' 开始，以此区分两种格式
+	public static final byte BINARY_MAGIC = (byte) 0xB1;
+	/// 二进制格式版本
+	private static final byte BINARY_VERSION = 1;
+
+	// 二进制格式语素标记高 4 位为语素类型，低 4 位为字面义
+	private static final int BINARY_TYPE_SUBJECT = 1;
+	private static final int BINARY_TYPE_PREDICATE = 2;
+	private static final int BINARY_TYPE_OBJECTIVE = 3;
+	private static final int BINARY_TYPE_ADVERBIAL = 4;
+	private static final int BINARY_TYPE_ATTRIBUTIVE = 5;
+	private static final int BINARY_TYPE_COMPLEMENT = 6;
+	private static final int BINARY_TYPE_DIALECT = 15;
+
+	private static final int BINARY_LITERAL_STRING = 0;
+	private static final int BINARY_LITERAL_INT = 1;
+	private static final int BINARY_LITERAL_LONG = 2;
+	private static final int BINARY_LITERAL_FLOAT = 3;
+	private static final int BINARY_LITERAL_BOOL = 4;
+	private static final int BINARY_LITERAL_JSON = 5;
+	private static final int BINARY_LITERAL_XML = 6;
+	/// 字面义标记，数值字面义的值无法按照数值编码时，按照 UTF-8 文本保存原始字面
+	private static final int BINARY_LITERAL_TEXT = 8;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
 
 	private PrimitiveSerializer() {
 	}
@@ -119,6 +156,75 @@ public final class PrimitiveSerializer {
 	/** 将原语写入数据流。
 	 */
 	public static void write(OutputStream stream, Primitive primitive) {
+		write(stream, primitive, false);
+	}
+
+	/** 按照指定格式将原语写入数据流。
+	 */
+	public static void write(OutputStream stream, Primitive primitive, boolean binary) {
+		ByteArrayBuffer buffer = ENCODE_BUFFER.get();
+		buffer.reset();
+
+		try {
+			if (binary) {
+				writeBinary(buffer, primitive);
+			}
+			else {
+				write(buffer, primitive);
+			}
+
+			stream.write(buffer.array(), 0, buffer.size());
+			stream.flush();
+		} catch (IOException e) {
+			Logger.log(PrimitiveSerializer.class, e, LogLevel.ERROR);
+		} catch (NumberFormatException e) {
+			Logger.log(PrimitiveSerializer.class, e, LogLevel.ERROR);
+		} finally {
+			releaseEncodeBuffer(buffer);
+		}
+	}
+
+	/** 以二进制格式将原语写入数据流。
+	 */
+	public static void writeBinary(OutputStream stream, Primitive primitive) {
+		write(stream, primitive, true);
+	}
+
+	/** 按照指定格式编码原语，返回编码后的数据。
+	 * 使用线程内复用的编码缓冲区，只为返回的数据分配一次内存。
+	 */
+	public static byte[] encode(Primitive primitive, boolean binary) {
+		ByteArrayBuffer buffer = ENCODE_BUFFER.get();
+		buffer.reset();
+
+		try {
+			if (binary) {
+				writeBinary(buffer, primitive);
+			}
+			else {
+				write(buffer, primitive);
+			}
+
+			return buffer.toByteArray();
+		} catch (NumberFormatException e) {
+			Logger.log(PrimitiveSerializer.class, e, LogLevel.ERROR);
+			return new byte[0];
+		} finally {
+			releaseEncodeBuffer(buffer);
+		}
+	}
+
+	/** 编码完成后，释放扩容过大的线程编码缓冲区。
+	 */
+	private static void releaseEncodeBuffer(ByteArrayBuffer buffer) {
+		if (buffer.capacity() > ENCODE_BUFFER_RETAIN) {
+			ENCODE_BUFFER.remove();
+		}
+	}
+
+	/** 以文本格式将原语写入缓冲区。
+	 */
+	public static void write(ByteArrayBuffer buffer, Primitive primitive) {
 		/*
 		原语序列化格式：
 		[version]{sutff}...{stuff}[dialect@tracker]
@@ -126,163 +232,275 @@ public final class PrimitiveSerializer {
 		[01.00]{sub=cloud:string}{pre=add:string}[FileReader@Lynx]
 		*/
 
-		try {
-			// 版本
-			stream.write((int)TOKEN_OPEN_BRACKET);
-			byte[] version = {'0', '1', TOKEN_POINT, '0', '0'};
-			stream.write(version);
-			stream.write((int)TOKEN_CLOSE_BRACKET);
-
-			ByteBuffer buf = ByteBuffer.allocate(BLOCK);
-			int bufLength = 0;
-
-			// 语素
-			List<SubjectStuff> subjects = primitive.subjects();
-			if (null != subjects) {
-				Iterator<SubjectStuff> iter = subjects.iterator();
-				while (iter.hasNext()) {
-					SubjectStuff stuff = iter.next();
-					stream.write((int)TOKEN_OPEN_BRACE);
-					stream.write(STUFFTYPE_SUBJECT_BYTES);
-					stream.write((int)TOKEN_OPERATE_ASSIGN);
-
-					bufLength = reviseValue(buf, stuff.value.getBytes(Charset.forName("UTF8")));
-					buf.flip();
-					byte[] d = new byte[bufLength];
-					buf.get(d, 0, bufLength);
-					stream.write(d);
-					buf.clear();
-
-					stream.write((int)TOKEN_OPERATE_DECLARE);
-					stream.write(parseLiteralBase(stuff.literalBase));
-					stream.write((int)TOKEN_CLOSE_BRACE);
-				}
+		// 版本
+		buffer.write(TOKEN_OPEN_BRACKET);
+		buffer.write(VERSION_BYTES);
+		buffer.write(TOKEN_CLOSE_BRACKET);
+
+		// 语素
+		writeTextStuffs(buffer, STUFFTYPE_SUBJECT_BYTES, primitive.subjects());
+		writeTextStuffs(buffer, STUFFTYPE_PREDICATE_BYTES, primitive.predicates());
+		writeTextStuffs(buffer, STUFFTYPE_OBJECTIVE_BYTES, primitive.objectives());
+		writeTextStuffs(buffer, STUFFTYPE_ADVERBIAL_BYTES, primitive.adverbials());
+		writeTextStuffs(buffer, STUFFTYPE_ATTRIBUTIVE_BYTES, primitive.attributives());
+		writeTextStuffs(buffer, STUFFTYPE_COMPLEMENT_BYTES, primitive.complements());
+
+		// 方言
+		Dialect dialect = primitive.getDialect();
+		if (null != dialect) {
+			buffer.write(TOKEN_OPEN_BRACKET);
+			buffer.writeUtf8(dialect.getName());
+			buffer.write(TOKEN_AT);
+			buffer.writeUtf8(dialect.getTracker());
+			buffer.write(TOKEN_CLOSE_BRACKET);
+		}
+	}
+
+	/** 以文本格式写入同一类型的语素。
+	 */
+	private static void writeTextStuffs(ByteArrayBuffer buffer, byte[] type, List<? extends Stuff> stuffs) {
+		if (null == stuffs) {
+			return;
+		}
+
+		for (int i = 0, size = stuffs.size(); i < size; ++i) {
+			Stuff stuff = stuffs.get(i);
+
+			buffer.write(TOKEN_OPEN_BRACE);
+			buffer.write(type);
+			buffer.write(TOKEN_OPERATE_ASSIGN);
+
+			// 整数和布尔值直接写入文本，不生成字符串
+			if (stuff.hasIntegerValue()) {
+				buffer.writeDecimal(stuff.getValueAsLong());
 			}
-			List<PredicateStuff> predicates = primitive.predicates();
-			if (null != predicates) {
-				Iterator<PredicateStuff> iter = predicates.iterator();
-				while (iter.hasNext()) {
-					PredicateStuff stuff = iter.next();
-					stream.write((int)TOKEN_OPEN_BRACE);
-					stream.write(STUFFTYPE_PREDICATE_BYTES);
-					stream.write((int)TOKEN_OPERATE_ASSIGN);
-
-					bufLength = reviseValue(buf, stuff.value.getBytes(Charset.forName("UTF8")));
-					buf.flip();
-					byte[] d = new byte[bufLength];
-					buf.get(d, 0, bufLength);
-					stream.write(d);
-					buf.clear();
-
-					stream.write((int)TOKEN_OPERATE_DECLARE);
-					stream.write(parseLiteralBase(stuff.literalBase));
-					stream.write((int)TOKEN_CLOSE_BRACE);
-				}
+			else if (stuff.hasBoolValue()) {
+				buffer.write(stuff.getValueAsBool() ? TRUE_BYTES : FALSE_BYTES);
 			}
-			List<ObjectiveStuff> objectives = primitive.objectives();
-			if (null != objectives) {
-				Iterator<ObjectiveStuff> iter = objectives.iterator();
-				while (iter.hasNext()) {
-					ObjectiveStuff stuff = iter.next();
-					stream.write((int)TOKEN_OPEN_BRACE);
-					stream.write(STUFFTYPE_OBJECTIVE_BYTES);
-					stream.write((int)TOKEN_OPERATE_ASSIGN);
-
-					bufLength = reviseValue(buf, stuff.value.getBytes(Charset.forName("UTF8")));
-					buf.flip();
-					byte[] d = new byte[bufLength];
-					buf.get(d, 0, bufLength);
-					stream.write(d);
-					buf.clear();
-
-					stream.write((int)TOKEN_OPERATE_DECLARE);
-					stream.write(parseLiteralBase(stuff.literalBase));
-					stream.write((int)TOKEN_CLOSE_BRACE);
-				}
+			else {
+				writeEscaped(buffer, stuff.getValueAsString());
+			}
+
+			buffer.write(TOKEN_OPERATE_DECLARE);
+			byte[] literal = parseLiteralBase(stuff.literalBase);
+			if (null != literal) {
+				buffer.write(literal);
 			}
-			List<AdverbialStuff> adverbials = primitive.adverbials();
-			if (null != adverbials) {
-				Iterator<AdverbialStuff> iter = adverbials.iterator();
-				while (iter.hasNext()) {
-					AdverbialStuff stuff = iter.next();
-					stream.write((int)TOKEN_OPEN_BRACE);
-					stream.write(STUFFTYPE_ADVERBIAL_BYTES);
-					stream.write((int)TOKEN_OPERATE_ASSIGN);
-
-					bufLength = reviseValue(buf, stuff.value.getBytes(Charset.forName("UTF8")));
-					buf.flip();
-					byte[] d = new byte[bufLength];
-					buf.get(d, 0, bufLength);
-					stream.write(d);
-					buf.clear();
-
-					stream.write((int)TOKEN_OPERATE_DECLARE);
-					stream.write(parseLiteralBase(stuff.literalBase));
-					stream.write((int)TOKEN_CLOSE_BRACE);
+			buffer.write(TOKEN_CLOSE_BRACE);
+		}
+	}
+
+	/** 以 UTF-8 编码写入数据内容并同时进行转义。
+	 * 转义字符均为 ASCII 字符，不会出现在多字节编码中，因此可以按字符转义。
+	 */
+	private static void writeEscaped(ByteArrayBuffer buffer, String value) {
+		if (null == value) {
+			return;
+		}
+
+		int start = 0;
+		for (int i = 0, length = value.length(); i < length; ++i) {
+			char c = value.charAt(i);
+			if (c == TOKEN_OPEN_BRACE
+				|| c == TOKEN_CLOSE_BRACE
+				|| c == TOKEN_OPERATE_ASSIGN
+				|| c == TOKEN_OPERATE_DECLARE) {
+				buffer.writeUtf8(value, start, i);
+				buffer.write('\\');
+				buffer.write(c);
+				start = i + 1;
+			}
+		}
+
+		buffer.writeUtf8(value, start, value.length());
+	}
+
+	/** 以二进制格式将原语写入缓冲区。
+	 */
+	public static void writeBinary(ByteArrayBuffer buffer, Primitive primitive) {
+		/*
+		原语二进制序列化格式：
+		magic(0xB1)|version|{tag|length|value}...
+		tag 高 4 位为语素类型，低 4 位为字面义，length 为 varint 编码的数值长度。
+		int 和 long 使用 zigzag varint，float 使用 8 字节 IEEE 754 双精度，bool 使用 1 字节，
+		其他字面义使用 UTF-8 字节。数值字面义的值不是规范数值文本时，字面义附加标记 8 ，
+		数值按照 UTF-8 字节保存原始字面。方言使用类型 15 ，数值为 "dialect@tracker" 。
+		*/
+
+		buffer.write(BINARY_MAGIC);
+		buffer.write(BINARY_VERSION);
+
+		writeBinaryStuffs(buffer, BINARY_TYPE_SUBJECT, primitive.subjects());
+		writeBinaryStuffs(buffer, BINARY_TYPE_PREDICATE, primitive.predicates());
+		writeBinaryStuffs(buffer, BINARY_TYPE_OBJECTIVE, primitive.objectives());
+		writeBinaryStuffs(buffer, BINARY_TYPE_ADVERBIAL, primitive.adverbials());
+		writeBinaryStuffs(buffer, BINARY_TYPE_ATTRIBUTIVE, primitive.attributives());
+		writeBinaryStuffs(buffer, BINARY_TYPE_COMPLEMENT, primitive.complements());
+
+		// 方言
+		Dialect dialect = primitive.getDialect();
+		if (null != dialect) {
+			String name = dialect.getName();
+			String tracker = dialect.getTracker();
+			buffer.write(BINARY_TYPE_DIALECT << 4);
+			buffer.writeVarint(ByteArrayBuffer.utf8Length(name) + 1 + ByteArrayBuffer.utf8Length(tracker));
+			buffer.writeUtf8(name);
+			buffer.write(TOKEN_AT);
+			buffer.writeUtf8(tracker);
+		}
+	}
+
+	/** 以二进制格式写入同一类型的语素。
+	 */
+	private static void writeBinaryStuffs(ByteArrayBuffer buffer, int type, List<? extends Stuff> stuffs) {
+		if (null == stuffs) {
+			return;
+		}
+
+		for (int i = 0, size = stuffs.size(); i < size; ++i) {
+			Stuff stuff = stuffs.get(i);
+			LiteralBase lb = stuff.literalBase;
+			String text = null;
+
+			if (lb == LiteralBase.INT || lb == LiteralBase.LONG) {
+				int literal = (lb == LiteralBase.INT) ? BINARY_LITERAL_INT : BINARY_LITERAL_LONG;
+				long v = 0;
+				boolean numeric = stuff.hasIntegerValue();
+				if (numeric) {
+					v = stuff.getValueAsLong();
+				}
+				else {
+					text = stuff.getValueAsString();
+					try {
+						v = (lb == LiteralBase.INT) ? Integer.parseInt(text) : Long.parseLong(text);
+						// 只有规范文本才能在解码后还原出相同的字面
+						numeric = Long.toString(v).equals(text);
+					} catch (NumberFormatException e) {
+						// 按照原始字面写入
+					}
+				}
+
+				if (numeric) {
+					v = zigzag(v);
+					buffer.write((type << 4) | literal);
+					buffer.write(varintSize(v));
+					buffer.writeVarint(v);
+				}
+				else {
+					writeBinaryText(buffer, (type << 4) | literal | BINARY_LITERAL_TEXT, text);
 				}
 			}
-			List<AttributiveStuff> attributives = primitive.attributives();
-			if (null != attributives) {
-				Iterator<AttributiveStuff> iter = attributives.iterator();
-				while (iter.hasNext()) {
-					AttributiveStuff stuff = iter.next();
-					stream.write((int)TOKEN_OPEN_BRACE);
-					stream.write(STUFFTYPE_ATTRIBUTIVE_BYTES);
-					stream.write((int)TOKEN_OPERATE_ASSIGN);
-
-					bufLength = reviseValue(buf, stuff.value.getBytes(Charset.forName("UTF8")));
-					buf.flip();
-					byte[] d = new byte[bufLength];
-					buf.get(d, 0, bufLength);
-					stream.write(d);
-					buf.clear();
-
-					stream.write((int)TOKEN_OPERATE_DECLARE);
-					stream.write(parseLiteralBase(stuff.literalBase));
-					stream.write((int)TOKEN_CLOSE_BRACE);
+			else if (lb == LiteralBase.FLOAT) {
+				double v = 0;
+				boolean numeric = stuff.hasFloatValue();
+				if (numeric) {
+					v = stuff.getFloatValue();
+				}
+				else if (null != (text = stuff.getValueAsString())) {
+					try {
+						v = Double.parseDouble(text);
+						numeric = text.equals(Stuff.formatFloat(v));
+					} catch (NumberFormatException e) {
+						// 按照原始字面写入
+					}
+				}
+
+				if (numeric) {
+					long bits = Double.doubleToLongBits(v);
+					buffer.write((type << 4) | BINARY_LITERAL_FLOAT);
+					buffer.write(8);
+					for (int shift = 56; shift >= 0; shift -= 8) {
+						buffer.write((int) (bits >>> shift));
+					}
+				}
+				else {
+					writeBinaryText(buffer, (type << 4) | BINARY_LITERAL_FLOAT | BINARY_LITERAL_TEXT, text);
 				}
 			}
-			List<ComplementStuff> complements = primitive.complements();
-			if (null != complements) {
-				Iterator<ComplementStuff> iter = complements.iterator();
-				while (iter.hasNext()) {
-					ComplementStuff stuff = iter.next();
-					stream.write((int)TOKEN_OPEN_BRACE);
-					stream.write(STUFFTYPE_COMPLEMENT_BYTES);
-					stream.write((int)TOKEN_OPERATE_ASSIGN);
-
-					bufLength = reviseValue(buf, stuff.value.getBytes(Charset.forName("UTF8")));
-					buf.flip();
-					byte[] d = new byte[bufLength];
-					buf.get(d, 0, bufLength);
-					stream.write(d);
-					buf.clear();
-
-					stream.write((int)TOKEN_OPERATE_DECLARE);
-					stream.write(parseLiteralBase(stuff.literalBase));
-					stream.write((int)TOKEN_CLOSE_BRACE);
+			else if (lb == LiteralBase.BOOL) {
+				if (!stuff.hasBoolValue()) {
+					text = stuff.getValueAsString();
+				}
+
+				if (stuff.hasBoolValue()
+						|| Boolean.toString(true).equals(text) || Boolean.toString(false).equals(text)) {
+					buffer.write((type << 4) | BINARY_LITERAL_BOOL);
+					buffer.write(1);
+					buffer.write(stuff.getValueAsBool() ? 1 : 0);
 				}
+				else {
+					// "yes" 、"1" 等字面保持原样
+					writeBinaryText(buffer, (type << 4) | BINARY_LITERAL_BOOL | BINARY_LITERAL_TEXT, text);
+				}
+			}
+			else {
+				int literal = (lb == LiteralBase.JSON) ? BINARY_LITERAL_JSON
+						: ((lb == LiteralBase.XML) ? BINARY_LITERAL_XML : BINARY_LITERAL_STRING);
+				writeBinaryText(buffer, (type << 4) | literal, stuff.getValueAsString());
 			}
+		}
+	}
 
-			// 方言
-			Dialect dialect = primitive.getDialect();
-			if (null != dialect) {
-				stream.write(TOKEN_OPEN_BRACKET);
-				stream.write(dialect.getName().getBytes(Charset.forName("UTF8")));
-				stream.write(TOKEN_AT);
-				stream.write(dialect.getTracker().getBytes(Charset.forName("UTF8")));
-				stream.write(TOKEN_CLOSE_BRACKET);
+	/** 以二进制格式写入文本值。
+	 */
+	private static void writeBinaryText(ByteArrayBuffer buffer, int tag, String text) {
+		buffer.write(tag);
+		if (null == text) {
+			buffer.write(0);
+			return;
+		}
+
+		buffer.writeVarint(ByteArrayBuffer.utf8Length(text));
+		buffer.writeUtf8(text);
+	}
+
+	/** 从数据流中读取原语。
+	 * 读取数据流的全部数据后按照 {@link #read(Primitive, ByteBuffer)} 进行解析。
+	 */
+	public static void read(Primitive primitive, InputStream stream) {
+		try {
+			ByteArrayBuffer data = new ByteArrayBuffer(Math.max(stream.available(), 256));
+			byte[] block = new byte[1024];
+			int n = 0;
+			while ((n = stream.read(block)) >= 0) {
+				data.write(block, 0, n);
 			}
 
-			stream.flush();
+			read(primitive, ByteBuffer.wrap(data.array(), 0, data.size()));
 		} catch (IOException e) {
 			Logger.log(PrimitiveSerializer.class, e, LogLevel.ERROR);
 		}
 	}
 
-	/** 从数据流中读取原语。
+	/** 从缓冲区读取原语。
+	 * 直接按照索引解析缓冲区 position 到 limit 之间的数据，不复制整个缓冲区，数值长度不受限制。
+	 * 堆缓冲区的字符串数值直接从底层数组解码；直接缓冲区和只读缓冲区没有可访问的数组，
+	 * 每个字符串数值先整段复制到线程解码缓冲区再解码。
+	 * 数据以 {@link #BINARY_MAGIC} 开始时按照二进制格式解析，否则按照文本格式解析。
+	 * 解析完成后缓冲区的 position 移动到 limit 。
 	 */
-	public static void read(Primitive primitive, InputStream stream) {
+	public static void read(Primitive primitive, ByteBuffer buffer) {
+		int position = buffer.position();
+		int limit = buffer.limit();
+		if (position >= limit) {
+			return;
+		}
+
+		try {
+			if (buffer.get(position) == BINARY_MAGIC) {
+				readBinary(primitive, buffer, position + 1, limit);
+			}
+			else {
+				readText(primitive, buffer, position, limit);
+			}
+		} finally {
+			buffer.position(limit);
+		}
+	}
+
+	/** 按照文本格式解析原语。
+	 */
+	private static void readText(Primitive primitive, ByteBuffer buffer, int index, int limit) {
 		/*
 		原语序列化格式：
 		[version]{sutff}...{stuff}[dialect@tracker]
@@ -290,215 +508,439 @@ public final class PrimitiveSerializer {
 		[01.00]{sub=cloud:string}{pre=add:string}[FileReader@Lynx]
 		*/
 
-		try {
-			byte phase = PARSE_PHASE_UNKNOWN;
-			int read = 0;
-
-			ByteBuffer buf = ByteBuffer.allocate(BLOCK);
-			byte[] type = new byte[3];
-			byte[] value = null;
-			byte[] literal = null;
-			int length = 0;
-
-			while ((read = stream.read()) >= 0) {
-
-				// 判断处理阶段
-				switch (phase) {
-
-				case PARSE_PHASE_VALUE:
-					// 判断转义
-					if (read == '\\') {
-						// 读取下一个字符
-						int next = stream.read();
-						if (next == TOKEN_OPEN_BRACE
-							|| next == TOKEN_CLOSE_BRACE
-							|| next == TOKEN_OPERATE_ASSIGN
-							|| next == TOKEN_OPERATE_DECLARE) {
-							buf.put((byte)next);
-							++length;
-						}
-						else {
-							buf.put((byte)read);
-							buf.put((byte)next);
-							length += 2;
-						}
-
-						// 继续下一个字节
-						continue;
-					}
+		boolean hasStuff = false;
 
-					if (read == TOKEN_OPERATE_DECLARE) {
-						// 数值结束
-						buf.flip();
-						value = new byte[length];
-						buf.get(value, 0, length);
-						buf.clear();
+		while (index < limit) {
+			byte b = buffer.get(index);
+			if (b == TOKEN_OPEN_BRACE) {
+				index = readTextStuff(primitive, buffer, index + 1, limit);
+				if (index < 0) {
+					Logger.w(PrimitiveSerializer.class, "Primitive format error");
+					return;
+				}
+				hasStuff = true;
+			}
+			else if (b == TOKEN_OPEN_BRACKET) {
+				int end = indexOf(buffer, index + 1, limit, TOKEN_CLOSE_BRACKET);
+				if (end < 0) {
+					return;
+				}
 
-						phase = PARSE_PHASE_LITERAL;
-						length = 0;
-						continue;
-					}
+				// 语素之前为版本，语素之后为方言
+				if (hasStuff) {
+					deserializeDialect(primitive, decodeString(buffer, index + 1, end));
+				}
+				index = end + 1;
+			}
+			else {
+				++index;
+			}
+		}
+	}
 
-					buf.put((byte)read);
-					++length;
-					break;
+	/** 解析一个文本格式的语素，返回语素结束后的索引，格式错误时返回 -1 。
+	 */
+	private static int readTextStuff(Primitive primitive, ByteBuffer buffer, int index, int limit) {
+		// 类型
+		int assign = indexOf(buffer, index, limit, TOKEN_OPERATE_ASSIGN);
+		if (assign < 0) {
+			return -1;
+		}
+		int type = parseStuffType(buffer, index, assign);
+
+		// 数值，以未转义的声明符结束
+		int valueStart = assign + 1;
+		int valueEnd = -1;
+		boolean escaped = false;
+		for (int i = valueStart; i < limit; ++i) {
+			byte b = buffer.get(i);
+			if (b == '\\') {
+				escaped = true;
+				++i;
+			}
+			else if (b == TOKEN_OPERATE_DECLARE) {
+				valueEnd = i;
+				break;
+			}
+		}
+		if (valueEnd < 0) {
+			return -1;
+		}
 
-				case PARSE_PHASE_TYPE:
-					if (read == TOKEN_OPERATE_ASSIGN) {
-						// 类型结束
-						buf.flip();
-						buf.get(type);
-						buf.clear();
+		// 字面义
+		int close = indexOf(buffer, valueEnd + 1, limit, TOKEN_CLOSE_BRACE);
+		if (close < 0) {
+			return -1;
+		}
+		LiteralBase lb = parseLiteralBase(buffer, valueEnd + 1, close);
 
-						phase = PARSE_PHASE_VALUE;
-						length = 0;
-						continue;
-					}
-					// 写入语素类型
-					buf.put((byte)read);
-					break;
+		Stuff stuff = newStuff(type);
+		if (null == stuff || null == lb) {
+			// 跳过无法识别的语素
+			return close + 1;
+		}
 
-				case PARSE_PHASE_LITERAL:
-					if (read == TOKEN_CLOSE_BRACE) {
-						// 字面义结束
-						buf.flip();
-						literal = new byte[length];
-						buf.get(literal, 0, length);
-						buf.clear();
+		if (!escaped && (lb == LiteralBase.INT || lb == LiteralBase.LONG)
+				&& readDecimal(stuff, buffer, valueStart, valueEnd, lb == LiteralBase.INT)) {
+			// 整数直接按数值存储
+		}
+		else if (escaped) {
+			stuff.setValue(unescape(buffer, valueStart, valueEnd));
+		}
+		else {
+			stuff.setValue(decodeString(buffer, valueStart, valueEnd));
+		}
+		stuff.setLiteralBase(lb);
 
-						// 注入语素
-						injectStuff(primitive, type, value, literal);
+		commitStuff(primitive, stuff);
 
-						phase = PARSE_PHASE_DIALECT;
-						length = 0;
-						continue;
-					}
-					buf.put((byte)read);
-					++length;
-					break;
+		return close + 1;
+	}
 
-				case PARSE_PHASE_STUFF:
-					if (read == TOKEN_OPEN_BRACE) {
-						// 进入解析语素阶段
-						phase = PARSE_PHASE_TYPE;
-						buf.clear();
-					}
+	/** 按照二进制格式解析原语，起始标识之后的数据范围为 index 到 limit 。
+	 */
+	private static void readBinary(Primitive primitive, ByteBuffer buffer, int index, int limit) {
+		if (index >= limit || buffer.get(index) != BINARY_VERSION) {
+			Logger.w(PrimitiveSerializer.class, "Unsupported binary primitive version");
+			return;
+		}
+		++index;
+
+		while (index < limit) {
+			int tag = buffer.get(index++) & 0xFF;
+			int type = tag >>> 4;
+			int literal = tag & 0x0F;
+
+			// 数值长度
+			long length = 0;
+			int shift = 0;
+			while (true) {
+				if (index >= limit || shift >= 35) {
+					Logger.w(PrimitiveSerializer.class, "Binary primitive format error");
+					return;
+				}
+				int b = buffer.get(index++);
+				length |= (long) (b & 0x7F) << shift;
+				if ((b & 0x80) == 0) {
 					break;
+				}
+				shift += 7;
+			}
 
-				case PARSE_PHASE_VERSION:
-					if (read == TOKEN_CLOSE_BRACKET) {
-						// 解析版本结束
-						phase = PARSE_PHASE_STUFF;
-						continue;
-					}
-					buf.put((byte)read);
-					break;
+			if (length > limit - index) {
+				Logger.w(PrimitiveSerializer.class, "Binary primitive data is incomplete");
+				return;
+			}
 
-				case PARSE_PHASE_DIALECT:
-					if (read == TOKEN_OPEN_BRACE) {
-						phase = PARSE_PHASE_TYPE;
-						buf.clear();
-					}
-					else if (read == TOKEN_OPEN_BRACKET) {
-						// 解析方言开始
-						buf.clear();
-					}
-					else if (read == TOKEN_CLOSE_BRACKET) {
-						// 解析方言结束
-						deserializeDialect(primitive, new String(buf.array(), 0, length, Charset.forName("UTF-8")));
-					}
-					else {
-						// 记录数据
-						buf.put((byte)read);
-						++length;
-					}
-					break;
+			int start = index;
+			int end = index + (int) length;
+			index = end;
 
-				default:
-					if (read == TOKEN_OPEN_BRACE) {
-						phase = PARSE_PHASE_TYPE;
-						buf.clear();
-					}
-					else if (read == TOKEN_OPEN_BRACKET) {
-						phase = PARSE_PHASE_VERSION;
-						buf.clear();
-					}
-					break;
-				}
+			if (type == BINARY_TYPE_DIALECT) {
+				deserializeDialect(primitive, decodeString(buffer, start, end));
+				continue;
+			}
+
+			Stuff stuff = newStuff(type);
+			if (null != stuff && fillBinaryValue(stuff, literal, buffer, start, end)) {
+				commitStuff(primitive, stuff);
 			}
+		}
+	}
 
-			buf.clear();
+	/** 将二进制数值写入语素。
+	 */
+	private static boolean fillBinaryValue(Stuff stuff, int literal, ByteBuffer buffer, int start, int end) {
+		if ((literal & BINARY_LITERAL_TEXT) != 0) {
+			// 数值字面义的原始字面
+			stuff.setValue(decodeString(buffer, start, end));
+			switch (literal & ~BINARY_LITERAL_TEXT) {
+			case BINARY_LITERAL_INT:
+				stuff.setLiteralBase(LiteralBase.INT);
+				break;
+			case BINARY_LITERAL_LONG:
+				stuff.setLiteralBase(LiteralBase.LONG);
+				break;
+			case BINARY_LITERAL_FLOAT:
+				stuff.setLiteralBase(LiteralBase.FLOAT);
+				break;
+			case BINARY_LITERAL_BOOL:
+				stuff.setLiteralBase(LiteralBase.BOOL);
+				break;
+			default:
+				stuff.setLiteralBase(LiteralBase.STRING);
+				break;
+			}
+			return true;
+		}
 
-		} catch (IOException e) {
-			Logger.log(PrimitiveSerializer.class, e, LogLevel.ERROR);
+		switch (literal) {
+		case BINARY_LITERAL_INT:
+			stuff.setValue((int) unzigzag(decodeVarint(buffer, start, end)));
+			stuff.setLiteralBase(LiteralBase.INT);
+			break;
+		case BINARY_LITERAL_LONG:
+			stuff.setValue(unzigzag(decodeVarint(buffer, start, end)));
+			stuff.setLiteralBase(LiteralBase.LONG);
+			break;
+		case BINARY_LITERAL_FLOAT:
+			if (end - start != 8) {
+				return false;
+			}
+			long bits = 0;
+			for (int i = start; i < end; ++i) {
+				bits = (bits << 8) | (buffer.get(i) & 0xFF);
+			}
+			stuff.setValue(Double.longBitsToDouble(bits));
+			stuff.setLiteralBase(LiteralBase.FLOAT);
+			break;
+		case BINARY_LITERAL_BOOL:
+			stuff.setValue(end > start && buffer.get(start) != 0);
+			stuff.setLiteralBase(LiteralBase.BOOL);
+			break;
+		case BINARY_LITERAL_JSON:
+			stuff.setValue(decodeString(buffer, start, end));
+			stuff.setLiteralBase(LiteralBase.JSON);
+			break;
+		case BINARY_LITERAL_XML:
+			stuff.setValue(decodeString(buffer, start, end));
+			stuff.setLiteralBase(LiteralBase.XML);
+			break;
+		default:
+			stuff.setValue(decodeString(buffer, start, end));
+			stuff.setLiteralBase(LiteralBase.STRING);
+			break;
 		}
+		return true;
 	}
 
-	/** 将数据数组解析为语素，并注入原语。
+	/** 创建指定类型的语素，类型未知时返回 null 。
 	 */
-	private static void injectStuff(Primitive primitive, byte[] type, byte[] value, byte[] literal) {
-		// 字面义
-		LiteralBase lb = parseLiteralBase(literal);
-		if (lb == null) {
-			return;
+	private static Stuff newStuff(int type) {
+		switch (type) {
+		case BINARY_TYPE_SUBJECT:
+			return new SubjectStuff();
+		case BINARY_TYPE_PREDICATE:
+			return new PredicateStuff();
+		case BINARY_TYPE_OBJECTIVE:
+			return new ObjectiveStuff();
+		case BINARY_TYPE_ADVERBIAL:
+			return new AdverbialStuff();
+		case BINARY_TYPE_ATTRIBUTIVE:
+			return new AttributiveStuff();
+		case BINARY_TYPE_COMPLEMENT:
+			return new ComplementStuff();
+		default:
+			return null;
 		}
+	}
 
-		// 类型
-		String typeString = new String(type);
+	/** 将语素注入原语。
+	 */
+	private static void commitStuff(Primitive primitive, Stuff stuff) {
+		switch (stuff.getType()) {
+		case SUBJECT:
+			primitive.commit((SubjectStuff) stuff);
+			break;
+		case PREDICATE:
+			primitive.commit((PredicateStuff) stuff);
+			break;
+		case OBJECTIVE:
+			primitive.commit((ObjectiveStuff) stuff);
+			break;
+		case ADVERBIAL:
+			primitive.commit((AdverbialStuff) stuff);
+			break;
+		case ATTRIBUTIVE:
+			primitive.commit((AttributiveStuff) stuff);
+			break;
+		case COMPLEMENT:
+			primitive.commit((ComplementStuff) stuff);
+			break;
+		default:
+			break;
+		}
+	}
+
+	/** 按照固定的类型标记解析语素类型，不创建字符串。
+	 */
+	private static int parseStuffType(ByteBuffer buffer, int start, int end) {
+		if (end - start != 3) {
+			return 0;
+		}
+
+		byte b0 = buffer.get(start);
+		byte b1 = buffer.get(start + 1);
+		byte b2 = buffer.get(start + 2);
+		if (matches(STUFFTYPE_SUBJECT_BYTES, b0, b1, b2)) {
+			return BINARY_TYPE_SUBJECT;
+		}
+		else if (matches(STUFFTYPE_PREDICATE_BYTES, b0, b1, b2)) {
+			return BINARY_TYPE_PREDICATE;
+		}
+		else if (matches(STUFFTYPE_OBJECTIVE_BYTES, b0, b1, b2)) {
+			return BINARY_TYPE_OBJECTIVE;
+		}
+		else if (matches(STUFFTYPE_ADVERBIAL_BYTES, b0, b1, b2)) {
+			return BINARY_TYPE_ADVERBIAL;
+		}
+		else if (matches(STUFFTYPE_ATTRIBUTIVE_BYTES, b0, b1, b2)) {
+			return BINARY_TYPE_ATTRIBUTIVE;
+		}
+		else if (matches(STUFFTYPE_COMPLEMENT_BYTES, b0, b1, b2)) {
+			return BINARY_TYPE_COMPLEMENT;
+		}
+		else {
+			return 0;
+		}
+	}
+
+	private static boolean matches(byte[] token, byte b0, byte b1, byte b2) {
+		return token[0] == b0 && token[1] == b1 && token[2] == b2;
+	}
+
+	/** 按照十进制解析整数并以数值存储，数据不是规范的整数形式时返回 false 。
+	 * 仅接受可以按原文还原的形式，保证字符串形式与原文一致。
+	 */
+	private static boolean readDecimal(Stuff stuff, ByteBuffer buffer, int start, int end, boolean intRange) {
+		int i = start;
+		boolean negative = false;
+		if (i < end && buffer.get(i) == '-') {
+			negative = true;
+			++i;
+		}
+
+		int digits = end - i;
+		// 最多 18 位时不会溢出
+		if (digits <= 0 || digits > 18 || (digits > 1 && buffer.get(i) == '0')) {
+			return false;
+		}
 
-		if (typeString.equals(STUFFTYPE_SUBJECT)) {
-			SubjectStuff subject = new SubjectStuff(new String(value, Charset.forName("UTF-8")));
-			subject.literalBase = lb;
-			primitive.commit(subject);
+		long value = 0;
+		for (; i < end; ++i) {
+			int d = buffer.get(i) - '0';
+			if (d < 0 || d > 9) {
+				return false;
+			}
+			value = value * 10 + d;
 		}
-		else if (typeString.equals(STUFFTYPE_PREDICATE)) {
-			PredicateStuff predicate = new PredicateStuff(new String(value, Charset.forName("UTF-8")));
-			predicate.literalBase = lb;
-			primitive.commit(predicate);
+
+		if (negative) {
+			if (value == 0) {
+				return false;
+			}
+			value = -value;
 		}
-		else if (typeString.equals(STUFFTYPE_OBJECTIVE)) {
-			ObjectiveStuff objective = new ObjectiveStuff(new String(value, Charset.forName("UTF-8")));
-			objective.literalBase = lb;
-			primitive.commit(objective);
+
+		if (intRange && (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE)) {
+			return false;
 		}
-		else if (typeString.equals(STUFFTYPE_ADVERBIAL)) {
-			AdverbialStuff adverbial = new AdverbialStuff(new String(value, Charset.forName("UTF-8")));
-			adverbial.literalBase = lb;
-			primitive.commit(adverbial);
+
+		stuff.setValue(value);
+		return true;
+	}
+
+	/** 解除转义并解码字符串。
+	 */
+	private static String unescape(ByteBuffer buffer, int start, int end) {
+		ByteArrayBuffer scratch = DECODE_BUFFER.get();
+		scratch.reset();
+
+		for (int i = start; i < end; ++i) {
+			byte b = buffer.get(i);
+			if (b == '\\' && i + 1 < end) {
+				byte next = buffer.get(++i);
+				if (next != TOKEN_OPEN_BRACE
+					&& next != TOKEN_CLOSE_BRACE
+					&& next != TOKEN_OPERATE_ASSIGN
+					&& next != TOKEN_OPERATE_DECLARE) {
+					scratch.write(b);
+				}
+				scratch.write(next);
+			}
+			else {
+				scratch.write(b);
+			}
 		}
-		else if (typeString.equals(STUFFTYPE_ATTRIBUTIVE)) {
-			AttributiveStuff attributive = new AttributiveStuff(new String(value, Charset.forName("UTF-8")));
-			attributive.literalBase = lb;
-			primitive.commit(attributive);
+
+		String result = new String(scratch.array(), 0, scratch.size(), UTF8);
+		releaseDecodeBuffer(scratch);
+		return result;
+	}
+
+	/** 按照 UTF-8 解码缓冲区指定范围的数据。
+	 */
+	private static String decodeString(ByteBuffer buffer, int start, int end) {
+		if (buffer.hasArray()) {
+			return new String(buffer.array(), buffer.arrayOffset() + start, end - start, UTF8);
 		}
-		else if (typeString.equals(STUFFTYPE_COMPLEMENT)) {
-			ComplementStuff complement = new ComplementStuff(new String(value, Charset.forName("UTF-8")));
-			complement.literalBase = lb;
-			primitive.commit(complement);
+
+		// 只读或直接缓冲区没有可访问的数组，整段复制到线程解码缓冲区后再解码
+		int length = end - start;
+		ByteArrayBuffer scratch = DECODE_BUFFER.get();
+		scratch.reset();
+		scratch.ensureCapacity(length);
+
+		ByteBuffer range = buffer.duplicate();
+		range.limit(end);
+		range.position(start);
+		range.get(scratch.array(), 0, length);
+
+		String result = new String(scratch.array(), 0, length, UTF8);
+		releaseDecodeBuffer(scratch);
+		return result;
+	}
+
+	/** 解码完成后，释放扩容过大的线程解码缓冲区。
+	 */
+	private static void releaseDecodeBuffer(ByteArrayBuffer buffer) {
+		if (buffer.capacity() > ENCODE_BUFFER_RETAIN) {
+			DECODE_BUFFER.remove();
 		}
 	}
 
-	/** 进行数据内容转义。
+	/** 查找指定字节的位置，未找到时返回 -1 。
 	 */
-	private static int reviseValue(ByteBuffer buf, byte[] input) {
-		int length = 0;
-		int inputLength = input.length;
+	private static int indexOf(ByteBuffer buffer, int start, int end, byte b) {
+		for (int i = start; i < end; ++i) {
+			if (buffer.get(i) == b) {
+				return i;
+			}
+		}
+		return -1;
+	}
 
-		for (int i = 0; i < inputLength; ++i) {
-			byte b = input[i];
-			if (b == TOKEN_OPEN_BRACE
-				|| b == TOKEN_CLOSE_BRACE
-				|| b == TOKEN_OPERATE_ASSIGN
-				|| b == TOKEN_OPERATE_DECLARE) {
-				buf.put((byte) '\\');
-				++length;
+	/** 从缓冲区指定范围解码无符号 varint 。
+	 */
+	private static long decodeVarint(ByteBuffer buffer, int start, int end) {
+		long value = 0;
+		for (int i = start, shift = 0; i < end && shift < 64; ++i, shift += 7) {
+			byte b = buffer.get(i);
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				break;
 			}
+		}
+		return value;
+	}
 
-			buf.put(b);
-			++length;
+	/** 返回 varint 编码长度。
+	 */
+	private static int varintSize(long value) {
+		int size = 1;
+		while ((value & ~0x7FL) != 0) {
+			value >>>= 7;
+			++size;
 		}
+		return size;
+	}
+
+	private static long zigzag(long value) {
+		return (value << 1) ^ (value >> 63);
+	}
 
-		return length;
+	private static long unzigzag(long value) {
+		return (value >>> 1) ^ -(value & 1);
 	}
 
 	/** 解析字面义。
@@ -530,30 +972,36 @@ public final class PrimitiveSerializer {
 		}
 	}
 
-	/** 解析字面义。
+	/** 解析字面义，按照前两个字节识别，不创建字符串。
 	 */
-	private static LiteralBase parseLiteralBase(byte[] literal) {
-		if (literal[0] == LITERALBASE_STRING_BYTES[0] && literal[1] == LITERALBASE_STRING_BYTES[1]) {
+	private static LiteralBase parseLiteralBase(ByteBuffer buffer, int start, int end) {
+		if (end - start < 2) {
+			return null;
+		}
+
+		byte b0 = buffer.get(start);
+		byte b1 = buffer.get(start + 1);
+		if (b0 == LITERALBASE_STRING_BYTES[0] && b1 == LITERALBASE_STRING_BYTES[1]) {
 			return LiteralBase.STRING;
 		}
-		else if (literal[0] == LITERALBASE_JSON_BYTES[0] && literal[1] == LITERALBASE_JSON_BYTES[1]) {
+		else if (b0 == LITERALBASE_JSON_BYTES[0] && b1 == LITERALBASE_JSON_BYTES[1]) {
 			return LiteralBase.JSON;
 		}
-		else if (literal[0] == LITERALBASE_XML_BYTES[0] && literal[1] == LITERALBASE_XML_BYTES[1]) {
+		else if (b0 == LITERALBASE_XML_BYTES[0] && b1 == LITERALBASE_XML_BYTES[1]) {
 			return LiteralBase.XML;
 		}
-		else if ((literal[0] == LITERALBASE_INT_BYTES[0] && literal[1] == LITERALBASE_INT_BYTES[1])
-				|| (literal[0] == LITERALBASE_UINT_BYTES[0] && literal[1] == LITERALBASE_UINT_BYTES[1])) {
+		else if ((b0 == LITERALBASE_INT_BYTES[0] && b1 == LITERALBASE_INT_BYTES[1])
+				|| (b0 == LITERALBASE_UINT_BYTES[0] && b1 == LITERALBASE_UINT_BYTES[1])) {
 			return LiteralBase.INT;
 		}
-		else if ((literal[0] == LITERALBASE_LONG_BYTES[0] && literal[1] == LITERALBASE_LONG_BYTES[1])
-				|| (literal[0] == LITERALBASE_ULONG_BYTES[0] && literal[1] == LITERALBASE_ULONG_BYTES[1])) {
+		else if ((b0 == LITERALBASE_LONG_BYTES[0] && b1 == LITERALBASE_LONG_BYTES[1])
+				|| (b0 == LITERALBASE_ULONG_BYTES[0] && b1 == LITERALBASE_ULONG_BYTES[1])) {
 			return LiteralBase.LONG;
 		}
-		else if (literal[0] == LITERALBASE_BOOL_BYTES[0] && literal[1] == LITERALBASE_BOOL_BYTES[1]) {
+		else if (b0 == LITERALBASE_BOOL_BYTES[0] && b1 == LITERALBASE_BOOL_BYTES[1]) {
 			return LiteralBase.BOOL;
 		}
-		else if (literal[0] == LITERALBASE_FLOAT_BYTES[0] && literal[1] == LITERALBASE_FLOAT_BYTES[1]) {
+		else if (b0 == LITERALBASE_FLOAT_BYTES[0] && b1 == LITERALBASE_FLOAT_BYTES[1]) {
 			return LiteralBase.FLOAT;
 		}
 		else {
@@ -53,10 +53,29 @@ import org.xml.sax.SAXException;
  */
 public abstract class Stuff {
 
-	private static final DecimalFormat DF = new DecimalFormat("#0.0000");
+	/// 浮点数文本格式，DecimalFormat 不是线程安全的，每个线程使用独立实例
+	private static final ThreadLocal<DecimalFormat> DF = new ThreadLocal<DecimalFormat>() {
+		@Override
+		protected DecimalFormat initialValue() {
+			return new DecimalFormat("#0.0000");
+		}
+	};
+
+	// 数值存储类型
+	private static final byte NUMERIC_NONE = 0;
+	private static final byte NUMERIC_INTEGER = 1;
+	private static final byte NUMERIC_FLOAT = 2;
+	private static final byte NUMERIC_BOOL = 3;
 
 	private StuffType type;
-	protected String value;
+	/// 字符串形式的值，数值类型在需要时才生成
+	private String value;
+	/// 整数、长整数和布尔值的数值存储
+	private long numberValue;
+	/// 浮点数的数值存储
+	private double floatValue;
+	/// 数值存储类型
+	private byte numeric = NUMERIC_NONE;
 	protected LiteralBase literalBase;
 
 	/** 构造函数。 */
@@ -74,28 +93,28 @@ public abstract class Stuff {
 	/** 构造函数。 */
 	public Stuff(StuffType type, int value) {
 		this.type = type;
-		this.value = Integer.toString(value);
+		this.setValue(value);
 		this.literalBase = LiteralBase.INT;
 	}
 
 	/** 构造函数。 */
 	public Stuff(StuffType type, long value) {
 		this.type = type;
-		this.value = Long.toString(value);
+		this.setValue(value);
 		this.literalBase = LiteralBase.LONG;
 	}
 
 	/** 构造函数。 */
 	public Stuff(StuffType type, float value) {
 		this.type = type;
-		this.value = DF.format(value);
+		this.setValue((double) value);
 		this.literalBase = LiteralBase.FLOAT;
 	}
 
 	/** 构造函数。 */
 	public Stuff(StuffType type, boolean value) {
 		this.type = type;
-		this.value = Boolean.toString(value);
+		this.setValue(value);
 		this.literalBase = LiteralBase.BOOL;
 	}
 
@@ -122,42 +141,108 @@ public abstract class Stuff {
 	/** 将自身语素数据复制给目标语素。 */
 	abstract public void clone(Stuff target);
 
+	/** 将自身的值和字面义复制给目标语素。 */
+	protected final void copyValue(Stuff target) {
+		target.value = this.value;
+		target.numberValue = this.numberValue;
+		target.floatValue = this.floatValue;
+		target.numeric = this.numeric;
+		target.literalBase = this.literalBase;
+	}
+
+	/** 数值是否以整数形式存储。 */
+	final boolean hasIntegerValue() {
+		return this.numeric == NUMERIC_INTEGER;
+	}
+
+	/** 数值是否以浮点数形式存储。 */
+	final boolean hasFloatValue() {
+		return this.numeric == NUMERIC_FLOAT;
+	}
+
+	/** 返回以浮点数形式存储的数值。 */
+	final double getFloatValue() {
+		return this.floatValue;
+	}
+
+	/** 数值是否以布尔值形式存储。 */
+	final boolean hasBoolValue() {
+		return this.numeric == NUMERIC_BOOL;
+	}
+
 	/** 返回语素类型。
 	 */
 	public StuffType getType() {
 		return this.type;
 	}
 
+	/** 返回字符串形式的值，供子类访问。
+	 */
+	protected String getValue() {
+		return this.getValueAsString();
+	}
+
 	/** 按照字符串形式返回值。
 	*/
 	public String getValueAsString() {
+		if (null == this.value && this.numeric != NUMERIC_NONE) {
+			// 按需生成字符串形式，重复生成的结果相同
+			if (this.numeric == NUMERIC_FLOAT) {
+				this.value = DF.get().format(this.floatValue);
+			}
+			else if (this.numeric == NUMERIC_BOOL) {
+				this.value = Boolean.toString(this.numberValue != 0);
+			}
+			else {
+				this.value = Long.toString(this.numberValue);
+			}
+		}
 		return this.value;
 	}
 
 	/** 按照整数形式返回值。
 	*/
 	public int getValueAsInt() {
-		return Integer.parseInt(this.value);
+		if (this.numeric == NUMERIC_INTEGER) {
+			return (int) this.numberValue;
+		}
+		return Integer.parseInt(this.getValueAsString());
 	}
 
 	/** 按照长整数形式返回值。
 	*/
 	public long getValueAsLong() {
-		return Long.parseLong(this.value);
+		if (this.numeric == NUMERIC_INTEGER) {
+			return this.numberValue;
+		}
+		return Long.parseLong(this.getValueAsString());
 	}
 
 	/** 按照浮点数形式返回值。
+	 * 浮点数在存储时按照文本格式 "#0.0000" 保留 4 位小数，
+	 * 因此返回值与按照字符串形式返回的值一致。
 	 */
 	public float getValueAsFloat() {
-		return Float.parseFloat(this.value);
+		if (this.numeric == NUMERIC_FLOAT) {
+			return (float) this.floatValue;
+		}
+		else if (this.numeric == NUMERIC_INTEGER) {
+			return (float) this.numberValue;
+		}
+		return Float.parseFloat(this.getValueAsString());
 	}
 
 	/** 按照布尔值形式返回值。
 	*/
 	public boolean getValueAsBool() {
-		if (this.value.equalsIgnoreCase("true")
-			|| this.value.equalsIgnoreCase("yes")
-			|| this.value.equalsIgnoreCase("1"))
+		if (this.numeric == NUMERIC_BOOL) {
+			return this.numberValue != 0;
+		}
+
+		String value = this.getValueAsString();
+		if (value.equalsIgnoreCase("true")
+			|| value.equalsIgnoreCase("yes")
+			|| value.equalsIgnoreCase("1"))
 			return true;
 		else
 			return false;
@@ -168,7 +253,7 @@ public abstract class Stuff {
 	 */
 	public JSONObject getValueAsJSON()
 			throws JSONException {
-		return new JSONObject(this.value);
+		return new JSONObject(this.getValueAsString());
 	}
 
 	/** 按照 XML 格式返回值。
@@ -178,7 +263,7 @@ public abstract class Stuff {
 	 */
 	public Document getValueAsXML()
 			throws ParserConfigurationException, SAXException, IOException {
-		String xmlStr = new String(this.value.getBytes(), Charset.forName("UTF-8"));
+		String xmlStr = new String(this.getValueAsString().getBytes(), Charset.forName("UTF-8"));
 		StringReader sr = new StringReader(xmlStr);
 		InputSource is = new InputSource(sr);
 		DocumentBuilderFactory factory =  DocumentBuilderFactory.newInstance();
@@ -197,31 +282,53 @@ public abstract class Stuff {
 	 */
 	protected void setValue(String value) {
 		this.value = value;
+		this.numeric = NUMERIC_NONE;
 	}
 	/** @private
 	 */
 	protected void setValue(int value) {
-		this.value = Integer.toString(value);
+		this.setValue((long) value);
 	}
 	/** @private
 	 */
 	protected void setValue(long value) {
-		this.value = Long.toString(value);
+		this.value = null;
+		this.numberValue = value;
+		this.numeric = NUMERIC_INTEGER;
 	}
 	/** @private
 	 */
 	protected void setValue(boolean value) {
-		this.value = Boolean.toString(value);
+		this.value = null;
+		this.numberValue = value ? 1 : 0;
+		this.numeric = NUMERIC_BOOL;
 	}
 	/** @private
 	 */
 	protected void setValue(double value) {
-		this.value = DF.format(value);
+		this.value = null;
+		this.floatValue = round(value);
+		this.numeric = NUMERIC_FLOAT;
+	}
+	/** 返回浮点数的文本格式。
+	 */
+	static String formatFloat(double value) {
+		return DF.get().format(value);
+	}
+	/** 按照文本格式保留 4 位小数。
+	 */
+	private static double round(double value) {
+		// 超出该范围的数值没有小数部分，也避免乘法溢出
+		if (Math.abs(value) < 1.0E15) {
+			return Math.rint(value * 10000.0) / 10000.0;
+		}
+		return value;
 	}
 	/** @private
 	 */
 	protected void setValue(JSONObject json) {
 		this.value = json.toString();
+		this.numeric = NUMERIC_NONE;
 	}
 
 	/** @private
@@ -0,0 +1,232 @@
+/*
+-----------------------------------------------------------------------------
+This source file is part of Cell Cloud.
+
+Copyright (c) 2009-2013 Cell Cloud Team (www.cellcloud.net)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+-----------------------------------------------------------------------------
+*/
+
+package net.cellcloud.util;
+
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/** 可增长的字节数组缓冲区。
+ * 
+ * 直接在内部数组上写入数据，容量不足时自动扩容，适合作为线程内复用的编码缓冲区。
+ * 该类不是线程安全的。
+ * 
+ * @author Jiangwei Xu
+ */
+public final class ByteArrayBuffer extends OutputStream {
+
+	private byte[] data;
+	private int size;
+
+	/** 构造函数。
+	 */
+	public ByteArrayBuffer(int capacity) {
+		this.data = new byte[Math.max(capacity, 16)];
+		this.size = 0;
+	}
+
+	@Override
+	public void write(int b) {
+		this.ensureCapacity(this.size + 1);
+		this.data[this.size++] = (byte) b;
+	}
+
+	@Override
+	public void write(byte[] b) {
+		this.write(b, 0, b.length);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) {
+		this.ensureCapacity(this.size + len);
+		System.arraycopy(b, off, this.data, this.size, len);
+		this.size += len;
+	}
+
+	/** 写入无符号 varint 。
+	 */
+	public void writeVarint(long value) {
+		this.ensureCapacity(this.size + 10);
+		while ((value & ~0x7FL) != 0) {
+			this.data[this.size++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		this.data[this.size++] = (byte) value;
+	}
+
+	/** 以十进制文本写入长整数，不创建字符串。
+	 */
+	public void writeDecimal(long value) {
+		this.ensureCapacity(this.size + 20);
+
+		if (value == Long.MIN_VALUE) {
+			// 取反会溢出，单独处理最后一位
+			this.writeDecimal(value / 10);
+			this.data[this.size++] = (byte) ('0' - (int) (value % 10));
+			return;
+		}
+
+		if (value < 0) {
+			this.data[this.size++] = '-';
+			value = -value;
+		}
+
+		int digits = 1;
+		for (long v = value; v >= 10; v /= 10) {
+			++digits;
+		}
+
+		int end = this.size + digits;
+		for (int i = end - 1; i >= this.size; --i) {
+			this.data[i] = (byte) ('0' + (int) (value % 10));
+			value /= 10;
+		}
+		this.size = end;
+	}
+
+	/** 以 UTF-8 编码写入字符序列，不创建中间数组。
+	 * 不成对的代理字符写为 '?' ，与 {@link String#getBytes(java.nio.charset.Charset)} 一致。
+	 */
+	public void writeUtf8(CharSequence s) {
+		this.writeUtf8(s, 0, s.length());
+	}
+
+	/** 以 UTF-8 编码写入字符序列中 start 到 end 的字符，不创建子序列。
+	 */
+	public void writeUtf8(CharSequence s, int start, int end) {
+		this.ensureCapacity(this.size + (end - start));
+
+		for (int i = start; i < end; ++i) {
+			char c = s.charAt(i);
+			if (c < 0x80) {
+				if (this.size == this.data.length) {
+					this.ensureCapacity(this.size + 1 + (end - i));
+				}
+				this.data[this.size++] = (byte) c;
+			}
+			else {
+				i = this.writeUtf8Char(s, i, end, c);
+			}
+		}
+	}
+
+	/** 写入单个非 ASCII 字符，返回已处理的最后一个字符索引。
+	 */
+	private int writeUtf8Char(CharSequence s, int index, int end, char c) {
+		this.ensureCapacity(this.size + 4);
+
+		if (c < 0x800) {
+			this.data[this.size++] = (byte) (0xC0 | (c >> 6));
+			this.data[this.size++] = (byte) (0x80 | (c & 0x3F));
+		}
+		else if (Character.isHighSurrogate(c) && index + 1 < end
+				&& Character.isLowSurrogate(s.charAt(index + 1))) {
+			int cp = Character.toCodePoint(c, s.charAt(index + 1));
+			this.data[this.size++] = (byte) (0xF0 | (cp >> 18));
+			this.data[this.size++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+			this.data[this.size++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+			this.data[this.size++] = (byte) (0x80 | (cp & 0x3F));
+			return index + 1;
+		}
+		else if (Character.isSurrogate(c)) {
+			this.data[this.size++] = '?';
+		}
+		else {
+			this.data[this.size++] = (byte) (0xE0 | (c >> 12));
+			this.data[this.size++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+			this.data[this.size++] = (byte) (0x80 | (c & 0x3F));
+		}
+
+		return index;
+	}
+
+	/** 返回字符序列的 UTF-8 编码长度。
+	 */
+	public static int utf8Length(CharSequence s) {
+		int length = s.length();
+		int bytes = length;
+
+		for (int i = 0; i < length; ++i) {
+			char c = s.charAt(i);
+			if (c < 0x80) {
+				continue;
+			}
+			else if (c < 0x800) {
+				bytes += 1;
+			}
+			else if (Character.isHighSurrogate(c) && i + 1 < length
+					&& Character.isLowSurrogate(s.charAt(i + 1))) {
+				// 两个字符共 4 字节
+				bytes += 2;
+				++i;
+			}
+			else if (!Character.isSurrogate(c)) {
+				bytes += 2;
+			}
+		}
+
+		return bytes;
+	}
+
+	/** 确保缓冲区容量。
+	 */
+	public void ensureCapacity(int capacity) {
+		if (capacity > this.data.length) {
+			int newCapacity = Math.max(this.data.length << 1, capacity);
+			this.data = Arrays.copyOf(this.data, newCapacity);
+		}
+	}
+
+	/** 清空数据，保留已分配的容量。
+	 */
+	public void reset() {
+		this.size = 0;
+	}
+
+	/** 返回已写入的数据长度。
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/** 返回当前容量。
+	 */
+	public int capacity() {
+		return this.data.length;
+	}
+
+	/** 返回内部数组，有效数据范围为 0 到 {@link #size()} 。
+	 */
+	public byte[] array() {
+		return this.data;
+	}
+
+	/** 返回已写入数据的副本。
+	 */
+	public byte[] toByteArray() {
+		return Arrays.copyOf(this.data, this.size);
+	}
+}
@@ -0,0 +1,89 @@
+/*
+-----------------------------------------------------------------------------
+This source file is part of Cell Cloud.
+
+Copyright (c) 2009-2013 Cell Cloud Team (www.cellcloud.net)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+-----------------------------------------------------------------------------
+*/
+
+package net.cellcloud.util;
+
+import java.nio.ByteBuffer;
+import java.util.zip.Checksum;
+
+/** CRC-32C（Castagnoli）校验和。
+ * 
+ * @author Jiangwei Xu
+ */
+public final class Crc32c implements Checksum {
+
+	private static final int[] TABLE = new int[256];
+
+	static {
+		for (int n = 0; n < 256; ++n) {
+			int c = n;
+			for (int k = 0; k < 8; ++k) {
+				c = ((c & 1) != 0) ? (0x82F63B78 ^ (c >>> 1)) : (c >>> 1);
+			}
+			TABLE[n] = c;
+		}
+	}
+
+	private int crc;
+
+	public Crc32c() {
+		this.crc = 0xFFFFFFFF;
+	}
+
+	@Override
+	public void update(int b) {
+		this.crc = TABLE[(this.crc ^ b) & 0xFF] ^ (this.crc >>> 8);
+	}
+
+	@Override
+	public void update(byte[] b, int off, int len) {
+		int c = this.crc;
+		for (int i = off, end = off + len; i < end; ++i) {
+			c = TABLE[(c ^ b[i]) & 0xFF] ^ (c >>> 8);
+		}
+		this.crc = c;
+	}
+
+	/** 使用缓冲区中指定范围的数据更新校验和，不改变缓冲区的 position 。
+	 */
+	public void update(ByteBuffer buf, int start, int end) {
+		int c = this.crc;
+		for (int i = start; i < end; ++i) {
+			c = TABLE[(c ^ buf.get(i)) & 0xFF] ^ (c >>> 8);
+		}
+		this.crc = c;
+	}
+
+	@Override
+	public long getValue() {
+		return (~this.crc) & 0xFFFFFFFFL;
+	}
+
+	@Override
+	public void reset() {
+		this.crc = 0xFFFFFFFF;
+	}
+}
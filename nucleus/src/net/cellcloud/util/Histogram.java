@@ -0,0 +1,171 @@
+/*
+-----------------------------------------------------------------------------
+This source file is part of Cell Cloud.
+
+Copyright (c) 2009-2013 Cell Cloud Team (www.cellcloud.net)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+-----------------------------------------------------------------------------
+*/
+
+package net.cellcloud.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 以 2 的幂划分桶的直方图。
+ * 
+ * 数值 v 记录在第 (64 - v 的前导零个数) 个桶中，即第 i 个桶覆盖区间 [2^(i-1), 2^i) ，
+ * 第 0 个桶只记录 0 。记录操作无锁，百分位数以桶的上界估计，误差不超过一倍。
+ * 
+ * @author Jiangwei Xu
+ *
+ */
+public final class Histogram {
+
+	private static final int BUCKET_NUM = 64;
+
+	private final AtomicLongArray buckets;
+	private final AtomicLong count;
+	private final AtomicLong sum;
+	private final AtomicLong max;
+
+	public Histogram() {
+		this.buckets = new AtomicLongArray(BUCKET_NUM);
+		this.count = new AtomicLong(0);
+		this.sum = new AtomicLong(0);
+		this.max = new AtomicLong(0);
+	}
+
+	/**
+	 * 记录数值，负数按 0 记录。
+	 */
+	public void record(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+
+		this.buckets.incrementAndGet(Math.min(BUCKET_NUM - 1, 64 - Long.numberOfLeadingZeros(value)));
+		this.count.incrementAndGet();
+		this.sum.addAndGet(value);
+
+		long current = this.max.get();
+		while (value > current) {
+			if (this.max.compareAndSet(current, value)) {
+				break;
+			}
+			current = this.max.get();
+		}
+	}
+
+	/**
+	 * 返回当前数据的快照。
+	 */
+	public Snapshot snapshot() {
+		long[] values = new long[BUCKET_NUM];
+		for (int i = 0; i < BUCKET_NUM; ++i) {
+			values[i] = this.buckets.get(i);
+		}
+		return new Snapshot(values, this.count.get(), this.sum.get(), this.max.get());
+	}
+
+	/**
+	 * 直方图快照。
+	 */
+	public static final class Snapshot {
+
+		private final long[] buckets;
+		private final long count;
+		private final long sum;
+		private final long max;
+
+		private Snapshot(long[] buckets, long count, long sum, long max) {
+			this.buckets = buckets;
+			this.count = count;
+			this.sum = sum;
+			this.max = max;
+		}
+
+		/** 返回记录数量。 */
+		public long getCount() {
+			return this.count;
+		}
+
+		/** 返回数值总和。 */
+		public long getSum() {
+			return this.sum;
+		}
+
+		/** 返回最大值。 */
+		public long getMax() {
+			return this.max;
+		}
+
+		/** 返回平均值。 */
+		public double getMean() {
+			return (this.count > 0) ? (double) this.sum / (double) this.count : 0;
+		}
+
+		/**
+		 * 返回百分位数的估计值，即包含该百分位的桶的上界，不超过最大值。
+		 * @param quantile 分位，取值范围 [0, 1] 。
+		 */
+		public long getPercentile(double quantile) {
+			long total = 0;
+			for (long n : this.buckets) {
+				total += n;
+			}
+			if (total == 0) {
+				return 0;
+			}
+
+			long rank = (long) Math.ceil(quantile * total);
+			if (rank < 1) {
+				rank = 1;
+			}
+
+			long seen = 0;
+			for (int i = 0; i < this.buckets.length; ++i) {
+				seen += this.buckets[i];
+				if (seen >= rank) {
+					long upper = (i == 0) ? 0 : ((i >= 63) ? Long.MAX_VALUE : (1L << i) - 1);
+					return Math.min(upper, this.max);
+				}
+			}
+
+			return this.max;
+		}
+
+		/** 返回各个桶的计数。 */
+		public long[] getBuckets() {
+			return this.buckets.clone();
+		}
+
+		@Override
+		public String toString() {
+			return new StringBuilder("count=").append(this.count)
+					.append(", mean=").append((long) this.getMean())
+					.append(", p50=").append(this.getPercentile(0.5))
+					.append(", p99=").append(this.getPercentile(0.99))
+					.append(", p999=").append(this.getPercentile(0.999))
+					.append(", max=").append(this.max).toString();
+		}
+	}
+}
@@ -0,0 +1,369 @@
+/*
+-----------------------------------------------------------------------------
+This source file is part of Cell Cloud.
+
+Copyright (c) 2009-2013 Cell Cloud Team (www.cellcloud.net)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+-----------------------------------------------------------------------------
+*/
+
+package net.cellcloud.util;
+
+import java.util.LinkedList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.cellcloud.common.LogLevel;
+import net.cellcloud.common.Logger;
+
+/**
+ * 按键串行的执行器。
+ * 
+ * 同一个键的任务严格按提交顺序逐个执行，不同键的任务在固定数量的线程上并行执行。
+ * 每个键的待执行任务数量有上限，超过上限的任务被拒绝。
+ * 
+ * @author Jiangwei Xu
+ *
+ */
+public final class KeyedSerialExecutor {
+
+	/// 每个键单次连续执行的最大任务数，超过后让出线程以保证公平
+	private static final int BATCH_SIZE = 32;
+
+	private ExecutorService executor;
+	private int threadNum;
+	private int queueCapacity;
+
+	private ConcurrentHashMap<Object, SerialQueue> queues;
+
+	// 统计数据
+	private AtomicLong submittedCount = new AtomicLong(0);
+	private AtomicLong completedCount = new AtomicLong(0);
+	private AtomicLong rejectedCount = new AtomicLong(0);
+	private AtomicLong failedCount = new AtomicLong(0);
+	private AtomicInteger pendingNum = new AtomicInteger(0);
+	private AtomicInteger maxQueueDepth = new AtomicInteger(0);
+
+	/**
+	 * 私有构造函数。
+	 * @param name
+	 * @param threadNum
+	 * @param queueCapacity
+	 */
+	private KeyedSerialExecutor(final String name, int threadNum, int queueCapacity) {
+		this.threadNum = threadNum;
+		this.queueCapacity = queueCapacity;
+		this.queues = new ConcurrentHashMap<Object, SerialQueue>();
+		this.executor = Executors.newFixedThreadPool(threadNum, new ThreadFactory() {
+			private AtomicInteger counter = new AtomicInteger(0);
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new WorkerThread(r, name + "-" + counter.getAndIncrement());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * 创建按键串行执行器。
+	 * @param name 线程名前缀。
+	 * @param threadNum 工作线程数量。
+	 * @param queueCapacity 每个键允许排队的最大任务数。
+	 * @return
+	 */
+	public static KeyedSerialExecutor newKeyedSerialThreadPool(String name, int threadNum, int queueCapacity) {
+		if (threadNum <= 0) {
+			throw new IllegalArgumentException("Thread number is not less than zero.");
+		}
+		if (queueCapacity <= 0) {
+			throw new IllegalArgumentException("Queue capacity is not less than zero.");
+		}
+
+		return new KeyedSerialExecutor(name, threadNum, queueCapacity);
+	}
+
+	/**
+	 * 提交指定键的任务。
+	 * @param key 串行键，例如 Session 或由 Session 和 Tag 组成的对象。
+	 * @param task
+	 * @return 如果该键的队列已满或执行器已关闭，返回 <code>false</code> 。
+	 */
+	public boolean execute(Object key, Runnable task) {
+		if (this.executor.isShutdown()) {
+			this.rejectedCount.incrementAndGet();
+			return false;
+		}
+
+		SerialQueue queue = null;
+		boolean schedule = false;
+		while (true) {
+			queue = this.queues.get(key);
+			if (null == queue) {
+				queue = new SerialQueue(key);
+				SerialQueue old = this.queues.putIfAbsent(key, queue);
+				if (null != old) {
+					queue = old;
+				}
+			}
+
+			synchronized (queue) {
+				// 队列已经排空并从映射中移除，重新获取
+				if (queue.removed) {
+					continue;
+				}
+
+				if (queue.tasks.size() >= this.queueCapacity) {
+					this.rejectedCount.incrementAndGet();
+					return false;
+				}
+
+				queue.tasks.offer(task);
+				int depth = queue.tasks.size();
+				if (depth > this.maxQueueDepth.get()) {
+					this.updateMaxQueueDepth(depth);
+				}
+
+				if (!queue.scheduled) {
+					queue.scheduled = true;
+					schedule = true;
+				}
+			}
+			break;
+		}
+
+		this.submittedCount.incrementAndGet();
+		this.pendingNum.incrementAndGet();
+
+		if (schedule) {
+			try {
+				this.executor.execute(queue);
+			} catch (RejectedExecutionException e) {
+				// 执行器已关闭
+				Logger.log(KeyedSerialExecutor.class, e, LogLevel.DEBUG);
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * 返回工作线程数量。
+	 * @return
+	 */
+	public int getThreadNum() {
+		return this.threadNum;
+	}
+
+	/**
+	 * 返回每个键的队列容量。
+	 * @return
+	 */
+	public int getQueueCapacity() {
+		return this.queueCapacity;
+	}
+
+	/**
+	 * 返回当前有待执行任务的键数量。
+	 * @return
+	 */
+	public int getActiveKeyNum() {
+		return this.queues.size();
+	}
+
+	/**
+	 * 返回所有键上待执行的任务总数。
+	 * @return
+	 */
+	public int getPendingNum() {
+		return this.pendingNum.get();
+	}
+
+	/**
+	 * 返回已提交的任务总数。
+	 * @return
+	 */
+	public long getSubmittedCount() {
+		return this.submittedCount.get();
+	}
+
+	/**
+	 * 返回已执行完成的任务总数。
+	 * @return
+	 */
+	public long getCompletedCount() {
+		return this.completedCount.get();
+	}
+
+	/**
+	 * 返回因队列已满或执行器关闭而被拒绝的任务总数。
+	 * @return
+	 */
+	public long getRejectedCount() {
+		return this.rejectedCount.get();
+	}
+
+	/**
+	 * 返回执行时抛出异常的任务总数。
+	 * @return
+	 */
+	public long getFailedCount() {
+		return this.failedCount.get();
+	}
+
+	/**
+	 * 返回单个键出现过的最大队列深度。
+	 * @return
+	 */
+	public int getMaxQueueDepth() {
+		return this.maxQueueDepth.get();
+	}
+
+	/**
+	 * 当前线程是否是该执行器的工作线程。
+	 * @return
+	 */
+	public boolean inWorkerThread() {
+		Thread thread = Thread.currentThread();
+		return (thread instanceof WorkerThread) && ((WorkerThread) thread).owner == this;
+	}
+
+	/**
+	 * 当前线程是否是任一 KeyedSerialExecutor 的工作线程。
+	 * @return
+	 */
+	public static boolean isWorkerThread() {
+		return Thread.currentThread() instanceof WorkerThread;
+	}
+
+	/**
+	 * 关闭执行器，已提交的任务继续执行。
+	 */
+	public void shutdown() {
+		this.executor.shutdown();
+	}
+
+	/**
+	 * 等待执行器终止。
+	 * @param timeout
+	 * @param unit
+	 * @return
+	 * @throws InterruptedException
+	 */
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		return this.executor.awaitTermination(timeout, unit);
+	}
+
+	/**
+	 * 返回执行器是否已关闭。
+	 * @return
+	 */
+	public boolean isShutdown() {
+		return this.executor.isShutdown();
+	}
+
+	private void updateMaxQueueDepth(int depth) {
+		int max = this.maxQueueDepth.get();
+		while (depth > max) {
+			if (this.maxQueueDepth.compareAndSet(max, depth)) {
+				break;
+			}
+			max = this.maxQueueDepth.get();
+		}
+	}
+
+	/**
+	 * 工作线程。
+	 */
+	private final class WorkerThread extends Thread {
+		private final KeyedSerialExecutor owner = KeyedSerialExecutor.this;
+
+		private WorkerThread(Runnable r, String name) {
+			super(r, name);
+		}
+	}
+
+	/**
+	 * 单个键的串行任务队列。
+	 */
+	private final class SerialQueue implements Runnable {
+		private final Object key;
+		private final LinkedList<Runnable> tasks = new LinkedList<Runnable>();
+		private boolean scheduled = false;
+		private boolean removed = false;
+
+		private SerialQueue(Object key) {
+			this.key = key;
+		}
+
+		@Override
+		public void run() {
+			while (this.runBatch()) {
+				// 让出线程，排在其他键之后继续执行
+				try {
+					executor.execute(this);
+					return;
+				} catch (RejectedExecutionException e) {
+					// 执行器已关闭，在当前线程中继续执行剩余任务
+				}
+			}
+		}
+
+		/**
+		 * 连续执行一批任务。
+		 * @return 如果队列中还有待执行的任务返回 <code>true</code> 。
+		 */
+		private boolean runBatch() {
+			for (int i = 0; i < BATCH_SIZE; ++i) {
+				Runnable task = null;
+				synchronized (this) {
+					task = this.tasks.poll();
+					if (null == task) {
+						// 队列已排空，移除该键
+						this.scheduled = false;
+						this.removed = true;
+						queues.remove(this.key, this);
+						return false;
+					}
+				}
+
+				pendingNum.decrementAndGet();
+
+				try {
+					task.run();
+				} catch (Exception e) {
+					failedCount.incrementAndGet();
+					Logger.log(KeyedSerialExecutor.class, e, LogLevel.ERROR);
+				}
+
+				completedCount.incrementAndGet();
+			}
+
+			return true;
+		}
+	}
+}
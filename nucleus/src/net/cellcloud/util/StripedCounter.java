@@ -0,0 +1,118 @@
+/*
+-----------------------------------------------------------------------------
+This source file is part of Cell Cloud.
+
+Copyright (c) 2009-2013 Cell Cloud Team (www.cellcloud.net)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+-----------------------------------------------------------------------------
+*/
+
+package net.cellcloud.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 分段计数器组。
+ * 
+ * 一组计数器按线程分段存储在同一个数组中，每个线程只更新自己所在分段的计数器，
+ * 读取时累加所有分段。分段之间间隔一个缓存行以上，避免多个线程更新时的伪共享。
+ * 适用于写多读少的统计数据。
+ * 
+ * @author Jiangwei Xu
+ *
+ */
+public final class StripedCounter {
+
+	// 每个分段占用的数组长度，16 个 long 为 128 字节
+	private static final int STRIDE = 16;
+
+	private final int counterNum;
+	private final int mask;
+	private final AtomicLongArray cells;
+
+	/**
+	 * 构造函数。
+	 * @param counterNum 计数器数量，最多 16 个。
+	 */
+	public StripedCounter(int counterNum) {
+		if (counterNum <= 0 || counterNum > STRIDE) {
+			throw new IllegalArgumentException("Counter number must be in [1, " + STRIDE + "]");
+		}
+
+		this.counterNum = counterNum;
+
+		// 分段数量为处理器数量两倍向上取 2 的幂，最多 64 段
+		int stripes = 1;
+		int target = Runtime.getRuntime().availableProcessors() * 2;
+		while (stripes < target && stripes < 64) {
+			stripes <<= 1;
+		}
+		this.mask = stripes - 1;
+		this.cells = new AtomicLongArray(stripes * STRIDE);
+	}
+
+	/**
+	 * 返回计数器数量。
+	 */
+	public int getCounterNum() {
+		return this.counterNum;
+	}
+
+	/**
+	 * 增加计数。
+	 * @param counter 计数器索引。
+	 * @param delta 增量。
+	 */
+	public void add(int counter, long delta) {
+		int stripe = (int) (Thread.currentThread().getId() & this.mask);
+		this.cells.getAndAdd(stripe * STRIDE + counter, delta);
+	}
+
+	/**
+	 * 计数加一。
+	 * @param counter 计数器索引。
+	 */
+	public void increment(int counter) {
+		this.add(counter, 1L);
+	}
+
+	/**
+	 * 返回计数器的当前值。
+	 * @param counter 计数器索引。
+	 */
+	public long get(int counter) {
+		long sum = 0;
+		for (int i = counter, length = this.cells.length(); i < length; i += STRIDE) {
+			sum += this.cells.get(i);
+		}
+		return sum;
+	}
+
+	/**
+	 * 返回所有计数器的当前值。
+	 */
+	public long[] getAll() {
+		long[] values = new long[this.counterNum];
+		for (int i = 0; i < this.counterNum; ++i) {
+			values[i] = this.get(i);
+		}
+		return values;
+	}
+}
@@ -0,0 +1,318 @@
+/*
+-----------------------------------------------------------------------------
+This source file is part of Cell Cloud.
+
+Copyright (c) 2009-2013 Cell Cloud Team (www.cellcloud.net)
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+-----------------------------------------------------------------------------
+*/
+
+package net.cellcloud.util;
+
+import java.util.ArrayList;
+
+import net.cellcloud.common.LogLevel;
+import net.cellcloud.common.Logger;
+
+/**
+ * 分层哈希时间轮。
+ * 
+ * 时间轮由细粒度轮和粗粒度轮两层组成。到期时间落在细粒度轮范围内的任务直接放入对应槽位，
+ * 更远的任务放入粗粒度轮，细粒度轮每转一圈就将粗粒度轮对应槽位的任务下放到细粒度轮，
+ * 超出两层范围的任务记录剩余圈数。添加和取消任务的时间复杂度为 O(1) ，
+ * 推进时间轮时只访问到期槽位中的任务。
+ * 
+ * 时间轮不创建线程，由调用者周期性调用 {@link #advance(long)} 推进，到期任务在调用者线程中执行。
+ * 
+ * @author Jiangwei Xu
+ *
+ */
+public final class TimingWheel {
+
+	private final long tickDuration;
+	private final long startTime;
+
+	private final Bucket[] fineWheel;
+	private final int fineMask;
+	private final int fineBits;
+	private final Bucket[] coarseWheel;
+	private final int coarseMask;
+
+	/// 已经处理到的 Tick
+	private long currentTick;
+	/// 待执行的任务数量
+	private int size;
+
+	/**
+	 * 构造函数。
+	 * @param tickDuration 每个 Tick 的时长，单位：毫秒。
+	 * @param fineSize 细粒度轮槽位数量，必须是 2 的幂。
+	 * @param coarseSize 粗粒度轮槽位数量，必须是 2 的幂。
+	 */
+	public TimingWheel(long tickDuration, int fineSize, int coarseSize) {
+		if (tickDuration <= 0) {
+			throw new IllegalArgumentException("Tick duration is not less than zero.");
+		}
+		if (Integer.bitCount(fineSize) != 1 || Integer.bitCount(coarseSize) != 1) {
+			throw new IllegalArgumentException("Wheel size must be a power of two.");
+		}
+
+		this.tickDuration = tickDuration;
+		this.startTime = System.currentTimeMillis();
+		this.fineWheel = createWheel(fineSize);
+		this.fineMask = fineSize - 1;
+		this.fineBits = Integer.numberOfTrailingZeros(fineSize);
+		this.coarseWheel = createWheel(coarseSize);
+		this.coarseMask = coarseSize - 1;
+		this.currentTick = 0;
+		this.size = 0;
+	}
+
+	/**
+	 * 构造函数。细粒度轮 512 个槽位，粗粒度轮 64 个槽位。
+	 * @param tickDuration 每个 Tick 的时长，单位：毫秒。
+	 */
+	public TimingWheel(long tickDuration) {
+		this(tickDuration, 512, 64);
+	}
+
+	/**
+	 * 返回 Tick 时长。
+	 * @return
+	 */
+	public long getTickDuration() {
+		return this.tickDuration;
+	}
+
+	/**
+	 * 返回待执行的任务数量。
+	 * @return
+	 */
+	public synchronized int size() {
+		return this.size;
+	}
+
+	/**
+	 * 添加在指定延迟后执行的任务。
+	 * @param task
+	 * @param delay 延迟时间，单位：毫秒。
+	 * @return 返回可用于取消任务的超时句柄。
+	 */
+	public Timeout schedule(Runnable task, long delay) {
+		Timeout timeout = new Timeout(task, System.currentTimeMillis() + Math.max(0, delay));
+		synchronized (this) {
+			this.insert(timeout);
+			++this.size;
+		}
+		return timeout;
+	}
+
+	/**
+	 * 推进时间轮到指定时间，并执行所有到期任务。
+	 * @param now 当前时间，单位：毫秒。
+	 * @return 返回执行的任务数量。
+	 */
+	public int advance(long now) {
+		ArrayList<Timeout> expired = null;
+
+		synchronized (this) {
+			long targetTick = (now - this.startTime) / this.tickDuration;
+			while (this.currentTick < targetTick) {
+				long tick = ++this.currentTick;
+
+				// 细粒度轮转过一圈，下放粗粒度轮对应槽位的任务
+				if ((tick & this.fineMask) == 0) {
+					this.cascade(tick);
+				}
+
+				Bucket bucket = this.fineWheel[(int) (tick & this.fineMask)];
+				Timeout t = bucket.head;
+				while (null != t) {
+					Timeout next = t.next;
+					bucket.remove(t);
+					t.expired = true;
+					--this.size;
+
+					if (null == expired) {
+						expired = new ArrayList<Timeout>();
+					}
+					expired.add(t);
+
+					t = next;
+				}
+			}
+		}
+
+		if (null == expired) {
+			return 0;
+		}
+
+		for (int i = 0, len = expired.size(); i < len; ++i) {
+			try {
+				expired.get(i).task.run();
+			} catch (Exception e) {
+				Logger.log(TimingWheel.class, e, LogLevel.ERROR);
+			}
+		}
+
+		return expired.size();
+	}
+
+	/**
+	 * 取消任务。
+	 */
+	private synchronized boolean cancel(Timeout timeout) {
+		if (timeout.expired || null == timeout.bucket) {
+			return false;
+		}
+
+		timeout.bucket.remove(timeout);
+		--this.size;
+		return true;
+	}
+
+	/**
+	 * 将任务放入对应的槽位。
+	 */
+	private void insert(Timeout timeout) {
+		long tick = (timeout.deadline - this.startTime + this.tickDuration - 1) / this.tickDuration;
+		if (tick <= this.currentTick) {
+			// 已经到期，在下一个 Tick 执行
+			tick = this.currentTick + 1;
+		}
+
+		if (tick - this.currentTick <= this.fineMask) {
+			this.fineWheel[(int) (tick & this.fineMask)].add(timeout);
+		}
+		else {
+			// 放入粗粒度轮，细粒度轮转到 slot << fineBits 时下放
+			long slot = tick >>> this.fineBits;
+			long first = (this.currentTick >>> this.fineBits) + 1;
+			timeout.rounds = (slot - first) / this.coarseWheel.length;
+			this.coarseWheel[(int) (slot & this.coarseMask)].add(timeout);
+		}
+
+		timeout.tick = tick;
+	}
+
+	/**
+	 * 将粗粒度轮对应槽位中本圈到期的任务下放到细粒度轮。
+	 */
+	private void cascade(long tick) {
+		Bucket bucket = this.coarseWheel[(int) ((tick >>> this.fineBits) & this.coarseMask)];
+		Timeout t = bucket.head;
+		while (null != t) {
+			Timeout next = t.next;
+			if (t.rounds > 0) {
+				--t.rounds;
+			}
+			else {
+				bucket.remove(t);
+				this.fineWheel[(int) (t.tick & this.fineMask)].add(t);
+			}
+			t = next;
+		}
+	}
+
+	private static Bucket[] createWheel(int size) {
+		Bucket[] wheel = new Bucket[size];
+		for (int i = 0; i < size; ++i) {
+			wheel[i] = new Bucket();
+		}
+		return wheel;
+	}
+
+	/**
+	 * 超时句柄。
+	 */
+	public final class Timeout {
+		private final Runnable task;
+		private final long deadline;
+		private long tick;
+		private long rounds;
+		private boolean expired;
+
+		private Bucket bucket;
+		private Timeout prev;
+		private Timeout next;
+
+		private Timeout(Runnable task, long deadline) {
+			this.task = task;
+			this.deadline = deadline;
+			this.rounds = 0;
+			this.expired = false;
+		}
+
+		/**
+		 * 返回到期时间。
+		 * @return
+		 */
+		public long getDeadline() {
+			return this.deadline;
+		}
+
+		/**
+		 * 取消任务。
+		 * @return 如果任务已经执行或已经取消，返回 <code>false</code> 。
+		 */
+		public boolean cancel() {
+			return TimingWheel.this.cancel(this);
+		}
+	}
+
+	/**
+	 * 槽位，以双向链表保存任务。
+	 */
+	private static final class Bucket {
+		private Timeout head;
+		private Timeout tail;
+
+		private void add(Timeout timeout) {
+			timeout.bucket = this;
+			timeout.prev = this.tail;
+			timeout.next = null;
+			if (null == this.tail) {
+				this.head = timeout;
+			}
+			else {
+				this.tail.next = timeout;
+			}
+			this.tail = timeout;
+		}
+
+		private void remove(Timeout timeout) {
+			if (null == timeout.prev) {
+				this.head = timeout.next;
+			}
+			else {
+				timeout.prev.next = timeout.next;
+			}
+			if (null == timeout.next) {
+				this.tail = timeout.prev;
+			}
+			else {
+				timeout.next.prev = timeout.prev;
+			}
+			timeout.bucket = null;
+			timeout.prev = null;
+			timeout.next = null;
+		}
+	}
+}